@@ -14,6 +14,7 @@ import org.daisy.common.xproc.XProcResult;
 import org.daisy.common.xproc.calabash.XProcConfigurationFactory;
 import org.daisy.pipeline.event.EventBusProvider;
 import org.daisy.pipeline.properties.Properties;
+import org.daisy.pipeline.script.XProcScriptService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +43,8 @@ public final class CalabashXProcEngine implements XProcEngine {
 	/** The event bus provider. */
 	private EventBusProvider eventBusProvider;
 
+	/** The pool of compiled pipelines, null if disabled. */
+	private final XPipelinePool pool = XPipelinePool.fromProperties();
 
 
 
@@ -69,7 +72,7 @@ public final class CalabashXProcEngine implements XProcEngine {
 					"Calabash configuration factory unavailable");
 		}
 
-		return new CalabashXProcPipeline(uri, configFactory, uriResolver, entityResolver,eventBusProvider);
+		return new CalabashXProcPipeline(uri, configFactory, uriResolver, entityResolver,eventBusProvider,pool);
 	}
 
 	/* (non-Javadoc)
@@ -123,6 +126,32 @@ public final class CalabashXProcEngine implements XProcEngine {
 	public void setEventBusProvider(EventBusProvider eventBusProvider){
 		this.eventBusProvider=eventBusProvider;
 	}
+
+	/**
+	 * Called when a script is deployed. Compiled pipelines are dropped from
+	 * the pool as they may depend on the modules that changed.
+	 *
+	 * @param script the script service
+	 */
+	public void addScript(XProcScriptService script) {
+		invalidatePool();
+	}
+
+	/**
+	 * Called when a script is undeployed.
+	 *
+	 * @param script the script service
+	 */
+	public void removeScript(XProcScriptService script) {
+		invalidatePool();
+	}
+
+	private void invalidatePool() {
+		if (pool != null) {
+			pool.invalidate();
+		}
+	}
+
 	public void setPropertyPublisherFactory(PropertyPublisherFactory propertyPublisherFactory){
 		PropertyPublisher propertyPublisher=propertyPublisherFactory.newPropertyPublisher();	
 		//the property publishing step goes here
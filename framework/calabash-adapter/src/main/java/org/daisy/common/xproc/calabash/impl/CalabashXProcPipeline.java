@@ -22,6 +22,8 @@ import org.daisy.common.xproc.XProcPortInfo;
 import org.daisy.common.xproc.XProcResult;
 import org.daisy.common.xproc.calabash.XProcConfigurationFactory;
 import org.daisy.pipeline.event.EventBusProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
@@ -44,6 +46,10 @@ import com.xmlcalabash.runtime.XPipeline;
  */
 public class CalabashXProcPipeline implements XProcPipeline {
 
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(CalabashXProcPipeline.class);
+
 	/** The uri. */
 	private final URI uri;
 
@@ -59,6 +65,8 @@ public class CalabashXProcPipeline implements XProcPipeline {
 	/** The message listener factory. */
 	private final EventBusProvider eventBusProvider;
 
+	/** The pool of compiled pipelines, null if pooling is disabled. */
+	private final XPipelinePool pool;
 
 
 	/**
@@ -97,7 +105,7 @@ public class CalabashXProcPipeline implements XProcPipeline {
 			} catch (SaxonApiException e) {
 				throw new RuntimeException(e.getMessage(), e);
 			}
-			return new PipelineInstance(xpipeline, config,runtime);
+			return new PipelineInstance(xpipeline, config,runtime,listeners);
 		}
 	};
 
@@ -109,7 +117,7 @@ public class CalabashXProcPipeline implements XProcPipeline {
 				public XProcPipelineInfo get() {
 					XProcPipelineInfo.Builder builder = new XProcPipelineInfo.Builder();
 					builder.withURI(uri);
-                                        PipelineInstance instance=pipelineSupplier.get();
+                                        PipelineInstance instance=acquire();
 					DeclareStep declaration = instance.xpipe.getDeclareStep();
 					// input and parameter ports
 					for (Input input : declaration.inputs()) {
@@ -135,7 +143,7 @@ public class CalabashXProcPipeline implements XProcPipeline {
 								.getLocalName(), option.getName().getPrefix()),
 								option.getRequired(), option.getSelect()));
 					}
-                                        instance.runtime.close();
+                                        release(instance);
 
 					return builder.build();
 				}
@@ -162,12 +170,68 @@ public class CalabashXProcPipeline implements XProcPipeline {
 			XProcConfigurationFactory configFactory, URIResolver uriResolver,
 			EntityResolver entityResolver,
 			EventBusProvider eventBusProvider) {
+		this(uri, configFactory, uriResolver, entityResolver, eventBusProvider, null);
+	}
+
+	/**
+	 * Instantiates a new calabash x proc pipeline that takes its compiled
+	 * instances from the given pool.
+	 *
+	 * @param uri
+	 *            the uri to load the xpl file
+	 * @param configFactory
+	 *            the configuration factory
+	 * @param uriResolver
+	 *            the uri resolver
+	 * @param entityResolver
+	 *            the entity resolver
+	 * @param messageListenerFactory
+	 *            the message listener factory used to process pipeline
+	 *            execution related messages
+	 * @param pool
+	 *            the pool of compiled pipelines, or null to compile the
+	 *            pipeline for every run
+	 */
+	CalabashXProcPipeline(URI uri,
+			XProcConfigurationFactory configFactory, URIResolver uriResolver,
+			EntityResolver entityResolver,
+			EventBusProvider eventBusProvider, XPipelinePool pool) {
 		this.uri = uri;
 		this.configFactory = configFactory;
 		this.uriResolver = uriResolver;
 		this.entityResolver = entityResolver;
 		this.eventBusProvider=eventBusProvider;
+		this.pool = pool;
+
+	}
 
+	/**
+	 * Gets a pipeline instance, from the pool if pooling is enabled.
+	 */
+	private PipelineInstance acquire() {
+		if (pool == null) {
+			return pipelineSupplier.get();
+		}
+		return pool.acquire(uri, pipelineSupplier);
+	}
+
+	/**
+	 * Resets the instance and gives it back to the pool, or closes its runtime
+	 * if pooling is disabled.
+	 */
+	private void release(PipelineInstance instance) {
+		if (pool == null) {
+			instance.close();
+			return;
+		}
+		try {
+			instance.reset();
+		} catch (RuntimeException e) {
+			logger.warn("Could not reset pipeline instance for " + uri, e);
+			pool.discard(instance);
+			return;
+		}
+		pool.release(uri, instance);
 	}
 
 	/*
@@ -194,10 +258,10 @@ public class CalabashXProcPipeline implements XProcPipeline {
 	 */
 	@Override
 	public XProcResult run(XProcInput data, XProcMonitor monitor,Properties props) {
-		PipelineInstance pipeline = pipelineSupplier.get();
+		final PipelineInstance pipeline = acquire();
 		// monitor.setMessageAccessor(pipeline.messageAccessor);
-		((XProcMessageListenerAggregator) pipeline.xpipe.getStep().getXProc()
-				.getMessageListener()).add(new EventBusMessageListener(eventBusProvider,props));
+		final EventBusMessageListener eventListener = new EventBusMessageListener(eventBusProvider,props);
+		pipeline.listeners.add(eventListener);
 		// bind inputs
 		for (String name : pipeline.xpipe.getInputs()) {
 			for (Supplier<Source> sourceProvider : data.getInputs(name)) {
@@ -238,8 +302,10 @@ public class CalabashXProcPipeline implements XProcPipeline {
 		}
 
 		// run
+		boolean success = false;
 		try {
 			pipeline.xpipe.run();
+			success = true;
                 //propagate possible errors
 		} catch (Exception e) {
                         throw new RuntimeException(e);
@@ -247,10 +313,30 @@ public class CalabashXProcPipeline implements XProcPipeline {
 		} catch (OutOfMemoryError e) {//this one needs it's own catch!
                         throw new RuntimeException(e);
 		}finally{
-                        pipeline.runtime.close();
+                        // don't let the thread locals of the runtime pin it to
+                        // this thread, which may be a reused worker
+                        pipeline.clearThreadState();
+                        if (pool == null) {
+                                pipeline.close();
+                        } else if (!success) {
+                                // the pipeline state is unknown after a failure
+                                pool.discard(pipeline);
+                        }
                 }
+		if (pool == null) {
+			return CalabashXProcResult.newInstance( pipeline.xpipe ,
+					pipeline.config);
+		}
+		// the instance goes back to the pool once the results are read or
+		// the result is closed
 		return CalabashXProcResult.newInstance( pipeline.xpipe ,
-				pipeline.config);
+				pipeline.config, new Runnable() {
+					@Override
+					public void run() {
+						pipeline.listeners.remove(eventListener);
+						release(pipeline);
+					}
+				});
 	}
 
 	/**
@@ -278,7 +364,7 @@ public class CalabashXProcPipeline implements XProcPipeline {
 	 * The Class PipelineInstance is just a holder for various objects to
 	 * connect with the suppliers .
 	 */
-	private static final class PipelineInstance {
+	static final class PipelineInstance {
 
 		/** The xpipe. */
 		private final XPipeline xpipe;
@@ -289,6 +375,12 @@ public class CalabashXProcPipeline implements XProcPipeline {
 		/** The config. */
 		private final XProcRuntime runtime;
 
+		/** The message listeners of the runtime. */
+		private final XProcMessageListenerAggregator listeners;
+
+		/** The pool generation this instance was created in. */
+		long generation;
+
 		/**
 		 * Instantiates a new pipeline instance.
 		 *
@@ -297,12 +389,37 @@ public class CalabashXProcPipeline implements XProcPipeline {
 		 * @param config
 		 *            the config
 		 */
-		private PipelineInstance(XPipeline xpipe, XProcConfiguration config,XProcRuntime runtime) {
+		private PipelineInstance(XPipeline xpipe, XProcConfiguration config,XProcRuntime runtime,
+				XProcMessageListenerAggregator listeners) {
 			this.xpipe = xpipe;
 			this.config = config;
 			this.runtime= runtime;
+			this.listeners = listeners;
 
 		}
+
+		/**
+		 * Clears the inputs, outputs, options and parameters of the pipeline
+		 * and the state of the runtime so that the pipeline can be run again.
+		 */
+		void reset() {
+			xpipe.reset();
+			runtime.resetRunState();
+		}
+
+		/**
+		 * Removes the state the runtime left on the calling thread.
+		 */
+		void clearThreadState() {
+			runtime.clearThreadState();
+		}
+
+		/**
+		 * Closes the runtime.
+		 */
+		void close() {
+			runtime.close();
+		}
 	}
 
 }
@@ -33,7 +33,8 @@ public final class CalabashXProcResult implements XProcResult {
 	/** The configuration. */
 	private final XProcConfiguration configuration;
 
-	/** The message accessor. */
+	/** Called once the results have been written or the result is closed, may be null. */
+	private Runnable onDone;
 
 
 	/**
@@ -45,7 +46,21 @@ public final class CalabashXProcResult implements XProcResult {
 	 * @return the x proc result
 	 */
 	static XProcResult newInstance(XPipeline xpipeline,XProcConfiguration configuration) {
-		return new CalabashXProcResult(xpipeline,configuration);
+		return new CalabashXProcResult(xpipeline,configuration,null);
+	}
+
+	/**
+	 * creates a new XProcResult instance that notifies when the pipeline is
+	 * not needed anymore, i.e. when the results have been written or the
+	 * result is closed, whichever comes first
+	 *
+	 * @param xpipeline the xpipeline whose results where be processed by this object
+	 * @param configuration the pipeline config object
+	 * @param onDone called once, after the results have been written or when the result is closed
+	 * @return the x proc result
+	 */
+	static XProcResult newInstance(XPipeline xpipeline,XProcConfiguration configuration,Runnable onDone) {
+		return new CalabashXProcResult(xpipeline,configuration,onDone);
 	}
 
 	/**
@@ -55,9 +70,10 @@ public final class CalabashXProcResult implements XProcResult {
 	 * @param configuration the configuration
 	 * @param accessor the accessor
 	 */
-	private CalabashXProcResult(XPipeline xpipeline,XProcConfiguration configuration) {
+	private CalabashXProcResult(XPipeline xpipeline,XProcConfiguration configuration,Runnable onDone) {
 		this.xpipeline = xpipeline;
 		this.configuration = configuration;
+		this.onDone = onDone;
 
 	}
 
@@ -66,6 +82,26 @@ public final class CalabashXProcResult implements XProcResult {
 	 */
 	@Override
 	public void writeTo(XProcOutput output) {
+		try {
+			write(output);
+		} finally {
+			close();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.daisy.common.xproc.XProcResult#close()
+	 */
+	@Override
+	public synchronized void close() {
+		if (onDone != null) {
+			Runnable callback = onDone;
+			onDone = null;
+			callback.run();
+		}
+	}
+
+	private void write(XProcOutput output) {
 		if(xpipeline.getOutputs() != null)
 			for (String port : xpipeline.getOutputs()) {
 
@@ -2,6 +2,7 @@ package org.daisy.common.xproc.calabash.impl;
 
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.XdmNode;
@@ -28,7 +29,7 @@ public class EventBusMessageListener implements XProcMessageListener {
 	EventBusProvider eventBus;
 	MessageBuliderFactory messageBuilderFactory;
 	Properties props;
-	int sequence = 0;
+	final AtomicInteger sequence = new AtomicInteger();
 
 	public EventBusMessageListener(EventBusProvider eventBus,
 			 Properties props) {
@@ -42,9 +43,13 @@ public class EventBusMessageListener implements XProcMessageListener {
 		if (props != null && props.getProperty("JOB_ID")!=null) {
 			builder.withJobId(props.getProperty("JOB_ID"));
 		}
-		builder.withSequence(sequence++);
-		builder.withTimeStamp(new Date());
-		eventBus.get().post(builder.build());
+		// the steps of parallel lanes share this listener: number and post
+		// the messages under the same lock so that they arrive in order
+		synchronized (this) {
+			builder.withSequence(sequence.getAndIncrement());
+			builder.withTimeStamp(new Date());
+			eventBus.get().post(builder.build());
+		}
 	}
 
 	/*
@@ -0,0 +1,183 @@
+package org.daisy.common.xproc.calabash.impl;
+
+import java.net.URI;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.daisy.common.xproc.calabash.impl.CalabashXProcPipeline.PipelineInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Keeps compiled pipeline instances (an {@link com.xmlcalabash.runtime.XPipeline}
+ * together with its runtime) per script URI so that they can be handed out
+ * again to later jobs instead of re-parsing and re-compiling the script.
+ *
+ * Only idle instances are kept: an acquired instance belongs exclusively to
+ * the caller until it is released. Instances created before the last call to
+ * {@link #invalidate()} are closed instead of being pooled again.
+ */
+final class XPipelinePool {
+
+	/** Property to enable the pool */
+	static final String POOL_ENABLED = "org.daisy.pipeline.calabash.pool";
+
+	/** Property holding the maximum number of idle instances per script */
+	static final String POOL_MAX_IDLE = "org.daisy.pipeline.calabash.pool.maxIdle";
+
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(XPipelinePool.class);
+
+	/** The idle instances per script uri */
+	private final ConcurrentMap<URI, Queue<PipelineInstance>> idle = new ConcurrentHashMap<URI, Queue<PipelineInstance>>();
+
+	/** Number of idle instances per script uri */
+	private final ConcurrentMap<URI, AtomicInteger> idleCount = new ConcurrentHashMap<URI, AtomicInteger>();
+
+	/** The current generation, incremented on every invalidation */
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+
+	/** The max number of idle instances per script. */
+	private final int maxIdle;
+
+	/**
+	 * Creates a new pool
+	 *
+	 * @param maxIdle the maximum number of idle instances kept per script
+	 */
+	XPipelinePool(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Creates a new pool configured from the system properties or null if
+	 * pooling is disabled.
+	 */
+	static XPipelinePool fromProperties() {
+		boolean enabled = Boolean.parseBoolean(
+				org.daisy.pipeline.properties.Properties.getProperty(POOL_ENABLED, "false"));
+		if (!enabled) {
+			return null;
+		}
+		int maxIdle = Integer.valueOf(
+				org.daisy.pipeline.properties.Properties.getProperty(POOL_MAX_IDLE, "2"));
+		logger.info("Pipeline pool enabled (max idle instances per script: {})", maxIdle);
+		return new XPipelinePool(maxIdle);
+	}
+
+	/**
+	 * Takes an idle instance for the given script or creates a new one using
+	 * the factory if there is none.
+	 *
+	 * @param uri the script uri
+	 * @param factory creates a new instance in case of a miss
+	 * @return an instance owned by the caller until it is released
+	 */
+	PipelineInstance acquire(URI uri, Supplier<PipelineInstance> factory) {
+		Queue<PipelineInstance> queue = idle.get(uri);
+		PipelineInstance instance = queue != null ? queue.poll() : null;
+		if (instance != null) {
+			idleCount.get(uri).decrementAndGet();
+			if (instance.generation == generation.get()) {
+				hits.incrementAndGet();
+				logger.debug("Pipeline pool hit for {} (hits: {}, misses: {})",
+						uri, hits.get(), misses.get());
+				return instance;
+			}
+			discard(instance);
+		}
+		misses.incrementAndGet();
+		logger.debug("Pipeline pool miss for {} (hits: {}, misses: {})",
+				uri, hits.get(), misses.get());
+		long gen = generation.get();
+		instance = factory.get();
+		instance.generation = gen;
+		return instance;
+	}
+
+	/**
+	 * Gives back an instance which has been reset. The instance is closed if
+	 * it is stale or if there already are enough idle instances.
+	 *
+	 * @param uri the script uri
+	 * @param instance the instance
+	 */
+	void release(URI uri, PipelineInstance instance) {
+		if (instance.generation != generation.get()) {
+			discard(instance);
+			return;
+		}
+		AtomicInteger count = idleCount.get(uri);
+		if (count == null) {
+			idleCount.putIfAbsent(uri, new AtomicInteger());
+			idle.putIfAbsent(uri, new ConcurrentLinkedQueue<PipelineInstance>());
+			count = idleCount.get(uri);
+		}
+		if (count.incrementAndGet() > maxIdle) {
+			count.decrementAndGet();
+			discard(instance);
+			return;
+		}
+		idle.get(uri).offer(instance);
+	}
+
+	/**
+	 * Closes an instance that won't be used anymore.
+	 *
+	 * @param instance the instance
+	 */
+	void discard(PipelineInstance instance) {
+		discarded.incrementAndGet();
+		instance.close();
+	}
+
+	/**
+	 * Drops all the idle instances and makes sure that the instances in use
+	 * are not pooled again. To be called when the modules change.
+	 */
+	void invalidate() {
+		generation.incrementAndGet();
+		for (URI uri : idle.keySet()) {
+			Queue<PipelineInstance> queue = idle.get(uri);
+			PipelineInstance instance;
+			while ((instance = queue.poll()) != null) {
+				idleCount.get(uri).decrementAndGet();
+				discard(instance);
+			}
+		}
+		logger.debug("Pipeline pool invalidated (hits: {}, misses: {}, discarded: {})",
+				hits.get(), misses.get(), discarded.get());
+	}
+
+	/**
+	 * @return the number of times an idle instance could be reused
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of times a new instance had to be compiled
+	 */
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of instances that were closed instead of pooled
+	 */
+	long getDiscarded() {
+		return discarded.get();
+	}
+}
@@ -0,0 +1,130 @@
+package org.daisy.common.xproc.calabash.impl;
+
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.sf.saxon.s9api.Processor;
+
+import org.daisy.common.xproc.XProcInput;
+import org.daisy.common.xproc.XProcResult;
+import org.daisy.common.xproc.calabash.XProcConfigurationFactory;
+import org.daisy.common.xproc.calabash.impl.CalabashXProcPipeline.PipelineInstance;
+import org.daisy.pipeline.event.EventBusProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+import com.xmlcalabash.core.XProcConfiguration;
+
+public class CalabashXProcPipelineTest {
+
+	/**
+	 * Keeps track of the configurations it creates, and thus of the runtimes
+	 * they belong to, without keeping them alive.
+	 */
+	private static class ConfigurationFactory implements XProcConfigurationFactory {
+
+		final List<WeakReference<XProcConfiguration>> created = new CopyOnWriteArrayList<WeakReference<XProcConfiguration>>();
+
+		@Override
+		public XProcConfiguration newConfiguration() {
+			return track(new XProcConfiguration());
+		}
+
+		@Override
+		public XProcConfiguration newConfiguration(boolean schemaAware) {
+			return track(new XProcConfiguration(schemaAware));
+		}
+
+		@Override
+		public XProcConfiguration newConfiguration(Processor processor) {
+			return track(new XProcConfiguration(processor));
+		}
+
+		private XProcConfiguration track(XProcConfiguration config) {
+			created.add(new WeakReference<XProcConfiguration>(config));
+			return config;
+		}
+
+		boolean allCollected() {
+			for (WeakReference<XProcConfiguration> ref : created) {
+				if (ref.get() != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static URI resource(String name) throws Exception {
+		return CalabashXProcPipelineTest.class.getClassLoader().getResource(name).toURI();
+	}
+
+	private static void failRun(CalabashXProcPipeline pipeline) {
+		try {
+			pipeline.run(new XProcInput.Builder().build());
+			Assert.fail("the pipeline should have failed");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	private static void assertCollected(ConfigurationFactory configs) throws InterruptedException {
+		Assert.assertFalse(configs.created.isEmpty());
+		for (int i = 0; i < 50 && !configs.allCollected(); i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		Assert.assertTrue("a failed run kept its runtime alive on the job thread",
+				configs.allCollected());
+	}
+
+	@Test
+	public void failedRunLeavesNoThreadState() throws Exception {
+		ConfigurationFactory configs = new ConfigurationFactory();
+		CalabashXProcPipeline pipeline = new CalabashXProcPipeline(resource("fail.xpl"),
+				configs, null, null, new EventBusProvider());
+		failRun(pipeline);
+		failRun(pipeline);
+		assertCollected(configs);
+	}
+
+	@Test
+	public void failedPooledRunLeavesNoThreadState() throws Exception {
+		ConfigurationFactory configs = new ConfigurationFactory();
+		XPipelinePool pool = new XPipelinePool(2);
+		CalabashXProcPipeline pipeline = new CalabashXProcPipeline(resource("fail.xpl"),
+				configs, null, null, new EventBusProvider(), pool);
+		failRun(pipeline);
+		failRun(pipeline);
+		// failed instances are not pooled again
+		Assert.assertEquals(2, pool.getDiscarded());
+		assertCollected(configs);
+	}
+
+	@Test
+	public void unwrittenResultIsReleased() throws Exception {
+		URI uri = resource("result.xpl");
+		XPipelinePool pool = new XPipelinePool(2);
+		CalabashXProcPipeline pipeline = new CalabashXProcPipeline(uri,
+				new ConfigurationFactory(), null, null, new EventBusProvider(), pool);
+		XProcResult result = pipeline.run(new XProcInput.Builder().build());
+		// the results are never written, e.g. because the job was cancelled
+		result.close();
+		result.close();
+		// both the instance that ran and the one that provided the pipeline
+		// info are back in the pool
+		Supplier<PipelineInstance> none = new Supplier<PipelineInstance>() {
+			@Override
+			public PipelineInstance get() {
+				throw new AssertionError("the pool should have an idle instance");
+			}
+		};
+		pool.acquire(uri, none);
+		pool.acquire(uri, none);
+		Assert.assertEquals(2, pool.getHits());
+		Assert.assertEquals(0, pool.getDiscarded());
+	}
+}
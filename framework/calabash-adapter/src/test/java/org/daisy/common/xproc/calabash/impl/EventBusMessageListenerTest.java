@@ -0,0 +1,63 @@
+package org.daisy.common.xproc.calabash.impl;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.pipeline.event.EventBusProvider;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+
+public class EventBusMessageListenerTest {
+
+	private static final int THREADS = 8;
+	private static final int MESSAGES = 500;
+
+	public static class Recorder {
+		final List<Integer> sequences = Lists.newArrayList();
+
+		@Subscribe
+		public synchronized void onMessage(Message message) {
+			sequences.add(message.getSequence());
+		}
+	}
+
+	@Test
+	public void concurrentMessagesArePostedInSequence() throws Exception {
+		EventBusProvider eventBus = new EventBusProvider();
+		Recorder recorder = new Recorder();
+		eventBus.register(recorder);
+		final EventBusMessageListener listener = new EventBusMessageListener(eventBus, null);
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = Lists.newArrayList();
+		for (int i = 0; i < THREADS; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < MESSAGES; j++) {
+						listener.info(null, null, "message " + j);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// every number once, in the order the messages were posted
+		Assert.assertEquals(THREADS * MESSAGES, recorder.sequences.size());
+		for (int i = 0; i < recorder.sequences.size(); i++) {
+			Assert.assertEquals(i, recorder.sequences.get(i).intValue());
+		}
+	}
+}
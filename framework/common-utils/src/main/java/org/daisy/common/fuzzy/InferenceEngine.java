@@ -1,18 +1,14 @@
 package org.daisy.common.fuzzy;
 
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
-import com.google.common.primitives.Doubles;
-
 
 
 public class InferenceEngine {
 
 
-        private List<FuzzyVariable> variables= new LinkedList<FuzzyVariable>();
+        private List<FuzzyVariable> variables= new ArrayList<FuzzyVariable>();
         /**Adds a new FuzzyVariable to the system
          */
         public InferenceEngine add(FuzzyVariable set){
@@ -27,23 +23,18 @@ public class InferenceEngine {
          *
          */
         public double getScore(double ...crispValues){
-                Collection<Double> crispCol=Doubles.asList(crispValues);
                 //size(values) == size(sets)
-                if (crispCol.size()!=this.variables.size()){
-                        throw new IllegalArgumentException(String.format("The size of crisp values is different from the ammount of variables %s != %s",crispCol.size(),this.variables.size()));
+                if (crispValues.length!=this.variables.size()){
+                        throw new IllegalArgumentException(String.format("The size of crisp values is different from the ammount of variables %s != %s",crispValues.length,this.variables.size()));
                 }
 
                 double denominator=0.0;
                 double numerator=0.0;
-                //no zipping in java!
-                Iterator<Double> crispIter=crispCol.iterator();
-                Iterator<FuzzyVariable> variableIter=this.variables.iterator();
                 //crisps and variables have the same size
                 double memebership;
-                while(crispIter.hasNext()){
-                        FuzzyVariable var=variableIter.next();
-                        double x=crispIter.next();
-                        for (FuzzySet set:var.getSets()){
+                for (int i=0;i<crispValues.length;i++){
+                        double x=crispValues[i];
+                        for (FuzzySet set:this.variables.get(i).getSets()){
                                 memebership=set.getMembership().apply(x);
                                 numerator+=memebership*set.getWeight();
                                 denominator+=memebership;
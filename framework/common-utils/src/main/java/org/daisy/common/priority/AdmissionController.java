@@ -0,0 +1,147 @@
+package org.daisy.common.priority;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Decides which tasks may leave an {@link UpdatablePriorityBlockingQueue}, so
+ * that the estimated cost of the running tasks stays within a budget.
+ *
+ * A task is admitted if its cost fits in what is left of the budget. When the
+ * task with the highest priority doesn't fit, smaller tasks with a lower
+ * priority may go first, but at most <code>maxBypass</code> times in a row, after
+ * which the queue waits until the highest priority task fits. A task that is
+ * more expensive than the whole budget is admitted when nothing else is running.
+ *
+ * <b>This class is threadsafe</b>
+ */
+public class AdmissionController<T> {
+
+        private final long budget;
+        private final int maxBypass;
+        private final CostEstimator<T> estimator;
+
+        /**
+         * Estimated costs of the queued and running tasks
+         */
+        private final Map<PrioritizableRunnable<T>, Long> estimates = Collections
+                .synchronizedMap(new WeakHashMap<PrioritizableRunnable<T>, Long>());
+
+        /**
+         * The costs reserved by the running tasks, in order of admission
+         */
+        private final Map<PrioritizableRunnable<T>, Long> reservations = new LinkedHashMap<PrioritizableRunnable<T>, Long>();
+        private long reserved = 0;
+
+        /**
+         * The task that was last passed over and how many times
+         */
+        private PrioritizableRunnable<T> bypassed = null;
+        private int bypasses = 0;
+
+        /**
+         * @param budget the total cost the running tasks may have
+         * @param maxBypass how many times in a row a task may be passed over by lower priority tasks
+         * @param estimator estimates the cost of a task
+         */
+        public AdmissionController(long budget, int maxBypass, CostEstimator<T> estimator) {
+                this.budget = budget;
+                this.maxBypass = maxBypass;
+                this.estimator = estimator;
+        }
+
+        /**
+         * Returns the estimated cost of the task. The estimate is only computed once per task.
+         */
+        public long estimate(PrioritizableRunnable<T> runnable) {
+                Long cost = this.estimates.get(runnable);
+                if (cost == null) {
+                        cost = Math.max(0, this.estimator.estimate(runnable.prioritySource()));
+                        this.estimates.put(runnable, cost);
+                }
+                return cost;
+        }
+
+        /**
+         * Returns the estimated cost of a task that was already estimated, or null.
+         */
+        public Long getEstimate(Prioritizable<T> task) {
+                return this.estimates.get(task);
+        }
+
+        /**
+         * Returns true if the task can be started now.
+         */
+        public synchronized boolean admits(PrioritizableRunnable<T> runnable) {
+                return this.reserved == 0 || this.reserved + this.estimate(runnable) <= this.budget;
+        }
+
+        /**
+         * Returns true if a task with a lower priority than the given one may be started before it.
+         */
+        synchronized boolean mayBypass(PrioritizableRunnable<T> head) {
+                return head != this.bypassed || this.bypasses < this.maxBypass;
+        }
+
+        /**
+         * Records that a task with a lower priority than the given one is started before it.
+         */
+        synchronized void bypass(PrioritizableRunnable<T> head) {
+                if (head != this.bypassed) {
+                        this.bypassed = head;
+                        this.bypasses = 0;
+                }
+                this.bypasses++;
+        }
+
+        /**
+         * Reserves the cost of a task that is being started.
+         */
+        public synchronized void reserve(PrioritizableRunnable<T> runnable) {
+                long cost = this.estimate(runnable);
+                this.reservations.put(runnable, cost);
+                this.reserved += cost;
+                if (runnable == this.bypassed) {
+                        this.bypassed = null;
+                        this.bypasses = 0;
+                }
+        }
+
+        /**
+         * Gives back the cost reserved by a task that is done.
+         */
+        public synchronized void release(PrioritizableRunnable<T> runnable) {
+                Long cost = this.reservations.remove(runnable);
+                if (cost != null) {
+                        this.reserved -= cost;
+                }
+                this.estimates.remove(runnable);
+        }
+
+        /**
+         * @return the total cost the running tasks may have
+         */
+        public long getBudget() {
+                return this.budget;
+        }
+
+        /**
+         * @return the cost reserved by the running tasks
+         */
+        public synchronized long getReserved() {
+                return this.reserved;
+        }
+
+        /**
+         * @return the cost reserved per running task, by priority source, in order of admission
+         */
+        public synchronized Map<T, Long> getReservations() {
+                Map<T, Long> result = new LinkedHashMap<T, Long>();
+                for (Map.Entry<PrioritizableRunnable<T>, Long> e : this.reservations.entrySet()) {
+                        result.put(e.getKey().prioritySource(), e.getValue());
+                }
+                return Collections.unmodifiableMap(result);
+        }
+}
@@ -0,0 +1,14 @@
+package org.daisy.common.priority;
+
+/**
+ * Estimates the resources that running a task will take, in the units of the
+ * budget of the {@link AdmissionController} it is used with.
+ */
+public interface CostEstimator<T> {
+
+        /**
+         * Returns the estimated cost of running the task with the given priority source.
+         * This method should not fail, but return a default estimate instead.
+         */
+        public long estimate(T source);
+}
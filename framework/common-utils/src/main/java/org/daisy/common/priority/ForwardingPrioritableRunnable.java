@@ -56,6 +56,11 @@ public class ForwardingPrioritableRunnable<T> extends PrioritizableRunnable<T> {
                 this.delegate.setRelativeWaitingTime(normalizer);
         }
 
+        @Override
+        public boolean updateRelativeWaitingTime(Function<Long, Double> normalizer, double resolution) {
+                return this.delegate.updateRelativeWaitingTime(normalizer, resolution);
+        }
+
         
         /**
          * @return the delegate
@@ -0,0 +1,291 @@
+package org.daisy.common.priority;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * Binary heap of {@link SwappingPriority} nodes that knows where every runnable is stored.
+ *
+ * The priority of every node is computed once when it is added and kept until the node is
+ * re-keyed, so that comparing nodes doesn't recompute priorities. Looking up, removing and
+ * re-keying a single runnable are O(log n), re-keying all the runnables is O(n) and the k
+ * first runnables in priority order are found in O(k log k) without sorting the whole heap.
+ *
+ * Elements with the same priority are kept in insertion order. The timestamps of the
+ * runnables are indexed as well, so that the oldest and newest ones are known in O(log n).
+ *
+ * <b>This class is not threadsafe</b>, {@link UpdatablePriorityBlockingQueue} guards it.
+ */
+final class IndexedPriorityHeap<T> {
+
+        private SwappingPriority<T>[] heap = newArray(16);
+        private int size = 0;
+        private long sequence = 0;
+
+        /**
+         * The node of every runnable in the heap
+         */
+        private final Map<PrioritizableRunnable<T>,SwappingPriority<T>> nodes = new HashMap<PrioritizableRunnable<T>,SwappingPriority<T>>();
+
+        /**
+         * The timestamps of the runnables in the heap
+         */
+        private final TreeMultiset<Long> timestamps = TreeMultiset.create();
+
+        @SuppressWarnings("unchecked")
+        private static <T> SwappingPriority<T>[] newArray(int length) {
+                return (SwappingPriority<T>[]) new SwappingPriority<?>[length];
+        }
+
+        int size() {
+                return this.size;
+        }
+
+        boolean contains(Object runnable) {
+                return this.nodes.containsKey(runnable);
+        }
+
+        /**
+         * Returns the node holding the runnable, or null if it is not in the heap.
+         */
+        SwappingPriority<T> node(Object runnable) {
+                return this.nodes.get(runnable);
+        }
+
+        /**
+         * Adds the runnable, unless it is already in the heap.
+         */
+        boolean add(PrioritizableRunnable<T> runnable) {
+                if (runnable == null) {
+                        throw new NullPointerException();
+                }
+                if (this.nodes.containsKey(runnable)) {
+                        return false;
+                }
+                SwappingPriority<T> node = new SwappingPriority<T>(runnable);
+                node.key = node.getPriority();
+                node.sequence = this.sequence++;
+                if (this.size == this.heap.length) {
+                        this.heap = Arrays.copyOf(this.heap, this.size * 2);
+                }
+                this.heap[this.size] = node;
+                node.index = this.size;
+                this.size++;
+                this.nodes.put(runnable, node);
+                this.timestamps.add(node.getTimestamp());
+                this.siftUp(node.index);
+                return true;
+        }
+
+        PrioritizableRunnable<T> peek() {
+                return this.size == 0 ? null : this.heap[0].getDelegate();
+        }
+
+        PrioritizableRunnable<T> poll() {
+                if (this.size == 0) {
+                        return null;
+                }
+                PrioritizableRunnable<T> head = this.heap[0].getDelegate();
+                this.removeAt(0);
+                return head;
+        }
+
+        boolean remove(Object runnable) {
+                SwappingPriority<T> node = this.nodes.get(runnable);
+                if (node == null) {
+                        return false;
+                }
+                this.removeAt(node.index);
+                return true;
+        }
+
+        void clear() {
+                Arrays.fill(this.heap, 0, this.size, null);
+                this.size = 0;
+                this.nodes.clear();
+                this.timestamps.clear();
+        }
+
+        /**
+         * Recomputes the priority of a node and moves it to its new place.
+         */
+        void rekey(SwappingPriority<T> node) {
+                node.key = node.getPriority();
+                this.siftDown(this.siftUp(node.index));
+        }
+
+        /**
+         * Recomputes the priority of all the nodes and restores the heap in linear time.
+         */
+        void rekeyAll() {
+                for (int i = 0; i < this.size; i++) {
+                        this.heap[i].key = this.heap[i].getPriority();
+                }
+                for (int i = this.size / 2 - 1; i >= 0; i--) {
+                        this.siftDown(i);
+                }
+        }
+
+        /**
+         * Recomputes the priority of the given nodes. Depending on how many there are, they
+         * are moved one by one or the whole heap is restored.
+         */
+        void rekey(Collection<SwappingPriority<T>> changed) {
+                //moving k nodes costs k log n, restoring the heap costs n
+                if (changed.size() * (32 - Integer.numberOfLeadingZeros(this.size)) > this.size) {
+                        this.rekeyAll();
+                        return;
+                }
+                for (SwappingPriority<T> node : changed) {
+                        this.rekey(node);
+                }
+        }
+
+        /**
+         * Returns the timestamps of the oldest and newest runnables, or an empty array if
+         * the heap is empty.
+         */
+        long[] timestampRange() {
+                if (this.size == 0) {
+                        return new long[0];
+                }
+                return new long[]{this.timestamps.firstEntry().getElement(), this.timestamps.lastEntry().getElement()};
+        }
+
+        /**
+         * Returns the nodes in no particular order.
+         */
+        List<SwappingPriority<T>> nodes() {
+                return Lists.newArrayList(Arrays.asList(this.heap).subList(0, this.size));
+        }
+
+        /**
+         * Returns the runnables in no particular order.
+         */
+        List<PrioritizableRunnable<T>> unordered() {
+                List<PrioritizableRunnable<T>> list = Lists.newArrayListWithCapacity(this.size);
+                for (int i = 0; i < this.size; i++) {
+                        list.add(this.heap[i].getDelegate());
+                }
+                return list;
+        }
+
+        /**
+         * Returns the nodes in priority order. Every step costs O(log k) where k is the
+         * number of nodes returned so far. The iterator must not be used after the heap
+         * has been modified.
+         */
+        Iterator<SwappingPriority<T>> ordered() {
+                return new Iterator<SwappingPriority<T>>() {
+                        //the heap positions that may come next
+                        private final PriorityQueue<Integer> frontier = new PriorityQueue<Integer>(11,
+                                new Comparator<Integer>() {
+                                        @Override
+                                        public int compare(Integer i, Integer j) {
+                                                return IndexedPriorityHeap.this.compare(heap[i], heap[j]);
+                                        }
+                                });
+                        {
+                                if (size > 0) {
+                                        this.frontier.add(0);
+                                }
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                                return !this.frontier.isEmpty();
+                        }
+
+                        @Override
+                        public SwappingPriority<T> next() {
+                                if (this.frontier.isEmpty()) {
+                                        throw new NoSuchElementException();
+                                }
+                                int i = this.frontier.poll();
+                                if (2 * i + 1 < size) {
+                                        this.frontier.add(2 * i + 1);
+                                }
+                                if (2 * i + 2 < size) {
+                                        this.frontier.add(2 * i + 2);
+                                }
+                                return heap[i];
+                        }
+
+                        @Override
+                        public void remove() {
+                                throw new UnsupportedOperationException();
+                        }
+                };
+        }
+
+        private int compare(SwappingPriority<T> a, SwappingPriority<T> b) {
+                int res = Double.compare(a.key, b.key);
+                return res != 0 ? res : (a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1));
+        }
+
+        private void removeAt(int i) {
+                SwappingPriority<T> removed = this.heap[i];
+                this.nodes.remove(removed.getDelegate());
+                this.timestamps.remove(removed.getTimestamp());
+                this.size--;
+                if (i != this.size) {
+                        this.place(this.heap[this.size], i);
+                        this.heap[this.size] = null;
+                        this.siftDown(this.siftUp(i));
+                } else {
+                        this.heap[i] = null;
+                }
+                removed.index = -1;
+        }
+
+        private void place(SwappingPriority<T> node, int i) {
+                this.heap[i] = node;
+                node.index = i;
+        }
+
+        /**
+         * @return the new position of the node
+         */
+        private int siftUp(int i) {
+                SwappingPriority<T> node = this.heap[i];
+                while (i > 0) {
+                        int parent = (i - 1) / 2;
+                        if (this.compare(node, this.heap[parent]) >= 0) {
+                                break;
+                        }
+                        this.place(this.heap[parent], i);
+                        i = parent;
+                }
+                this.place(node, i);
+                return i;
+        }
+
+        private void siftDown(int i) {
+                SwappingPriority<T> node = this.heap[i];
+                while (true) {
+                        int child = 2 * i + 1;
+                        if (child >= this.size) {
+                                break;
+                        }
+                        if (child + 1 < this.size && this.compare(this.heap[child + 1], this.heap[child]) < 0) {
+                                child++;
+                        }
+                        if (this.compare(this.heap[child], node) >= 0) {
+                                break;
+                        }
+                        this.place(this.heap[child], i);
+                        i = child;
+                }
+                this.place(node, i);
+        }
+}
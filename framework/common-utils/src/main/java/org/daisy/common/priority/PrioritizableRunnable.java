@@ -94,6 +94,23 @@ public class PrioritizableRunnable<T> implements Prioritizable<T>,Runnable{
                 this.markDirty(true);
         }
 
+        /**
+         * Uses the normaliser to compute the relative waiting time of this runnable, rounded
+         * down to a multiple of the resolution. The relative waiting time is only set and
+         * the runnable only marked as dirty if the rounded value has changed.
+         *
+         * @return true if the relative waiting time has changed
+         */
+        public boolean updateRelativeWaitingTime(Function<Long,Double> normalizer, double resolution){
+                double time=Math.floor(normalizer.apply(this.getTimestamp())/resolution)*resolution;
+                if (time==this.relativeWaitingTime){
+                        return false;
+                }
+                this.relativeWaitingTime=time;
+                this.markDirty(true);
+                return true;
+        }
+
         @Override
         public double getPriority() {
                 return this.priorityCalculator.getPriority(this);
@@ -43,18 +43,50 @@ public class PriorityThreadPoolExecutor<T> extends ThreadPoolExecutor
                 return new PriorityThreadPoolExecutor<T>(poolSize,poolSize,0L,TimeUnit.MICROSECONDS,queue,tracker);
         }
 
+        /** 
+         * Creates a new PriorityThreadPoolExecutor of a fixed size that only starts a task 
+         * when the {@link AdmissionController} admits it. All the threads are started 
+         * up front so that every task goes through the queue.
+         * */
+        public static <T> PriorityThreadPoolExecutor<T> newFixedSizeThreadPoolExecutor(int poolSize,TimeTrackerFactory trackerFactory,
+                        AdmissionController<T> admission) {
+                PriorityThreadPoolExecutor<T> executor = newFixedSizeThreadPoolExecutor(poolSize,trackerFactory);
+                executor.getUpdatableQueue().setAdmissionController(admission);
+                executor.prestartAllCoreThreads();
+                return executor;
+        }
+
         
         //@Override
         //protected void beforeExecute(Thread t, Runnable r) {
                 //super.beforeExecute(t, r);
                 //this.tracker.executing();
         //}
+        @SuppressWarnings("unchecked")
         @Override
         public void execute(Runnable runnable) {
+                AdmissionController<T> admission = this.getAdmissionController();
+                if (admission != null) {
+                        //estimate before the task is queued so that it's not done while holding the queue
+                        admission.estimate((PrioritizableRunnable<T>) runnable);
+                }
                 super.execute(runnable);
                 this.tracker.executing();
         }
 
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable t) {
+                super.afterExecute(runnable, t);
+                this.getUpdatableQueue().release(runnable);
+        }
+
+        /**
+         * @return the admission controller or null if tasks are not admission controlled
+         */
+        public AdmissionController<T> getAdmissionController(){
+                return this.getUpdatableQueue().getAdmissionController();
+        }
+
         @SuppressWarnings("unchecked")
 	public UpdatablePriorityBlockingQueue<T> getUpdatableQueue(){
                 return (UpdatablePriorityBlockingQueue<T>) this.getQueue();
@@ -0,0 +1,56 @@
+package org.daisy.common.priority;
+
+/**
+ * This class allows to return the priority of another PrioritizableRunnable while forwarding the rest
+ * of the calls to another object.
+ */
+class SwappingPriority<T> extends
+ForwardingPrioritableRunnable<T> {
+
+        PrioritizableRunnable<T> overrider;
+
+        /**
+         * Priority and position in the {@link IndexedPriorityHeap}
+         */
+        double key;
+        long sequence;
+        int index = -1;
+
+        public SwappingPriority(PrioritizableRunnable<T> delegate,PrioritizableRunnable<T> overrider) {
+                super(delegate);
+                this.overrider=overrider;
+        }
+        public SwappingPriority(PrioritizableRunnable<T> delegate) {
+                super(delegate);
+                this.overrider=delegate;
+        }
+
+        @Override
+        public double getPriority() {
+                return this.overrider.getPriority();
+        }
+
+        /**
+         * @return the overrider
+         */
+        public PrioritizableRunnable<T> getOverrider() {
+                return overrider;
+        }
+
+        /**
+         * @param overrider the overrider to set
+         */
+        public void setOverrider(PrioritizableRunnable<T> overrider) {
+                this.overrider = overrider;
+        }
+
+        /**
+         * Swap priorities
+         */
+
+        public void swapWith(SwappingPriority<T> other){
+                PrioritizableRunnable<T> aux=this.getOverrider();
+                this.setOverrider(other.getOverrider());
+                other.setOverrider(aux);
+        }
+}
@@ -1,25 +1,23 @@
 package org.daisy.common.priority;
 
 
+import java.util.AbstractQueue;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Function;
-import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ForwardingBlockingQueue;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Monitor;
 
 /**
- * This class adds a layer to a forwarded {@link java.util.concurrent.PriorityBlockingQueue} that allows to update
+ * Blocking priority queue of {@link PrioritizableRunnable} objects that allows to update
  * the order based on a priority or via the provided methods.
  *
  * <h2>Updating the priorities</h2>
@@ -29,154 +27,158 @@ import com.google.common.util.concurrent.Monitor;
  *
  * </ul>
  *
- * The internal design might seem a bit over-engineered but there are some reasons for that. ThreadPoolExecutorSevice needs a queue which has to be
- * of type <i>Runnable</i>. Our needs are a bit more complex than that, so we have to "hide" the actual internal type of our 
- * objects a give a Runnable view to the superclass. This forces some unchecked type conversions that are safe ONLY when interacting with <i>PrioritizableRunnables</i>.
+ * ThreadPoolExecutorSevice needs a queue which has to be of type <i>Runnable</i>, so we give a Runnable view 
+ * of our objects to the superclass. This forces some unchecked type conversions that are safe ONLY when interacting with <i>PrioritizableRunnables</i>.
  *
- * Also we have to cope with the possibility of swapping elements in the queue. This is done more or less elegantly by the tuple SwappingPriority and WrappingPriorityQueue, which allow to hide the element wrapping process and return priorities of other elements as if they were its own.
+ * The elements are kept in an {@link IndexedPriorityHeap} of {@link SwappingPriority} nodes, which allow to return priorities
+ * of other elements as if they were its own when two elements are swapped. The heap caches the priorities, so that adding,
+ * removing and swapping elements are O(log n), updating all the priorities is O(n) and the first k elements in priority
+ * order are listed in O(k log k).
+ *
+ * All the operations are guarded by a single monitor.
  * <b>This class is threadsafe</b>
  * @version 1.0
  */
-public class UpdatablePriorityBlockingQueue<T> extends ForwardingBlockingQueue<Runnable> { 
+public class UpdatablePriorityBlockingQueue<T> extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> { 
         /**
-         * The forwarded priority queue
+         * The elements
          */
-        private WrappingPriorityQueue<PrioritizableRunnable<T>,SwappingPriority<T>> delegate;
+        private final IndexedPriorityHeap<T> heap = new IndexedPriorityHeap<T>();
 
         /**
-         * Monitor that controls {@link #take()} and other blocking aspects of this class
+         * Monitor that controls {@link #take()} and guards the heap
          */ 
-        private Monitor monitor = new Monitor();
+        private final Monitor monitor = new Monitor();
 
         /**
          * Condition when take stops blocking. There is something in the queue
-         * and there is no updating taking place.
-         */
-        private Monitor.Guard canTake = new Monitor.Guard(monitor) {
-
-                @Override
-                public boolean isSatisfied() {
-                        return delegate.size() > 0 && !updating.get();
-                }
-        };
-
-        /**
-         * Condition for adding elements to this queue. Just makes sure
-         * that no updating processing is being carried out.
+         * and the admission controller, if any, admits one of the elements.
          */
-        private Monitor.Guard canAdd = new Monitor.Guard(monitor) {
+        private final Monitor.Guard canTake = new Monitor.Guard(monitor) {
 
                 @Override
                 public boolean isSatisfied() {
-                        return !updating.get();
+                        if (heap.size() == 0) {
+                                return false;
+                        }
+                        if (admission == null) {
+                                return true;
+                        }
+                        next = nextAdmissible();
+                        return next != null;
                 }
         };
 
         /**
-         * Unwraps the SwappingPriority by returning the delegate
+         * Optional admission control, null if every task may be taken right away
          */
-        private Function<SwappingPriority<T>, PrioritizableRunnable<T>> unwrapFunction = new Function<SwappingPriority<T>, PrioritizableRunnable<T>>() {
-                @Override
-                public PrioritizableRunnable<T> apply(SwappingPriority<T> arg) {
-                        return arg.getDelegate();
-                }
-        };
-
-        /**
-         * Wraps the PrioritizableRunnable into a SwappingPriority 
-         */
-        private Function<PrioritizableRunnable<T>,SwappingPriority<T> > wrapFunction = new Function<PrioritizableRunnable<T>,SwappingPriority<T>>() {
-                @Override
-                public SwappingPriority<T> apply(PrioritizableRunnable<T> arg) {
-                        return new SwappingPriority<T>(arg);
-                }
-        };
+        private AdmissionController<T> admission;
 
         /**
-         * flag controlling the updating processes
+         * The task take() will return, set when evaluating {@link #canTake} with admission control
          */
-        AtomicBoolean updating = new AtomicBoolean(false);
+        private PrioritizableRunnable<T> next;
 
         /**
          * Creates a new UpdatablePriorityBlockingQueue, it has infinite<sup>infinite<sup>infinite<sup>infinite<sup>infinite</sup></sup></sup></sup>
          * capacity.
          */
         public UpdatablePriorityBlockingQueue() {
-                this.delegate = this.buildQueue();
         }
 
         /**
-         * @return a brand new queue, it does not set it as delegate
+         * Sets the admission controller that decides which tasks may be taken. Must be
+         * called before the queue is used. Only {@link #take()} and {@link #poll(long, TimeUnit)}
+         * wait for a task to be admitted.
          */
-        private WrappingPriorityQueue<PrioritizableRunnable<T>,SwappingPriority<T>> buildQueue() {
-                PriorityBlockingQueue<SwappingPriority<T>> queue= new PriorityBlockingQueue<SwappingPriority<T>>(20,
-                                new PrioritizableComparator());
-                return new WrappingPriorityQueue<PrioritizableRunnable<T>,SwappingPriority<T>>(queue,wrapFunction,unwrapFunction);
+        public void setAdmissionController(AdmissionController<T> admission) {
+                this.admission = admission;
         }
 
-
         /**
-         * Updates the concurrent mechanisms when 
-         * a updating process is starting.
+         * @return the admission controller or null if there is none
          */
-        private void enterUpdate() {
-                this.monitor.enter();
-                this.updating.set(true);
+        public AdmissionController<T> getAdmissionController() {
+                return this.admission;
         }
 
         /**
-         * Updates the concurrent mechanisms when 
-         * a updating process is finishing and re-inserts all 
-         * the elements in the queue.
+         * Gives back the cost reserved by a task that has finished and wakes up the 
+         * threads waiting in {@link #take()}.
          */
-        private void leaveUpdate() {
-                this.doUpdate();
-                this.updating.set(false);
-                this.monitor.leave();
+        @SuppressWarnings("unchecked")
+        public void release(Runnable runnable) {
+                if (this.admission == null) {
+                        return;
+                }
+                this.monitor.enter();
+                try {
+                        this.admission.release((PrioritizableRunnable<T>) runnable);
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
         /**
-         * Copies the delegate, cleans it and reinserts all the elements.
-         * This has to be done in order to reorder the runnables according 
-         * to their priority.
+         * Returns the task with the highest priority that the admission controller 
+         * admits, or null if none can be started now. Must be called within the monitor.
          */
-        private void doUpdate() {
-                //re-add the elements of the queue to re-sort them
-                Collection<SwappingPriority<T>> aux = Lists.newLinkedList(this.delegate.wrapped());
-                this.delegate.clear();
-                this.delegate.addAllBypass(aux);
+        private PrioritizableRunnable<T> nextAdmissible() {
+                PrioritizableRunnable<T> head = this.heap.peek();
+                if (this.admission.admits(head)) {
+                        return head;
+                }
+                if (!this.admission.mayBypass(head)) {
+                        return null;
+                }
+                Iterator<SwappingPriority<T>> ordered = this.heap.ordered();
+                while (ordered.hasNext()) {
+                        PrioritizableRunnable<T> runnable = ordered.next().getDelegate();
+                        if (runnable != head && this.admission.admits(runnable)) {
+                                return runnable;
+                        }
+                }
+                return null;
         }
 
-
         /**
-         * Tries to find the runnable among the elements in the queue.
+         * Removes the task found when evaluating {@link #canTake}. Must be called within the monitor.
          */
-        protected Optional<SwappingPriority<T>> tryFind(final PrioritizableRunnable<T> runnable){
-                return Iterables.tryFind(this.delegate.wrapped(), new Predicate<SwappingPriority<T>>() {
-
-                        @Override
-                        public boolean apply(SwappingPriority<T> e) {
-                               return e.getDelegate().equals(runnable); 
-
-                        }});
+        private PrioritizableRunnable<T> dequeue() {
+                if (this.admission == null) {
+                        return this.heap.poll();
+                }
+                PrioritizableRunnable<T> head = this.heap.peek();
+                if (this.next != head) {
+                        this.admission.bypass(head);
+                }
+                PrioritizableRunnable<T> res = this.next;
+                this.next = null;
+                this.heap.remove(res);
+                this.admission.reserve(res);
+                return res;
         }
+
         /**
          * Swap the priorities of both PrioritizableRunnable objects to change the 
          * order in the queue
          */
-        public synchronized void swap(PrioritizableRunnable<T> runnable1,PrioritizableRunnable<T> runnable2) {
-                this.enterUpdate();//in monitor
-                Optional<SwappingPriority<T>> node1=this.tryFind(runnable1);
-                Optional<SwappingPriority<T>> node2=this.tryFind(runnable2);
-                //one of them doesn't exist, get out
-                if (!node1.isPresent() ||  !node2.isPresent()){
-                        this.leaveUpdate();//out monitor
-                        return;
+        public void swap(PrioritizableRunnable<T> runnable1,PrioritizableRunnable<T> runnable2) {
+                this.monitor.enter();
+                try {
+                        SwappingPriority<T> node1=this.heap.node(runnable1);
+                        SwappingPriority<T> node2=this.heap.node(runnable2);
+                        //one of them doesn't exist, get out
+                        if (node1 == null || node2 == null){
+                                return;
+                        }
+                        //swap the overriders 
+                        node1.swapWith(node2);
+                        this.heap.rekey(node1);
+                        this.heap.rekey(node2);
+                } finally {
+                        this.monitor.leave();
                 }
-                //swap the overriders 
-                node1.get().swapWith(node2.get());
-                this.leaveUpdate();//out monitor
-
         }
 
 
@@ -187,147 +189,266 @@ public class UpdatablePriorityBlockingQueue<T> extends ForwardingBlockingQueue<R
          * This function is threadsafe
          * @param function
          */
-        public synchronized void update(Function<PrioritizableRunnable<T>, Void> function) {
-                this.enterUpdate();
-                for (PrioritizableRunnable<T> runnable : this.delegate) {
-                        function.apply(runnable);
+        public void update(Function<PrioritizableRunnable<T>, Void> function) {
+                this.monitor.enter();
+                try {
+                        for (PrioritizableRunnable<T> runnable : this.heap.unordered()) {
+                                function.apply(runnable);
+                        }
+                        this.heap.rekeyAll();
+                } finally {
+                        this.monitor.leave();
                 }
-                this.leaveUpdate();
         }
 
         /**
-         * Returns the runnables as an immutable {@link java.util.Collection} <b>maintaining</b> the order given by the priority
+         * Applies the predicate to all the elements in the queue. The predicate may change 
+         * the objects by reference and must return true if their priority has changed. Only 
+         * those elements are reordered. 
+         * This function is threadsafe
+         * @param changed
          */
-        public Collection<PrioritizableRunnable<T>> asOrderedCollection() {
-                List<SwappingPriority<T>> list= Lists.newLinkedList(this.delegate.wrapped());
-                Collections.sort(list, new PrioritizableComparator());
-                return ImmutableList.copyOf(Collections2.transform(list,this.unwrapFunction));
+        public void updateChanged(Predicate<PrioritizableRunnable<T>> changed) {
+                this.monitor.enter();
+                try {
+                        List<SwappingPriority<T>> nodes = this.heap.nodes();
+                        Set<PrioritizableRunnable<T>> changedRunnables = Sets.newHashSet();
+                        for (SwappingPriority<T> node : nodes) {
+                                if (changed.apply(node.getDelegate())) {
+                                        changedRunnables.add(node.getDelegate());
+                                }
+                        }
+                        //swapped nodes take the priority of their overrider
+                        List<SwappingPriority<T>> rekey = Lists.newArrayList();
+                        for (SwappingPriority<T> node : nodes) {
+                                if (changedRunnables.contains(node.getOverrider())) {
+                                        rekey.add(node);
+                                }
+                        }
+                        this.heap.rekey(rekey);
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
+        /**
+         * Returns the timestamps of the oldest and newest elements in the queue, or an 
+         * empty array if the queue is empty.
+         */
+        public long[] getTimestampRange() {
+                this.monitor.enter();
+                try {
+                        return this.heap.timestampRange();
+                } finally {
+                        this.monitor.leave();
+                }
+        }
 
         /**
-         * Returns the runnables as an immutable {@link java.util.Collection} <b>without maintaining</b> the order given by the priority
+         * Returns the runnables as an immutable {@link java.util.Collection} <b>maintaining</b> the order given by the priority
          */
-        public Collection<PrioritizableRunnable<T>> asCollection() {
-                return ImmutableList.copyOf(this.delegate.unwrap());
+        public Collection<PrioritizableRunnable<T>> asOrderedCollection() {
+                return this.asOrderedCollection(Integer.MAX_VALUE);
         }
 
         /**
-         * Returns this forwarding class delegate
-         * @return
+         * Returns at most the first <code>limit</code> runnables as an immutable {@link java.util.Collection} 
+         * <b>maintaining</b> the order given by the priority
          */
-        @Override
-        @SuppressWarnings({ "unchecked" }) //controlled environment not (terribly) dangerous
-        protected BlockingQueue<Runnable> delegate() {
-                return (BlockingQueue<Runnable>) 
-                        (BlockingQueue<? extends Runnable>)
-                        this.delegate;
+        public Collection<PrioritizableRunnable<T>> asOrderedCollection(int limit) {
+                this.monitor.enter();
+                try {
+                        List<PrioritizableRunnable<T>> list = Lists.newArrayListWithCapacity(Math.min(limit, this.heap.size()));
+                        Iterator<SwappingPriority<T>> ordered = this.heap.ordered();
+                        while (list.size() < limit && ordered.hasNext()) {
+                                list.add(ordered.next().getDelegate());
+                        }
+                        return ImmutableList.copyOf(list);
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
+
         /**
-         * See {@link java.util.concurrent.BlockingQueue#offer()}, This method may block if the queue 
-         * is being updated.
+         * Returns the runnables as an immutable {@link java.util.Collection} <b>without maintaining</b> the order given by the priority
          */
-        @SuppressWarnings("unchecked")
-        @Override
-        public synchronized boolean offer(Runnable o) {
-                boolean res;
+        public Collection<PrioritizableRunnable<T>> asCollection() {
+                this.monitor.enter();
                 try {
-                        monitor.enterWhen(canAdd);
-                } catch (InterruptedException e) {
-                        monitor.leave();
-                        throw new RuntimeException(e);
+                        return ImmutableList.copyOf(this.heap.unordered());
+                } finally {
+                        this.monitor.leave();
                 }
-                //System.out.println("offer: entered monitor");
-                res = this.delegate.offer((PrioritizableRunnable<T>) o);
-                //System.out.println("offer: left monitor");
-                monitor.leave();
-                return res;
         }
 
         /**
-         * See {@link java.util.concurrent.BlockingQueue#add()}, This method may block if the queue 
-         * is being updated.
+         * See {@link java.util.concurrent.BlockingQueue#offer()}
          */
         @SuppressWarnings("unchecked")
         @Override
-        public synchronized boolean add(Runnable element) {
-                boolean res;
+        public boolean offer(Runnable o) {
+                this.monitor.enter();
                 try {
-                        monitor.enterWhen(canAdd);
-                } catch (InterruptedException e) {
-                        monitor.leave();
-                        throw new RuntimeException(e);
+                        return this.heap.add((PrioritizableRunnable<T>) o);
+                } finally {
+                        this.monitor.leave();
                 }
-                res=this.delegate.add((PrioritizableRunnable<T>)element);
-                monitor.leave();
-                return res;
+        }
+
+        @Override
+        public boolean offer(Runnable o, long timeout, TimeUnit unit) {
+                return this.offer(o);
+        }
+
+        @Override
+        public void put(Runnable o) {
+                this.offer(o);
         }
 
         /**
-         * See {@link java.util.concurrent.BlockingQueue#take}, it also waits for any updating 
-         * operations to finish.
+         * See {@link java.util.concurrent.BlockingQueue#take}, it also waits for the 
+         * admission controller, if any, to admit a task.
          */
         @Override
         public Runnable take() throws InterruptedException {
-                //int num=this.takes.incrementAndGet();
-                //System.out.println("Take("+num+"): before mon");
-                monitor.enterWhen(canTake);
-                //System.out.println("Take("+num+"): entered monitor");
-                Runnable res=this.delegate.poll();
-                monitor.leave();
-                //System.out.println("Take("+num+"): left monitor");
-                return res;
+                this.monitor.enterWhen(this.canTake);
+                try {
+                        return this.dequeue();
+                } finally {
+                        this.monitor.leave();
+                }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+                if (!this.monitor.enterWhen(this.canTake, timeout, unit)) {
+                        return null;
+                }
+                try {
+                        return this.dequeue();
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
+        @Override
+        public Runnable poll() {
+                if (!this.monitor.enterIf(this.canTake)) {
+                        return null;
+                }
+                try {
+                        return this.dequeue();
+                } finally {
+                        this.monitor.leave();
+                }
+        }
 
-}
+        @Override
+        public Runnable peek() {
+                this.monitor.enter();
+                try {
+                        return this.heap.peek();
+                } finally {
+                        this.monitor.leave();
+                }
+        }
 
-/**
- * This class allows to return the priority of another PrioritizableRunnable while forwarding the rest
- * of the calls to another object.
- */
-class SwappingPriority<T> extends
-ForwardingPrioritableRunnable<T> {
+        @Override
+        public boolean remove(Object o) {
+                this.monitor.enter();
+                try {
+                        return this.heap.remove(o);
+                } finally {
+                        this.monitor.leave();
+                }
+        }
 
-        PrioritizableRunnable<T> overrider;
+        @Override
+        public boolean contains(Object o) {
+                this.monitor.enter();
+                try {
+                        return this.heap.contains(o);
+                } finally {
+                        this.monitor.leave();
+                }
+        }
 
-        public SwappingPriority(PrioritizableRunnable<T> delegate,PrioritizableRunnable<T> overrider) {
-                super(delegate);
-                this.overrider=overrider;
+        @Override
+        public void clear() {
+                this.monitor.enter();
+                try {
+                        this.heap.clear();
+                } finally {
+                        this.monitor.leave();
+                }
         }
-        public SwappingPriority(PrioritizableRunnable<T> delegate) {
-                super(delegate);
-                this.overrider=delegate;
+
+        @Override
+        public int size() {
+                this.monitor.enter();
+                try {
+                        return this.heap.size();
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
         @Override
-        public double getPriority() {
-                return this.overrider.getPriority();
+        public int remainingCapacity() {
+                return Integer.MAX_VALUE;
         }
 
-        /**
-         * @return the overrider
-         */
-        public PrioritizableRunnable<T> getOverrider() {
-                return overrider;
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+                return this.drainTo(c, Integer.MAX_VALUE);
         }
 
-        /**
-         * @param overrider the overrider to set
-         */
-        public void setOverrider(PrioritizableRunnable<T> overrider) {
-                this.overrider = overrider;
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+                this.monitor.enter();
+                try {
+                        int i=0;
+                        while (i<maxElements && this.heap.size()>0){
+                                c.add(this.heap.poll());
+                                i++;
+                        }
+                        return i;
+                } finally {
+                        this.monitor.leave();
+                }
         }
 
         /**
-         * Swap priorities
+         * Iterates over a snapshot of the elements, in no particular order.
          */
+        @Override
+        public Iterator<Runnable> iterator() {
+                final Iterator<PrioritizableRunnable<T>> snapshot = this.asCollection().iterator();
+                return new Iterator<Runnable>() {
+                        private Runnable last;
 
-        public void swapWith(SwappingPriority<T> other){
-                PrioritizableRunnable<T> aux=this.getOverrider();
-                this.setOverrider(other.getOverrider());
-                other.setOverrider(aux);
+                        @Override
+                        public boolean hasNext() {
+                                return snapshot.hasNext();
+                        }
+
+                        @Override
+                        public Runnable next() {
+                                this.last = snapshot.next();
+                                return this.last;
+                        }
+
+                        @Override
+                        public void remove() {
+                                if (this.last == null) {
+                                        throw new IllegalStateException();
+                                }
+                                UpdatablePriorityBlockingQueue.this.remove(this.last);
+                                this.last = null;
+                        }
+                };
         }
-}
 
+
+}
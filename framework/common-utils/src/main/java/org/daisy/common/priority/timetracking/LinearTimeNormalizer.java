@@ -20,7 +20,7 @@ public class LinearTimeNormalizer implements TimeFunctionFactory {
                         @Override
                         public Double apply(Long l) {
                                 long referencedTime=stats.reference(l);
-                                if(referencedTime<minMax[0]){
+                                if(referencedTime<minMax[0] || minMax[1]==minMax[0]){
                                         return 0.0;
                                 }
                                 return ((double)(stats.reference(l)-minMax[0]))/((double)minMax[1]-minMax[0]);
@@ -1,6 +1,6 @@
 package org.daisy.common.priority.timetracking;
 
-import java.util.Collection;
+import java.util.Arrays;
 
 import org.daisy.common.priority.PrioritizableRunnable;
 import org.daisy.common.priority.UpdatablePriorityBlockingQueue;
@@ -8,10 +8,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 
 /**
  * This class maintains a buffer of the waiting time of last N tasks exectued. Once the buffer is full
  * the {@link UpdatablePriorityBlockingQueue} associated is updated with the new generated {@link TimeStats}.
+ *
+ * The stats only hold the oldest and newest tasks in the queue, which the queue keeps track of. 
+ * The queue is only updated when these have changed since the last update, and then only the tasks 
+ * whose relative waiting time moved to another step of {@link #RESOLUTION} get a new priority.
  * @version
  *
  */
@@ -35,6 +40,16 @@ public class TimeTracker<T>{
 
         private static final Logger logger = LoggerFactory.getLogger(TimeTracker.class);
 
+        /**
+         * Relative waiting times are rounded down to a multiple of this value
+         */
+        public static final double RESOLUTION=0.01;
+
+        /**
+         * The times used in the last update
+         */
+        private long[] lastTimes=null;
+
         
 
 
@@ -59,14 +74,8 @@ public class TimeTracker<T>{
                 //update counter 
                 this.counter++;
                 if( this.counter == this.frequency){
-                        //get the waiting times
-                        Collection<PrioritizableRunnable<T>> waiting=this.queue.asCollection();
-                        long times[] = new long[waiting.size()]; 
-                        int i=0;
-                        for( PrioritizableRunnable<T> r:waiting){
-                                times[i++]=r.getTimestamp(); 
-                        }
-                        this.update(times);                                 
+                        //get the oldest and newest waiting times
+                        this.update(this.queue.getTimestampRange());
                         this.counter=0;
                 }
         }
@@ -75,6 +84,11 @@ public class TimeTracker<T>{
          * Updates the queue 
          */
         void update(long []times){
+                if (times.length==0 || Arrays.equals(times,this.lastTimes)){
+                        //nothing waiting or the relative times haven't changed
+                        return;
+                }
+                this.lastTimes=times;
                 logger.debug("Updating queue");
 
                 //new stats
@@ -82,12 +96,10 @@ public class TimeTracker<T>{
                 //get a new updater function
                 final Function<Long,Double> timeUpdater=TimeTracker.this.functionFactory.getFunction(stats);
                 //Let the queue do the work
-                this.queue.update(new Function<PrioritizableRunnable<T>, Void>() {
+                this.queue.updateChanged(new Predicate<PrioritizableRunnable<T>>() {
                         @Override
-                        public Void apply(PrioritizableRunnable<T> runnable) {
-                                runnable.setRelativeWaitingTime(timeUpdater);
-                                //ugly as hell but you can't intantiate void, go figure.
-                                return null;
+                        public boolean apply(PrioritizableRunnable<T> runnable) {
+                                return runnable.updateRelativeWaitingTime(timeUpdater,RESOLUTION);
                         }
                 });
         }
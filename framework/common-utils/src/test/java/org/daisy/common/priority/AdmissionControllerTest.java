@@ -0,0 +1,109 @@
+package org.daisy.common.priority;
+
+import static org.mockito.Mockito.when;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionControllerTest{
+       @Mock private PrioritizableRunnable<String>  big;
+       @Mock private PrioritizableRunnable<String>  small1;
+       @Mock private PrioritizableRunnable<String>  small2;
+       @Mock private PrioritizableRunnable<String>  small3;
+
+       //the cost is the length of the priority source
+       private CostEstimator<String> estimator = new CostEstimator<String>() {
+               @Override
+               public long estimate(String source) {
+                       return source.length();
+               }
+       };
+
+       @Before
+       public void setUp(){
+               when(big.prioritySource()).thenReturn("bbbbbbbb");
+               when(big.getPriority()).thenReturn(-10.0);
+               when(small1.prioritySource()).thenReturn("s1");
+               when(small1.getPriority()).thenReturn(-5.0);
+               when(small2.prioritySource()).thenReturn("s2");
+               when(small2.getPriority()).thenReturn(-4.0);
+               when(small3.prioritySource()).thenReturn("s3");
+               when(small3.getPriority()).thenReturn(-3.0);
+       }
+
+       @Test
+       public void withinBudget(){
+               AdmissionController<String> admission = new AdmissionController<String>(10,1,estimator);
+               Assert.assertTrue(admission.admits(big));
+               admission.reserve(big);
+               Assert.assertTrue("fits",admission.admits(small1));
+               admission.reserve(small1);
+               Assert.assertEquals(10,admission.getReserved());
+               Assert.assertFalse("over budget",admission.admits(small2));
+               Assert.assertEquals(Long.valueOf(8),admission.getReservations().get("bbbbbbbb"));
+               admission.release(big);
+               Assert.assertTrue(admission.admits(small2));
+               Assert.assertEquals(2,admission.getReserved());
+       }
+
+       @Test
+       public void expensiveTaskRunsAlone(){
+               AdmissionController<String> admission = new AdmissionController<String>(5,1,estimator);
+               Assert.assertTrue("nothing running",admission.admits(big));
+               admission.reserve(small1);
+               Assert.assertFalse(admission.admits(big));
+       }
+
+       @Test
+       public void takeHonoursBudget() throws InterruptedException{
+               UpdatablePriorityBlockingQueue<String> queue = new UpdatablePriorityBlockingQueue<String>();
+               AdmissionController<String> admission = new AdmissionController<String>(10,1,estimator);
+               queue.setAdmissionController(admission);
+               queue.offer(small1);
+               queue.offer(big);
+               queue.offer(small2);
+
+               Assert.assertEquals("Highest priority first",big,queue.take());
+               Assert.assertEquals("Fits next to big",small1,queue.take());
+               Assert.assertEquals(1,queue.size());
+               queue.release(big);
+               Assert.assertEquals(small2,queue.take());
+               Assert.assertEquals(4,admission.getReserved());
+       }
+
+       @Test
+       public void limitedBypass() throws InterruptedException{
+               final UpdatablePriorityBlockingQueue<String> queue = new UpdatablePriorityBlockingQueue<String>();
+               AdmissionController<String> admission = new AdmissionController<String>(9,1,estimator);
+               queue.setAdmissionController(admission);
+               queue.offer(small1);
+               Assert.assertEquals(small1,queue.take());
+               queue.offer(big);
+               queue.offer(small2);
+               queue.offer(small3);
+
+               Assert.assertEquals("big doesn't fit, small2 goes first",small2,queue.take());
+               final Runnable[] taken = new Runnable[1];
+               Thread taker = new Thread() {
+                       @Override
+                       public void run() {
+                               try {
+                                       taken[0] = queue.take();
+                               } catch (InterruptedException e) {
+                               }
+                       }
+               };
+               taker.start();
+               taker.join(200);
+               Assert.assertNull("small3 may not bypass big again",taken[0]);
+               queue.release(small1);
+               queue.release(small2);
+               taker.join();
+               Assert.assertEquals(big,taken[0]);
+       }
+}
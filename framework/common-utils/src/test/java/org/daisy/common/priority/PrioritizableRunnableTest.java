@@ -51,4 +51,26 @@ public class PrioritizableRunnableTest {
                 Assert.assertEquals("The relative waiting time is set correctly",33.0,this.pr.getRelativeWaitingTime(),0.0);
                 Assert.assertTrue("And the object is filthy",this.pr.isDirty());
         }
+
+        @Test
+        public void updateRelativeWaitingTime(){
+                final double[] time=new double[]{0.333};
+                Function<Long,Double> func= new Function<Long,Double> (){
+
+                                        @Override
+                                        public Double apply(Long arg0) {
+                                                return time[0];
+                                        }
+
+                };
+                Assert.assertTrue("Changed",pr.updateRelativeWaitingTime(func,0.1));
+                Assert.assertEquals("The relative waiting time is rounded down",0.3,this.pr.getRelativeWaitingTime(),1e-9);
+                pr.markDirty(false);
+                time[0]=0.35;
+                Assert.assertFalse("Same step",pr.updateRelativeWaitingTime(func,0.1));
+                Assert.assertFalse("Still clean",this.pr.isDirty());
+                time[0]=0.41;
+                Assert.assertTrue("Next step",pr.updateRelativeWaitingTime(func,0.1));
+                Assert.assertTrue("And the object is filthy",this.pr.isDirty());
+        }
 }
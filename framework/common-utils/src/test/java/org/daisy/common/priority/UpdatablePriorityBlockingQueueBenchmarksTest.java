@@ -0,0 +1,133 @@
+package org.daisy.common.priority;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the queue with a {@link PriorityBlockingQueue} that is re-sorted the way the
+ * queue used to do it: by re-adding all the elements after an update and by sorting a copy
+ * to get the elements in order.
+ */
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+public class UpdatablePriorityBlockingQueueBenchmarksTest   {
+        @Rule
+        public TestRule benchmarkRun = new BenchmarkRule();
+
+        final static Random random = new Random();
+        final static int SIZE=5000;
+        final static int SNAPSHOT=20;
+        static List<PrioritizableRunnable<Integer>> tasks = Lists.newArrayList();
+        static{
+                for (int i=0; i<SIZE;i++){
+                        tasks.add(newTask(i));
+                }
+        }
+
+        static PrioritizableRunnable<Integer> newTask(final int i){
+                final double priority=random.nextDouble();
+                return new PrioritizableRunnable<Integer>(null,new PriorityCalculator<Integer>() {
+                        @Override
+                        public double getPriority(PrioritizableRunnable<Integer> runnable) {
+                                return priority;
+                        }
+
+                        @Override
+                        public Integer prioritySource() {
+                                return i;
+                        }
+                });
+        }
+
+        static Function<PrioritizableRunnable<Integer>,Void> noop=new Function<PrioritizableRunnable<Integer>, Void>() {
+                @Override
+                public Void apply(PrioritizableRunnable<Integer> runnable) {
+                        return null;
+                }
+        };
+
+        @Test
+        public void offerAndTake() throws InterruptedException{
+                UpdatablePriorityBlockingQueue<Integer> queue = new UpdatablePriorityBlockingQueue<Integer>();
+                for (PrioritizableRunnable<Integer> task:tasks){
+                        queue.offer(task);
+                }
+                for (int i=0;i<SIZE;i++){
+                        queue.take();
+                }
+        }
+
+        @Test
+        public void offerAndTakeBaseline() throws InterruptedException{
+                PriorityBlockingQueue<PrioritizableRunnable<Integer>> queue = newBaseline();
+                for (PrioritizableRunnable<Integer> task:tasks){
+                        queue.offer(task);
+                }
+                for (int i=0;i<SIZE;i++){
+                        queue.take();
+                }
+        }
+
+        @Test
+        public void swapAndUpdate(){
+                UpdatablePriorityBlockingQueue<Integer> queue = new UpdatablePriorityBlockingQueue<Integer>();
+                for (PrioritizableRunnable<Integer> task:tasks){
+                        queue.offer(task);
+                }
+                for (int i=0;i<100;i++){
+                        queue.swap(tasks.get(random.nextInt(SIZE)),tasks.get(random.nextInt(SIZE)));
+                        queue.update(noop);
+                }
+        }
+
+        @Test
+        public void swapAndUpdateBaseline(){
+                PriorityBlockingQueue<PrioritizableRunnable<Integer>> queue = newBaseline();
+                queue.addAll(tasks);
+                for (int i=0;i<100;i++){
+                        //swapping also re-added all the elements
+                        for (int j=0;j<2;j++){
+                                Collection<PrioritizableRunnable<Integer>> aux = Lists.newLinkedList(queue);
+                                queue.clear();
+                                queue.addAll(aux);
+                        }
+                }
+        }
+
+        @Test
+        public void orderedSnapshot(){
+                UpdatablePriorityBlockingQueue<Integer> queue = new UpdatablePriorityBlockingQueue<Integer>();
+                for (PrioritizableRunnable<Integer> task:tasks){
+                        queue.offer(task);
+                }
+                for (int i=0;i<100;i++){
+                        queue.asOrderedCollection(SNAPSHOT);
+                }
+        }
+
+        @Test
+        public void orderedSnapshotBaseline(){
+                PriorityBlockingQueue<PrioritizableRunnable<Integer>> queue = newBaseline();
+                queue.addAll(tasks);
+                for (int i=0;i<100;i++){
+                        List<PrioritizableRunnable<Integer>> list= Lists.newLinkedList(queue);
+                        Collections.sort(list, new PrioritizableComparator());
+                        list.subList(0,SNAPSHOT);
+                }
+        }
+
+        static PriorityBlockingQueue<PrioritizableRunnable<Integer>> newBaseline(){
+                return new PriorityBlockingQueue<PrioritizableRunnable<Integer>>(20,new PrioritizableComparator());
+        }
+}
@@ -14,6 +14,8 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -151,5 +153,80 @@ public class UpdatablePriorityBlockingQueueTest{
                Assert.assertEquals("Second is task 1",task1,col.toArray()[1]);
                Assert.assertEquals("Third is task 3",task3,col.toArray()[2]);
        }
-}
 
+       @Test
+       public void limitedOrderedCollection(){
+               when(task1.getPriority()).thenReturn(-5.0);
+               when(task2.getPriority()).thenReturn(-10.0);
+               when(task3.getPriority()).thenReturn(-1.0);
+
+               UpdatablePriorityBlockingQueue queue = 
+                       new UpdatablePriorityBlockingQueue(); 
+               queue.offer(task1);
+               queue.offer(task2);
+               queue.offer(task3);
+               Assert.assertArrayEquals("First two are 2,1",new PrioritizableRunnable[]{task2,task1},queue.asOrderedCollection(2).toArray());
+       }
+
+       @Test
+       public void remove(){
+               when(task1.getPriority()).thenReturn(-5.0);
+               when(task2.getPriority()).thenReturn(-10.0);
+               when(task3.getPriority()).thenReturn(-1.0);
+
+               UpdatablePriorityBlockingQueue queue = 
+                       new UpdatablePriorityBlockingQueue(); 
+               queue.offer(task1);
+               queue.offer(task2);
+               queue.offer(task3);
+               Assert.assertTrue(queue.remove(task2));
+               Assert.assertFalse(queue.contains(task2));
+               Assert.assertEquals("First is task 1",task1,queue.poll());
+               Assert.assertEquals("Second is task 3",task3,queue.poll());
+               Assert.assertNull(queue.poll());
+       }
+
+       @Test
+       public void update(){
+               when(task1.getPriority()).thenReturn(-5.0);
+               when(task2.getPriority()).thenReturn(-10.0);
+               when(task3.getPriority()).thenReturn(-1.0);
+
+               UpdatablePriorityBlockingQueue queue = 
+                       new UpdatablePriorityBlockingQueue(); 
+               queue.offer(task1);
+               queue.offer(task2);
+               queue.offer(task3);
+               when(task3.getPriority()).thenReturn(-20.0);
+               queue.update(new Function<PrioritizableRunnable, Void>() {
+                       @Override
+                       public Void apply(PrioritizableRunnable runnable) {
+                               return null;
+                       }
+               });
+               Assert.assertArrayEquals("Order is 3,2,1",new PrioritizableRunnable[]{task3,task2,task1},queue.asOrderedCollection().toArray());
+       }
+
+       @Test
+       public void updateChanged(){
+               when(task1.getPriority()).thenReturn(-5.0);
+               when(task2.getPriority()).thenReturn(-10.0);
+               when(task3.getPriority()).thenReturn(-1.0);
+
+               UpdatablePriorityBlockingQueue queue = 
+                       new UpdatablePriorityBlockingQueue(); 
+               queue.offer(task1);
+               queue.offer(task2);
+               queue.offer(task3);
+               when(task1.getPriority()).thenReturn(-30.0);
+               when(task3.getPriority()).thenReturn(-20.0);
+               //only task 3 is reported as changed
+               queue.updateChanged(new Predicate<PrioritizableRunnable>() {
+                       @Override
+                       public boolean apply(PrioritizableRunnable runnable) {
+                               return runnable==task3;
+                       }
+               });
+               Assert.assertArrayEquals("Order is 3,2,1",new PrioritizableRunnable[]{task3,task2,task1},queue.asOrderedCollection().toArray());
+       }
+}
@@ -10,6 +10,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import com.google.common.base.Predicate;
+
 @RunWith(MockitoJUnitRunner.class)
 public class TimeTrackerTest {
         @Mock PrioritizableRunnable r1;
@@ -34,4 +36,15 @@ public class TimeTrackerTest {
                 tracker.executing();
                 Mockito.verify(tracker,Mockito.times(0)).update(Mockito.any(long[].class));
         }
+
+        @Test
+        public void skipUnchangedRange(){
+                UpdatablePriorityBlockingQueue queue=Mockito.spy(new UpdatablePriorityBlockingQueue());
+                TimeTracker tracker = new TimeTracker(1,queue,TimeFunctions.newLinearTimeFunctionFactory()); 
+                tracker.update(new long[]{100,200});
+                tracker.update(new long[]{100,200});
+                Mockito.verify(queue,Mockito.times(1)).updateChanged(Mockito.any(Predicate.class));
+                tracker.update(new long[]{100,300});
+                Mockito.verify(queue,Mockito.times(2)).updateChanged(Mockito.any(Predicate.class));
+        }
 }
@@ -29,4 +29,12 @@ public interface DatatypeRegistry {
 
         public void register(DatatypeService service);
         public void unregister(DatatypeService service);
+
+        /**
+         * Gets the version of the registry, which changes every time a datatype
+         * is registered or unregistered.
+         *
+         * @return the version
+         */
+        public long getVersion();
 }
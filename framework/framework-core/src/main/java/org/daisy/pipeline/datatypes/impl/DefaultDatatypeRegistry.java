@@ -1,6 +1,7 @@
 package org.daisy.pipeline.datatypes.impl;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.URIResolver;
 
@@ -11,12 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
 public class DefaultDatatypeRegistry implements DatatypeRegistry {
 
         private static final Logger logger = LoggerFactory.getLogger(DefaultScriptRegistry.class);
-        private Map<String,DatatypeService> registry=Maps.newHashMap();
+        private ConcurrentMap<String,DatatypeService> registry=Maps.newConcurrentMap();
+        private final AtomicLong version = new AtomicLong();
         private URIResolver resolver;
 
         /**
@@ -33,7 +36,7 @@ public class DefaultDatatypeRegistry implements DatatypeRegistry {
 
         @Override
         public Iterable<DatatypeService> getDatatypes() {
-                return this.registry.values();
+                return ImmutableList.copyOf(this.registry.values());
         }
 
         @Override
@@ -41,11 +44,18 @@ public class DefaultDatatypeRegistry implements DatatypeRegistry {
                 logger.debug("Registering "+service.toString());
 
                 this.registry.put(service.getId(),service);
+                this.version.incrementAndGet();
         }
 
         @Override
         public void unregister(DatatypeService service) {
-                this.registry.remove(service);
+                this.registry.remove(service.getId(),service);
+                this.version.incrementAndGet();
+        }
+
+        @Override
+        public long getVersion() {
+                return this.version.get();
         }
 
 }
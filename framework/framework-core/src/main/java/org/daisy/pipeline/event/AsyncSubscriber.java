@@ -0,0 +1,176 @@
+package org.daisy.pipeline.event;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Delivers the events of a bus to a subscriber from a thread of its own.
+ *
+ * The events the subscriber handles are put in a bounded queue by the
+ * posting threads and dispatched in the order they were posted by a single
+ * thread, so that the messages of a job are handled in sequence order. When
+ * the queue is full the posting thread waits until there is room again.
+ */
+final class AsyncSubscriber implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncSubscriber.class);
+
+	/** Tells the dispatching thread to stop once the queue is empty */
+	private static final Pending STOP = new Pending(null);
+
+	private final String name;
+	private final Object subscriber;
+	/** Synchronous bus the subscriber is registered to */
+	private final EventBus delegate;
+	private final Set<Class<?>> eventTypes;
+	private final BlockingQueue<Pending> queue;
+	private final int capacity;
+
+	private final AtomicLong dispatched = new AtomicLong();
+	private final AtomicLong latency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+
+	private Thread thread;
+
+	/**
+	 * @param name the name of the subscriber, used for the thread and the
+	 *        statistics
+	 * @param subscriber an object with {@link Subscribe} methods
+	 * @param capacity the number of events the queue can hold
+	 */
+	AsyncSubscriber(String name, Object subscriber, int capacity) {
+		this.name = name;
+		this.subscriber = subscriber;
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<Pending>(capacity);
+		this.delegate = new EventBus(name);
+		this.delegate.register(subscriber);
+		this.eventTypes = Sets.newHashSet();
+		for (Class<?> c = subscriber.getClass(); c != null; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (m.isAnnotationPresent(Subscribe.class) && m.getParameterTypes().length == 1) {
+					eventTypes.add(m.getParameterTypes()[0]);
+				}
+			}
+		}
+	}
+
+	Object getSubscriber() {
+		return subscriber;
+	}
+
+	synchronized void start() {
+		if (thread == null) {
+			thread = new Thread(this, "event-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Dispatches the events already queued and stops the thread.
+	 */
+	synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+		try {
+			queue.put(STOP);
+			thread.join(TimeUnit.SECONDS.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive()) {
+			logger.warn(String.format("%s still had %d events to dispatch", name, queue.size()));
+			thread.interrupt();
+		}
+		thread = null;
+	}
+
+	/**
+	 * Called by the bus for every event, on the posting thread.
+	 */
+	@Subscribe
+	@AllowConcurrentEvents
+	public void enqueue(Object event) {
+		if (!handles(event)) {
+			return;
+		}
+		Pending pending = new Pending(event);
+		try {
+			if (!queue.offer(pending)) {
+				if (blocked.incrementAndGet() % 1000 == 1) {
+					logger.warn(String.format("Event queue of %s full (%d events), posting threads waited %d times so far",
+							name, capacity, blocked.get()));
+				}
+				queue.put(pending);
+			}
+		} catch (InterruptedException e) {
+			logger.warn(String.format("Interrupted while queuing an event for %s, event dropped", name));
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Pending pending;
+			try {
+				pending = queue.take();
+			} catch (InterruptedException e) {
+				logger.debug(String.format("Event dispatching of %s interrupted", name));
+				return;
+			}
+			if (pending == STOP) {
+				return;
+			}
+			long waited = System.nanoTime() - pending.time;
+			// exceptions thrown by the subscriber are caught and logged by the bus
+			delegate.post(pending.event);
+			dispatched.incrementAndGet();
+			latency.addAndGet(waited);
+			long max = maxLatency.get();
+			while (waited > max && !maxLatency.compareAndSet(max, waited)) {
+				max = maxLatency.get();
+			}
+		}
+	}
+
+	DispatchStats getStats() {
+		long count = dispatched.get();
+		return new DispatchStats(name, queue.size(), capacity, count,
+				count > 0 ? TimeUnit.NANOSECONDS.toMicros(latency.get() / count) : 0,
+				TimeUnit.NANOSECONDS.toMicros(maxLatency.get()), blocked.get());
+	}
+
+	private boolean handles(Object event) {
+		for (Class<?> type : eventTypes) {
+			if (type.isInstance(event)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Pending {
+		final Object event;
+		final long time = System.nanoTime();
+
+		Pending(Object event) {
+			this.event = event;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.daisy.pipeline.event;
+
+/**
+ * Snapshot of the event queue of an asynchronous subscriber.
+ */
+public final class DispatchStats {
+
+	private final String name;
+	private final int queueDepth;
+	private final int capacity;
+	private final long dispatched;
+	private final long meanLatency;
+	private final long maxLatency;
+	private final long blocked;
+
+	DispatchStats(String name, int queueDepth, int capacity, long dispatched,
+			long meanLatency, long maxLatency, long blocked) {
+		this.name = name;
+		this.queueDepth = queueDepth;
+		this.capacity = capacity;
+		this.dispatched = dispatched;
+		this.meanLatency = meanLatency;
+		this.maxLatency = maxLatency;
+		this.blocked = blocked;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of events waiting to be dispatched
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @return the number of events the queue can hold
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of events dispatched so far
+	 */
+	public long getDispatched() {
+		return dispatched;
+	}
+
+	/**
+	 * @return the mean time (in µs) events waited in the queue
+	 */
+	public long getMeanLatency() {
+		return meanLatency;
+	}
+
+	/**
+	 * @return the longest time (in µs) an event waited in the queue
+	 */
+	public long getMaxLatency() {
+		return maxLatency;
+	}
+
+	/**
+	 * @return the number of times a posting thread waited for room in the queue
+	 */
+	public long getBlocked() {
+		return blocked;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d/%d queued, %d dispatched, latency mean %dµs max %dµs, %d blocked posts",
+				name, queueDepth, capacity, dispatched, meanLatency, maxLatency, blocked);
+	}
+}
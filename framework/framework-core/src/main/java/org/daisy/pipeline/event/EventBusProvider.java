@@ -1,10 +1,63 @@
 package org.daisy.pipeline.event;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.daisy.pipeline.properties.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 
+/**
+ * Provides the bus job messages and status changes are posted to.
+ *
+ * Events are posted synchronously: subscribers registered with
+ * {@link #register(Object)} are called on the posting thread, typically the
+ * job thread. Subscribers that don't need to be done before the job goes on
+ * are registered with {@link #registerAsync(Object, String)} and get their own
+ * bounded queue and thread, see {@link #getDispatchStats()}. The state of these
+ * queues is logged periodically while events are dispatched.
+ */
 public class EventBusProvider implements Supplier<EventBus>{
-	private final EventBus mEventBus=new EventBus();//AsyncEventBus(Executors.newFixedThreadPool(10));
+
+	/** Property holding the number of events the queue of an asynchronous subscriber can hold */
+	static final String QUEUE_SIZE = "org.daisy.pipeline.event.queueSize";
+
+	/** Property holding the number of seconds between two logs of the dispatch statistics (0 disables them) */
+	static final String STATS_INTERVAL = "org.daisy.pipeline.event.statsInterval";
+
+	private static final Logger logger = LoggerFactory.getLogger(EventBusProvider.class);
+
+	private final EventBus mEventBus=new EventBus();
+	private final ConcurrentMap<Object, AsyncSubscriber> asyncSubscribers = Maps.newConcurrentMap();
+	private final Map<AsyncSubscriber, Long> reported = Maps.newHashMap();
+	private final int queueSize;
+	private final int statsInterval;
+	private ScheduledExecutorService statsLogger;
+
+	public EventBusProvider() {
+		this(Integer.valueOf(Properties.getProperty(QUEUE_SIZE, "10000")),
+				Integer.valueOf(Properties.getProperty(STATS_INTERVAL, "300")));
+	}
+
+	EventBusProvider(int queueSize) {
+		this(queueSize, 0);
+	}
+
+	EventBusProvider(int queueSize, int statsInterval) {
+		this.queueSize = queueSize;
+		this.statsInterval = statsInterval;
+	}
 
 	@Override
 	public EventBus get() {
@@ -12,4 +65,110 @@ public class EventBusProvider implements Supplier<EventBus>{
 
 	}
 
+	/**
+	 * Registers a subscriber called on the posting thread.
+	 */
+	public void register(Object subscriber) {
+		mEventBus.register(subscriber);
+	}
+
+	/**
+	 * Registers a subscriber called from a thread of its own, in the order
+	 * the events were posted.
+	 *
+	 * @param name the name of the subscriber in the statistics
+	 */
+	public void registerAsync(Object subscriber, String name) {
+		AsyncSubscriber async = new AsyncSubscriber(name, subscriber, queueSize);
+		if (asyncSubscribers.putIfAbsent(subscriber, async) == null) {
+			async.start();
+			mEventBus.register(async);
+			logger.debug(String.format("Registered asynchronous subscriber %s", name));
+			startStatsLogger();
+		}
+	}
+
+	private synchronized void startStatsLogger() {
+		if (statsInterval > 0 && statsLogger == null) {
+			statsLogger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "event-stats");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			statsLogger.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					logDispatchStats();
+				}
+			}, statsInterval, statsInterval, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * Logs the state of the queues that dispatched events, or still hold
+	 * some, since the previous call.
+	 */
+	synchronized void logDispatchStats() {
+		for (AsyncSubscriber async : asyncSubscribers.values()) {
+			DispatchStats stats = async.getStats();
+			Long previous = reported.put(async, stats.getDispatched());
+			if (stats.getQueueDepth() > 0 || previous == null || previous != stats.getDispatched()) {
+				logger.info(stats.toString());
+			}
+		}
+		reported.keySet().retainAll(asyncSubscribers.values());
+	}
+
+	/**
+	 * Unregisters a subscriber. The events already queued for an asynchronous
+	 * subscriber are dispatched first.
+	 */
+	public void unregister(Object subscriber) {
+		AsyncSubscriber async = asyncSubscribers.remove(subscriber);
+		if (async != null) {
+			mEventBus.unregister(async);
+			async.stop();
+		} else {
+			try {
+				mEventBus.unregister(subscriber);
+			} catch (IllegalArgumentException e) {
+				logger.debug("Subscriber was not registered");
+			}
+		}
+	}
+
+	/**
+	 * @return the state of the queues of the asynchronous subscribers
+	 */
+	public Collection<DispatchStats> getDispatchStats() {
+		List<DispatchStats> stats = Lists.newArrayList();
+		for (AsyncSubscriber async : asyncSubscribers.values()) {
+			stats.add(async.getStats());
+		}
+		return stats;
+	}
+
+	/**
+	 * Stops the threads of the asynchronous subscribers once their queue is
+	 * empty.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (statsLogger != null) {
+				statsLogger.shutdownNow();
+				statsLogger = null;
+			}
+		}
+		for (Object subscriber : Lists.newArrayList(asyncSubscribers.keySet())) {
+			AsyncSubscriber async = asyncSubscribers.get(subscriber);
+			if (async != null) {
+				logger.info(async.getStats().toString());
+			}
+			unregister(subscriber);
+		}
+	}
+
 }
@@ -180,12 +180,17 @@ public abstract class AbstractJobContext implements JobContext{
         public void writeResult(XProcResult result) {
                 result.writeTo(this.output);
                 this.results=JobResultSetBuilder.newResultSet(this,this.mapper);
-                                
+                try {
+                        JobSize.resultsWritten(this.id);
+                } catch (RuntimeException e) {
+                        logger.warn(String.format("Could not record the size of job %s",this.id),e);
+                }
         }
 
         public void cleanUp(){
                 logger.info(String.format( "Deleting context for job %s" ,this.id));
                 JobURIUtils.cleanJobBase(this.id);
+                JobSize.remove(this.id);
                 this.monitor.getMessageAccessor().delete();
         }
 
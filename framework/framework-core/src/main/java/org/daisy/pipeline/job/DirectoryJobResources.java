@@ -0,0 +1,146 @@
+package org.daisy.pipeline.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Resource collection backed by the files of a directory, for instance a zip
+ * file that was unzipped while it was being uploaded. As the resources are
+ * files they can be moved into the job's context instead of being copied.
+ */
+public final class DirectoryJobResources implements JobResources {
+
+	/** Size of the buffer used to unzip */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File dir;
+
+	/** The files by their path relative to the directory */
+	private final Map<String, File> files;
+
+	/**
+	 * Collects all the files in the directory.
+	 *
+	 * @param dir the directory
+	 */
+	public DirectoryJobResources(File dir) {
+		this.dir = dir;
+		ImmutableMap.Builder<String, File> builder = ImmutableMap.builder();
+		collect(dir, "", builder);
+		this.files = builder.build();
+	}
+
+	private static void collect(File dir, String prefix, ImmutableMap.Builder<String, File> builder) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collect(child, prefix + child.getName() + "/", builder);
+			} else {
+				builder.put(prefix + child.getName(), child);
+			}
+		}
+	}
+
+	/**
+	 * Unzips the stream into the directory, one entry at a time, without
+	 * storing the zip file itself. The stream is not closed.
+	 *
+	 * @param zip the zipped resources
+	 * @param dir the directory to unzip to
+	 * @return the number of bytes written
+	 * @throws IOException if the stream is not a valid zip file, or if an
+	 *         entry would end up outside of the directory
+	 */
+	public static long unzip(InputStream zip, File dir) throws IOException {
+		String root = dir.getCanonicalPath() + File.separator;
+		ZipInputStream zin = new ZipInputStream(zip);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long written = 0;
+		ZipEntry entry;
+		while ((entry = zin.getNextEntry()) != null) {
+			File file = new File(dir, entry.getName().replace("\\", "/"));
+			if (!file.getCanonicalPath().startsWith(root)) {
+				throw new IOException("Zip entry outside of the target directory: " + entry.getName());
+			}
+			if (entry.isDirectory()) {
+				file.mkdirs();
+				continue;
+			}
+			file.getParentFile().mkdirs();
+			OutputStream os = new FileOutputStream(file);
+			try {
+				int read;
+				while ((read = zin.read(buffer)) > 0) {
+					os.write(buffer, 0, read);
+					written += read;
+				}
+			} finally {
+				os.close();
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * @return the directory holding the resources
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Gets the file of a resource.
+	 *
+	 * @param name the name
+	 * @return the file, or null if there is no such resource
+	 */
+	public File getFile(String name) {
+		return files.get(name);
+	}
+
+	@Override
+	public Iterable<Supplier<InputStream>> getResources() {
+		ImmutableMap.Builder<String, Supplier<InputStream>> builder = ImmutableMap.builder();
+		for (String name : files.keySet()) {
+			builder.put(name, getResource(name));
+		}
+		return builder.build().values();
+	}
+
+	@Override
+	public Supplier<InputStream> getResource(String name) {
+		final File file = files.get(name);
+		if (file == null) {
+			return null;
+		}
+		return new Supplier<InputStream>() {
+			@Override
+			public InputStream get() {
+				try {
+					return new FileInputStream(file);
+				} catch (FileNotFoundException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+	}
+
+	@Override
+	public Iterable<String> getNames() {
+		return files.keySet();
+	}
+}
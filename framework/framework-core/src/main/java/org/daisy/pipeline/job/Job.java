@@ -209,11 +209,12 @@ public class Job implements RuntimeConfigurator.EventBusable{
         public synchronized final void run(XProcEngine engine) {
                 changeStatus(Status.RUNNING);
                 XProcPipeline pipeline = null;
+                XProcResult results = null;
                 try{
                         pipeline = engine.load(this.ctxt.getScript().getURI());
                         Properties props=new Properties();
                         props.setProperty("JOB_ID", this.ctxt.getId().toString());
-                        XProcResult results = pipeline.run(this.ctxt.getInputs(),this.ctxt.getMonitor(),props);
+                        results = pipeline.run(this.ctxt.getInputs(),this.ctxt.getMonitor(),props);
                         this.ctxt.writeResult(results);
                         //if the validation fails set the job status
                         if (!this.checkValid()){
@@ -222,13 +223,20 @@ public class Job implements RuntimeConfigurator.EventBusable{
                                 changeStatus( Status.DONE );
                         }
                 }catch(Exception e){
-                        changeStatus( Status.ERROR);
+                        //before the status, so that it is stored with the other messages
                         broadcastError(e.getMessage());
+                        changeStatus( Status.ERROR);
                         logger.error("job finished with error state",e);
 		} catch (OutOfMemoryError e) {//this one needs it's own catch!
-                        changeStatus( Status.ERROR);
+                        //before the status, so that it is stored with the other messages
                         broadcastError(e.getMessage());
+                        changeStatus( Status.ERROR);
                         logger.error("job consumed all heap space",e);
+                }finally{
+                        //release the pipeline even if the results weren't written
+                        if (results != null) {
+                                results.close();
+                        }
                 }
 
         }
@@ -2,6 +2,7 @@ package org.daisy.pipeline.job;
 
 import java.util.Collection;
 
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
 
 public interface JobQueue {
@@ -12,4 +13,10 @@ public interface JobQueue {
         public void cancel(JobId id);
 
         public Collection<? extends Prioritizable<Job>> asCollection();
+
+        /**
+         * @return the admission controller that keeps the running jobs within the
+         *         memory budget, or null if admission control is disabled
+         */
+        public AdmissionController<Job> getAdmissionController();
 }
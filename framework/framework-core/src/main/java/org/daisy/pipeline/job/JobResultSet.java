@@ -3,19 +3,23 @@ package org.daisy.pipeline.job;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import javax.xml.namespace.QName;
 
-import org.daisy.pipeline.job.impl.IOHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
@@ -23,6 +27,11 @@ import com.google.common.collect.Multimaps;
 
 public final class JobResultSet {
         private static final Logger logger = LoggerFactory.getLogger(JobResultSet.class);
+        private static final int ZIP_BUFFER_SIZE=64*1024;
+        /** Extensions of formats that don't get smaller when deflated */
+        private static final Set<String> COMPRESSED_EXTENSIONS=ImmutableSet.of(
+                        "mp3","mp4","m4a","aac","ogg","oga","opus","png","jpg","jpeg","gif","webp",
+                        "zip","epub","jar","gz","bz2");
         public static class Builder{
                 private final Multimap<String,JobResult> outputPorts=LinkedListMultimap.create();
                 private final Multimap<QName,JobResult> options=LinkedListMultimap.create();
@@ -79,18 +88,47 @@ public final class JobResultSet {
 
         public static byte[] asZippedByteArray(Collection<JobResult> results) throws IOException{
                 ByteArrayOutputStream buf=new ByteArrayOutputStream();
-                ZipOutputStream zout= new ZipOutputStream(buf);
+                writeZip(results,buf);
+                buf.close();
+                return buf.toByteArray();
+        }
+
+        /**
+         * Writes the results as a zip file to the stream, without holding the archive in
+         * memory. Files that are already compressed (audio, images, archives) are not 
+         * compressed again. Entries get the modification time of their file, so that the 
+         * same results always produce the same bytes. The stream is not closed.
+         */
+        public static void writeZip(Collection<JobResult> results, OutputStream os) throws IOException{
+                ZipOutputStream zout= new ZipOutputStream(os);
+                byte buff[]=new byte[ZIP_BUFFER_SIZE];
                 for(JobResult res: results){
-                        ZipEntry entry=new ZipEntry(res.getIdx().toString());      
+                        String name=res.getIdx().toString();
+                        ZipEntry entry=new ZipEntry(name);      
+                        File file="file".equals(res.getPath().getScheme())?new File(res.getPath()):null;
+                        entry.setTime(file!=null?file.lastModified():0);
+                        zout.setLevel(isCompressed(name)?Deflater.NO_COMPRESSION:Deflater.DEFAULT_COMPRESSION);
                         zout.putNextEntry(entry);
                         InputStream is= res.getPath().toURL().openStream();
-                        IOHelper.dump(is,zout);
-                        is.close();
+                        try {
+                                int read;
+                                while((read=is.read(buff))>0){
+                                        zout.write(buff,0,read);
+                                }
+                        } finally {
+                                is.close();
+                        }
+                        zout.closeEntry();
                 }
-                zout.close();
-                buf.close();
-                return buf.toByteArray();
+                zout.finish();
+                zout.flush();
         }
+
+        private static boolean isCompressed(String name){
+                int dot=name.lastIndexOf('.');
+                return dot>=0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot+1).toLowerCase());
+        }
+
         public Collection<String> getPorts(){
                 return outputPorts.keySet();
         }
@@ -8,8 +8,17 @@ import org.daisy.pipeline.job.impl.JobURIUtils;
 
 import com.google.common.io.Files;
 
+/**
+ * The disk usage of a job: its context (inputs), output and log.
+ *
+ * The directory sizes come from an index maintained as the jobs write their
+ * results (see {@link JobSizeIndex}), so getting the size of a job doesn't
+ * walk its directories, only the log file is looked up.
+ */
 public final class JobSize {
 
+        private static final JobSizeIndex index = new JobSizeIndex();
+
         private Job job;
         private long contextSize;
         private long outputSize;
@@ -83,8 +92,8 @@ public final class JobSize {
                 JobSize size=null;
                 try {
                         size = new JobSize(job,
-                                        JobSize.getContextSize(job.getId()),
-                                        JobSize.getOutputSize(job.getId()), 
+                                        index.getContextSize(job.getId()),
+                                        index.getOutputSize(job), 
                                         JobSize.getLogSize(job
                                                 .getId()));
                 } catch (IOException e) {
@@ -93,6 +102,24 @@ public final class JobSize {
 
                 return size;
         }
+        /**
+         * Records the output size of a job once it has written its results.
+         */
+        static void resultsWritten(JobId id) {
+                try {
+                        index.resultsWritten(id);
+                } catch (IOException e) {
+                        throw new RuntimeException(String.format("Error calculating the output size for job %s",id),e);
+                }
+        }
+
+        /**
+         * Forgets the sizes of a job whose files have been deleted.
+         */
+        static void remove(JobId id) {
+                index.remove(id);
+        }
+
         protected static long getLogSize(JobId id) {
                 File f = new File(JobURIUtils.getLogFile(id));
                 return f.length();
@@ -0,0 +1,154 @@
+package org.daisy.pipeline.job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import org.daisy.pipeline.job.impl.JobURIUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps the sizes of the context and output directories of the jobs so that
+ * they don't have to be walked on every request.
+ *
+ * The context size is measured the first time it's needed, since the inputs
+ * don't change once the job is created, and the output size when the job
+ * writes its results. Both are stored in a file in the job's directory, so
+ * that they survive a restart. Jobs that finished before the index existed
+ * are measured once, the first time their size is requested. The output of a
+ * job that is still running is measured on every request and not stored.
+ */
+final class JobSizeIndex {
+
+        private static final Logger logger = LoggerFactory.getLogger(JobSizeIndex.class);
+
+        /** Name of the file holding the sizes, in the job's directory */
+        static final String FILE_NAME = "size.properties";
+
+        private static final String CONTEXT = "context";
+        private static final String OUTPUT = "output";
+        private static final long UNKNOWN = -1;
+
+        private final ConcurrentMap<JobId, Entry> entries = Maps.newConcurrentMap();
+
+        long getContextSize(JobId id) throws IOException {
+                Entry entry = entry(id);
+                if (entry.context != UNKNOWN) {
+                        return entry.context;
+                }
+                return update(id, JobSize.getContextSize(id), UNKNOWN).context;
+        }
+
+        long getOutputSize(Job job) throws IOException {
+                JobId id = job.getId();
+                Entry entry = entry(id);
+                if (entry.output != UNKNOWN) {
+                        return entry.output;
+                }
+                long output = JobSize.getOutputSize(id);
+                if (isFinished(job)) {
+                        update(id, UNKNOWN, output);
+                }
+                return output;
+        }
+
+        /**
+         * Measures and stores the output size of a job that has written its
+         * results.
+         */
+        void resultsWritten(JobId id) throws IOException {
+                update(id, UNKNOWN, JobSize.getOutputSize(id));
+        }
+
+        /**
+         * Forgets the sizes of a job whose files are deleted.
+         */
+        void remove(JobId id) {
+                entries.remove(id);
+        }
+
+        private Entry entry(JobId id) throws IOException {
+                Entry entry = entries.get(id);
+                if (entry == null) {
+                        entry = load(id);
+                        Entry previous = entries.putIfAbsent(id, entry);
+                        if (previous != null) {
+                                entry = previous;
+                        }
+                }
+                return entry;
+        }
+
+        /**
+         * Replaces the known sizes of the job and stores them.
+         */
+        private synchronized Entry update(JobId id, long context, long output) throws IOException {
+                Entry current = entry(id);
+                Entry entry = new Entry(context != UNKNOWN ? context : current.context,
+                                output != UNKNOWN ? output : current.output);
+                entries.put(id, entry);
+                store(id, entry);
+                return entry;
+        }
+
+        private static boolean isFinished(Job job) {
+                Job.Status status = job.getStatus();
+                return status == Job.Status.DONE || status == Job.Status.ERROR
+                        || status == Job.Status.VALIDATION_FAIL;
+        }
+
+        private static File file(JobId id) throws IOException {
+                return new File(new File(JobURIUtils.getJobBase(id)), FILE_NAME);
+        }
+
+        private static Entry load(JobId id) throws IOException {
+                File file = file(id);
+                if (!file.exists()) {
+                        return new Entry(UNKNOWN, UNKNOWN);
+                }
+                Properties props = new Properties();
+                InputStream is = new FileInputStream(file);
+                try {
+                        props.load(is);
+                } finally {
+                        is.close();
+                }
+                try {
+                        return new Entry(Long.parseLong(props.getProperty(CONTEXT, "-1")),
+                                        Long.parseLong(props.getProperty(OUTPUT, "-1")));
+                } catch (NumberFormatException e) {
+                        logger.warn(String.format("Ignoring the corrupt size file of job %s", id));
+                        return new Entry(UNKNOWN, UNKNOWN);
+                }
+        }
+
+        private static void store(JobId id, Entry entry) throws IOException {
+                Properties props = new Properties();
+                props.setProperty(CONTEXT, String.valueOf(entry.context));
+                props.setProperty(OUTPUT, String.valueOf(entry.output));
+                OutputStream os = new FileOutputStream(file(id));
+                try {
+                        props.store(os, null);
+                } finally {
+                        os.close();
+                }
+        }
+
+        private static final class Entry {
+                private final long context;
+                private final long output;
+
+                private Entry(long context, long output) {
+                        this.context = context;
+                        this.output = output;
+                }
+        }
+}
@@ -1,5 +1,6 @@
 package org.daisy.pipeline.job.impl;
 
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
 import org.daisy.common.priority.PrioritizableRunnable;
 import org.daisy.common.priority.PriorityThreadPoolExecutor;
@@ -28,6 +29,13 @@ import com.google.common.base.Predicate;
 public class DefaultJobExecutionService implements JobExecutionService {
 
         static final String NUM_PROCS="org.daisy.pipeline.procs";
+        static final String MEMORY_BUDGET="org.daisy.pipeline.procs.memoryBudget";
+        /** Number of times in a row a job may be passed over by smaller jobs */
+        static final int MAX_BYPASS=3;
+        /** Estimated memory use of a job without inputs, in MB */
+        static final long JOB_BASE_COST=64;
+        /** Estimated memory use per MB of input */
+        static final double JOB_INPUT_FACTOR=8.0;
         /** The Constant logger. */
         private static final Logger logger = LoggerFactory
                         .getLogger(DefaultJobExecutionService.class);
@@ -36,8 +44,15 @@ public class DefaultJobExecutionService implements JobExecutionService {
 
         private PriorityThreadPoolExecutor<Job> executor;
         private JobQueue executionQueue;
-        //Get the executor configured by the system property
+        private JobRunner runner;
+        private JobCostEstimator costEstimator;
+
         static PriorityThreadPoolExecutor<Job> configureExecutor(){
+                return configureExecutor(new JobCostEstimator(JOB_BASE_COST,JOB_INPUT_FACTOR));
+        }
+
+        //Get the executor configured by the system property
+        static PriorityThreadPoolExecutor<Job> configureExecutor(JobCostEstimator costEstimator){
                 int procs=2;
 
                 try{
@@ -47,18 +62,42 @@ public class DefaultJobExecutionService implements JobExecutionService {
                         logger.info(String.format("Error parsing %s %s",NUM_PROCS,procs));
                 }
                 logger.info(String.format("Initialising number of processors to %s",procs));
-                PriorityThreadPoolExecutor<Job> executor = PriorityThreadPoolExecutor
-                        .newFixedSizeThreadPoolExecutor(
-                                        procs,
-                                        TimeTrackerFactory.newFactory(1,
-                                                TimeFunctions.newLinearTimeFunctionFactory()));
+                TimeTrackerFactory trackerFactory=TimeTrackerFactory.newFactory(1,
+                                TimeFunctions.newLinearTimeFunctionFactory());
+                long budget=memoryBudget();
+                if (budget<=0){
+                        return PriorityThreadPoolExecutor.newFixedSizeThreadPoolExecutor(procs,trackerFactory);
+                }
+                logger.info(String.format("Admitting jobs within a memory budget of %s MB",budget));
+                return PriorityThreadPoolExecutor.newFixedSizeThreadPoolExecutor(procs,trackerFactory,
+                                new AdmissionController<Job>(budget,MAX_BYPASS,costEstimator));
+        }
 
-                return executor;
+        /**
+         * @return the memory budget in MB configured by the system property, or 0
+         *         if admission control is disabled
+         */
+        static long memoryBudget(){
+                String confBudget=Properties.getProperty(MEMORY_BUDGET,"").trim();
+                if (confBudget.isEmpty()){
+                        return 0;
+                }
+                if ("auto".equals(confBudget)){
+                        return Runtime.getRuntime().maxMemory()/(1024*1024)*3/4;
+                }
+                try{
+                        return Long.parseLong(confBudget);
+                }catch(NumberFormatException e){
+                        logger.info(String.format("Error parsing %s %s",MEMORY_BUDGET,confBudget));
+                        return 0;
+                }
         }
 
         public DefaultJobExecutionService(){
-                this.executor=DefaultJobExecutionService.configureExecutor();
+                this.costEstimator=new JobCostEstimator(JOB_BASE_COST,JOB_INPUT_FACTOR);
+                this.executor=DefaultJobExecutionService.configureExecutor(this.costEstimator);
                 this.executionQueue=new DefaultJobQueue(this.executor); 
+                this.runner=JobRunner.fromProperties();
         }
         /**
          * @param xprocEngine
@@ -67,9 +106,23 @@ public class DefaultJobExecutionService implements JobExecutionService {
          */
         public DefaultJobExecutionService(XProcEngine xprocEngine,
                         PriorityThreadPoolExecutor<Job> executor, JobQueue executionQueue) {
+                this(xprocEngine, executor, executionQueue, JobRunner.fromProperties());
+        }
+
+        DefaultJobExecutionService(XProcEngine xprocEngine,
+                        PriorityThreadPoolExecutor<Job> executor, JobQueue executionQueue,
+                        JobRunner runner) {
+                this(xprocEngine, executor, executionQueue, runner, null);
+        }
+
+        DefaultJobExecutionService(XProcEngine xprocEngine,
+                        PriorityThreadPoolExecutor<Job> executor, JobQueue executionQueue,
+                        JobRunner runner, JobCostEstimator costEstimator) {
                 this.xprocEngine = xprocEngine;
                 this.executor = executor;
                 this.executionQueue = executionQueue;
+                this.runner = runner;
+                this.costEstimator = costEstimator;
         }
 
         /**
@@ -103,7 +156,7 @@ public class DefaultJobExecutionService implements JobExecutionService {
         private static final Marker FINALIZE_SESSION_MARKER = MarkerFactory.getMarker("FINALIZE_SESSION");
 
         Runnable getRunnable(final Job job) {
-                return new ThreadWrapper(new Runnable() {
+                Runnable runnable=this.runner.wrap(new Runnable() {
 
                         @Override
                         public void run() {
@@ -121,41 +174,10 @@ public class DefaultJobExecutionService implements JobExecutionService {
 
                         }
                 });
-        }
-
-        /**
-         * This class offers a solution to avoid memory leaks due to
-         * the missuse of ThreadLocal variables.
-         * The actual run implementation may be a little bit naive regarding the interrupt handling
-         *
-         */
-        private static class ThreadWrapper implements Runnable {
-
-                private static final Logger logger = LoggerFactory
-                                .getLogger(ThreadWrapper.class);
-                private Runnable runnable;
-
-                /**
-                 * Constructs a new instance.
-                 *
-                 * @param runnable The runnable for this instance.
-                 */
-                public ThreadWrapper(Runnable runnable) {
-                        this.runnable = runnable;
-                }
-
-                public void run() {
-                        logger.info("Starting wrappedThread :"
-                                        + Thread.currentThread().getName());
-                        Thread t = new Thread(this.runnable);
-                        t.start();
-                        try {
-                                t.join();
-                        } catch (InterruptedException e) {
-                                logger.warn("ThreadWrapper was interrupted...");
-                        }
+                if (this.costEstimator!=null && this.executor.getAdmissionController()!=null){
+                        runnable=this.costEstimator.measure(job,runnable);
                 }
-
+                return runnable;
         }
 
         protected PriorityThreadPoolExecutor<Job> getExecutor() {
@@ -183,7 +205,7 @@ public class DefaultJobExecutionService implements JobExecutionService {
                                                 .getClient().getId().equals(client.getId());
                                                         }
                                                 }
-                        ));
+                        ), this.runner, this.costEstimator);
                 }
         }
 }
@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
 import org.daisy.common.priority.PrioritizableRunnable;
 import org.daisy.common.priority.PriorityThreadPoolExecutor;
@@ -116,6 +117,11 @@ public class DefaultJobQueue implements JobQueue {
                 return this.findNext(job.prioritySource().getId(),reverse);
         }
 
+        @Override
+        public AdmissionController<Job> getAdmissionController() {
+                return this.executor.getAdmissionController();
+        }
+
         /**
          * @return the executor
          */
@@ -0,0 +1,86 @@
+package org.daisy.pipeline.job.impl;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes directories in the background.
+ *
+ * A directory is first moved to a trash directory next to it, which is
+ * immediate on the same file system, and its files are deleted afterwards by
+ * a single background thread, so that the caller doesn't wait for large
+ * directory trees to be removed. If the directory can't be moved, it is
+ * deleted right away. Whatever is left in the trash directory, for instance
+ * after a crash, is deleted the first time it's used.
+ */
+final class DirectoryReaper {
+
+	private static final Logger logger = LoggerFactory.getLogger(DirectoryReaper.class);
+
+	/** Name of the trash directory */
+	static final String TRASH = ".trash";
+
+	private static final AtomicLong counter = new AtomicLong();
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "directory-reaper");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		}
+	});
+
+	private static volatile boolean purged = false;
+
+	private DirectoryReaper() {
+	}
+
+	/**
+	 * Deletes the directory and its contents.
+	 *
+	 * @return false if the directory could neither be moved nor deleted
+	 */
+	static boolean delete(File dir) {
+		if (!dir.exists()) {
+			return true;
+		}
+		File trash = new File(dir.getAbsoluteFile().getParentFile(), TRASH);
+		final File[] leftovers = !purged ? trash.listFiles() : null;
+		final File target = new File(trash, dir.getName() + "-" + counter.incrementAndGet());
+		if (!(trash.isDirectory() || trash.mkdirs()) || !dir.renameTo(target)) {
+			logger.debug("Could not move {} to the trash, deleting it now", dir);
+			return IOHelper.deleteDir(dir);
+		}
+		purged = true;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (leftovers != null) {
+					purge(leftovers);
+				}
+				if (target.exists() && !IOHelper.deleteDir(target)) {
+					logger.warn("Could not delete {}", target);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Deletes what previous runs left in the trash.
+	 */
+	private static void purge(File[] leftovers) {
+		for (File f : leftovers) {
+			logger.debug("Deleting leftover {}", f);
+			IOHelper.deleteDir(f);
+		}
+	}
+}
@@ -1,15 +1,18 @@
 package org.daisy.pipeline.job.impl;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.daisy.pipeline.job.DirectoryJobResources;
 import org.daisy.pipeline.job.JobResources;
 import org.daisy.pipeline.job.URIMapper;
 import org.slf4j.Logger;
@@ -24,7 +27,7 @@ public class IOHelper {
 	private static final String SLASH = "/";
 
 	/** The Constant BLOCK_SIZE. */
-	private static final int BLOCK_SIZE = 1024;
+	private static final int BLOCK_SIZE = 64 * 1024;
 
 
 
@@ -79,6 +82,10 @@ public class IOHelper {
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
 	public static void dump(JobResources resources,URIMapper mapper) throws IOException {
+		if (resources instanceof DirectoryJobResources) {
+			move((DirectoryJobResources)resources,mapper);
+			return;
+		}
 		for (String path : resources.getNames()) {
 			try {
 				IOHelper.dump(resources.getResource(path).get(),mapper.getInputBase() 
@@ -89,6 +96,56 @@ public class IOHelper {
 		}
 	}
 
+	/**
+	 * Moves the files of the resource collection to the input base. Files that
+	 * can't be renamed, e.g. because they are on another file system, are copied
+	 * from channel to channel.
+	 *
+	 * @param resources the resources
+	 * @param mapper the mapper
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void move(DirectoryJobResources resources,URIMapper mapper) throws IOException {
+		for (String path : resources.getNames()) {
+			File src = resources.getFile(path);
+			File dest;
+			try {
+				dest = new File(mapper.getInputBase().resolve(new URI(null, null, path.replace("\\", "/"), null, null)));
+			} catch (URISyntaxException e) {
+				throw new RuntimeException("Resource path could not be converted to URI: " + path, e);
+			}
+			dest.getParentFile().mkdirs();
+			if (!src.renameTo(dest)) {
+				copy(src,dest);
+			}
+		}
+	}
+
+	/**
+	 * Copies a file without going through a buffer in the heap
+	 *
+	 * @param src the source file
+	 * @param dest the destination file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	static void copy(File src,File dest) throws IOException {
+		FileChannel in = new FileInputStream(src).getChannel();
+		try {
+			FileChannel out = new FileOutputStream(dest).getChannel();
+			try {
+				long size = in.size();
+				long pos = 0;
+				while (pos < size) {
+					pos += in.transferTo(pos, size - pos, out);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
 	/**
 	 * Dumps the given input stream into the output stream
 	 *
@@ -0,0 +1,144 @@
+package org.daisy.pipeline.job.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.daisy.common.priority.CostEstimator;
+import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.JobSize;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Estimates the memory a job needs, in MB.
+ *
+ * The estimate is a fixed base cost plus a cost proportional to the size of the
+ * job's inputs, multiplied by a correction factor per script. The correction is
+ * learned from the peak heap usage of the jobs of that script that ran on their
+ * own, as a moving average of the ratio between measured and estimated cost, so
+ * that the measurement isn't polluted by other jobs.
+ */
+final class JobCostEstimator implements CostEstimator<Job> {
+
+	private static final Logger logger = LoggerFactory.getLogger(JobCostEstimator.class);
+
+	private static final long MB = 1024 * 1024;
+
+	/** Weight of the last measurement in the correction factor */
+	private static final double SMOOTHING = 0.3;
+
+	private final long baseCost;
+	private final double inputFactor;
+	private final ConcurrentMap<String, Double> corrections = new ConcurrentHashMap<String, Double>();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger started = new AtomicInteger();
+	private final List<MemoryPoolMXBean> heapPools;
+
+	/**
+	 * @param baseCost the cost of a job without inputs, in MB
+	 * @param inputFactor the cost per MB of input
+	 */
+	JobCostEstimator(long baseCost, double inputFactor) {
+		this.baseCost = baseCost;
+		this.inputFactor = inputFactor;
+		this.heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool);
+			}
+		}
+	}
+
+	@Override
+	public long estimate(Job job) {
+		String script = scriptId(job);
+		Double correction = script != null ? corrections.get(script) : null;
+		return Math.round(staticEstimate(job) * (correction != null ? correction : 1.0));
+	}
+
+	private long staticEstimate(Job job) {
+		long input = 0;
+		try {
+			input = JobSize.getSize(job).getContextSize();
+		} catch (RuntimeException e) {
+			logger.debug(String.format("Could not compute the input size of job %s", job.getId()), e);
+		}
+		return baseCost + Math.round(inputFactor * input / MB);
+	}
+
+	private static String scriptId(Job job) {
+		try {
+			return job.getContext().getScript().getDescriptor().getId();
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Wraps a job so that its peak heap usage is measured when it runs on its own.
+	 */
+	Runnable measure(final Job job, final Runnable runnable) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				int id = started.incrementAndGet();
+				boolean alone = running.incrementAndGet() == 1;
+				long start = 0;
+				if (alone) {
+					start = heapUsed();
+					for (MemoryPoolMXBean pool : heapPools) {
+						pool.resetPeakUsage();
+					}
+				}
+				try {
+					runnable.run();
+				} finally {
+					// the measurement is only valid if no other job started meanwhile
+					if (running.getAndDecrement() == 1 && alone && started.get() == id) {
+						learn(job, (heapPeak() - start) / MB);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Updates the correction factor of the job's script with a measured cost.
+	 */
+	void learn(Job job, long measured) {
+		String script = scriptId(job);
+		long estimate = staticEstimate(job);
+		if (script == null || estimate <= 0 || measured <= 0) {
+			return;
+		}
+		double ratio = (double) measured / estimate;
+		Double previous = corrections.get(script);
+		double correction = previous == null ? ratio : SMOOTHING * ratio + (1 - SMOOTHING) * previous;
+		corrections.put(script, correction);
+		logger.debug(String.format("Job %s (%s) used %d MB, estimated %d MB, correction is now %.2f",
+				job.getId(), script, measured, estimate, correction));
+	}
+
+	private long heapUsed() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			used += pool.getUsage().getUsed();
+		}
+		return used;
+	}
+
+	private long heapPeak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+}
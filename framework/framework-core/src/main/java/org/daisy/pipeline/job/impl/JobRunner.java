@@ -0,0 +1,204 @@
+package org.daisy.pipeline.job.impl;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.daisy.pipeline.properties.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * Runs jobs on the worker threads of the executor.
+ *
+ * By default every job runs on a new thread, so that any thread local it
+ * leaves behind is dropped together with the thread. On JVMs that support
+ * them, virtual threads can be used for this. Alternatively a job can run
+ * directly on the worker, which is cleaned up afterwards: the MDC is cleared
+ * and the thread name, context class loader and interrupted status are
+ * restored. Thread locals set by the job are not cleared then.
+ *
+ * The time every worker spends running jobs is recorded so that the number of
+ * workers can be sized from actual utilisation.
+ */
+final class JobRunner {
+
+	/** Property holding the way jobs are isolated from each other */
+	static final String ISOLATION = "org.daisy.pipeline.procs.isolation";
+
+	enum Isolation {
+		/** Run on the worker thread */
+		NONE,
+		/** Run on a new platform thread */
+		THREAD,
+		/** Run on a new virtual thread */
+		VIRTUAL
+	}
+
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory.getLogger(JobRunner.class);
+
+	private final Isolation isolation;
+	private final ConcurrentMap<Long, WorkerStats> workers = new ConcurrentHashMap<Long, WorkerStats>();
+
+	JobRunner(Isolation isolation) {
+		if (isolation == Isolation.VIRTUAL && newVirtualThread(new Runnable() {
+					@Override
+					public void run() {}
+				}) == null) {
+			logger.warn("Virtual threads are not supported by this JVM, using platform threads");
+			isolation = Isolation.THREAD;
+		}
+		this.isolation = isolation;
+	}
+
+	/**
+	 * Creates a new runner configured from the system properties.
+	 */
+	static JobRunner fromProperties() {
+		String value = Properties.getProperty(ISOLATION, "thread");
+		Isolation isolation;
+		try {
+			isolation = Isolation.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.info(String.format("Error parsing %s %s", ISOLATION, value));
+			isolation = Isolation.THREAD;
+		}
+		logger.info(String.format("Job isolation: %s", isolation));
+		return new JobRunner(isolation);
+	}
+
+	Isolation getIsolation() {
+		return isolation;
+	}
+
+	/**
+	 * @return the statistics of all the workers that ran a job so far
+	 */
+	Collection<WorkerStats> getWorkerStats() {
+		return Collections.unmodifiableCollection(workers.values());
+	}
+
+	/**
+	 * Wraps a job so that it is run and cleaned up according to the
+	 * configured isolation.
+	 */
+	Runnable wrap(final Runnable job) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				JobRunner.this.run(job);
+			}
+		};
+	}
+
+	private void run(Runnable job) {
+		Thread worker = Thread.currentThread();
+		String name = worker.getName();
+		ClassLoader loader = worker.getContextClassLoader();
+		WorkerStats stats = workers.get(worker.getId());
+		if (stats == null) {
+			workers.putIfAbsent(worker.getId(), new WorkerStats(name));
+			stats = workers.get(worker.getId());
+		}
+		long start = System.nanoTime();
+		try {
+			switch (isolation) {
+			case THREAD:
+				runOn(new Thread(job), job);
+				break;
+			case VIRTUAL:
+				runOn(newVirtualThread(job), job);
+				break;
+			default:
+				job.run();
+			}
+		} catch (RuntimeException e) {
+			// keep the worker alive
+			logger.error("Error while running job", e);
+		} finally {
+			stats.ran(System.nanoTime() - start);
+			MDC.clear();
+			worker.setName(name);
+			worker.setContextClassLoader(loader);
+			Thread.interrupted();
+			logger.info(String.format("Worker %s ran %d jobs, busy %.1f%% of the time",
+					stats.getName(), stats.getJobs(), stats.getUtilisation() * 100));
+		}
+	}
+
+	private static void runOn(Thread thread, Runnable job) {
+		if (thread == null) {
+			thread = new Thread(job);
+		}
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			logger.warn("JobRunner was interrupted...");
+		}
+	}
+
+	/**
+	 * @return an unstarted virtual thread, or null if the JVM doesn't
+	 *         support virtual threads
+	 */
+	private static Thread newVirtualThread(Runnable runnable) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method unstarted = Class.forName("java.lang.Thread$Builder")
+				.getMethod("unstarted", Runnable.class);
+			return (Thread) unstarted.invoke(builder, runnable);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Utilisation of a worker thread.
+	 */
+	static final class WorkerStats {
+
+		private final String name;
+		private final long since = System.nanoTime();
+		private final AtomicLong busy = new AtomicLong();
+		private final AtomicLong jobs = new AtomicLong();
+
+		WorkerStats(String name) {
+			this.name = name;
+		}
+
+		void ran(long nanos) {
+			busy.addAndGet(nanos);
+			jobs.incrementAndGet();
+		}
+
+		String getName() {
+			return name;
+		}
+
+		long getJobs() {
+			return jobs.get();
+		}
+
+		/**
+		 * @return the time spent running jobs, in milliseconds
+		 */
+		long getBusyTime() {
+			return TimeUnit.NANOSECONDS.toMillis(busy.get());
+		}
+
+		/**
+		 * @return the fraction of time spent running jobs since the first job
+		 */
+		double getUtilisation() {
+			long total = System.nanoTime() - since;
+			return total > 0 ? Math.min(1.0, (double) busy.get() / total) : 0.0;
+		}
+	}
+}
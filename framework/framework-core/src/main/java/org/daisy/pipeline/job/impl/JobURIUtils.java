@@ -73,9 +73,13 @@ public class JobURIUtils   {
                 return getJobBaseFile(id).toURI();
         }
 
+        /**
+         * Deletes the job's directory. The directory is gone when this method
+         * returns, but its files may be deleted later in the background.
+         */
         public static boolean cleanJobBase(JobId id){
                 try {
-                        return IOHelper.delete(getJobBase(id));
+                        return DirectoryReaper.delete(getJobBaseFile(id));
                 } catch (IOException e) {
                         throw new RuntimeException(String.format("Error cleaning Job id:%s",id),e);
                 }
@@ -34,4 +34,13 @@ public interface ScriptRegistry {
 	 * @return the scripts
 	 */
 	public Iterable<XProcScriptService> getScripts();
+
+	/**
+	 * Gets the version of the registry, which changes every time a script is
+	 * registered or unregistered. Can be used to tell whether information
+	 * derived from the scripts is still up to date.
+	 *
+	 * @return the version
+	 */
+	public long getVersion();
 }
@@ -4,8 +4,8 @@
 package org.daisy.pipeline.script.impl;
 
 import java.net.URI;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.daisy.pipeline.script.ScriptRegistry;
 import org.daisy.pipeline.script.XProcScript;
@@ -18,9 +18,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
 
-//TODO check thread safety
 /**
  *  Default implementation for the ScriptRegistry interface.
+ *
+ *  Scripts are (un)registered by DS while they are looked up by the web
+ *  service, so the maps are concurrent. The version is increased after every
+ *  change.
  */
 public class DefaultScriptRegistry implements ScriptRegistry {
 
@@ -28,8 +31,9 @@ public class DefaultScriptRegistry implements ScriptRegistry {
 	private static final Logger logger = LoggerFactory.getLogger(DefaultScriptRegistry.class);
 
 	/** The descriptors. */
-	private final Map<URI, XProcScriptService> descriptors = Maps.newHashMap();
-	private final Map<String, URI> byNameDirectory = new HashMap<String, URI>();
+	private final ConcurrentMap<URI, XProcScriptService> descriptors = Maps.newConcurrentMap();
+	private final ConcurrentMap<String, URI> byNameDirectory = Maps.newConcurrentMap();
+	private final AtomicLong version = new AtomicLong();
 
 	/** The parser. */
 	private XProcScriptParser parser;
@@ -46,7 +50,7 @@ public class DefaultScriptRegistry implements ScriptRegistry {
 	 *
 	 * @param script the script
 	 */
-	public void register(final XProcScriptService script) {
+	public synchronized void register(final XProcScriptService script) {
 		logger.debug("Registering script {}", script.getId());
 		if (!script.hasParser()){
 			script.setParser(parser);
@@ -54,6 +58,7 @@ public class DefaultScriptRegistry implements ScriptRegistry {
 		// TODO check
 		descriptors.put(script.getURI(), script);
 		byNameDirectory.put(script.getId(), script.getURI());
+		version.incrementAndGet();
 	}
 
 	/**
@@ -61,10 +66,11 @@ public class DefaultScriptRegistry implements ScriptRegistry {
 	 *
 	 * @param script the script
 	 */
-	public void unregister(XProcScriptService script) {
+	public synchronized void unregister(XProcScriptService script) {
 		logger.debug("Unregistering script {}", script.getId());
-		// TODO check
 		descriptors.remove(script.getURI());
+		byNameDirectory.remove(script.getId(), script.getURI());
+		version.incrementAndGet();
 	}
 
 	/* (non-Javadoc)
@@ -110,4 +116,9 @@ public class DefaultScriptRegistry implements ScriptRegistry {
 		}
 		return descriptors.get(uri);
 	}
+
+	@Override
+	public long getVersion() {
+		return version.get();
+	}
 }
@@ -0,0 +1,94 @@
+package org.daisy.pipeline.event;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.Subscribe;
+
+public class EventBusProviderTest {
+
+	EventBusProvider provider;
+
+	@Before
+	public void setUp() {
+		provider = new EventBusProvider(4);
+	}
+
+	@After
+	public void tearDown() {
+		provider.close();
+	}
+
+	@Test
+	public void synchronousOnPostingThread() {
+		Recorder recorder = new Recorder();
+		provider.register(recorder);
+		provider.get().post(1);
+		Assert.assertEquals(Collections.singletonList(1), recorder.events);
+		Assert.assertEquals(Thread.currentThread(), recorder.thread);
+	}
+
+	@Test
+	public void asynchronousInOrder() {
+		Recorder recorder = new Recorder();
+		provider.registerAsync(recorder, "recorder");
+		List<Integer> expected = Lists.newArrayList();
+		for (int i = 0; i < 100; i++) {
+			provider.get().post(i);
+			expected.add(i);
+		}
+		//events of other types are not queued
+		provider.get().post("ignored");
+		provider.unregister(recorder);
+		Assert.assertEquals(expected, recorder.events);
+		Assert.assertNotSame(Thread.currentThread(), recorder.thread);
+		provider.get().post(100);
+		Assert.assertEquals(100, recorder.events.size());
+	}
+
+	@Test
+	public void postingDoesNotWaitForSubscriber() throws InterruptedException {
+		Blocking blocking = new Blocking();
+		provider.registerAsync(blocking, "blocking");
+		provider.get().post(1);
+		provider.get().post(2);
+		DispatchStats stats = Iterables.getOnlyElement(provider.getDispatchStats());
+		Assert.assertEquals("blocking", stats.getName());
+		Assert.assertEquals(4, stats.getCapacity());
+		Assert.assertTrue(stats.getQueueDepth() >= 1);
+		blocking.release.countDown();
+		provider.unregister(blocking);
+		Assert.assertTrue(provider.getDispatchStats().isEmpty());
+		Assert.assertEquals(2, blocking.count);
+	}
+
+	public static class Recorder {
+		final List<Integer> events = Lists.newArrayList();
+		volatile Thread thread;
+
+		@Subscribe
+		public void handle(Integer event) {
+			thread = Thread.currentThread();
+			events.add(event);
+		}
+	}
+
+	public static class Blocking {
+		final CountDownLatch release = new CountDownLatch(1);
+		volatile int count = 0;
+
+		@Subscribe
+		public void handle(Integer event) throws InterruptedException {
+			release.await();
+			count++;
+		}
+	}
+}
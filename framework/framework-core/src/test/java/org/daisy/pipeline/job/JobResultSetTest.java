@@ -1,6 +1,7 @@
 package org.daisy.pipeline.job;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -101,4 +102,17 @@ public class JobResultSetTest   {
 		Assert.assertTrue(readEnt.contains(content1));
 		Assert.assertTrue(readEnt.contains(content2));
 	}
+
+	@Test
+	public void writeZipIsReproducible() throws Exception{
+		List<JobResult> results= new LinkedList<JobResult>();
+		results.add(jres1);
+		results.add(jres2);
+		ByteArrayOutputStream zip1=new ByteArrayOutputStream();
+		JobResultSet.writeZip(results,zip1);
+		ByteArrayOutputStream zip2=new ByteArrayOutputStream();
+		JobResultSet.writeZip(results,zip2);
+		Assert.assertArrayEquals(zip1.toByteArray(),zip2.toByteArray());
+		Assert.assertArrayEquals(zip1.toByteArray(),JobResultSet.asZippedByteArray(results));
+	}
 }
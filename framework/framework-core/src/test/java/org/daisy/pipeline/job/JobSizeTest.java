@@ -13,7 +13,9 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 
+import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 
 public class JobSizeTest   {
@@ -102,4 +104,41 @@ public class JobSizeTest   {
                list.add(size);
                Assert.assertEquals("size sum",18,JobSize.getTotal(list));
         }
+
+        @Test
+        public void indexFinishedJob() throws IOException {
+               Job job=mockJob(Job.Status.DONE);
+               JobSize size=JobSize.getSize(job);
+               Assert.assertEquals("context size",(long)inputTxt.getBytes().length*2,size.getContextSize());
+               Assert.assertEquals("output size",(long)inputTxt.getBytes().length,size.getOutputSize());
+               Assert.assertEquals("log size",(long)logTxt.getBytes().length,size.getLogSize());
+               File stored=new File(new File(JobURIUtils.getJobBase(id)),JobSizeIndex.FILE_NAME);
+               Assert.assertTrue("sizes stored",stored.exists());
+               //the index doesn't walk the directories again
+               Files.write(inputTxt.getBytes(),new File(outputDir,"other.txt"));
+               Assert.assertEquals("stored output size",(long)inputTxt.getBytes().length,JobSize.getSize(job).getOutputSize());
+               //the log size is always up to date
+               Files.append(logTxt,new File(JobURIUtils.getLogFile(id)),Charsets.UTF_8);
+               Assert.assertEquals("log size",(long)logTxt.getBytes().length*2,JobSize.getSize(job).getLogSize());
+        }
+
+        @Test
+        public void indexRunningJob() throws IOException {
+               Job job=mockJob(Job.Status.RUNNING);
+               Assert.assertEquals("output size",(long)inputTxt.getBytes().length,JobSize.getSize(job).getOutputSize());
+               Files.write(inputTxt.getBytes(),new File(outputDir,"other.txt"));
+               Assert.assertEquals("output of a running job is measured again",(long)inputTxt.getBytes().length*2,JobSize.getSize(job).getOutputSize());
+               JobSize.resultsWritten(id);
+               Files.write(inputTxt.getBytes(),new File(outputDir,"another.txt"));
+               Assert.assertEquals("output size recorded with the results",(long)inputTxt.getBytes().length*2,JobSize.getSize(job).getOutputSize());
+               JobSize.remove(id);
+               Assert.assertEquals("sizes read back from the job's directory",(long)inputTxt.getBytes().length*2,JobSize.getSize(job).getOutputSize());
+        }
+
+        private Job mockJob(Job.Status status){
+               Job job=Mockito.mock(Job.class);
+               Mockito.when(job.getId()).thenReturn(id);
+               Mockito.when(job.getStatus()).thenReturn(status);
+               return job;
+        }
 }
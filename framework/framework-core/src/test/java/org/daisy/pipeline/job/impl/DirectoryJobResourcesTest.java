@@ -0,0 +1,85 @@
+package org.daisy.pipeline.job.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.daisy.pipeline.job.DirectoryJobResources;
+import org.daisy.pipeline.job.URIMapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public class DirectoryJobResourcesTest {
+	File tmp;
+
+	@Before
+	public void setUp() {
+		tmp = Files.createTempDir();
+	}
+
+	@After
+	public void tearDown() {
+		IOHelper.deleteDir(tmp);
+	}
+
+	private DirectoryJobResources unzipTestZip() throws IOException {
+		File dir = new File(tmp, "upload");
+		InputStream is = this.getClass().getClassLoader().getResourceAsStream("test.zip");
+		try {
+			Assert.assertEquals(30, DirectoryJobResources.unzip(is, dir));
+		} finally {
+			is.close();
+		}
+		return new DirectoryJobResources(dir);
+	}
+
+	@Test
+	public void unzip() throws IOException {
+		DirectoryJobResources resources = unzipTestZip();
+		Assert.assertEquals(Sets.newHashSet("1.txt", "2.txt", "folder/3.txt"), Sets.newHashSet(resources.getNames()));
+		InputStream is = resources.getResource("folder/3.txt").get();
+		try {
+			Assert.assertEquals(26, is.available());
+		} finally {
+			is.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void entryOutsideDirectory() throws IOException {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ZipOutputStream zout = new ZipOutputStream(zip);
+		zout.putNextEntry(new ZipEntry("../evil.txt"));
+		zout.write(1);
+		zout.close();
+		DirectoryJobResources.unzip(new ByteArrayInputStream(zip.toByteArray()), new File(tmp, "upload"));
+	}
+
+	@Test
+	public void moveToContext() throws IOException {
+		DirectoryJobResources resources = unzipTestZip();
+		File context = new File(tmp, "context");
+		context.mkdirs();
+		IOHelper.dump(resources, new URIMapper(context.toURI(), new File(tmp, "output").toURI()));
+		Assert.assertEquals(26, new File(context, "folder/3.txt").length());
+		Assert.assertTrue(new File(context, "1.txt").exists());
+		Assert.assertFalse(resources.getFile("1.txt").exists());
+	}
+
+	@Test
+	public void copy() throws IOException {
+		DirectoryJobResources resources = unzipTestZip();
+		File dest = new File(tmp, "copy.txt");
+		IOHelper.copy(resources.getFile("folder/3.txt"), dest);
+		Assert.assertEquals(26, dest.length());
+	}
+}
@@ -0,0 +1,74 @@
+package org.daisy.pipeline.job.impl;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.daisy.pipeline.job.impl.JobRunner.Isolation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+public class JobRunnerTest {
+
+	private static Runnable recordThread(final AtomicReference<Thread> thread) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				thread.set(Thread.currentThread());
+				MDC.put("jobid", "1");
+				Thread.currentThread().setName("job-1");
+			}
+		};
+	}
+
+	@Test
+	public void runsOnWorkerAndCleansUp() {
+		JobRunner runner = new JobRunner(Isolation.NONE);
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		String name = Thread.currentThread().getName();
+		runner.wrap(recordThread(thread)).run();
+		Assert.assertSame(Thread.currentThread(), thread.get());
+		Assert.assertNull(MDC.get("jobid"));
+		Assert.assertEquals(name, Thread.currentThread().getName());
+	}
+
+	@Test
+	public void runsOnNewThread() {
+		JobRunner runner = new JobRunner(Isolation.THREAD);
+		AtomicReference<Thread> thread = new AtomicReference<Thread>();
+		runner.wrap(recordThread(thread)).run();
+		Assert.assertNotSame(Thread.currentThread(), thread.get());
+		Assert.assertFalse(thread.get().isAlive());
+	}
+
+	@Test
+	public void failingJobKeepsWorker() {
+		JobRunner runner = new JobRunner(Isolation.NONE);
+		runner.wrap(new Runnable() {
+			@Override
+			public void run() {
+				throw new RuntimeException("failed");
+			}
+		}).run();
+		Assert.assertEquals(1, runner.getWorkerStats().size());
+	}
+
+	@Test
+	public void recordsUtilisation() {
+		JobRunner runner = new JobRunner(Isolation.NONE);
+		Runnable job = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		runner.wrap(job).run();
+		runner.wrap(job).run();
+		JobRunner.WorkerStats stats = runner.getWorkerStats().iterator().next();
+		Assert.assertEquals(2, stats.getJobs());
+		Assert.assertTrue(stats.getBusyTime() >= 40);
+		Assert.assertTrue(stats.getUtilisation() > 0);
+	}
+}
@@ -79,4 +79,19 @@ public class JobURIUtilsTest   {
                 File output=JobURIUtils.getJobOutputDir(id);
 		Assert.assertEquals(new File(JobURIUtils.getJobBaseFile(id),JobURIUtils.IO_OUTPUT_SUBDIR).getAbsolutePath(),output.getAbsolutePath());
 	}
+
+	@Test
+	public void cleanJobBase() throws Exception{
+		File base=JobURIUtils.getJobBaseFile(id);
+		File output=new File(JobURIUtils.getJobOutputDir(id),"result.txt");
+		output.getParentFile().mkdirs();
+		Assert.assertTrue(output.createNewFile());
+		Assert.assertTrue(JobURIUtils.cleanJobBase(id));
+		Assert.assertFalse("the job directory is gone right away",base.exists());
+		File trash=new File(tmpdir,DirectoryReaper.TRASH);
+		for (int i=0;i<100 && trash.list()!=null && trash.list().length>0;i++){
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("the files are deleted in the background",0,trash.list().length);
+	}
 }
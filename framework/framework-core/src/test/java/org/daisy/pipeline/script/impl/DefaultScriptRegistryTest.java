@@ -0,0 +1,67 @@
+package org.daisy.pipeline.script.impl;
+
+import java.util.Map;
+
+import org.daisy.pipeline.script.XProcScriptService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+public class DefaultScriptRegistryTest {
+
+	DefaultScriptRegistry registry;
+
+	@Before
+	public void setUp() {
+		registry = new DefaultScriptRegistry();
+	}
+
+	@Test
+	public void versionChangesOnRegister() {
+		long version = registry.getVersion();
+		registry.register(script("a"));
+		Assert.assertTrue(registry.getVersion() > version);
+	}
+
+	@Test
+	public void versionChangesOnUnregister() {
+		XProcScriptService a = script("a");
+		registry.register(a);
+		long version = registry.getVersion();
+		registry.unregister(a);
+		Assert.assertTrue(registry.getVersion() > version);
+	}
+
+	@Test
+	public void versionStableOnLookup() {
+		registry.register(script("a"));
+		long version = registry.getVersion();
+		registry.getScript("a");
+		registry.getScripts();
+		Assert.assertEquals(version, registry.getVersion());
+	}
+
+	@Test
+	public void unregisterRemovesName() {
+		XProcScriptService a = script("a");
+		registry.register(a);
+		Assert.assertSame(a, registry.getScript("a"));
+		registry.unregister(a);
+		Assert.assertNull(registry.getScript("a"));
+		Assert.assertTrue(Iterables.isEmpty(registry.getScripts()));
+	}
+
+	private static XProcScriptService script(String id) {
+		XProcScriptService script = new XProcScriptService();
+		Map<String, String> properties = ImmutableMap.of(
+				XProcScriptService.SCRIPT_ID, id,
+				XProcScriptService.SCRIPT_DESCRIPTION, "script " + id,
+				XProcScriptService.SCRIPT_URL, "http://www.example.org/" + id + ".xpl",
+				XProcScriptService.SCRIPT_VERSION, "1.0");
+		script.activate(properties);
+		return script;
+	}
+}
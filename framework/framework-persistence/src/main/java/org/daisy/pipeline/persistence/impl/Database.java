@@ -19,10 +19,35 @@ public class Database {
 
 	public void addObject(Object obj) {
 		EntityManager em=this.getEntityManager();
-		em.getTransaction().begin();
-		em.persist(obj);
-		em.getTransaction().commit();
-		em.close();
+		try {
+			em.getTransaction().begin();
+			em.persist(obj);
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
+	/**
+	 * Stores all the objects in a single transaction
+	 */
+	public void addObjects(Iterable<?> objs) {
+		EntityManager em=this.getEntityManager();
+		try {
+			em.getTransaction().begin();
+			for (Object obj : objs) {
+				em.persist(obj);
+			}
+			em.getTransaction().commit();
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
 	}
 
 	public boolean deleteObject(Object obj) {
@@ -23,6 +23,7 @@ import org.daisy.pipeline.job.AbstractJobContext;
 import org.daisy.pipeline.job.Job;
 import org.daisy.pipeline.job.JobContext;
 import org.daisy.pipeline.persistence.impl.Database;
+import org.daisy.pipeline.persistence.impl.messaging.PersistentMessageEventListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -155,6 +156,10 @@ public class PersistentJob  extends Job implements Serializable {
 	protected synchronized void onStatusChanged(Job.Status to) {
 		logger.info("Changing Status:"+to);	
 		if(this.db!=null){
+			if (to != Job.Status.IDLE && to != Job.Status.RUNNING) {
+				//the messages are stored before the status that says they are all there
+				PersistentMessageEventListener.flush();
+			}
 			logger.debug("Updating object");	
 			db.updateObject(this);
                         //this should be the proper way to invalidate the object 
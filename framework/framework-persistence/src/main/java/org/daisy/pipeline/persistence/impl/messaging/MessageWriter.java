@@ -0,0 +1,214 @@
+package org.daisy.pipeline.persistence.impl.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.Level;
+import org.daisy.pipeline.persistence.impl.Database;
+import org.daisy.pipeline.properties.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores messages in the database from a background thread.
+ *
+ * Messages are kept in a bounded buffer and written in groups: a transaction
+ * is committed every time {@code batchSize} messages are pending or the
+ * oldest pending message has waited {@code flushInterval} milliseconds. If a
+ * group can't be stored, its messages are stored one by one, so that a bad
+ * message only loses itself. When the buffer is full, DEBUG and TRACE
+ * messages are dropped and the threads posting other messages wait until
+ * there is room again.
+ */
+final class MessageWriter implements Runnable {
+
+	/** Property holding the number of messages the buffer can hold */
+	static final String BUFFER_SIZE = "org.daisy.pipeline.persistence.messages.bufferSize";
+	/** Property holding the maximum number of messages per transaction */
+	static final String BATCH_SIZE = "org.daisy.pipeline.persistence.messages.batchSize";
+	/** Property holding the maximum time (in ms) a message waits to be written */
+	static final String FLUSH_INTERVAL = "org.daisy.pipeline.persistence.messages.flushInterval";
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageWriter.class);
+
+	/** Tells the writer to commit what it has without waiting for more */
+	private static final Message FLUSH = new Message(null, null, null, 0, 0, null, 0, null, null) {};
+
+	private final Database database;
+	private final BlockingQueue<Message> buffer;
+	private final int batchSize;
+	private final long flushInterval;
+
+	private final AtomicLong enqueued = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	/** Guarded by itself */
+	private final Object lock = new Object();
+	private long written = 0;
+
+	private volatile boolean running = false;
+	private volatile boolean closed = false;
+	private Thread thread;
+
+	/**
+	 * @param database where to store the messages
+	 * @param bufferSize the number of messages the buffer can hold
+	 * @param batchSize the maximum number of messages per transaction
+	 * @param flushInterval the maximum time (in ms) a message waits to be written
+	 */
+	MessageWriter(Database database, int bufferSize, int batchSize, long flushInterval) {
+		this.database = database;
+		this.buffer = new ArrayBlockingQueue<Message>(bufferSize);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Creates a new writer configured from the system properties.
+	 */
+	static MessageWriter fromProperties(Database database) {
+		return new MessageWriter(database,
+				Integer.valueOf(Properties.getProperty(BUFFER_SIZE, "10000")),
+				Integer.valueOf(Properties.getProperty(BATCH_SIZE, "500")),
+				Long.valueOf(Properties.getProperty(FLUSH_INTERVAL, "200")));
+	}
+
+	synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "message-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Writes the pending messages and stops the writer. Messages added
+	 * afterwards are written right away.
+	 */
+	synchronized void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		closed = true;
+		buffer.offer(FLUSH);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues a message to be written.
+	 *
+	 * @return false if the message was dropped because the buffer is full
+	 */
+	boolean add(Message msg) throws InterruptedException {
+		if (closed) {
+			database.addObject(new PersistentMessage(msg));
+			return true;
+		}
+		if (msg.getLevel() != null && msg.getLevel().compareTo(Level.INFO) > 0) {
+			if (!buffer.offer(msg)) {
+				if (dropped.incrementAndGet() % 1000 == 1) {
+					logger.warn(String.format("Message buffer full, %d %s or lower messages dropped so far",
+							dropped.get(), Level.DEBUG));
+				}
+				return false;
+			}
+		} else {
+			buffer.put(msg);
+		}
+		enqueued.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Waits until all the messages added so far are written.
+	 */
+	void flush() throws InterruptedException {
+		long target = enqueued.get();
+		synchronized (lock) {
+			if (written >= target) {
+				return;
+			}
+		}
+		buffer.offer(FLUSH);
+		synchronized (lock) {
+			while (written < target && running) {
+				lock.wait(flushInterval);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of messages dropped so far
+	 */
+	long getDropped() {
+		return dropped.get();
+	}
+
+	@Override
+	public void run() {
+		List<Message> batch = new ArrayList<Message>(batchSize);
+		while (running || !buffer.isEmpty()) {
+			try {
+				Message msg = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushInterval);
+				while (msg != null && msg != FLUSH) {
+					batch.add(msg);
+					if (batch.size() >= batchSize) {
+						break;
+					}
+					msg = buffer.poll();
+					if (msg == null && running) {
+						msg = buffer.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Message writer was interrupted");
+			}
+			write(batch);
+			batch.clear();
+		}
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	private void write(List<Message> batch) {
+		if (!batch.isEmpty()) {
+			List<PersistentMessage> persistent = new ArrayList<PersistentMessage>(batch.size());
+			for (Message msg : batch) {
+				persistent.add(new PersistentMessage(msg));
+			}
+			try {
+				database.addObjects(persistent);
+			} catch (RuntimeException e) {
+				//one bad row (e.g. a duplicate sequence number) fails the
+				//whole transaction: store the messages one by one instead
+				logger.debug(String.format("Could not store %d messages at once, storing them one by one",
+						batch.size()), e);
+				for (PersistentMessage msg : persistent) {
+					try {
+						database.addObject(msg);
+					} catch (RuntimeException ee) {
+						logger.error(String.format("Could not store message %d of job %s",
+								msg.getSequence(), msg.getJobId()), ee);
+					}
+				}
+			}
+		}
+		synchronized (lock) {
+			written += batch.size();
+			lock.notifyAll();
+		}
+	}
+}
@@ -8,6 +8,8 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Id;
 import javax.persistence.IdClass;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 
@@ -15,6 +17,11 @@ import org.daisy.common.messaging.Message;
 
 @Entity
 @IdClass(PersistenceMessagePK.class)
+@NamedQueries({
+	@NamedQuery(name="Message.after", query="select m from PersistentMessage m where m.jobId = :jobId and m.sequence > :after and m.level in :levels order by m.sequence"),
+	@NamedQuery(name="Message.inRange", query="select m from PersistentMessage m where m.jobId = :jobId and m.sequence >= :first and m.sequence <= :last and m.level in :levels order by m.sequence"),
+	@NamedQuery(name="Message.deleteJob", query="delete from PersistentMessage m where m.jobId = :jobId")
+})
 //@NoSql(dataFormat=DataFormatType.MAPPED)
 public class PersistentMessage extends Message{
 	private static final int TEXT_LEN=1024;
@@ -7,21 +7,46 @@ import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 
 import org.daisy.common.messaging.Message;
 import org.daisy.common.messaging.Message.Level;
 import org.daisy.common.messaging.MessageAccessor;
 import org.daisy.pipeline.job.JobId;
+import org.daisy.pipeline.properties.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
+/**
+ * Gives access to the messages of a job stored in the database.
+ *
+ * Messages are queried by job, sequence and level using named queries backed
+ * by an index on these columns, and are read in pages of increasing sequence
+ * numbers, so that reading the new messages of a job costs the same whatever
+ * the number of messages already stored. Requests for the messages after a
+ * given sequence number return at most
+ * {@code org.daisy.pipeline.persistence.messages.maxResults} messages, the next
+ * ones are returned by the next request.
+ */
 public class PersistentMessageAccessor extends MessageAccessor {
 	private static final Logger logger =
 		LoggerFactory.getLogger(PersistentMessageAccessor.class);
 
+	/** Property holding the maximum number of new messages returned at once */
+	static final String MAX_RESULTS = "org.daisy.pipeline.persistence.messages.maxResults";
+
+	/** Number of messages read per query when all of them are requested */
+	static final int PAGE_SIZE = 1000;
+
+	static final String INDEX = "MESSAGE_JOB_SEQ_LEVEL";
+
+	private static final int maxResults = Integer.valueOf(Properties.getProperty(MAX_RESULTS, "1000"));
 
 	JobId jobId;
 	private EntityManagerFactory emf;
@@ -32,10 +57,35 @@ public class PersistentMessageAccessor extends MessageAccessor {
 		this.emf = emf;
 	}
 
+	/**
+	 * Creates the index the message queries rely on, if the database doesn't
+	 * have it yet. JPA 2.0 can't declare indexes, so this is done at startup,
+	 * which also covers databases created by previous versions.
+	 */
+	public static void createIndex(EntityManagerFactory emf) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			em.createNativeQuery(String.format(
+					"CREATE INDEX %s ON PERSISTENTMESSAGE (JOBID, SEQUENCE, LEVEL)", INDEX))
+				.executeUpdate();
+			em.getTransaction().commit();
+			logger.info(String.format("Created index %s", INDEX));
+		} catch (PersistenceException e) {
+			//the index already exists
+			logger.debug(String.format("Index %s not created: %s", INDEX, e.getMessage()));
+		} finally {
+			if (em.getTransaction().isActive()) {
+				em.getTransaction().rollback();
+			}
+			em.close();
+		}
+	}
+
 	@Override
 	public List<Message> getAll() {
-		return getMessages(jobId, 0,
-				Arrays.asList(Level.values()));
+		return getMessages(jobId, -1,
+				Arrays.asList(Level.values()), Integer.MAX_VALUE);
 	}
 
 	@Override
@@ -43,15 +93,13 @@ public class PersistentMessageAccessor extends MessageAccessor {
 		List<Level> levels = new LinkedList<Level>();
 
 		for (Level iter : Level.values()) {
-			if (iter.compareTo(level) == 0) {
+			if (iter.compareTo(level) <= 0) {
 				levels.add(iter);
-			} else {
-				break;
 			}
 		}
 
-		return getMessages(jobId, 0,
-				levels);
+		return getMessages(jobId, -1,
+				levels, Integer.MAX_VALUE);
 	}
 
 	@Override
@@ -61,10 +109,8 @@ public class PersistentMessageAccessor extends MessageAccessor {
 	@Override
 	public boolean delete(){
 		EntityManager em = emf.createEntityManager();
-
-		StringBuilder sqlBuilder=new StringBuilder("delete from PersistentMessage where jobId='%s' ");
-		String sql=String.format(sqlBuilder.toString(), jobId.toString());
-		Query q=em.createQuery(sql);
+		Query q=em.createNamedQuery("Message.deleteJob");
+		q.setParameter("jobId", jobId.toString());
 		em.getTransaction().begin();
 		int res=q.executeUpdate();
 		em.getTransaction().commit();
@@ -78,7 +124,8 @@ public class PersistentMessageAccessor extends MessageAccessor {
 		int mStart;
 		int mEnd;
 		boolean getRange = false;
-		
+		boolean paged = false;
+
 		@Override
 		public MessageFilter filterLevels(final Set<Level> levels) {
 			mLevels = new LinkedList<Level>(levels);
@@ -88,6 +135,7 @@ public class PersistentMessageAccessor extends MessageAccessor {
 		@Override
 		public MessageFilter greaterThan(int idx) {
 			mSeq = idx;
+			paged = true;
 			return this;
 		}
 		@Override
@@ -97,7 +145,7 @@ public class PersistentMessageAccessor extends MessageAccessor {
 			getRange = true;
 			return this;
 		}
-			
+
 		@Override
 		public List<Message> getMessages() {
 			if (getRange) {
@@ -106,33 +154,58 @@ public class PersistentMessageAccessor extends MessageAccessor {
 			}
 			else {
 				return PersistentMessageAccessor.this
-						.getMessages(jobId, mSeq, mLevels);
-			}	
+						.getMessages(jobId, mSeq, mLevels, paged ? maxResults : Integer.MAX_VALUE);
+			}
 		}
-		
-		
+
+
 	}
-	
-	private List<Message> getMessages(JobId id,int from, List<Level> levels){
-		EntityManager em = emf.createEntityManager();
-		StringBuilder sqlBuilder=new StringBuilder("select m from PersistentMessage m where m.jobId='%s' and  m.sequence > %s");
-		String sql=String.format(sqlBuilder.toString(), id.toString(),from);
-		Query q=em.createQuery(sql);
 
-		@SuppressWarnings("unchecked") //just how persistence works
-		List<Message> result = q.getResultList();
-		em.close();
+	/**
+	 * Returns the messages with a sequence number greater than from, reading
+	 * at most {@link #PAGE_SIZE} of them per query.
+	 */
+	private List<Message> getMessages(JobId id,int from, List<Level> levels, int limit){
+		List<Message> result = Lists.newArrayList();
+		if (levels.isEmpty()) {
+			return result;
+		}
+		EntityManager em = emf.createEntityManager();
+		try {
+			TypedQuery<PersistentMessage> q = em.createNamedQuery("Message.after", PersistentMessage.class);
+			q.setParameter("jobId", id.toString());
+			q.setParameter("levels", levels);
+			while (result.size() < limit) {
+				int size = Math.min(PAGE_SIZE, limit - result.size());
+				q.setParameter("after", from);
+				q.setMaxResults(size);
+				List<PersistentMessage> page = q.getResultList();
+				result.addAll(page);
+				if (page.size() < size) {
+					break;
+				}
+				from = page.get(page.size() - 1).getSequence();
+			}
+		} finally {
+			em.close();
+		}
 		return result;
 	}
-	
+
 	private List<Message> getMessagesInRange(JobId id,int start, int end, List<Level> levels){
+		if (levels.isEmpty()) {
+			return Lists.newArrayList();
+		}
 		EntityManager em = emf.createEntityManager();
-		StringBuilder sqlBuilder=new StringBuilder("select m from PersistentMessage m where m.jobId='%s' and  m.sequence >= %s and m.sequence <= %s");
-		String sql=String.format(sqlBuilder.toString(), id.toString(),start,end);
-		Query q=em.createQuery(sql);
-		@SuppressWarnings("unchecked") //just how persistence works
-		List<Message> result = q.getResultList();
-		em.close();
-		return result;
+		try {
+			TypedQuery<PersistentMessage> q = em.createNamedQuery("Message.inRange", PersistentMessage.class);
+			q.setParameter("jobId", id.toString());
+			q.setParameter("first", start);
+			q.setParameter("last", end);
+			q.setParameter("levels", levels);
+			return Lists.<Message>newArrayList(q.getResultList());
+		} finally {
+			em.close();
+		}
 	}
 }
@@ -1,37 +1,83 @@
 package org.daisy.pipeline.persistence.impl.messaging;
 
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
 import javax.persistence.EntityManagerFactory;
 
 import org.daisy.common.messaging.Message;
 import org.daisy.pipeline.event.EventBusProvider;
 import org.daisy.pipeline.persistence.impl.Database;
 
+import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
 
 /**
- * This class receives message events and stores them in memory and gives access
- * to them via the accessor interface. The class that is interested in
- * processing a memoryMessage
+ * This class receives message events and stores them in the database. The
+ * messages are written in batches by a {@link MessageWriter}, so that the
+ * threads posting them don't wait for the database. The messages of a job are
+ * all stored by the time its final status is stored, see {@link #flush()}.
  * 
  */
 public class PersistentMessageEventListener {
 
+	/** The writers of the active listeners */
+	private static final Set<MessageWriter> writers = new CopyOnWriteArraySet<MessageWriter>();
+
 	EventBusProvider eventBusProvider;
-	Database datbase;
+	private volatile MessageWriter writer;
+
+	/**
+	 * Waits until all the messages posted so far are stored. Called by the
+	 * jobs before they store their final status, so that a client never
+	 * sees a finished job with missing messages.
+	 */
+	public static void flush() {
+		for (MessageWriter writer : writers) {
+			try {
+				writer.flush();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
 
 	public void setEventBusProvider(EventBusProvider eventBusProvider) {
 		this.eventBusProvider = eventBusProvider;
-		this.eventBusProvider.get().register(this);
+		//synchronous: the messages are written in the background already, and
+		//they must be queued before the job flushes them
+		this.eventBusProvider.register(this);
 	}
 
 	public synchronized void setEntityManagerFactory(EntityManagerFactory emf) {
-		this.datbase = new Database(emf);
+		PersistentMessageAccessor.createIndex(emf);
+		MessageWriter writer = MessageWriter.fromProperties(new Database(emf));
+		writer.start();
+		this.writer = writer;
+		writers.add(writer);
+	}
+
+	public synchronized void close() {
+		if (eventBusProvider != null) {
+			eventBusProvider.unregister(this);
+		}
+		if (writer != null) {
+			writers.remove(writer);
+			writer.close();
+		}
 	}
 
 	@Subscribe
-	public synchronized void handleMessage(Message msg) {
-		if (datbase != null) {
-			datbase.addObject(new PersistentMessage(msg));
+	@AllowConcurrentEvents
+	public void handleMessage(Message msg) {
+		MessageWriter writer = this.writer;
+		if (writer != null) {
+			try {
+				writer.add(msg);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 
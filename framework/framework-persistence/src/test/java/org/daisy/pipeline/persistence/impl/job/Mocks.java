@@ -82,6 +82,11 @@ public class Mocks   {
 		public Iterable<XProcScriptService> getScripts() {
 			return null;
 		}
+
+		@Override
+		public long getVersion() {
+			return 0;
+		}
 	}
 
 
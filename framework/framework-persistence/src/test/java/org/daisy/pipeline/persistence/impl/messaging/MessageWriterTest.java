@@ -0,0 +1,148 @@
+package org.daisy.pipeline.persistence.impl.messaging;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.Level;
+import org.daisy.pipeline.persistence.impl.Database;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.collect.Lists;
+
+public class MessageWriterTest {
+
+	Database db;
+	List<Integer> batches;
+	List<Message> stored;
+	MessageWriter writer;
+
+	@Before
+	public void setUp() {
+		db = mock(Database.class);
+		batches = Lists.newCopyOnWriteArrayList();
+		stored = Lists.newCopyOnWriteArrayList();
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				List<?> objs = Lists.newArrayList((Iterable<?>) invocation.getArguments()[0]);
+				batches.add(objs.size());
+				for (Object obj : objs) {
+					stored.add((Message) obj);
+				}
+				return null;
+			}
+		}).when(db).addObjects(any(Iterable.class));
+	}
+
+	@After
+	public void tearDown() {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	static Message message(int seq, Level level) {
+		return new Message.MessageBuilder().withText("message " + seq).withLevel(level)
+				.withSequence(seq).withJobId("job").build();
+	}
+
+	@Test
+	public void groupCommit() throws InterruptedException {
+		writer = new MessageWriter(db, 100, 3, 1000);
+		for (int i = 0; i < 7; i++) {
+			writer.add(message(i, Level.INFO));
+		}
+		writer.start();
+		writer.flush();
+		Assert.assertEquals(7, stored.size());
+		Assert.assertEquals(Integer.valueOf(3), batches.get(0));
+		Assert.assertEquals(Integer.valueOf(3), batches.get(1));
+		Assert.assertEquals("message 6", stored.get(6).getText());
+		verify(db, never()).addObject(any());
+	}
+
+	@Test
+	public void flushDoesntWaitForInterval() throws InterruptedException {
+		writer = new MessageWriter(db, 100, 50, 60000);
+		writer.start();
+		writer.add(message(0, Level.INFO));
+		long start = System.currentTimeMillis();
+		writer.flush();
+		Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		Assert.assertEquals(1, stored.size());
+	}
+
+	@Test
+	public void intervalCommit() throws InterruptedException {
+		writer = new MessageWriter(db, 100, 50, 50);
+		writer.start();
+		writer.add(message(0, Level.INFO));
+		Thread.sleep(1000);
+		verify(db, atLeastOnce()).addObjects(any(Iterable.class));
+		Assert.assertEquals(1, stored.size());
+	}
+
+	@Test
+	public void dropLowLevels() throws InterruptedException {
+		writer = new MessageWriter(db, 2, 50, 50);
+		//not started, so the buffer isn't emptied yet
+		Assert.assertTrue(writer.add(message(0, Level.INFO)));
+		Assert.assertTrue(writer.add(message(1, Level.DEBUG)));
+		Assert.assertFalse(writer.add(message(2, Level.TRACE)));
+		Assert.assertEquals(1, writer.getDropped());
+		writer.start();
+		writer.flush();
+		Assert.assertEquals(2, stored.size());
+	}
+
+	@Test
+	public void badMessageOnlyLosesItself() throws InterruptedException {
+		doThrow(new RuntimeException("duplicate key")).when(db).addObjects(any(Iterable.class));
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				Message msg = (Message) invocation.getArguments()[0];
+				if (msg.getSequence() == 1 && msg.getLevel() == Level.ERROR) {
+					throw new RuntimeException("duplicate key");
+				}
+				stored.add(msg);
+				return null;
+			}
+		}).when(db).addObject(any());
+		writer = new MessageWriter(db, 100, 50, 1000);
+		for (int i = 0; i < 5; i++) {
+			writer.add(message(i, Level.INFO));
+		}
+		writer.add(message(1, Level.ERROR));
+		writer.start();
+		writer.flush();
+		Assert.assertEquals(5, stored.size());
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals("message " + i, stored.get(i).getText());
+		}
+	}
+
+	@Test
+	public void writeDirectlyWhenClosed() throws InterruptedException {
+		writer = new MessageWriter(db, 100, 50, 50);
+		writer.start();
+		writer.add(message(0, Level.INFO));
+		writer.close();
+		Assert.assertEquals(1, stored.size());
+		writer.add(message(1, Level.INFO));
+		verify(db).addObject(any());
+	}
+}
@@ -0,0 +1,105 @@
+package org.daisy.pipeline.persistence.impl.messaging;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.Level;
+import org.daisy.pipeline.job.JobId;
+import org.daisy.pipeline.job.JobIdFactory;
+import org.daisy.pipeline.persistence.impl.Database;
+import org.daisy.pipeline.persistence.impl.job.DatabaseProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class PersistentMessageAccessorTest {
+	JobId id;
+	Database db;
+	PersistentMessageAccessor accessor;
+
+	@Before
+	public void setUp() {
+		id = JobIdFactory.newId();
+		db = DatabaseProvider.getDatabase();
+		PersistentMessageAccessor.createIndex(DatabaseProvider.getEMF());
+		List<PersistentMessage> messages = Lists.newArrayList();
+		//INFO, DEBUG, INFO, DEBUG, ...
+		for (int i = 0; i < 2 * PersistentMessageAccessor.PAGE_SIZE + 10; i++) {
+			messages.add(new PersistentMessage(new Message.MessageBuilder()
+					.withText("message " + i)
+					.withLevel(i % 2 == 0 ? Level.INFO : Level.DEBUG)
+					.withSequence(i)
+					.withJobId(id.toString())
+					.build()));
+		}
+		db.addObjects(messages);
+		accessor = new PersistentMessageAccessor(id, DatabaseProvider.getEMF());
+	}
+
+	@After
+	public void tearDown() {
+		accessor.delete();
+	}
+
+	@Test
+	public void createIndexTwice() {
+		PersistentMessageAccessor.createIndex(DatabaseProvider.getEMF());
+	}
+
+	@Test
+	public void getAllPages() {
+		List<Message> all = accessor.getAll();
+		Assert.assertEquals(2 * PersistentMessageAccessor.PAGE_SIZE + 10, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			Assert.assertEquals(i, all.get(i).getSequence());
+		}
+	}
+
+	@Test
+	public void levelsInQuery() {
+		List<Message> infos = accessor.createFilter().filterLevels(EnumSet.of(Level.INFO)).getMessages();
+		Assert.assertEquals(PersistentMessageAccessor.PAGE_SIZE + 5, infos.size());
+		for (Message msg : infos) {
+			Assert.assertEquals(Level.INFO, msg.getLevel());
+		}
+		Assert.assertEquals(infos.size(), accessor.getInfos().size());
+		Assert.assertEquals(2 * PersistentMessageAccessor.PAGE_SIZE + 10, accessor.getDebugs().size());
+		Assert.assertTrue(accessor.getErrors().isEmpty());
+	}
+
+	@Test
+	public void newMessages() {
+		List<Message> messages = accessor.createFilter().filterLevels(EnumSet.of(Level.INFO, Level.DEBUG))
+				.greaterThan(2 * PersistentMessageAccessor.PAGE_SIZE).getMessages();
+		Assert.assertEquals(9, messages.size());
+		Assert.assertEquals(2 * PersistentMessageAccessor.PAGE_SIZE + 1, messages.get(0).getSequence());
+	}
+
+	@Test
+	public void newMessagesAreCapped() {
+		List<Message> messages = accessor.createFilter().greaterThan(-1).getMessages();
+		Assert.assertEquals(1000, messages.size());
+		messages = accessor.createFilter().greaterThan(messages.get(999).getSequence()).getMessages();
+		Assert.assertEquals(1000, messages.size());
+		Assert.assertEquals(1000, messages.get(0).getSequence());
+	}
+
+	@Test
+	public void range() {
+		List<Message> messages = accessor.createFilter().filterLevels(EnumSet.of(Level.DEBUG))
+				.inRange(10, 20).getMessages();
+		Assert.assertEquals(5, messages.size());
+		Assert.assertEquals(11, messages.get(0).getSequence());
+		Assert.assertEquals(19, messages.get(4).getSequence());
+	}
+
+	@Test
+	public void delete() {
+		Assert.assertTrue(accessor.delete());
+		Assert.assertTrue(accessor.getAll().isEmpty());
+	}
+}
@@ -0,0 +1,311 @@
+package org.daisy.pipeline.nonpersistent.impl.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.Level;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Append-only log of the messages of a job.
+ *
+ * Messages are stored at the position they arrive in. The sequence number of
+ * every position is kept in an array, with the positions of all messages and
+ * of every level sorted by sequence number, so that the messages after a
+ * sequence number and of a set of levels are found with a binary search per
+ * level and returned in time proportional to their number. Only the last
+ * {@code capacity} messages to arrive are kept in memory, in a ring buffer;
+ * older messages are written to a file and read back when requested. The
+ * throwable of a message is not kept once the message is written to the file.
+ *
+ * Messages usually arrive in increasing sequence order and are then appended
+ * in constant time. A message that arrives late, for instance one posted from
+ * a parallel branch or the error broadcast at the end of a failed job, is
+ * inserted in the sorted positions in time proportional to the number of
+ * messages after it.
+ */
+final class MessageLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(MessageLog.class);
+
+	private static final Level[] LEVELS = Level.values();
+
+	private final String jobId;
+	private final int capacity;
+
+	/** The sequence number of the message at every position */
+	private final IntArray sequences = new IntArray();
+	/** The positions of all the messages, in sequence order */
+	private final IntArray ordered = new IntArray();
+	/** The positions of the messages of every level, in sequence order */
+	private final IntArray[] byLevel = new IntArray[LEVELS.length];
+	/** The last messages, the message at position p is at p % capacity */
+	private final Message[] recent;
+	/** The offsets in the file of the messages that aren't in memory anymore */
+	private long[] offsets = new long[0];
+	private RandomAccessFile file;
+	private File path;
+
+	/**
+	 * @param jobId the job
+	 * @param capacity the number of messages kept in memory
+	 */
+	MessageLog(String jobId, int capacity) {
+		this.jobId = jobId;
+		this.capacity = Math.max(1, capacity);
+		this.recent = new Message[this.capacity];
+		for (int i = 0; i < byLevel.length; i++) {
+			byLevel[i] = new IntArray();
+		}
+	}
+
+	synchronized int size() {
+		return sequences.size;
+	}
+
+	synchronized void add(Message msg) {
+		int position = sequences.size;
+		if (position >= capacity) {
+			spill(position - capacity);
+		}
+		sequences.add(msg.getSequence());
+		insert(ordered, position);
+		insert(byLevel[msg.getLevel().ordinal()], position);
+		recent[position % capacity] = msg;
+	}
+
+	/**
+	 * Inserts a position in a list of positions sorted by sequence number,
+	 * after the positions with the same sequence number.
+	 */
+	private void insert(IntArray positions, int position) {
+		int sequence = sequences.get(position);
+		int size = positions.size;
+		if (size == 0 || sequences.get(positions.get(size - 1)) <= sequence) {
+			positions.add(position);
+			return;
+		}
+		int from = 0;
+		int to = size;
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (sequences.get(positions.get(mid)) <= sequence) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		positions.insert(from, position);
+	}
+
+	/**
+	 * @return the first index in [from, to) of a list of positions sorted by
+	 *         sequence number whose sequence number is not less than the given
+	 *         one, or to if there is none
+	 */
+	private int lowerBound(IntArray positions, int sequence, int from, int to) {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			if (sequences.get(positions.get(mid)) < sequence) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	/**
+	 * Returns the messages with a sequence number from start (inclusive) to
+	 * end (exclusive) whose level is in the given set, in sequence order.
+	 */
+	synchronized List<Message> get(int start, int end, Set<Level> levels) {
+		int from = lowerBound(ordered, start, 0, ordered.size);
+		int to = lowerBound(ordered, end, from, ordered.size);
+		List<Message> result = Lists.newArrayList();
+		if (from >= to) {
+			return result;
+		}
+		if (levels.size() == LEVELS.length) {
+			for (int i = from; i < to; i++) {
+				result.add(message(ordered.get(i)));
+			}
+			return result;
+		}
+		// merge the positions of the requested levels
+		IntArray[] lists = new IntArray[levels.size()];
+		int[] next = new int[levels.size()];
+		int[] last = new int[levels.size()];
+		int n = 0;
+		for (Level level : levels) {
+			lists[n] = byLevel[level.ordinal()];
+			next[n] = lowerBound(lists[n], start, 0, lists[n].size);
+			last[n] = lowerBound(lists[n], end, next[n], lists[n].size);
+			n++;
+		}
+		while (true) {
+			int min = -1;
+			for (int i = 0; i < n; i++) {
+				if (next[i] < last[i] && (min < 0 || before(lists[i].get(next[i]), lists[min].get(next[min])))) {
+					min = i;
+				}
+			}
+			if (min < 0) {
+				return result;
+			}
+			result.add(message(lists[min].get(next[min]++)));
+		}
+	}
+
+	/**
+	 * @return whether the message at a position comes before the one at
+	 *         another position, in sequence order and then in arrival order
+	 */
+	private boolean before(int position, int other) {
+		int sequence = sequences.get(position);
+		int otherSequence = sequences.get(other);
+		return sequence < otherSequence || (sequence == otherSequence && position < other);
+	}
+
+	/**
+	 * Deletes the file holding the older messages.
+	 */
+	synchronized void close() {
+		if (file != null) {
+			try {
+				file.close();
+			} catch (IOException e) {
+				logger.debug("Error closing message log", e);
+			}
+			if (!path.delete()) {
+				path.deleteOnExit();
+			}
+			file = null;
+		}
+	}
+
+	private Message message(int position) {
+		if (position >= sequences.size - capacity) {
+			return recent[position % capacity];
+		}
+		try {
+			file.seek(offsets[position]);
+			byte[] record = new byte[file.readInt()];
+			file.readFully(record);
+			return read(new DataInputStream(new ByteArrayInputStream(record)));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read message " + sequences.get(position) + " of job " + jobId, e);
+		}
+	}
+
+	private void spill(int position) {
+		Message msg = recent[position % capacity];
+		try {
+			if (file == null) {
+				path = File.createTempFile("messages-" + jobId + "-", ".log");
+				path.deleteOnExit();
+				file = new RandomAccessFile(path, "rw");
+			}
+			if (position >= offsets.length) {
+				offsets = Arrays.copyOf(offsets, Math.max(1024, offsets.length * 2));
+			}
+			long offset = file.length();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			write(msg, out);
+			out.flush();
+			file.seek(offset);
+			file.writeInt(bytes.size());
+			file.write(bytes.toByteArray());
+			offsets[position] = offset;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write message " + msg.getSequence() + " of job " + jobId, e);
+		}
+		recent[position % capacity] = null;
+	}
+
+	private static void write(Message msg, DataOutputStream out) throws IOException {
+		out.writeInt(msg.getSequence());
+		out.writeByte(msg.getLevel().ordinal());
+		out.writeLong(msg.getTimeStamp() != null ? msg.getTimeStamp().getTime() : Long.MIN_VALUE);
+		out.writeInt(msg.getLine());
+		out.writeInt(msg.getColumn());
+		writeString(msg.getText(), out);
+		writeString(msg.getFile(), out);
+	}
+
+	private Message read(DataInputStream in) throws IOException {
+		Message.MessageBuilder builder = new Message.MessageBuilder()
+			.withJobId(jobId)
+			.withSequence(in.readInt())
+			.withLevel(LEVELS[in.readByte()]);
+		long time = in.readLong();
+		return builder
+			.withTimeStamp(time != Long.MIN_VALUE ? new Date(time) : null)
+			.withLine(in.readInt())
+			.withColumn(in.readInt())
+			.withText(readString(in))
+			.withFile(readString(in))
+			.build();
+	}
+
+	private static void writeString(String s, DataOutputStream out) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(Charsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	/**
+	 * Growable array of ints
+	 */
+	private static final class IntArray {
+		private int[] values = new int[16];
+		private int size = 0;
+
+		void add(int value) {
+			insert(size, value);
+		}
+
+		void insert(int index, int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			size++;
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+	}
+}
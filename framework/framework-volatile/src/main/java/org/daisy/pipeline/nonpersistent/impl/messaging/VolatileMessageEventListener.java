@@ -15,7 +15,8 @@ public class VolatileMessageEventListener {
 
 	public void setEventBusProvider(EventBusProvider eventBusProvider) {
 		this.eventBusProvider = eventBusProvider;
-		this.eventBusProvider.get().register(this);
+		//synchronous: the messages are available as soon as they are posted
+		this.eventBusProvider.register(this);
 	}
 
 	@Subscribe
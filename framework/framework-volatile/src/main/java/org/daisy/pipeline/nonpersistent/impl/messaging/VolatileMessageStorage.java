@@ -1,7 +1,9 @@
 package org.daisy.pipeline.nonpersistent.impl.messaging;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -15,16 +17,23 @@ import org.slf4j.LoggerFactory;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
-import com.google.common.collect.Lists;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 
 /**
  * Singleton
+ *
+ * Keeps the messages of every job in a {@link MessageLog}, with at most
+ * {@code org.daisy.pipeline.messaging.memoryCap} messages per job in memory.
  */
 public final class VolatileMessageStorage {
 
 	private static final VolatileMessageStorage INSTANCE = new VolatileMessageStorage();
 	private static final  String CACHE_TIMEOUT_PROPERTY="org.daisy.pipeline.messaging.cache";
-	private LoadingCache<String, List<Message>> cache;
+	private static final  String MEMORY_CAP_PROPERTY="org.daisy.pipeline.messaging.memoryCap";
+	private static final Set<Level> ALL_LEVELS = Collections.unmodifiableSet(EnumSet.allOf(Level.class));
+	private LoadingCache<String, MessageLog> cache;
+	private final int memoryCap;
 	private static final Logger logger = LoggerFactory.getLogger(VolatileMessageStorage.class);
 
 	/**
@@ -33,27 +42,33 @@ public final class VolatileMessageStorage {
 	private VolatileMessageStorage() {
 		int timeout = Integer.valueOf(Properties.getProperty(
 				CACHE_TIMEOUT_PROPERTY, "60"));
-		cache = CacheBuilder.newBuilder()
+		memoryCap = Integer.valueOf(Properties.getProperty(
+				MEMORY_CAP_PROPERTY, "10000"));
+		cache = newCache(timeout);
+	}
+
+	private LoadingCache<String, MessageLog> newCache(int timeout) {
+		return CacheBuilder.newBuilder()
 				.expireAfterAccess(timeout, TimeUnit.SECONDS)
-				.build(new CacheLoader<String, List<Message>>() {
+				.removalListener(new RemovalListener<String, MessageLog>() {
+					@Override
+					public void onRemoval(RemovalNotification<String, MessageLog> notification) {
+						notification.getValue().close();
+					}
+				})
+				.build(new CacheLoader<String, MessageLog>() {
 					@Override
-					public List<Message> load(String id) throws Exception {
-						return Lists.newArrayList();
+					public MessageLog load(String id) throws Exception {
+						return new MessageLog(id, memoryCap);
 					}
 				});
 	}
+
 	//just for testing don't use in production environments
 	static void setTimeOut(int secs){
 		logger.warn("Cache timeout was called. This is potentially dangerous outside testing environments!!!!");
 		synchronized(INSTANCE){
-			INSTANCE.cache = CacheBuilder.newBuilder()
-				.expireAfterAccess(secs, TimeUnit.SECONDS)
-				.build(new CacheLoader<String, List<Message>>() {
-					@Override
-					public List<Message> load(String id) throws Exception {
-						return Lists.newArrayList();
-					}
-				});
+			INSTANCE.cache = INSTANCE.newCache(secs);
 		}
 
 	}
@@ -65,7 +80,7 @@ public final class VolatileMessageStorage {
 			return false;
 		}
 		try {
-			this.cache.get(msg.getJobId()).add(msg.getSequence(), msg);
+			this.cache.get(msg.getJobId()).add(msg);
 			return true;
 		} catch (ExecutionException e) {
 			logger.warn("Error while adding message" , e);
@@ -73,14 +88,36 @@ public final class VolatileMessageStorage {
 		}
 	}
 
+	/**
+	 * Returns all the messages of a job.
+	 */
 	public List<Message> get(String id){
+		return get(id, Integer.MIN_VALUE, Integer.MAX_VALUE, ALL_LEVELS);
+	}
+
+	/**
+	 * Returns the messages of a job with a sequence number from start
+	 * (inclusive) to end (exclusive) and whose level is in the given set.
+	 */
+	public List<Message> get(String id, int start, int end, Set<Level> levels){
 		try {
-			return this.cache.get(id);
+			return this.cache.get(id).get(start, end, levels);
 		} catch (ExecutionException e) {
 			return Collections.emptyList();
 		}
 	}
 
+	/**
+	 * Returns the number of messages of a job.
+	 */
+	public int size(String id){
+		try {
+			return this.cache.get(id).size();
+		} catch (ExecutionException e) {
+			return 0;
+		}
+	}
+
 	public void remove(String id){
 		this.cache.invalidate(id);
 	}
@@ -0,0 +1,107 @@
+package org.daisy.pipeline.nonpersistent.impl.messaging;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.Level;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageLogTest {
+
+	MessageLog log;
+
+	@Before
+	public void setUp() {
+		//only 4 messages in memory
+		log = new MessageLog("job", 4);
+		//ERROR, WARNING, INFO, ERROR, WARNING, INFO, ...
+		for (int i = 0; i < 30; i++) {
+			log.add(new Message.MessageBuilder().withText("message " + i)
+					.withLevel(Level.values()[i % 3]).withSequence(i)
+					.withJobId("job").withFile(i % 2 == 0 ? "file.xml" : null)
+					.withLine(i).build());
+		}
+	}
+
+	@After
+	public void tearDown() {
+		log.close();
+	}
+
+	@Test
+	public void getAll() {
+		List<Message> all = log.get(0, Integer.MAX_VALUE, EnumSet.allOf(Level.class));
+		Assert.assertEquals(30, all.size());
+		for (int i = 0; i < 30; i++) {
+			Message msg = all.get(i);
+			Assert.assertEquals(i, msg.getSequence());
+			Assert.assertEquals("message " + i, msg.getText());
+			Assert.assertEquals(i, msg.getLine());
+			Assert.assertEquals(i % 2 == 0 ? "file.xml" : null, msg.getFile());
+			Assert.assertEquals("job", msg.getJobId());
+		}
+	}
+
+	@Test
+	public void afterSequence() {
+		List<Message> msgs = log.get(25, Integer.MAX_VALUE, EnumSet.allOf(Level.class));
+		Assert.assertEquals(5, msgs.size());
+		Assert.assertEquals(25, msgs.get(0).getSequence());
+	}
+
+	@Test
+	public void levels() {
+		List<Message> msgs = log.get(10, 20, EnumSet.of(Level.ERROR, Level.INFO));
+		//11, 12, 14, 15, 17, 18
+		Assert.assertEquals(6, msgs.size());
+		int previous = -1;
+		for (Message msg : msgs) {
+			Assert.assertTrue(msg.getLevel() != Level.WARNING);
+			Assert.assertTrue(msg.getSequence() > previous);
+			previous = msg.getSequence();
+		}
+		Assert.assertEquals(11, msgs.get(0).getSequence());
+		Assert.assertEquals(18, msgs.get(5).getSequence());
+	}
+
+	@Test
+	public void lateMessages() {
+		//an error broadcast at the end of the job, and messages of a parallel
+		//branch, arrive after messages with a higher sequence number
+		log.add(new Message.MessageBuilder().withText("late 1").withLevel(Level.ERROR)
+				.withSequence(1).withJobId("job").build());
+		log.add(new Message.MessageBuilder().withText("late 12").withLevel(Level.INFO)
+				.withSequence(12).withJobId("job").build());
+		log.add(new Message.MessageBuilder().withText("message 30").withLevel(Level.ERROR)
+				.withSequence(30).withJobId("job").build());
+		List<Message> all = log.get(0, Integer.MAX_VALUE, EnumSet.allOf(Level.class));
+		Assert.assertEquals(33, all.size());
+		int previous = -1;
+		for (Message msg : all) {
+			Assert.assertTrue(msg.getSequence() >= previous);
+			previous = msg.getSequence();
+		}
+		//after the messages with the same sequence number that arrived before
+		Assert.assertEquals("message 1", all.get(1).getText());
+		Assert.assertEquals("late 1", all.get(2).getText());
+		List<Message> msgs = log.get(1, 13, EnumSet.of(Level.ERROR, Level.INFO));
+		//late 1, 2, 3, 5, 6, 8, 9, 11, 12, late 12
+		Assert.assertEquals(10, msgs.size());
+		Assert.assertEquals("late 1", msgs.get(0).getText());
+		Assert.assertEquals("late 12", msgs.get(9).getText());
+		msgs = log.get(30, Integer.MAX_VALUE, EnumSet.of(Level.ERROR));
+		Assert.assertEquals(1, msgs.size());
+		Assert.assertEquals("message 30", msgs.get(0).getText());
+	}
+
+	@Test
+	public void emptyRange() {
+		Assert.assertTrue(log.get(30, Integer.MAX_VALUE, EnumSet.allOf(Level.class)).isEmpty());
+		Assert.assertTrue(log.get(5, 5, EnumSet.allOf(Level.class)).isEmpty());
+		Assert.assertTrue(log.get(0, 30, EnumSet.of(Level.DEBUG)).isEmpty());
+	}
+}
@@ -0,0 +1,312 @@
+package org.daisy.pipeline.push.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.Job.Status;
+import org.daisy.pipeline.webserviceutils.Properties;
+import org.daisy.pipeline.webserviceutils.callback.Callback;
+import org.daisy.pipeline.webserviceutils.callback.Callback.CallbackType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Delivers the updates of the callbacks from a pool of threads.
+ *
+ * Updates of a callback that are not sent yet are merged: the last status
+ * replaces the previous ones and new messages are appended to the pending
+ * ones, so that a callback gets at most one request at a time however many
+ * updates were posted meanwhile. At most {@code maxPerEndpoint} requests are
+ * sent at once to the same host, so that a slow receiver only delays its own
+ * callbacks. Failed requests are retried with an exponential back-off.
+ */
+final class CallbackDispatcher {
+
+        private static final Logger logger = LoggerFactory.getLogger(CallbackDispatcher.class);
+
+        /**
+         * Sends an update to a callback.
+         */
+        interface Sender {
+
+                /**
+                 * @throws IOException if the update could not be delivered and
+                 *         can be retried
+                 */
+                void postStatus(Job job, Status status, Callback callback) throws IOException;
+
+                /**
+                 * @throws IOException if the update could not be delivered and
+                 *         can be retried
+                 */
+                void postMessages(Job job, List<Message> messages, Callback callback) throws IOException;
+        }
+
+        private static final Sender POSTER = new Sender() {
+                @Override
+                public void postStatus(Job job, Status status, Callback callback) throws IOException {
+                        Poster.postStatusUpdate(job, status, callback);
+                }
+
+                @Override
+                public void postMessages(Job job, List<Message> messages, Callback callback) throws IOException {
+                        Poster.postMessage(job, messages, callback);
+                }
+        };
+
+        private final Sender sender;
+        private final ExecutorService executor;
+        private final ScheduledExecutorService retries;
+        private final int maxPerEndpoint;
+        private final int maxAttempts;
+        private final long backoff;
+
+        /** The updates waiting to be sent, per callback */
+        private final Map<Callback, Update> pending = Maps.newHashMap();
+        /** The callbacks being sent or waiting to be retried */
+        private final Set<Callback> inFlight = Sets.newHashSet();
+        private final Map<String, Endpoint> endpoints = Maps.newHashMap();
+
+        /**
+         * @param threads the number of requests sent at once
+         * @param maxPerEndpoint the number of requests sent at once to the same host
+         * @param maxAttempts the number of times a request is tried
+         * @param backoff the time (in ms) before the first retry, doubled at every retry
+         */
+        CallbackDispatcher(int threads, int maxPerEndpoint, int maxAttempts, long backoff) {
+                this(POSTER, threads, maxPerEndpoint, maxAttempts, backoff);
+        }
+
+        /**
+         * @param sender sends the updates, instead of posting them over HTTP
+         */
+        CallbackDispatcher(Sender sender, int threads, int maxPerEndpoint, int maxAttempts, long backoff) {
+                this.sender = sender;
+                this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("push-notifier"));
+                this.retries = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("push-notifier-retry"));
+                this.maxPerEndpoint = maxPerEndpoint;
+                this.maxAttempts = maxAttempts;
+                this.backoff = backoff;
+        }
+
+        /**
+         * Creates a new dispatcher configured from the system properties.
+         */
+        static CallbackDispatcher fromProperties() {
+                return new CallbackDispatcher(
+                                Integer.valueOf(Properties.PUSH_THREADS.get("8")),
+                                Integer.valueOf(Properties.PUSH_MAX_PER_HOST.get("2")),
+                                Integer.valueOf(Properties.PUSH_RETRIES.get("3")) + 1,
+                                1000);
+        }
+
+        synchronized void postStatus(Job job, Status status, Callback callback) {
+                Update update = pending(job, callback);
+                update.status = status;
+                dispatch(update.endpoint);
+        }
+
+        synchronized void postMessages(Job job, List<Message> messages, Callback callback) {
+                Update update = pending(job, callback);
+                update.messages.addAll(messages);
+                dispatch(update.endpoint);
+        }
+
+        /**
+         * Stops sending updates, waiting a little for the requests being sent.
+         */
+        void close() {
+                retries.shutdownNow();
+                executor.shutdown();
+                try {
+                        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                                executor.shutdownNow();
+                        }
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+                synchronized (this) {
+                        if (!pending.isEmpty()) {
+                                logger.info(String.format("%d callback updates not sent", pending.size()));
+                        }
+                }
+        }
+
+        private Update pending(Job job, Callback callback) {
+                Update update = pending.get(callback);
+                if (update == null) {
+                        update = new Update(callback, endpoint(callback.getHref()));
+                        pending.put(callback, update);
+                        update.endpoint.queue.add(update);
+                }
+                update.job = job;
+                return update;
+        }
+
+        private Endpoint endpoint(URI href) {
+                String key = href.getScheme() + "://" + href.getHost() + ":" + href.getPort();
+                Endpoint endpoint = endpoints.get(key);
+                if (endpoint == null) {
+                        endpoint = new Endpoint(key);
+                        endpoints.put(key, endpoint);
+                }
+                return endpoint;
+        }
+
+        /**
+         * Sends the queued updates of an endpoint as long as it has free slots,
+         * skipping the callbacks that already have a request going on so that
+         * the updates of a callback are received in order.
+         */
+        private void dispatch(Endpoint endpoint) {
+                Iterator<Update> updates = endpoint.queue.iterator();
+                while (endpoint.active < maxPerEndpoint && updates.hasNext()) {
+                        final Update update = updates.next();
+                        if (inFlight.contains(update.callback)) {
+                                continue;
+                        }
+                        updates.remove();
+                        pending.remove(update.callback);
+                        inFlight.add(update.callback);
+                        endpoint.active++;
+                        try {
+                                executor.execute(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                                send(update);
+                                        }
+                                });
+                        } catch (RuntimeException e) {
+                                // the dispatcher is closed
+                                endpoint.active--;
+                                inFlight.remove(update.callback);
+                                return;
+                        }
+                }
+                if (endpoint.active == 0 && endpoint.queue.isEmpty()) {
+                        endpoints.remove(endpoint.key);
+                }
+        }
+
+        private void send(Update update) {
+                IOException error = null;
+                try {
+                        if (update.callback.getType() == CallbackType.STATUS) {
+                                sender.postStatus(update.job, update.status, update.callback);
+                        } else {
+                                sender.postMessages(update.job, update.messages, update.callback);
+                        }
+                } catch (IOException e) {
+                        error = e;
+                } catch (RuntimeException e) {
+                        logger.error(String.format("Error posting to %s", update.callback.getHref()), e);
+                }
+                done(update, error);
+        }
+
+        private synchronized void done(final Update update, IOException error) {
+                update.endpoint.active--;
+                update.attempts++;
+                if (error != null && update.attempts < maxAttempts) {
+                        long delay = backoff << (update.attempts - 1);
+                        logger.debug(String.format("Posting to %s failed (%s), retrying in %d ms",
+                                        update.callback.getHref(), error.getMessage(), delay));
+                        try {
+                                retries.schedule(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                                retry(update);
+                                        }
+                                }, delay, TimeUnit.MILLISECONDS);
+                        } catch (RuntimeException e) {
+                                inFlight.remove(update.callback);
+                        }
+                } else {
+                        if (error != null) {
+                                logger.warn(String.format("Posting to %s failed %d times, update dropped: %s",
+                                                update.callback.getHref(), update.attempts, error.getMessage()));
+                        }
+                        inFlight.remove(update.callback);
+                }
+                dispatch(update.endpoint);
+        }
+
+        /**
+         * Queues a failed update again, merged with the newer updates of the
+         * callback if there are.
+         */
+        private synchronized void retry(Update update) {
+                inFlight.remove(update.callback);
+                Update newer = pending.get(update.callback);
+                if (newer == null) {
+                        pending.put(update.callback, update);
+                        update.endpoint = endpoint(update.callback.getHref());
+                        update.endpoint.queue.addFirst(update);
+                        newer = update;
+                } else {
+                        newer.messages.addAll(0, update.messages);
+                        if (newer.status == null) {
+                                newer.status = update.status;
+                        }
+                        newer.attempts = update.attempts;
+                }
+                dispatch(newer.endpoint);
+        }
+
+        private static final class Update {
+                final Callback callback;
+                Endpoint endpoint;
+                Job job;
+                Status status;
+                final List<Message> messages = Lists.newArrayList();
+                int attempts = 0;
+
+                Update(Callback callback, Endpoint endpoint) {
+                        this.callback = callback;
+                        this.endpoint = endpoint;
+                }
+        }
+
+        private static final class Endpoint {
+                final String key;
+                final LinkedList<Update> queue = Lists.newLinkedList();
+                int active = 0;
+
+                Endpoint(String key) {
+                        this.key = key;
+                }
+        }
+
+        private static final class NamedThreadFactory implements ThreadFactory {
+                private final String prefix;
+                private final AtomicInteger count = new AtomicInteger();
+
+                NamedThreadFactory(String prefix) {
+                        this.prefix = prefix;
+                }
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                }
+        }
+}
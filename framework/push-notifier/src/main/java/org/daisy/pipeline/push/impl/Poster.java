@@ -1,10 +1,10 @@
 package org.daisy.pipeline.push.impl;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.ProtocolException;
 import java.net.URI;
 import java.util.List;
 
@@ -13,6 +13,7 @@ import org.daisy.pipeline.clients.Client;
 import org.daisy.pipeline.job.Job;
 import org.daisy.pipeline.job.Job.Status;
 import org.daisy.pipeline.webserviceutils.Authenticator;
+import org.daisy.pipeline.webserviceutils.Properties;
 import org.daisy.pipeline.webserviceutils.callback.Callback;
 import org.daisy.pipeline.webserviceutils.xml.JobXmlWriter;
 import org.daisy.pipeline.webserviceutils.xml.XmlUtils;
@@ -21,12 +22,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
+/**
+ * Sends the updates of a job to a callback.
+ *
+ * The document is serialised straight to the connection, and the response is
+ * read to the end so that the connection is kept alive and reused for the next
+ * requests to the same host.
+ */
 public class Poster {
 
 	/** The logger. */
 	private static Logger logger = LoggerFactory.getLogger(Poster.class.getName());
 
-	public static void postMessage(Job job, List<Message> messages, Callback callback) {
+	/** Connect and read timeout, in milliseconds */
+	private static final int TIMEOUT = Integer.valueOf(Properties.PUSH_TIMEOUT.get("30000"));
+
+	private static final int CHUNK_SIZE = 8192;
+
+	public static void postMessage(Job job, List<Message> messages, Callback callback) throws IOException {
 		logger.debug("Posting message");
 		URI url = callback.getHref();
 		JobXmlWriter writer = XmlWriterFactory.createXmlWriterForJob(job);
@@ -36,7 +49,7 @@ public class Poster {
 		postXml(doc, url, callback.getClient());
 	}
 
-	public static void postStatusUpdate(Job job, Status status,Callback callback) {
+	public static void postStatusUpdate(Job job, Status status,Callback callback) throws IOException {
 		URI url = callback.getHref();
 		JobXmlWriter writer = XmlWriterFactory.createXmlWriterForJob(job);
 		writer.overwriteStatus(status);
@@ -44,70 +57,53 @@ public class Poster {
 		postXml(doc, url, callback.getClient());
 	}
 
-	private static void postXml(Document doc, URI url, Client client) {
-		//System.out.println(XmlUtils.DOMToString(doc));
+	/**
+	 * @throws IOException if the request could not be sent or the receiver
+	 *         failed to handle it (5xx), in which case it can be retried
+	 */
+	private static void postXml(Document doc, URI url, Client client) throws IOException {
+		if (logger.isTraceEnabled()) {
+			logger.trace("Posting XML: " + XmlUtils.DOMToString(doc));
+		}
 
 		URI requestUri = url;
 		if (client != null) {
 			requestUri = Authenticator.createUriWithCredentials(url.toString(), client);
 		}
 
-		// from http://code.geek.sh/2009/10/simple-post-in-java/
-		HttpURLConnection connection = null;
-        try {
-            connection = (HttpURLConnection) requestUri.toURL().openConnection();
-        } catch (IOException e) {
-        	logger.error(e.getMessage());
-			return;
-        }
-
-        connection.setDoInput (true);
-        connection.setDoOutput (true);
-        connection.setUseCaches (false);
-
-        try {
-            connection.setRequestMethod("POST");
-        } catch (ProtocolException e) {
-        	logger.error(e.getMessage());
-        	return;
-        }
-
-        try {
-            connection.connect();
-        } catch (IOException e) {
-        	logger.error(e.getMessage());
-        	return;
-        }
-
-        DataOutputStream output = null;
-        DataInputStream input = null;
-
-        try {
-            output = new DataOutputStream(connection.getOutputStream());
-        } catch (IOException e) {
-        	logger.error(e.getMessage());
-        	return;
-        }
-
-        // Send the request data.
-        try {
-	logger.debug("Posting XML: "+XmlUtils.DOMToString(doc));
-            output.writeBytes(XmlUtils.DOMToString(doc));
-            output.flush();
-            output.close();
-        } catch (IOException e) {
-        	logger.error(e.getMessage());
-        	return;
-        }
+		HttpURLConnection connection = (HttpURLConnection) requestUri.toURL().openConnection();
+		connection.setDoInput(true);
+		connection.setDoOutput(true);
+		connection.setUseCaches(false);
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		connection.setChunkedStreamingMode(CHUNK_SIZE);
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/xml; charset=UTF-8");
+
+		// Send the request data.
+		OutputStream output = new BufferedOutputStream(connection.getOutputStream(), CHUNK_SIZE);
+		try {
+			XmlUtils.DOMToStream(doc, output);
+		} finally {
+			output.close();
+		}
 
-        // Get response data. We're not doing anything with it but if we don't retrieve it, the callback doesn't appear to work.
-        try {
-            input = new DataInputStream (connection.getInputStream());
-            input.close ();
-        } catch (IOException e) {
-        	logger.warn(e.getMessage());
-        }
+		// Read the whole response, otherwise the connection can't be reused.
+		int code = connection.getResponseCode();
+		InputStream input = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (input != null) {
+			try {
+				byte[] buffer = new byte[1024];
+				while (input.read(buffer) >= 0);
+			} finally {
+				input.close();
+			}
+		}
+		if (code >= 500) {
+			throw new IOException(String.format("%s responded %d", url, code));
+		} else if (code >= 400) {
+			logger.warn(String.format("%s responded %d", url, code));
+		}
 	}
-
-
 }
@@ -1,12 +1,7 @@
 package org.daisy.pipeline.push.impl;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -31,13 +26,14 @@ import org.slf4j.LoggerFactory;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 
 // notify clients whenever there are new messages or a change in status
 // this class could evolve into a general notification utility
 // e.g. it could also trigger email notifications
-// TODO: be sure to only do this N times per second
+// the updates of every interval are handed over to the CallbackDispatcher,
+// which merges them with the ones not sent yet
 public class PushNotifier {
 
 
@@ -45,6 +41,7 @@ public class PushNotifier {
         private EventBusProvider eventBusProvider;
         private JobManagerFactory jobManagerFactory;
         private ClientStorage clientStorage;
+        private CallbackDispatcher dispatcher;
 
         private Supplier<JobManager> jobManager= new Supplier<JobManager>() {
 
@@ -59,9 +56,9 @@ public class PushNotifier {
         // for now: push notifications every second. TODO: support different frequencies.
         final int PUSH_INTERVAL = 1000;
 
-        // track the starting point in the message sequence for every timed push
-        private MessageList messages = new MessageList();
-        private List<StatusHolder> statusList= Collections.synchronizedList(new LinkedList<StatusHolder>());
+        // the messages and last status of every job since the last push, guarded by this
+        private Map<JobId, List<Message>> messages = Maps.newLinkedHashMap();
+        private Map<JobId, StatusHolder> statuses = Maps.newLinkedHashMap();
 
         Timer timer = null;
 
@@ -69,17 +66,23 @@ public class PushNotifier {
         }
 
         public void init(BundleContext context) {
-                logger = LoggerFactory.getLogger(Poster.class.getName());
+                dispatcher = CallbackDispatcher.fromProperties();
                 this.startTimer();
 
         }
 
         public void close() {
+                if (eventBusProvider != null) {
+                        eventBusProvider.unregister(this);
+                }
                 cancelTimer();
+                if (dispatcher != null) {
+                        dispatcher.close();
+                }
         }
 
         public synchronized void startTimer() {
-                timer = new Timer();
+                timer = new Timer("push-notifier-timer", true);
                 timer.schedule(new NotifyTask(), 0, PUSH_INTERVAL);
         }
         public synchronized void cancelTimer() {
@@ -91,7 +94,8 @@ public class PushNotifier {
 
         public void setEventBusProvider(EventBusProvider eventBusProvider) {
                 this.eventBusProvider = eventBusProvider;
-                this.eventBusProvider.get().register(this);
+                // keep the job threads out of the notifier's locks
+                this.eventBusProvider.registerAsync(this, "push-notifier");
         }
 
         /**
@@ -111,11 +115,16 @@ public class PushNotifier {
         }
 
         @Subscribe
-        public synchronized void handleMessage(Message msg) {
+        public void handleMessage(Message msg) {
                 JobUUIDGenerator gen = new JobUUIDGenerator();
                 JobId jobId = gen.generateIdFromString(msg.getJobId());
-                synchronized(this.messages){
-                        messages.addMessage(jobId, msg);
+                synchronized (this) {
+                        List<Message> list = messages.get(jobId);
+                        if (list == null) {
+                                list = Lists.newArrayList();
+                                messages.put(jobId, list);
+                        }
+                        list.add(msg);
                 }
         }
 
@@ -128,8 +137,10 @@ public class PushNotifier {
                 if(job.isPresent()){
                         holder.job=job.get();
                 }
-                statusList.add(holder);
-
+                synchronized (this) {
+                        // only the last status of the interval is sent
+                        statuses.put(message.getJobId(), holder);
+                }
         }
 
 
@@ -139,107 +150,53 @@ public class PushNotifier {
                 }
 
                 @Override
-                public synchronized void run() {
-                        postMessages();
-                        postStatus();
-                }
-                private void postStatus() {
-                        //logger.debug("Posting messages");
-                        List<StatusHolder> toPost=Lists.newLinkedList();
-                        synchronized(PushNotifier.this.statusList){
-                                toPost.addAll(PushNotifier.this.statusList);    
-                                PushNotifier.this.statusList.clear();
+                public void run() {
+                        Map<JobId, List<Message>> toPost;
+                        Map<JobId, StatusHolder> statusToPost;
+                        synchronized (PushNotifier.this) {
+                                toPost = messages;
+                                statusToPost = statuses;
+                                messages = Maps.newLinkedHashMap();
+                                statuses = Maps.newLinkedHashMap();
                         }
-                        for (StatusHolder holder: toPost) {
-                                logger.debug("Posting status for "+holder.job.getId());
+                        try {
+                                postMessages(toPost);
+                                postStatus(statusToPost);
+                        } catch (RuntimeException e) {
+                                logger.error("Error posting job updates", e);
+                        }
+                }
+                private void postStatus(Map<JobId, StatusHolder> toPost) {
+                        for (StatusHolder holder: toPost.values()) {
                                 Job job = holder.job;
-
+                                if (job == null) {
+                                        continue;
+                                }
                                 for (Callback callback :callbackRegistry.getCallbacks(job.getContext().getId())) {
                                         if (callback.getType() == CallbackType.STATUS) {
-                                                Poster.postStatusUpdate(job, holder.status, callback);
+                                                dispatcher.postStatus(job, holder.status, callback);
                                         }
                                 }
                         }
 
                 }
-                private synchronized void postMessages() {
-                        synchronized(PushNotifier.this.messages){
-                                for (JobId jobId : messages.getJobs()) {
-                                        Optional<Job> job = jobManager.get().getJob(jobId);
-                                        if(!job.isPresent()){
-                                                break;
-                                        }
-                                        for (Callback callback : callbackRegistry.getCallbacks(jobId)) {
-                                                if (callback.getType() == CallbackType.MESSAGES) {
-                                                        Poster.postMessage(job.get(), new LinkedList<Message>(messages.getMessages(jobId)), callback);
-                                                }
-                                        }
+                private void postMessages(Map<JobId, List<Message>> toPost) {
+                        for (Map.Entry<JobId, List<Message>> entry : toPost.entrySet()) {
+                                JobId jobId = entry.getKey();
+                                Optional<Job> job = jobManager.get().getJob(jobId);
+                                if(!job.isPresent()){
                                         //I don't mind noone listening for the messages they will be discarded anyway...
-                                        messages.removeJob(jobId);
+                                        continue;
+                                }
+                                for (Callback callback : callbackRegistry.getCallbacks(jobId)) {
+                                        if (callback.getType() == CallbackType.MESSAGES) {
+                                                dispatcher.postMessages(job.get(), entry.getValue(), callback);
+                                        }
                                 }
                         }
-
-                        // no need to keep the timer going if there are no more messages
-                        // however, this doesn't really work. TODO fix it.
-                        /*if (messages.isEmpty()) {
-                          System.out.println("Cancelling timer");
-                          cancelTimer();
-                          }*/
                 }
         }
 
-        private class MessageList {
-                HashMap<JobId, List<Message>> messages;
-
-                public MessageList() {
-                        messages = new HashMap<JobId, List<Message>>();
-                }
-                public synchronized List<Message> getMessages(JobId jobId) {
-                        return messages.get(jobId);
-                }
-                public synchronized MessageList copy(){
-                        MessageList copy=new MessageList();     
-                        for (Map.Entry<JobId,List<Message>> entry:this.messages.entrySet()){
-                                copy.messages.put(entry.getKey(),new LinkedList<Message>(entry.getValue()));    
-                        }
-                        return copy;
-                }
-
-                public synchronized void addMessage(JobId jobId, Message msg) {
-                        List<Message> list;
-                        if (containsJob(jobId)) {
-                                list = messages.get(jobId);
-                        }
-                        else {
-                                list = new ArrayList<Message>();
-                                messages.put(jobId, list);
-                        }
-                        list.add(msg);
-                }
-                public synchronized Set<JobId> getJobs() {
-                        return Sets.newHashSet(messages.keySet());
-                }
-
-                public synchronized void removeJob(JobId jobId) {
-                        messages.remove(jobId);
-                }
-
-                public synchronized boolean containsJob(JobId jobId) {
-                        return messages.containsKey(jobId);
-                }
-
-                public synchronized boolean isEmpty() {
-                        return messages.isEmpty();
-                }
-
-                // for debugging
-                public synchronized void printList(JobId jobId) {
-                        for (Message msg : messages.get(jobId)) {
-                                System.out.println("#" + msg.getSequence() + ", job #" + msg.getJobId());
-                        }
-                }
-        }
-        
         /*
          * In order to not lose the reference 
          * to the job if it's been deleted
@@ -0,0 +1,244 @@
+package org.daisy.pipeline.push.impl;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.daisy.common.messaging.Message;
+import org.daisy.common.messaging.Message.MessageBuilder;
+import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.Job.Status;
+import org.daisy.pipeline.webserviceutils.callback.Callback;
+import org.daisy.pipeline.webserviceutils.callback.Callback.CallbackType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class CallbackDispatcherTest {
+
+        private static final Job JOB = null;
+
+        /**
+         * Records the updates it is asked to send, as "name:content". Requests
+         * can be held back, and made to fail, per callback.
+         */
+        private static class RecordingSender implements CallbackDispatcher.Sender {
+
+                final List<String> sent = Lists.newArrayList();
+                final Map<Callback, CountDownLatch> held = new ConcurrentHashMap<Callback, CountDownLatch>();
+                final Map<Callback, Exception> failures = new ConcurrentHashMap<Callback, Exception>();
+                final Set<Callback> sending = Sets.newHashSet();
+                volatile boolean concurrent = false;
+
+                @Override
+                public void postStatus(Job job, Status status, Callback callback) throws IOException {
+                        send(callback, status.toString());
+                }
+
+                @Override
+                public void postMessages(Job job, List<Message> messages, Callback callback) throws IOException {
+                        List<String> texts = Lists.newArrayList();
+                        for (Message message : messages) {
+                                texts.add(message.getText());
+                        }
+                        send(callback, Joiner.on(',').join(texts));
+                }
+
+                private void send(Callback callback, String content) throws IOException {
+                        //how the request ends is decided when it starts
+                        Exception failure = failures.get(callback);
+                        synchronized (this) {
+                                if (!sending.add(callback)) {
+                                        concurrent = true;
+                                }
+                                sent.add(name(callback) + ":" + content);
+                                notifyAll();
+                        }
+                        try {
+                                CountDownLatch latch = held.get(callback);
+                                if (latch != null) {
+                                        latch.await(10, TimeUnit.SECONDS);
+                                }
+                                if (failure instanceof IOException) {
+                                        throw (IOException) failure;
+                                } else if (failure != null) {
+                                        throw (RuntimeException) failure;
+                                }
+                        } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                        } finally {
+                                synchronized (this) {
+                                        sending.remove(callback);
+                                }
+                        }
+                }
+
+                CountDownLatch hold(Callback callback) {
+                        CountDownLatch latch = new CountDownLatch(1);
+                        held.put(callback, latch);
+                        return latch;
+                }
+
+                synchronized void awaitSent(int count) throws InterruptedException {
+                        long end = System.currentTimeMillis() + 5000;
+                        while (sent.size() < count && System.currentTimeMillis() < end) {
+                                wait(50);
+                        }
+                        Assert.assertTrue("only sent " + sent, sent.size() >= count);
+                }
+
+                synchronized List<String> sent() {
+                        return Lists.newArrayList(sent);
+                }
+        }
+
+        private RecordingSender sender = new RecordingSender();
+        private CallbackDispatcher dispatcher;
+
+        @After
+        public void close() {
+                if (dispatcher != null) {
+                        dispatcher.close();
+                }
+        }
+
+        private static Callback callback(String host, String name, CallbackType type) {
+                return new Callback(null, null, URI.create("http://" + host + "/" + name), type, 1);
+        }
+
+        private static String name(Callback callback) {
+                return callback.getHref().getPath().substring(1);
+        }
+
+        private static List<Message> messages(String... texts) {
+                List<Message> messages = Lists.newArrayList();
+                for (String text : texts) {
+                        messages.add(new MessageBuilder().withText(text).build());
+                }
+                return messages;
+        }
+
+        /**
+         * Waits a little for requests that should not be sent.
+         */
+        private void settle() throws InterruptedException {
+                Thread.sleep(200);
+        }
+
+        @Test
+        public void updatesOfACallbackAreMergedInOrder() throws Exception {
+                dispatcher = new CallbackDispatcher(sender, 4, 4, 1, 10);
+                Callback status = callback("host", "status", CallbackType.STATUS);
+                Callback messages = callback("host", "messages", CallbackType.MESSAGES);
+                CountDownLatch statusLatch = sender.hold(status);
+                CountDownLatch messagesLatch = sender.hold(messages);
+                dispatcher.postStatus(JOB, Status.IDLE, status);
+                dispatcher.postMessages(JOB, messages("1"), messages);
+                sender.awaitSent(2);
+                //the first requests are going on, the next updates wait and are merged
+                dispatcher.postStatus(JOB, Status.RUNNING, status);
+                dispatcher.postMessages(JOB, messages("2"), messages);
+                dispatcher.postStatus(JOB, Status.DONE, status);
+                dispatcher.postMessages(JOB, messages("3", "4"), messages);
+                settle();
+                Assert.assertEquals(2, sender.sent().size());
+                sender.held.clear();
+                statusLatch.countDown();
+                messagesLatch.countDown();
+                sender.awaitSent(4);
+                settle();
+                List<String> sent = sender.sent();
+                Assert.assertEquals(4, sent.size());
+                Assert.assertTrue(sent.indexOf("status:IDLE") < sent.indexOf("status:DONE"));
+                Assert.assertTrue(sent.indexOf("messages:1") < sent.indexOf("messages:2,3,4"));
+                Assert.assertFalse(sender.concurrent);
+        }
+
+        @Test
+        public void failedUpdateIsRetriedBeforeNewerOnes() throws Exception {
+                dispatcher = new CallbackDispatcher(sender, 4, 4, 2, 10);
+                Callback messages = callback("host", "messages", CallbackType.MESSAGES);
+                CountDownLatch latch = sender.hold(messages);
+                sender.failures.put(messages, new IOException("unavailable"));
+                dispatcher.postMessages(JOB, messages("1", "2"), messages);
+                sender.awaitSent(1);
+                dispatcher.postMessages(JOB, messages("3"), messages);
+                sender.held.clear();
+                sender.failures.clear();
+                latch.countDown();
+                sender.awaitSent(2);
+                settle();
+                Assert.assertEquals(Arrays.asList("messages:1,2", "messages:1,2,3"), sender.sent());
+        }
+
+        @Test
+        public void failingCallbackDoesNotAffectTheOthers() throws Exception {
+                dispatcher = new CallbackDispatcher(sender, 2, 1, 3, 10);
+                Callback failing = callback("host", "failing", CallbackType.STATUS);
+                Callback broken = callback("host", "broken", CallbackType.STATUS);
+                Callback working = callback("host", "working", CallbackType.STATUS);
+                sender.failures.put(failing, new IOException("unavailable"));
+                sender.failures.put(broken, new IllegalStateException("bug"));
+                dispatcher.postStatus(JOB, Status.RUNNING, failing);
+                dispatcher.postStatus(JOB, Status.RUNNING, broken);
+                dispatcher.postStatus(JOB, Status.RUNNING, working);
+                sender.awaitSent(5);
+                settle();
+                List<String> sent = sender.sent();
+                //retried until the maximum number of attempts
+                Assert.assertEquals(3, countOf(sent, "failing:RUNNING"));
+                //not retried
+                Assert.assertEquals(1, countOf(sent, "broken:RUNNING"));
+                Assert.assertEquals(1, countOf(sent, "working:RUNNING"));
+                Assert.assertEquals(5, sent.size());
+                //the callbacks that failed are still served
+                sender.failures.clear();
+                dispatcher.postStatus(JOB, Status.DONE, failing);
+                dispatcher.postStatus(JOB, Status.DONE, broken);
+                dispatcher.postStatus(JOB, Status.DONE, working);
+                sender.awaitSent(8);
+                settle();
+                sent = sender.sent();
+                Assert.assertEquals(8, sent.size());
+                Assert.assertTrue(sent.containsAll(Arrays.asList("failing:DONE", "broken:DONE", "working:DONE")));
+        }
+
+        @Test
+        public void slowHostOnlyDelaysItsOwnCallbacks() throws Exception {
+                dispatcher = new CallbackDispatcher(sender, 4, 1, 1, 10);
+                Callback slow = callback("slow", "a", CallbackType.STATUS);
+                Callback sameHost = callback("slow", "b", CallbackType.STATUS);
+                Callback otherHost = callback("fast", "c", CallbackType.STATUS);
+                CountDownLatch latch = sender.hold(slow);
+                dispatcher.postStatus(JOB, Status.RUNNING, slow);
+                sender.awaitSent(1);
+                dispatcher.postStatus(JOB, Status.RUNNING, sameHost);
+                dispatcher.postStatus(JOB, Status.RUNNING, otherHost);
+                sender.awaitSent(2);
+                settle();
+                Assert.assertEquals(Arrays.asList("a:RUNNING", "c:RUNNING"), sender.sent());
+                latch.countDown();
+                sender.awaitSent(3);
+                Assert.assertEquals(Arrays.asList("a:RUNNING", "c:RUNNING", "b:RUNNING"), sender.sent());
+        }
+
+        private static int countOf(List<String> list, String item) {
+                int count = 0;
+                for (String s : list) {
+                        if (s.equals(item)) {
+                                count++;
+                        }
+                }
+                return count;
+        }
+}
@@ -14,9 +14,21 @@ public enum Properties {
 	SSL_KEYSTORE("org.daisy.pipeline.ws.ssl.keystore"),
 	SSL_KEYSTOREPASSWORD("org.daisy.pipeline.ws.ssl.keystorepassword"),
 	CLEAN_UP_ON_START_UP("org.daisy.pipeline.ws.cleanuponstartup"),
+	RESULTS_CACHE("org.daisy.pipeline.ws.resultscache"),
 	SSL_KEYPASSWORD("org.daisy.pipeline.ws.ssl.keypassword"),
 	CLIENT_KEY("org.daisy.pipeline.ws.authentication.key"),
-	CLIENT_SECRET("org.daisy.pipeline.ws.authentication.secret");
+	CLIENT_SECRET("org.daisy.pipeline.ws.authentication.secret"),
+	PUSH_THREADS("org.daisy.pipeline.ws.push.threads"),
+	PUSH_MAX_PER_HOST("org.daisy.pipeline.ws.push.maxperhost"),
+	PUSH_RETRIES("org.daisy.pipeline.ws.push.retries"),
+	PUSH_TIMEOUT("org.daisy.pipeline.ws.push.timeout"),
+	JANITOR_INTERVAL("org.daisy.pipeline.ws.janitor.interval"),
+	JANITOR_BATCH_SIZE("org.daisy.pipeline.ws.janitor.batchsize"),
+	JANITOR_MAX_AGE("org.daisy.pipeline.ws.janitor.maxage"),
+	JANITOR_MAX_JOBS("org.daisy.pipeline.ws.janitor.maxjobs"),
+	JANITOR_MAX_BYTES("org.daisy.pipeline.ws.janitor.maxbytes"),
+	JANITOR_CLIENT_MAX_JOBS("org.daisy.pipeline.ws.janitor.client.maxjobs"),
+	JANITOR_CLIENT_MAX_BYTES("org.daisy.pipeline.ws.janitor.client.maxbytes");
 
 	private final String key;
 	
@@ -1,9 +1,13 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.List;
 
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.daisy.common.messaging.Message;
 import org.daisy.common.messaging.Message.Level;
@@ -17,7 +21,7 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-public class JobXmlWriter {
+public class JobXmlWriter implements StreamingXmlWriter {
         
         private Job job = null;
         private List<Message> messages = null;
@@ -50,12 +54,42 @@ public class JobXmlWriter {
                 return jobToXmlDocument();
         }
 
+        /**
+         * Writes the job document to the stream without building a DOM.
+         */
+        @Override
+        public void writeXml(OutputStream os) throws IOException {
+                try {
+                        XMLStreamWriter writer = XmlUtils.createStreamWriter(os);
+                        writer.writeStartDocument("UTF-8", "1.0");
+                        write(writer, true);
+                        writer.writeEndDocument();
+                        writer.close();
+                } catch (XMLStreamException e) {
+                        throw new IOException("Error writing job " + job.getId(), e);
+                }
+        }
+
         // instead of creating a standalone XML document, add an element to an existing document
         public void addAsElementChild(Element parent) {
-                Document doc = parent.getOwnerDocument();
-                Element jobElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "job");
-                addElementData(job, jobElm);
-                parent.appendChild(jobElm);
+                try {
+                        XMLStreamWriter writer = XmlUtils.createStreamWriter(parent);
+                        write(writer, false);
+                        writer.close();
+                } catch (XMLStreamException e) {
+                        logger.warn("Error writing job " + job.getId(), e);
+                }
+        }
+
+        /**
+         * Writes the job element.
+         *
+         * @param root whether the element is the document element
+         */
+        void write(XMLStreamWriter writer, boolean root) throws XMLStreamException {
+                XmlUtils.writeStartElement(writer, "job", root);
+                writeElementData(job, writer);
+                writer.writeEndElement();
         }
 
         public JobXmlWriter withScriptDetails() {
@@ -109,9 +143,15 @@ public class JobXmlWriter {
                 this.statusOverWrite=status;
         }
         private Document jobToXmlDocument() {
-                Document doc = XmlUtils.createDom("job");
-                Element jobElm = doc.getDocumentElement();
-                addElementData(job, jobElm);
+                Document doc = XmlUtils.createEmptyDom();
+                try {
+                        XMLStreamWriter writer = XmlUtils.createStreamWriter(doc);
+                        write(writer, true);
+                        writer.close();
+                } catch (XMLStreamException e) {
+                        logger.warn("Error writing job " + job.getId(), e);
+                        return null;
+                }
                 
                 // for debugging only
                 if (!XmlValidator.validate(doc, XmlValidator.JOB_SCHEMA_URL)) {
@@ -121,100 +161,85 @@ public class JobXmlWriter {
                 return doc;
         }
         
-        private void addElementData(Job job, Element element) {
-                Document doc = element.getOwnerDocument();
+        private void writeElementData(Job job, XMLStreamWriter writer) throws XMLStreamException {
                 String baseUri = new Routes().getBaseUri();
                 Job.Status status = (this.statusOverWrite==null)?job.getStatus():this.statusOverWrite;
                 String jobHref = baseUri + Routes.JOB_ROUTE.replaceFirst("\\{id\\}", job.getId().toString());
                 
-                element.setAttribute("id", job.getId().toString());
-                element.setAttribute("href", jobHref);
-                element.setAttribute("status", status.toString());
-                element.setAttribute("priority", job.getPriority().toString().toLowerCase());
+                XmlUtils.writeAttribute(writer, "id", job.getId().toString());
+                XmlUtils.writeAttribute(writer, "href", jobHref);
+                XmlUtils.writeAttribute(writer, "status", status.toString());
+                XmlUtils.writeAttribute(writer, "priority", job.getPriority().toString().toLowerCase());
                 if (this.queuePosition != -1){
-                        element.setAttribute("queue-position",String.format("%d",this.queuePosition));
+                        XmlUtils.writeAttribute(writer, "queue-position",String.format("%d",this.queuePosition));
                 }
 
                 if(!job.getContext().getName().isEmpty()){
-                        Element nicenameElem= doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "nicename");
-                        nicenameElem.setTextContent(job.getContext().getName());
-                        element.appendChild(nicenameElem);
+                        XmlUtils.writeTextElement(writer, "nicename", job.getContext().getName());
                 }
                 if(!job.getContext().getBatchId().toString().isEmpty()){
-                        Element batchId= doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "batchId");
-                        batchId.setTextContent(job.getContext().getBatchId().toString());
-                        element.appendChild(batchId);
+                        XmlUtils.writeTextElement(writer, "batchId", job.getContext().getBatchId().toString());
                 }
 
                 if (scriptDetails) {
                         XProcScript script=job.getContext().getScript();
                         //return if no script was loadeded
                         if(script.getDescriptor()!=null){
-                                ScriptXmlWriter writer = XmlWriterFactory.createXmlWriterForScript(script);
-                                writer.addAsElementChild(element);
+                                ScriptXmlWriter scriptWriter = XmlWriterFactory.createXmlWriterForScript(script);
+                                scriptWriter.write(writer, false);
                         }
                 }
                 
                 if (messages != null && messages.size() > 0) {
-                    Element messagesElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "messages");
-                    element.appendChild(messagesElm);
+                    XmlUtils.writeStartElement(writer, "messages", false);
                     
                     for (Message message : messages) {
-                        Element messageElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "message");
-                        messageElm.setAttribute("level", message.getLevel().toString());
-                        messageElm.setAttribute("sequence", Integer.toString(message.getSequence()));
-                        messageElm.setTextContent(message.getText());
-                        messagesElm.appendChild(messageElm);
+                        XmlUtils.writeStartElement(writer, "message", false);
+                        XmlUtils.writeAttribute(writer, "level", message.getLevel().toString());
+                        XmlUtils.writeAttribute(writer, "sequence", Integer.toString(message.getSequence()));
+                        if (message.getText() != null) {
+                                writer.writeCharacters(message.getText());
+                        }
+                        writer.writeEndElement();
                     }
+                    writer.writeEndElement();
                 }
                 
                 if (job.getStatus() == Job.Status.DONE || job.getStatus() == Job.Status.VALIDATION_FAIL) {
-                        Element logElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "log");
+                        XmlUtils.writeStartElement(writer, "log", false);
                         String logHref = baseUri + Routes.LOG_ROUTE.replaceFirst("\\{id\\}", job.getId().toString());
-                        logElm.setAttribute("href", logHref);
-                        element.appendChild(logElm);
+                        XmlUtils.writeAttribute(writer, "href", logHref);
+                        writer.writeEndElement();
                         if(this.fullResult)
-                                addResults(element);
+                                writeResults(writer);
                 }
         }       
 
-        private void addResults(Element jobElem) {
+        private void writeResults(XMLStreamWriter writer) throws XMLStreamException {
                 //check if there are actual results
                 if (this.job.getContext().getResults()==null){
                         return;
                 }
-                Document doc = jobElem.getOwnerDocument();
                 String baseUri = new Routes().getBaseUri();
-                Element resultsElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "results");
                 String resultHref = baseUri + Routes.RESULT_ROUTE.replaceFirst("\\{id\\}", job.getId().toString());
-                resultsElm.setAttribute("href", resultHref);
-                resultsElm.setAttribute("mime-type", "application/zip");
-                jobElem.appendChild(resultsElm);
+                XmlUtils.writeStartElement(writer, "results", false);
+                XmlUtils.writeAttribute(writer, "href", resultHref);
+                XmlUtils.writeAttribute(writer, "mime-type", "application/zip");
                 //ports
                 for (String port : this.job.getContext().getResults().getPorts()) {
                         if (this.onlyPrimaries && !job.getContext().getScript().getPortMetadata(port).isPrimary()){
                                 continue;
                         }
-                        Element portResultElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "result");
-                        portResultElm.setAttribute("href", String.format("%s/port/%s",resultHref,port));
-                        portResultElm.setAttribute("mime-type", "application/zip");
-                        portResultElm.setAttribute("from", "port");
-                        portResultElm.setAttribute("name", port);
-                        portResultElm.setAttribute("nicename", job.getContext().getScript().getPortMetadata(port).getNiceName());
-                        resultsElm.appendChild(portResultElm);
+                        XmlUtils.writeStartElement(writer, "result", false);
+                        XmlUtils.writeAttribute(writer, "href", String.format("%s/port/%s",resultHref,port));
+                        XmlUtils.writeAttribute(writer, "mime-type", "application/zip");
+                        XmlUtils.writeAttribute(writer, "from", "port");
+                        XmlUtils.writeAttribute(writer, "name", port);
+                        XmlUtils.writeAttribute(writer, "nicename", job.getContext().getScript().getPortMetadata(port).getNiceName());
                         for(JobResult result: this.job.getContext().getResults().getResults(port)){
-                                Element resultElm= doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "result");
-                                resultElm.setAttribute("href", String.format("%s/port/%s/idx/%s",resultHref,port,result.getIdx()));
-                                if(result.getMediaType()!= null && !result.getMediaType().isEmpty()){
-                                        resultElm.setAttribute("mime-type", result.getMediaType());
-                                }
-                                if ( this.localPaths){
-                                        resultElm.setAttribute("file",result.getPath().toString());
-                                }
-                                resultElm.setAttribute("size",
-                                                String.format("%s", result.getSize()));
-                                portResultElm.appendChild(resultElm); 
+                                writeResult(writer, String.format("%s/port/%s/idx/%s",resultHref,port,result.getIdx()), result);
                         }
+                        writer.writeEndElement();
                 }
 
 
@@ -223,30 +248,35 @@ public class JobXmlWriter {
                         if ( this.onlyPrimaries&&  (meta==null || !meta.isPrimary())){
                                 continue;
                         }
-                        Element optionResultElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "result");
-                        optionResultElm.setAttribute("href", String.format("%s/option/%s",resultHref,option));
-                        optionResultElm.setAttribute("mime-type", "application/zip");
-                        optionResultElm.setAttribute("from", "option");
-                        optionResultElm.setAttribute("name", option.toString());
+                        XmlUtils.writeStartElement(writer, "result", false);
+                        XmlUtils.writeAttribute(writer, "href", String.format("%s/option/%s",resultHref,option));
+                        XmlUtils.writeAttribute(writer, "mime-type", "application/zip");
+                        XmlUtils.writeAttribute(writer, "from", "option");
+                        XmlUtils.writeAttribute(writer, "name", option.toString());
                         //in case the script was deleted
                         if (meta!=null){
-                                optionResultElm.setAttribute("nicename", job.getContext().getScript().getOptionMetadata(option).getNiceName());
+                                XmlUtils.writeAttribute(writer, "nicename", meta.getNiceName());
                         }
-                        resultsElm.appendChild(optionResultElm);
                         for(JobResult result: this.job.getContext().getResults().getResults(option)){
-                                Element resultElm= doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "result");
-                                resultElm.setAttribute("href", String.format("%s/option/%s/idx/%s",resultHref,option,result.getIdx()));
-                                if(result.getMediaType()!= null && !result.getMediaType().isEmpty()){
-                                        resultElm.setAttribute("mime-type", result.getMediaType());
-                                }
-                                if ( this.localPaths){
-                                        resultElm.setAttribute("file",result.getPath().toString());
-                                }
-                                resultElm.setAttribute("size",
-                                                String.format("%s", result.getSize()));
-                                optionResultElm.appendChild(resultElm);
+                                writeResult(writer, String.format("%s/option/%s/idx/%s",resultHref,option,result.getIdx()), result);
                         }
+                        writer.writeEndElement();
+                }
+                writer.writeEndElement();
+        }
+
+        private void writeResult(XMLStreamWriter writer, String href, JobResult result) throws XMLStreamException {
+                XmlUtils.writeStartElement(writer, "result", false);
+                XmlUtils.writeAttribute(writer, "href", href);
+                if(result.getMediaType()!= null && !result.getMediaType().isEmpty()){
+                        XmlUtils.writeAttribute(writer, "mime-type", result.getMediaType());
+                }
+                if ( this.localPaths){
+                        XmlUtils.writeAttribute(writer, "file",result.getPath().toString());
                 }
+                XmlUtils.writeAttribute(writer, "size",
+                                String.format("%s", result.getSize()));
+                writer.writeEndElement();
         }
 
                 public void withQueuePosition(int pos) {
@@ -1,13 +1,18 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.daisy.pipeline.job.Job;
 import org.daisy.pipeline.webserviceutils.Routes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-public class JobsXmlWriter {
+public class JobsXmlWriter implements StreamingXmlWriter {
 	
 	Iterable<? extends Job> jobs = null;
 	private static Logger logger = LoggerFactory.getLogger(JobsXmlWriter.class.getName());
@@ -26,21 +31,33 @@ public class JobsXmlWriter {
 		}
 		return jobsToXml(jobs);
 	}
+
+	/**
+	 * Writes the jobs document to the stream without building a DOM, one job
+	 * at a time.
+	 */
+	@Override
+	public void writeXml(OutputStream os) throws IOException {
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(os);
+			writer.writeStartDocument("UTF-8", "1.0");
+			write(writer);
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Error writing jobs", e);
+		}
+	}
 	
 	private Document jobsToXml(Iterable<? extends Job> jobs) {
-		String baseUri = new Routes().getBaseUri();
-		Document doc = XmlUtils.createDom("jobs");
-		Element jobsElm = doc.getDocumentElement();
-		jobsElm.setAttribute("href", baseUri + Routes.JOBS_ROUTE);
-		
-		for (Job job : jobs) {
-			JobXmlWriter writer = new JobXmlWriter(job);
-                        writer.withFullResults(true);
-                        writer.withOnlyPrimaries(true);
-                        if(this.localPaths){
-                                writer.withLocalPaths();
-                        }
-			writer.addAsElementChild(jobsElm);
+		Document doc = XmlUtils.createEmptyDom();
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(doc);
+			write(writer);
+			writer.close();
+		} catch (XMLStreamException e) {
+			logger.warn("Error writing jobs", e);
+			return null;
 		}
 		
 		// for debugging only
@@ -51,6 +68,23 @@ public class JobsXmlWriter {
 		return doc;
 	}
 
+	private void write(XMLStreamWriter writer) throws XMLStreamException {
+		String baseUri = new Routes().getBaseUri();
+		XmlUtils.writeStartElement(writer, "jobs", true);
+		XmlUtils.writeAttribute(writer, "href", baseUri + Routes.JOBS_ROUTE);
+		
+		for (Job job : jobs) {
+			JobXmlWriter jobWriter = new JobXmlWriter(job);
+                        jobWriter.withFullResults(true);
+                        jobWriter.withOnlyPrimaries(true);
+                        if(this.localPaths){
+                                jobWriter.withLocalPaths();
+                        }
+			jobWriter.write(writer, false);
+		}
+		writer.writeEndElement();
+	}
+
         public void withLocalPaths(){
                 this.localPaths=true;
         }
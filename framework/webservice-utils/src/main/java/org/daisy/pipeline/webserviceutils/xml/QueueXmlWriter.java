@@ -1,31 +1,54 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
 import org.daisy.pipeline.job.Job;
 import org.daisy.pipeline.webserviceutils.Routes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-public class QueueXmlWriter{
+public class QueueXmlWriter implements StreamingXmlWriter {
         private static final Logger logger = LoggerFactory.getLogger(QueueXmlWriter.class); 
         Iterable<? extends Prioritizable<Job>> jobs;
+        AdmissionController<Job> admission;
+        Map<Job,Long> reservations;
         /**
          * @param size
          */
         public QueueXmlWriter(Iterable<? extends Prioritizable<Job>> jobs) {
+                this(jobs,null,Collections.<Job,Long>emptyMap());
+        }
+
+        /**
+         * @param jobs the queued jobs
+         * @param admission the admission controller, or null if admission control is disabled
+         * @param reservations the running jobs to list with their reserved cost
+         */
+        public QueueXmlWriter(Iterable<? extends Prioritizable<Job>> jobs,
+                        AdmissionController<Job> admission, Map<Job,Long> reservations) {
                 this.jobs= jobs;
+                this.admission= admission;
+                this.reservations= reservations;
         }
 
         public Document getXmlDocument(){
-                Document doc = XmlUtils.createDom("queue");
-		String baseUri = new Routes().getBaseUri();
-                Element queueElem= doc.getDocumentElement();
-		queueElem.setAttribute("href", baseUri + Routes.QUEUE_ROUTE);
-                for (Prioritizable<Job> job: this.jobs){
-                        addElementData(job, queueElem);
-
+                Document doc = XmlUtils.createEmptyDom();
+                try {
+                        XMLStreamWriter writer = XmlUtils.createStreamWriter(doc);
+                        write(writer);
+                        writer.close();
+                } catch (XMLStreamException e) {
+                        logger.warn("Error writing queue", e);
+                        return null;
                 }
                 
 		// for debugging only
@@ -36,19 +59,67 @@ public class QueueXmlWriter{
                 return doc;
         }
 
-        private void addElementData(Prioritizable<Job> job, Element parent) {
-                Element element= parent.getOwnerDocument().createElementNS(XmlUtils.NS_PIPELINE_DATA, "job");
-                element.setAttribute("id",job.prioritySource().getId().toString());
-                element.setAttribute("href",new Routes().getBaseUri()+"/jobs/"+job.prioritySource().getId().toString());
-                element.setAttribute("computedPriority",String.valueOf(job.getPriority()));
-                element.setAttribute("jobPriority",String.valueOf(job.prioritySource().getPriority()).toLowerCase());
-                element.setAttribute("clientPriority",String.valueOf(job.prioritySource().getContext().getClient().getPriority()).toLowerCase());
-                element.setAttribute("relativeTime",String.valueOf(job.getRelativeWaitingTime()));
-                element.setAttribute("timestamp",String.valueOf(job.getTimestamp()));
-                element.setAttribute("moveUp",new Routes().getBaseUri()+"/queue/up/"+job.prioritySource().getId().toString());
-                element.setAttribute("moveDown",new Routes().getBaseUri()+"/queue/down/"+job.prioritySource().getId().toString());
+        /**
+         * Writes the queue document to the stream without building a DOM.
+         */
+        @Override
+        public void writeXml(OutputStream os) throws IOException {
+                try {
+                        XMLStreamWriter writer = XmlUtils.createStreamWriter(os);
+                        writer.writeStartDocument("UTF-8", "1.0");
+                        write(writer);
+                        writer.writeEndDocument();
+                        writer.close();
+                } catch (XMLStreamException e) {
+                        throw new IOException("Error writing queue", e);
+                }
+        }
+
+        private void write(XMLStreamWriter writer) throws XMLStreamException {
+		String baseUri = new Routes().getBaseUri();
+                XmlUtils.writeStartElement(writer, "queue", true);
+		XmlUtils.writeAttribute(writer, "href", baseUri + Routes.QUEUE_ROUTE);
+                if (this.admission!=null){
+                        XmlUtils.writeAttribute(writer, "budget",String.valueOf(this.admission.getBudget()));
+                        XmlUtils.writeAttribute(writer, "reserved",String.valueOf(this.admission.getReserved()));
+                }
+                for (Prioritizable<Job> job: this.jobs){
+                        writeElementData(job, writer, baseUri);
+
+                }
+                for (Map.Entry<Job,Long> reservation: this.reservations.entrySet()){
+                        writeReservationData(reservation.getKey(),reservation.getValue(),writer, baseUri);
+                }
+                writer.writeEndElement();
+        }
+
+        private void writeElementData(Prioritizable<Job> job, XMLStreamWriter writer, String baseUri) throws XMLStreamException {
+                XmlUtils.writeStartElement(writer, "job", false);
+                XmlUtils.writeAttribute(writer, "id",job.prioritySource().getId().toString());
+                XmlUtils.writeAttribute(writer, "href",baseUri+"/jobs/"+job.prioritySource().getId().toString());
+                XmlUtils.writeAttribute(writer, "computedPriority",String.valueOf(job.getPriority()));
+                XmlUtils.writeAttribute(writer, "jobPriority",String.valueOf(job.prioritySource().getPriority()).toLowerCase());
+                XmlUtils.writeAttribute(writer, "clientPriority",String.valueOf(job.prioritySource().getContext().getClient().getPriority()).toLowerCase());
+                XmlUtils.writeAttribute(writer, "relativeTime",String.valueOf(job.getRelativeWaitingTime()));
+                XmlUtils.writeAttribute(writer, "timestamp",String.valueOf(job.getTimestamp()));
+                XmlUtils.writeAttribute(writer, "moveUp",baseUri+"/queue/up/"+job.prioritySource().getId().toString());
+                XmlUtils.writeAttribute(writer, "moveDown",baseUri+"/queue/down/"+job.prioritySource().getId().toString());
+                if (this.admission!=null){
+                        Long cost=this.admission.getEstimate(job);
+                        if (cost!=null){
+                                XmlUtils.writeAttribute(writer, "estimatedCost",String.valueOf(cost));
+                        }
+                }
                 
-                parent.appendChild(element);
+                writer.writeEndElement();
+
+        }
 
+        private void writeReservationData(Job job, long cost, XMLStreamWriter writer, String baseUri) throws XMLStreamException {
+                XmlUtils.writeStartElement(writer, "reservation", false);
+                XmlUtils.writeAttribute(writer, "id",job.getId().toString());
+                XmlUtils.writeAttribute(writer, "href",baseUri+"/jobs/"+job.getId().toString());
+                XmlUtils.writeAttribute(writer, "cost",String.valueOf(cost));
+                writer.writeEndElement();
         }
 }
@@ -1,5 +1,11 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.daisy.common.xproc.XProcOptionInfo;
 import org.daisy.common.xproc.XProcPortInfo;
 import org.daisy.pipeline.script.XProcOptionMetadata;
@@ -16,7 +22,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
 
-public class ScriptXmlWriter {
+public class ScriptXmlWriter implements StreamingXmlWriter {
 	
 	XProcScript script = null;
 	boolean details = false;
@@ -40,18 +46,54 @@ public class ScriptXmlWriter {
 		return scriptToXmlDocument(script);
 	}
 	
+	/**
+	 * Writes the script document to the stream without building a DOM.
+	 */
+	@Override
+	public void writeXml(OutputStream os) throws IOException {
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(os);
+			writer.writeStartDocument("UTF-8", "1.0");
+			write(writer, true);
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Error writing script " + script.getDescriptor().getId(), e);
+		}
+	}
+
 	// instead of creating a standalone XML document, add an element to an existing document
 	public void addAsElementChild(Element parent) {
-		Document doc = parent.getOwnerDocument();
-		Element scriptElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "script");
-		addElementData(script, scriptElm);
-		parent.appendChild(scriptElm);
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(parent);
+			write(writer, false);
+			writer.close();
+		} catch (XMLStreamException e) {
+			logger.warn("Error writing script " + script.getDescriptor().getId(), e);
+		}
+	}
+
+	/**
+	 * Writes the script element.
+	 *
+	 * @param root whether the element is the document element
+	 */
+	void write(XMLStreamWriter writer, boolean root) throws XMLStreamException {
+		XmlUtils.writeStartElement(writer, "script", root);
+		writeElementData(script, writer);
+		writer.writeEndElement();
 	}
 	
 	private Document scriptToXmlDocument(XProcScript script) {
-		Document doc = XmlUtils.createDom("script");
-		Element scriptElm = doc.getDocumentElement();
-		addElementData(script, scriptElm);
+		Document doc = XmlUtils.createEmptyDom();
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(doc);
+			write(writer, true);
+			writer.close();
+		} catch (XMLStreamException e) {
+			logger.warn("Error writing script " + script.getDescriptor().getId(), e);
+			return null;
+		}
 		
 		// for debugging only
 		if (!XmlValidator.validate(doc, XmlValidator.SCRIPT_SCHEMA_URL)) {
@@ -61,99 +103,86 @@ public class ScriptXmlWriter {
 		return doc;
 	}
 
-	// element is <script> but it's empty
-	private void addElementData(XProcScript script, Element element) {
-		Document doc = element.getOwnerDocument();
+	// the start tag of <script> is written, but not its content
+	private void writeElementData(XProcScript script, XMLStreamWriter writer) throws XMLStreamException {
 		String baseUri = new Routes().getBaseUri();
 		String scriptHref = baseUri + Routes.SCRIPT_ROUTE.replaceFirst("\\{id\\}", script.getDescriptor().getId());
 
-		element.setAttribute("id", script.getDescriptor().getId());
-		element.setAttribute("href", scriptHref);
+		XmlUtils.writeAttribute(writer, "id", script.getDescriptor().getId());
+		XmlUtils.writeAttribute(writer, "href", scriptHref);
 		Joiner joiner = Joiner.on(" ");
 		if(!Iterables.isEmpty(script.getInputFilesets())){
-			element.setAttribute("input-filesets",joiner.join(script.getInputFilesets()));
+			XmlUtils.writeAttribute(writer, "input-filesets",joiner.join(script.getInputFilesets()));
 		}
 
 
 		if(!Iterables.isEmpty(script.getOutputFilesets())){
-			element.setAttribute("output-filesets",joiner.join(script.getOutputFilesets()));
+			XmlUtils.writeAttribute(writer, "output-filesets",joiner.join(script.getOutputFilesets()));
 		}
 
-		Element nicenameElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "nicename");
-		nicenameElm.setTextContent(script.getName());
-		element.appendChild(nicenameElm);
-
-		Element descriptionElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "description");
-		descriptionElm.setTextContent(script.getDescription());
-		element.appendChild(descriptionElm);
-
-		Element versionElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "version");
-		versionElm.setTextContent(script.getVersion());
-		element.appendChild(versionElm);
+		XmlUtils.writeTextElement(writer, "nicename", script.getName());
+		XmlUtils.writeTextElement(writer, "description", script.getDescription());
+		XmlUtils.writeTextElement(writer, "version", script.getVersion());
 
 		if (details) {
 			String homepage = script.getHomepage();
 			if (homepage != null && homepage.trim().length() > 0) {
-				Element homepageElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "homepage");
-				homepageElm.setTextContent(homepage);
-				element.appendChild(homepageElm);
+				XmlUtils.writeTextElement(writer, "homepage", homepage);
 			}
 			
-			addInputPorts(script.getXProcPipelineInfo().getInputPorts(), element);
-			addOptions(script.getXProcPipelineInfo().getOptions(), element);
-			addOutputPorts(script.getXProcPipelineInfo().getOutputPorts(), element);
+			writeInputPorts(script.getXProcPipelineInfo().getInputPorts(), writer);
+			writeOptions(script.getXProcPipelineInfo().getOptions(), writer);
+			writeOutputPorts(script.getXProcPipelineInfo().getOutputPorts(), writer);
 		}
 	}
 	
-	private void addInputPorts(Iterable<XProcPortInfo> inputs, Element parent) {
-		Document doc = parent.getOwnerDocument();
+	private void writeInputPorts(Iterable<XProcPortInfo> inputs, XMLStreamWriter writer) throws XMLStreamException {
 		for (XProcPortInfo input : script.getXProcPipelineInfo().getInputPorts()) {
 			XProcPortMetadata meta = script.getPortMetadata(input.getName());
 
-			Element inputElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "input");
-			inputElm.setAttribute("name", input.getName());
-	                inputElm.setAttribute("nicename", meta.getNiceName());
-			inputElm.setAttribute("required", Boolean.toString(meta.isRequired()));
-			inputElm.setAttribute("sequence", Boolean.toString(input.isSequence()));
+			XmlUtils.writeStartElement(writer, "input", false);
+			XmlUtils.writeAttribute(writer, "name", input.getName());
+	                XmlUtils.writeAttribute(writer, "nicename", meta.getNiceName());
+			XmlUtils.writeAttribute(writer, "required", Boolean.toString(meta.isRequired()));
+			XmlUtils.writeAttribute(writer, "sequence", Boolean.toString(input.isSequence()));
 			if (meta.getMediaType() != null && !meta.getMediaType().isEmpty()) {
-				inputElm.setAttribute("mediaType", meta.getMediaType());
+				XmlUtils.writeAttribute(writer, "mediaType", meta.getMediaType());
 			}
-			inputElm.setAttribute("desc", meta.getDescription());
+			XmlUtils.writeAttribute(writer, "desc", meta.getDescription());
 
-			parent.appendChild(inputElm);
+			writer.writeEndElement();
 		}
 	}
 
-	private void addOptions(Iterable<XProcOptionInfo> options, Element parent) {
-		Document doc = parent.getOwnerDocument();
+	private void writeOptions(Iterable<XProcOptionInfo> options, XMLStreamWriter writer) throws XMLStreamException {
 		for (XProcOptionInfo option : options) {
 			XProcOptionMetadata meta = script.getOptionMetadata(option.getName());
 			
-			Element optionElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "option");
-			optionElm.setAttribute("name", option.getName().toString());
-	                optionElm.setAttribute("nicename", meta.getNiceName());
-			optionElm.setAttribute("required", Boolean.toString(option.isRequired()));
+			XmlUtils.writeStartElement(writer, "option", false);
+			XmlUtils.writeAttribute(writer, "name", option.getName().toString());
+	                XmlUtils.writeAttribute(writer, "nicename", meta.getNiceName());
+			XmlUtils.writeAttribute(writer, "required", Boolean.toString(option.isRequired()));
 			
-			optionElm.setAttribute("type", meta.getType());
+			XmlUtils.writeAttribute(writer, "type", meta.getType());
 			if (meta.getMediaType() != null && !meta.getMediaType().isEmpty()) {
-				optionElm.setAttribute("mediaType", meta.getMediaType());
+				XmlUtils.writeAttribute(writer, "mediaType", meta.getMediaType());
 			}
                         if(!Strings.isNullOrEmpty(meta.getDatatype())){
-				optionElm.setAttribute("data-type", meta.getDatatype());
+				XmlUtils.writeAttribute(writer, "data-type", meta.getDatatype());
                         }
-			optionElm.setAttribute("desc", meta.getDescription());
-			optionElm.setAttribute("ordered", Boolean.toString(meta.isOrdered()));
-			optionElm.setAttribute("sequence", Boolean.toString(meta.isSequence()));
-                        setDefault(option,optionElm);
+			XmlUtils.writeAttribute(writer, "desc", meta.getDescription());
+			XmlUtils.writeAttribute(writer, "ordered", Boolean.toString(meta.isOrdered()));
+			XmlUtils.writeAttribute(writer, "sequence", Boolean.toString(meta.isSequence()));
+                        writeDefault(option,writer);
 			
 			if (meta.getOutput() != Output.NA) {
-				optionElm.setAttribute("outputType", meta.getOutput().toString().toLowerCase());
+				XmlUtils.writeAttribute(writer, "outputType", meta.getOutput().toString().toLowerCase());
 			}
-			parent.appendChild(optionElm);
+			writer.writeEndElement();
 		}
 	}
 
-        private void setDefault(XProcOptionInfo info,Element element ){
+        private void writeDefault(XProcOptionInfo info,XMLStreamWriter writer) throws XMLStreamException {
                 
                 String select=info.getSelect();
                 if (Strings.isNullOrEmpty(select)){
@@ -171,25 +200,24 @@ public class ScriptXmlWriter {
 
                 String def=select.substring(1,select.length()-1);
                 //set whatever is in the select
-                element.setAttribute("default",def);
+                XmlUtils.writeAttribute(writer, "default",def);
         }
 	
-	private void addOutputPorts(Iterable<XProcPortInfo> outputs, Element parent) {
+	private void writeOutputPorts(Iterable<XProcPortInfo> outputs, XMLStreamWriter writer) throws XMLStreamException {
 		logger.debug("Adding output ports");
-		Document doc = parent.getOwnerDocument();
 		for (XProcPortInfo output : outputs) {
 			logger.debug("Adding output port"+output.getName());
 			XProcPortMetadata meta = script.getPortMetadata(output.getName());
-			Element outputElm = doc.createElementNS(XmlUtils.NS_PIPELINE_DATA, "output");
-			outputElm.setAttribute("name", output.getName());
-	                outputElm.setAttribute("nicename", meta.getNiceName());
-			outputElm.setAttribute("sequence", Boolean.toString(output.isSequence()));
+			XmlUtils.writeStartElement(writer, "output", false);
+			XmlUtils.writeAttribute(writer, "name", output.getName());
+	                XmlUtils.writeAttribute(writer, "nicename", meta.getNiceName());
+			XmlUtils.writeAttribute(writer, "sequence", Boolean.toString(output.isSequence()));
 			if (meta.getMediaType() != null && !meta.getMediaType().isEmpty()) {
-				outputElm.setAttribute("mediaType", meta.getMediaType());
+				XmlUtils.writeAttribute(writer, "mediaType", meta.getMediaType());
 			}
-			outputElm.setAttribute("desc", meta.getDescription());
+			XmlUtils.writeAttribute(writer, "desc", meta.getDescription());
 			
-			parent.appendChild(outputElm);
+			writer.writeEndElement();
 		}
 	}
 }
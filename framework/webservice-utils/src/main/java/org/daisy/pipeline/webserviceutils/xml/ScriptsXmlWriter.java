@@ -1,13 +1,18 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.daisy.pipeline.script.XProcScript;
 import org.daisy.pipeline.webserviceutils.Routes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
-public class ScriptsXmlWriter {
+public class ScriptsXmlWriter implements StreamingXmlWriter {
 	
 	Iterable<XProcScript> scripts = null;
 	private static Logger logger = LoggerFactory.getLogger(ScriptsXmlWriter.class.getName());
@@ -23,16 +28,32 @@ public class ScriptsXmlWriter {
 		}
 		return scriptsToXml(scripts);
 	}
+
+	/**
+	 * Writes the scripts document to the stream without building a DOM.
+	 */
+	@Override
+	public void writeXml(OutputStream os) throws IOException {
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(os);
+			writer.writeStartDocument("UTF-8", "1.0");
+			write(writer);
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Error writing scripts", e);
+		}
+	}
 	
 	private Document scriptsToXml(Iterable<XProcScript> scripts) {
-		String baseUri = new Routes().getBaseUri();
-		Document doc = XmlUtils.createDom("scripts");
-		Element scriptsElm = doc.getDocumentElement();
-		scriptsElm.setAttribute("href", baseUri + Routes.SCRIPTS_ROUTE);
-		
-		for (XProcScript script : scripts) {
-			ScriptXmlWriter writer = XmlWriterFactory.createXmlWriterForScript(script);
-			writer.addAsElementChild(scriptsElm);
+		Document doc = XmlUtils.createEmptyDom();
+		try {
+			XMLStreamWriter writer = XmlUtils.createStreamWriter(doc);
+			write(writer);
+			writer.close();
+		} catch (XMLStreamException e) {
+			logger.warn("Error writing scripts", e);
+			return null;
 		}
 		
 		// for debugging only
@@ -42,4 +63,16 @@ public class ScriptsXmlWriter {
 
 		return doc;
 	}	
-}
\ No newline at end of file
+
+	private void write(XMLStreamWriter writer) throws XMLStreamException {
+		String baseUri = new Routes().getBaseUri();
+		XmlUtils.writeStartElement(writer, "scripts", true);
+		XmlUtils.writeAttribute(writer, "href", baseUri + Routes.SCRIPTS_ROUTE);
+		
+		for (XProcScript script : scripts) {
+			ScriptXmlWriter scriptWriter = XmlWriterFactory.createXmlWriterForScript(script);
+			scriptWriter.write(writer, false);
+		}
+		writer.writeEndElement();
+	}
+}
@@ -0,0 +1,16 @@
+package org.daisy.pipeline.webserviceutils.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * XML writer that can write its document straight to a stream, without
+ * building it in memory first.
+ */
+public interface StreamingXmlWriter {
+
+	/**
+	 * Writes the document to the stream, in UTF-8. The stream is not closed.
+	 */
+	public void writeXml(OutputStream os) throws IOException;
+}
@@ -1,13 +1,20 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -23,6 +30,8 @@ public class XmlUtils {
 	/** The Constant NS_PIPELINE_DATA. */
 	public static final String NS_PIPELINE_DATA = "http://www.daisy.org/ns/pipeline/data";
 	private static final Logger logger = LoggerFactory.getLogger(XmlUtils.class);
+	//the writers created by the JDK factory don't share state
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
 	
 	/**
 	 * DOM to string.
@@ -57,7 +66,21 @@ public class XmlUtils {
 		return xmlString;
 	}
 
-	
+	/**
+	 * Serialises a document to a stream, in UTF-8 and without indentation.
+	 *
+	 * @throws IOException if the document could not be written
+	 */
+	public static void DOMToStream(Document doc, OutputStream os) throws IOException {
+		try {
+			Transformer trans = TransformerFactory.newInstance().newTransformer();
+			trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+			trans.transform(new DOMSource(doc), new StreamResult(os));
+		} catch (TransformerException e) {
+			throw new IOException("Error serialising document", e);
+		}
+	}
+
 	/**
 	 * Node to string.
 	 *
@@ -103,4 +126,69 @@ public class XmlUtils {
 	}
 
 	
+	/**
+	 * Creates an empty document, to be filled with a writer from
+	 * {@link #createStreamWriter(Node)}.
+	 */
+	public static Document createEmptyDom() {
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		} catch (ParserConfigurationException e) {
+			logger.warn("creating dom document",e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a StAX writer serialising to the stream, in UTF-8.
+	 */
+	public static XMLStreamWriter createStreamWriter(OutputStream os) throws XMLStreamException {
+		return outputFactory.createXMLStreamWriter(os, "UTF-8");
+	}
+
+	/**
+	 * Creates a StAX writer appending the elements it writes to the
+	 * children of a DOM node.
+	 */
+	public static XMLStreamWriter createStreamWriter(Node node) throws XMLStreamException {
+		return outputFactory.createXMLStreamWriter(new DOMResult(node));
+	}
+
+	/**
+	 * Starts an element in the pipeline data namespace. The document element
+	 * also declares the namespace.
+	 */
+	public static void writeStartElement(XMLStreamWriter writer, String name, boolean root)
+			throws XMLStreamException {
+		writer.writeStartElement("", name, NS_PIPELINE_DATA);
+		if (root) {
+			writer.writeDefaultNamespace(NS_PIPELINE_DATA);
+		}
+	}
+
+	/**
+	 * Writes an attribute without a namespace, with an empty value if the
+	 * value is null as the DOM does.
+	 * 
+	 * The namespace is given explicitly because how
+	 * {@link XMLStreamWriter#writeAttribute(String, String)} adds attributes to
+	 * a DOM is left to the implementation: the one of the JDK creates them
+	 * without a local name, unlike the parser.
+	 */
+	public static void writeAttribute(XMLStreamWriter writer, String name, String value)
+			throws XMLStreamException {
+		writer.writeAttribute("", "", name, value != null ? value : "");
+	}
+
+	/**
+	 * Writes an element in the pipeline data namespace with only text.
+	 */
+	public static void writeTextElement(XMLStreamWriter writer, String name, String text)
+			throws XMLStreamException {
+		writer.writeStartElement("", name, NS_PIPELINE_DATA);
+		if (text != null) {
+			writer.writeCharacters(text);
+		}
+		writer.writeEndElement();
+	}
 }
@@ -1,37 +1,49 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.TransformerFactoryConfigurationError;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import com.thaiopensource.resolver.Identifier;
 import com.thaiopensource.resolver.Input;
 import com.thaiopensource.resolver.Resolver;
 import com.thaiopensource.resolver.ResolverException;
 import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
 import com.thaiopensource.validate.ValidateProperty;
-import com.thaiopensource.validate.ValidationDriver;
+import com.thaiopensource.validate.Validator;
 import com.thaiopensource.validate.rng.CompactSchemaReader;
 
 public class XmlValidator {
@@ -52,6 +64,31 @@ public class XmlValidator {
 	public static final URL QUEUE_SCHEMA_URL = XmlValidator.class.getResource("/org/daisy/pipeline/webservice-utils/resources/queue.rnc");
 	public static final URL DATATYPES_SCHEMA_URL = XmlValidator.class.getResource("/org/daisy/pipeline/webservice-utils/resources/datatypes.rnc");
 	
+	/** The compiled schemas, they are thread-safe */
+	private static final ConcurrentMap<URL, Schema> schemas = new ConcurrentHashMap<URL, Schema>();
+
+	/** Parsers and transformer factories aren't thread-safe but can be reused */
+	private static final ThreadLocal<XMLReader> readers = new ThreadLocal<XMLReader>() {
+		@Override
+		protected XMLReader initialValue() {
+			try {
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware(true);
+				return factory.newSAXParser().getXMLReader();
+			} catch (ParserConfigurationException e) {
+				throw new IllegalStateException(e);
+			} catch (SAXException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+	private static final ThreadLocal<SAXTransformerFactory> transformerFactories = new ThreadLocal<SAXTransformerFactory>() {
+		@Override
+		protected SAXTransformerFactory initialValue() {
+			return (SAXTransformerFactory) TransformerFactory.newInstance();
+		}
+	};
+
 	public static boolean validate(Document document, URL schemaUrl) {
                 if (schemaUrl==null) {
                         logger.error("schema url is null");
@@ -59,58 +96,189 @@ public class XmlValidator {
                 }
 		ErrorHandlerImpl errorHandler = new ErrorHandlerImpl();
 
-		PropertyMapBuilder properties = new PropertyMapBuilder();
-		properties.put(ValidateProperty.ERROR_HANDLER, errorHandler);
-		properties.put(ValidateProperty.RESOLVER, BasicResolver.getInstance());
-
 		try {
-			InputSource documentInputSource = DOMtoInputSource(document);
-			InputSource schemaInputSource = new InputSource(schemaUrl.toURI().toString());
-
-			ValidationDriver driver = new ValidationDriver(properties.toPropertyMap(), CompactSchemaReader.getInstance());
-			if (!driver.loadSchema(schemaInputSource)) {
-				logger.error("Could not load schema " + schemaUrl.toString());
-				return false;
-			}
-			driver.validate(documentInputSource);
-
-		} catch (TransformerConfigurationException e) {
-			logger.error(e.getMessage());
-			return false;
+			Validator validator = createValidator(schemaUrl, errorHandler);
+			// walk the DOM as SAX events instead of serialising and parsing it
+			transformerFactories.get().newTransformer()
+				.transform(new DOMSource(document), new SAXResult(validator.getContentHandler()));
 		} catch (TransformerException e) {
 			logger.error(e.getMessage());
 			return false;
 		} catch (TransformerFactoryConfigurationError e) {
 			logger.error(e.getMessage());
 			return false;
-		} catch (URISyntaxException e) {
+		} catch (SAXException e) {
 			logger.error(e.getMessage());
 			return false;
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			return false;
+		}
+
+		logErrors(errorHandler);
+		return !errorHandler.hasErrors();
+	}
+
+	/**
+	 * Parses a document and validates it against a schema in the same pass.
+	 *
+	 * @param errorHandler receives the validation errors
+	 * @return the document, even if it is not valid
+	 * @throws SAXException if the document is not well-formed or the schema
+	 *         could not be loaded
+	 */
+	public static Document parse(InputSource source, URL schemaUrl, ErrorHandlerImpl errorHandler)
+			throws IOException, SAXException {
+		Validator validator = createValidator(schemaUrl, errorHandler);
+		TransformerHandler builder;
+		try {
+			builder = transformerFactories.get().newTransformerHandler();
+		} catch (TransformerConfigurationException e) {
+			throw new SAXException(e);
+		}
+		DOMResult result = new DOMResult();
+		builder.setResult(result);
+		XMLReader reader = readers.get();
+		reader.setContentHandler(new TeeContentHandler(validator.getContentHandler(), builder));
+		reader.setErrorHandler(null);
+		reader.parse(source);
+		logErrors(errorHandler);
+		return (Document) result.getNode();
+	}
+
+	/**
+	 * @return whether the document is well-formed
+	 */
+	public static boolean isWellFormed(InputSource source) {
+		XMLReader reader = readers.get();
+		reader.setContentHandler(new DefaultHandler());
+		reader.setErrorHandler(null);
+		try {
+			reader.parse(source);
+			return true;
 		} catch (SAXException e) {
 			logger.error(e.getMessage());
 			return false;
 		} catch (IOException e) {
 			logger.error(e.getMessage());
 			return false;
-		};
+		}
+	}
+
+	private static Validator createValidator(URL schemaUrl, ErrorHandler errorHandler)
+			throws IOException, SAXException {
+		PropertyMapBuilder properties = new PropertyMapBuilder();
+		properties.put(ValidateProperty.ERROR_HANDLER, errorHandler);
+		return getSchema(schemaUrl).createValidator(properties.toPropertyMap());
+	}
+
+	private static Schema getSchema(URL schemaUrl) throws IOException, SAXException {
+		Schema schema = schemas.get(schemaUrl);
+		if (schema == null) {
+			PropertyMapBuilder properties = new PropertyMapBuilder();
+			properties.put(ValidateProperty.ERROR_HANDLER, new ErrorHandlerImpl());
+			properties.put(ValidateProperty.RESOLVER, BasicResolver.getInstance());
+			try {
+				schema = CompactSchemaReader.getInstance().createSchema(
+						new InputSource(schemaUrl.toURI().toString()), properties.toPropertyMap());
+			} catch (URISyntaxException e) {
+				throw new IOException(e);
+			} catch (IncorrectSchemaException e) {
+				throw new SAXException("Could not load schema " + schemaUrl, e);
+			}
+			Schema existing = schemas.putIfAbsent(schemaUrl, schema);
+			if (existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
 
+	private static void logErrors(ErrorHandlerImpl errorHandler) {
 		if (errorHandler.hasErrors()) {
 			for (SAXParseException e : errorHandler.errors) {
 				logger.error(e.getMessage() + "(" + e.getLineNumber() + ", " + e.getColumnNumber() + ")");
 			}
 		}
-		return !errorHandler.hasErrors();
 	}
 
-	// create an input source from a DOM document
-	private static InputSource DOMtoInputSource(Document doc) throws TransformerConfigurationException, TransformerException, TransformerFactoryConfigurationError {
-		DOMSource source = new DOMSource(doc);
-		StringWriter xmlAsWriter = new StringWriter();
-		StreamResult result = new StreamResult(xmlAsWriter);
-		TransformerFactory.newInstance().newTransformer().transform(source, result);
-		StringReader xmlReader = new StringReader(xmlAsWriter.toString());
-		InputSource is = new InputSource(xmlReader);
-		return is;
+	/**
+	 * Forwards the SAX events to two handlers.
+	 */
+	private static class TeeContentHandler implements ContentHandler {
+		private final ContentHandler first;
+		private final ContentHandler second;
+
+		TeeContentHandler(ContentHandler first, ContentHandler second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void setDocumentLocator(Locator locator) {
+			first.setDocumentLocator(locator);
+			second.setDocumentLocator(locator);
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			first.startDocument();
+			second.startDocument();
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			first.endDocument();
+			second.endDocument();
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			first.startPrefixMapping(prefix, uri);
+			second.startPrefixMapping(prefix, uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			first.endPrefixMapping(prefix);
+			second.endPrefixMapping(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+			first.startElement(uri, localName, qName, atts);
+			second.startElement(uri, localName, qName, atts);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			first.endElement(uri, localName, qName);
+			second.endElement(uri, localName, qName);
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			first.characters(ch, start, length);
+			second.characters(ch, start, length);
+		}
+
+		@Override
+		public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+			first.ignorableWhitespace(ch, start, length);
+			second.ignorableWhitespace(ch, start, length);
+		}
+
+		@Override
+		public void processingInstruction(String target, String data) throws SAXException {
+			first.processingInstruction(target, data);
+			second.processingInstruction(target, data);
+		}
+
+		@Override
+		public void skippedEntity(String name) throws SAXException {
+			first.skippedEntity(name);
+			second.skippedEntity(name);
+		}
 	}
 
 	static public class ErrorHandlerImpl implements ErrorHandler {
@@ -1,7 +1,9 @@
 package org.daisy.pipeline.webserviceutils.xml;
 
 import java.util.List;
+import java.util.Map;
 
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
 import org.daisy.common.properties.Property;
 import org.daisy.pipeline.clients.Client;
@@ -30,6 +32,11 @@ public class XmlWriterFactory {
 		return new QueueXmlWriter(jobs);
 	}
 
+	public static QueueXmlWriter createXmlWriterForQueue(Iterable<? extends Prioritizable<Job>> jobs,
+			AdmissionController<Job> admission, Map<Job,Long> reservations) {
+		return new QueueXmlWriter(jobs, admission, reservations);
+	}
+
 	public static ScriptXmlWriter createXmlWriterForScript(XProcScript script) {
 		return new ScriptXmlWriter(script);
 	}
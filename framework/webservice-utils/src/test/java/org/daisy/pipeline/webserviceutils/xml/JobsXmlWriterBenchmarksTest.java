@@ -0,0 +1,61 @@
+package org.daisy.pipeline.webserviceutils.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.daisy.pipeline.job.Job;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Compares writing the jobs document through a DOM, the way the web service
+ * used to do it, with writing it straight to the response stream.
+ */
+@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 3)
+public class JobsXmlWriterBenchmarksTest {
+	@Rule
+	public TestRule benchmarkRun = new BenchmarkRule();
+
+	static final List<Job> JOBS_1K = JobsXmlWriterTest.mockJobs(1000);
+	static final List<Job> JOBS_10K = JobsXmlWriterTest.mockJobs(10000);
+
+	static void dom(List<Job> jobs) throws Exception {
+		OutputStream os = ByteStreams.nullOutputStream();
+		TransformerFactory.newInstance().newTransformer()
+			.transform(new DOMSource(new JobsXmlWriter(jobs).getXmlDocument()), new StreamResult(os));
+	}
+
+	static void stream(List<Job> jobs) throws IOException {
+		new JobsXmlWriter(jobs).writeXml(ByteStreams.nullOutputStream());
+	}
+
+	@Test
+	public void dom1k() throws Exception {
+		dom(JOBS_1K);
+	}
+
+	@Test
+	public void stream1k() throws Exception {
+		stream(JOBS_1K);
+	}
+
+	@Test
+	public void dom10k() throws Exception {
+		dom(JOBS_10K);
+	}
+
+	@Test
+	public void stream10k() throws Exception {
+		stream(JOBS_10K);
+	}
+}
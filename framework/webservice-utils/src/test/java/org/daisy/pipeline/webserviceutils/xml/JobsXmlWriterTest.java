@@ -0,0 +1,81 @@
+package org.daisy.pipeline.webserviceutils.xml;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.daisy.common.priority.Priority;
+import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.JobContext;
+import org.daisy.pipeline.job.JobIdFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.collect.Lists;
+
+public class JobsXmlWriterTest {
+
+	static List<Job> mockJobs(int size) {
+		List<Job> jobs = Lists.newArrayList();
+		for (int i = 0; i < size; i++) {
+			JobContext ctxt = mock(JobContext.class);
+			when(ctxt.getName()).thenReturn(i % 2 == 0 ? "job " + i + " <&>" : "");
+			when(ctxt.getBatchId()).thenReturn(JobIdFactory.newBatchId());
+			Job job = mock(Job.class);
+			when(job.getId()).thenReturn(JobIdFactory.newId());
+			when(job.getStatus()).thenReturn(Job.Status.values()[i % Job.Status.values().length]);
+			when(job.getPriority()).thenReturn(Priority.MEDIUM);
+			when(job.getContext()).thenReturn(ctxt);
+			jobs.add(job);
+		}
+		return jobs;
+	}
+
+	static Document parse(byte[] xml) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+	}
+
+	@Test
+	public void streamedIsTheSameAsDom() throws Exception {
+		JobsXmlWriter writer = new JobsXmlWriter(mockJobs(20));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.writeXml(os);
+		Document streamed = parse(os.toByteArray());
+		Document dom = writer.getXmlDocument();
+		Assert.assertTrue(dom.getDocumentElement().isEqualNode(streamed.getDocumentElement()));
+		Assert.assertEquals(20, streamed.getElementsByTagNameNS(XmlUtils.NS_PIPELINE_DATA, "job").getLength());
+		Assert.assertTrue(XmlValidator.validate(streamed, XmlValidator.JOBS_SCHEMA_URL));
+	}
+
+	@Test
+	public void job() throws Exception {
+		Job job = mockJobs(1).get(0);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new JobXmlWriter(job).writeXml(os);
+		Assert.assertTrue(new JobXmlWriter(job).getXmlDocument().getDocumentElement()
+				.isEqualNode(parse(os.toByteArray()).getDocumentElement()));
+	}
+
+	@Test
+	public void jobAsChild() throws Exception {
+		Job job = mockJobs(1).get(0);
+		Document doc = XmlUtils.createDom("jobs");
+		new JobXmlWriter(job).addAsElementChild(doc.getDocumentElement());
+		Element child = (Element) doc.getDocumentElement().getFirstChild();
+		Assert.assertEquals(XmlUtils.NS_PIPELINE_DATA, child.getNamespaceURI());
+		Assert.assertEquals("job", child.getLocalName());
+		Assert.assertEquals(job.getId().toString(), child.getAttributeNS(null, "id"));
+		// as in a parsed document, whatever the StAX implementation
+		Assert.assertEquals("id", child.getAttributeNodeNS(null, "id").getLocalName());
+		Assert.assertEquals("job 0 <&>", child.getFirstChild().getTextContent());
+	}
+}
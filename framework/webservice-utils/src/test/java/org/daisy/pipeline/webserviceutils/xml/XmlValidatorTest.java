@@ -0,0 +1,52 @@
+package org.daisy.pipeline.webserviceutils.xml;
+
+import java.io.StringReader;
+
+import org.daisy.pipeline.webserviceutils.xml.XmlValidator.ErrorHandlerImpl;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class XmlValidatorTest {
+
+	static final String VALID = "<jobRequest xmlns='http://www.daisy.org/ns/pipeline/data'>"
+			+ "<script href='http://localhost:8181/ws/scripts/dtbook-to-zedai'/>"
+			+ "<option name='opt'><item value='x'/></option>"
+			+ "</jobRequest>";
+	static final String INVALID = "<jobRequest xmlns='http://www.daisy.org/ns/pipeline/data'><foo/></jobRequest>";
+
+	@Test
+	public void parseValid() throws Exception {
+		ErrorHandlerImpl errors = new ErrorHandlerImpl();
+		Document doc = XmlValidator.parse(new InputSource(new StringReader(VALID)),
+				XmlValidator.JOB_REQUEST_SCHEMA_URL, errors);
+		Assert.assertFalse(errors.hasErrors());
+		Assert.assertEquals(XmlUtils.NS_PIPELINE_DATA, doc.getDocumentElement().getNamespaceURI());
+		Assert.assertEquals(1, doc.getElementsByTagNameNS(XmlUtils.NS_PIPELINE_DATA, "item").getLength());
+		//the parsed document is valid as well
+		Assert.assertTrue(XmlValidator.validate(doc, XmlValidator.JOB_REQUEST_SCHEMA_URL));
+	}
+
+	@Test
+	public void parseInvalid() throws Exception {
+		ErrorHandlerImpl errors = new ErrorHandlerImpl();
+		Document doc = XmlValidator.parse(new InputSource(new StringReader(INVALID)),
+				XmlValidator.JOB_REQUEST_SCHEMA_URL, errors);
+		Assert.assertTrue(errors.hasErrors());
+		Assert.assertFalse(XmlValidator.validate(doc, XmlValidator.JOB_REQUEST_SCHEMA_URL));
+	}
+
+	@Test(expected = SAXException.class)
+	public void parseNotWellFormed() throws Exception {
+		XmlValidator.parse(new InputSource(new StringReader("<jobRequest>")),
+				XmlValidator.JOB_REQUEST_SCHEMA_URL, new ErrorHandlerImpl());
+	}
+
+	@Test
+	public void parserIsReusedAfterError() throws Exception {
+		Assert.assertFalse(XmlValidator.isWellFormed(new InputSource(new StringReader("<a><b></a>"))));
+		Assert.assertTrue(XmlValidator.isWellFormed(new InputSource(new StringReader("<a><b/></a>"))));
+	}
+}
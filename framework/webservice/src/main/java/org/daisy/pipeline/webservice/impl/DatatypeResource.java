@@ -1,9 +1,8 @@
 package org.daisy.pipeline.webservice.impl;
 
+import org.daisy.pipeline.datatypes.DatatypeRegistry;
 import org.daisy.pipeline.datatypes.DatatypeService;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
@@ -17,6 +16,7 @@ public class DatatypeResource extends AdminResource {
         private static final Logger logger = LoggerFactory.getLogger(DatatypeResource.class);
         private Optional<DatatypeService> datatype;
         private String idParam;
+        private long version;
         @Override
         public void doInit() {
                 super.doInit();
@@ -24,7 +24,9 @@ public class DatatypeResource extends AdminResource {
                         return;
                 }
                 idParam = (String) getRequestAttributes().get("id");
-                datatype= webservice().getDatatypeRegistry().getDatatype(idParam);
+                DatatypeRegistry registry = webservice().getDatatypeRegistry();
+                version = registry.getVersion();
+                datatype= registry.getDatatype(idParam);
         }
 
         /**
@@ -45,17 +47,19 @@ public class DatatypeResource extends AdminResource {
                         return this.getErrorRepresentation("Datatype not found");       
                 }
 
-                setStatus(Status.SUCCESS_OK);
-                DomRepresentation dom;
-                try {
-                        dom = new DomRepresentation(MediaType.APPLICATION_XML, datatype
-                                        .get().asDocument());
-                } catch (Exception e) {
+                ResponseCache cache = webservice().getDatatypeResponses();
+                String key = DatatypesResource.CACHE_KEY + "/" + idParam;
+                ResponseCache.CachedResponse response = cache.get(key, version);
+                if (response == null) {
+                        try {
+                                response = cache.put(key, version, datatype.get().asDocument());
+                        } catch (Exception e) {
 
-                        setStatus(Status.SERVER_ERROR_INTERNAL);
-                        return this.getErrorRepresentation(e.getMessage());       
+                                setStatus(Status.SERVER_ERROR_INTERNAL);
+                                return this.getErrorRepresentation(e.getMessage());       
+                        }
                 }
-                return dom;
+                return response.represent(this);
         }
 
 }
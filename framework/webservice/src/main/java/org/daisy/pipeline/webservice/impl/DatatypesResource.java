@@ -1,10 +1,9 @@
 package org.daisy.pipeline.webservice.impl;
 
+import org.daisy.pipeline.datatypes.DatatypeRegistry;
 import org.daisy.pipeline.datatypes.DatatypeService;
 import org.daisy.pipeline.webserviceutils.xml.XmlWriterFactory;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
@@ -14,6 +13,9 @@ public class DatatypesResource extends AdminResource {
 
 
         private static final Logger logger = LoggerFactory.getLogger(DatatypeResource.class);
+
+        static final String CACHE_KEY = "datatypes";
+
         @Override
         public void doInit() {
                 super.doInit();
@@ -34,19 +36,22 @@ public class DatatypesResource extends AdminResource {
                         return null;
                 }
 
-                setStatus(Status.SUCCESS_OK);
-                DomRepresentation dom;
-                Iterable<DatatypeService> datatypes = webservice().getDatatypeRegistry().getDatatypes();
-                try {
-                        dom = new DomRepresentation(MediaType.APPLICATION_XML, 
-                                        XmlWriterFactory.
-                                        createXmlWriterForDatatypes(datatypes).getXmlDocument());
-                } catch (Exception e) {
-
-                        setStatus(Status.SERVER_ERROR_INTERNAL);
-                        return this.getErrorRepresentation(e.getMessage());       
+                DatatypeRegistry registry = webservice().getDatatypeRegistry();
+                ResponseCache cache = webservice().getDatatypeResponses();
+                long version = registry.getVersion();
+                ResponseCache.CachedResponse response = cache.get(CACHE_KEY, version);
+                if (response == null) {
+                        Iterable<DatatypeService> datatypes = registry.getDatatypes();
+                        try {
+                                response = cache.put(CACHE_KEY, version, XmlWriterFactory.
+                                                createXmlWriterForDatatypes(datatypes).getXmlDocument());
+                        } catch (Exception e) {
+
+                                setStatus(Status.SERVER_ERROR_INTERNAL);
+                                return this.getErrorRepresentation(e.getMessage());       
+                        }
                 }
-                return dom;
+                return response.represent(this);
         }
 
 }
@@ -0,0 +1,299 @@
+package org.daisy.pipeline.webservice.impl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.daisy.pipeline.clients.Client;
+import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.JobManager;
+import org.daisy.pipeline.job.JobSize;
+import org.daisy.pipeline.webserviceutils.Properties;
+import org.daisy.pipeline.webserviceutils.storage.JobConfigurationStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Deletes finished jobs in the background to keep the disk usage within the
+ * configured limits.
+ *
+ * Every {@code interval} seconds the finished jobs (done, failed or invalid)
+ * are examined from the newest to the oldest, using the size index of the
+ * jobs. A job is deleted when it is older than {@code maxage} seconds, or
+ * when the jobs of its client that are newer, plus itself, exceed the
+ * per-client number of jobs or bytes, or when all the newer jobs kept so far,
+ * plus itself, exceed the global number of jobs or bytes. Idle and running
+ * jobs are never deleted. A limit of 0 means no limit.
+ *
+ * Jobs are deleted in batches of {@code batchsize}, and the number of jobs
+ * deleted and bytes reclaimed are logged and kept.
+ */
+class JobJanitor implements Runnable {
+
+        private static final Logger logger = LoggerFactory.getLogger(JobJanitor.class);
+
+        private final JobManager manager;
+        private final JobConfigurationStorage configurations;
+        private final long interval;
+        private final int batchSize;
+        private final long maxAge;
+        private final long maxJobs;
+        private final long maxBytes;
+        private final long clientMaxJobs;
+        private final long clientMaxBytes;
+
+        private final AtomicLong deletedJobs = new AtomicLong();
+        private final AtomicLong reclaimedBytes = new AtomicLong();
+
+        private ScheduledExecutorService executor;
+        private volatile boolean running = false;
+
+        /**
+         * @param manager a job manager that sees the jobs of all the clients
+         * @param configurations where the job requests are stored
+         * @param interval the time between two sweeps, in seconds
+         * @param batchSize the number of jobs deleted at once
+         * @param maxAge the age (in seconds) after which a job is deleted
+         * @param maxJobs the maximum number of finished jobs
+         * @param maxBytes the maximum disk usage of the finished jobs
+         * @param clientMaxJobs the maximum number of finished jobs per client
+         * @param clientMaxBytes the maximum disk usage of the finished jobs
+         *        per client
+         */
+        JobJanitor(JobManager manager, JobConfigurationStorage configurations,
+                        long interval, int batchSize, long maxAge, long maxJobs,
+                        long maxBytes, long clientMaxJobs, long clientMaxBytes) {
+                this.manager = manager;
+                this.configurations = configurations;
+                this.interval = interval;
+                this.batchSize = Math.max(1, batchSize);
+                this.maxAge = maxAge;
+                this.maxJobs = maxJobs;
+                this.maxBytes = maxBytes;
+                this.clientMaxJobs = clientMaxJobs;
+                this.clientMaxBytes = clientMaxBytes;
+        }
+
+        /**
+         * Creates a new janitor configured from the system properties.
+         */
+        static JobJanitor fromProperties(JobManager manager, JobConfigurationStorage configurations) {
+                return new JobJanitor(manager, configurations,
+                                Long.valueOf(Properties.JANITOR_INTERVAL.get("600")),
+                                Integer.valueOf(Properties.JANITOR_BATCH_SIZE.get("100")),
+                                Long.valueOf(Properties.JANITOR_MAX_AGE.get("0")),
+                                Long.valueOf(Properties.JANITOR_MAX_JOBS.get("0")),
+                                Long.valueOf(Properties.JANITOR_MAX_BYTES.get("0")),
+                                Long.valueOf(Properties.JANITOR_CLIENT_MAX_JOBS.get("0")),
+                                Long.valueOf(Properties.JANITOR_CLIENT_MAX_BYTES.get("0")));
+        }
+
+        /**
+         * Starts the sweeps, unless no limit is set.
+         */
+        synchronized void start() {
+                if (running) {
+                        return;
+                }
+                if (maxAge <= 0 && maxJobs <= 0 && maxBytes <= 0 && clientMaxJobs <= 0 && clientMaxBytes <= 0) {
+                        logger.debug("No job retention limits set, the job janitor is not started");
+                        return;
+                }
+                running = true;
+                executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "job-janitor");
+                                t.setDaemon(true);
+                                t.setPriority(Thread.MIN_PRIORITY);
+                                return t;
+                        }
+                });
+                executor.scheduleWithFixedDelay(this, 0, Math.max(1, interval), TimeUnit.SECONDS);
+                logger.info(String.format("Job janitor started, sweeping every %d s", interval));
+        }
+
+        synchronized void stop() {
+                if (!running) {
+                        return;
+                }
+                running = false;
+                executor.shutdownNow();
+                try {
+                        executor.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                }
+        }
+
+        /**
+         * @return the number of jobs deleted so far
+         */
+        long getDeletedJobs() {
+                return deletedJobs.get();
+        }
+
+        /**
+         * @return the number of bytes reclaimed so far
+         */
+        long getReclaimedBytes() {
+                return reclaimedBytes.get();
+        }
+
+        @Override
+        public void run() {
+                try {
+                        sweep();
+                } catch (RuntimeException e) {
+                        //don't let the exception cancel the next sweeps
+                        logger.error("Error while deleting old jobs", e);
+                }
+        }
+
+        /**
+         * Deletes the jobs that exceed the limits.
+         */
+        void sweep() {
+                List<Candidate> doomed = select(finishedJobs(), System.currentTimeMillis());
+                if (doomed.isEmpty()) {
+                        return;
+                }
+                long jobs = 0;
+                long bytes = 0;
+                for (List<Candidate> batch : Lists.partition(doomed, batchSize)) {
+                        if (!running || Thread.currentThread().isInterrupted()) {
+                                break;
+                        }
+                        long batchBytes = 0;
+                        int batchJobs = 0;
+                        for (Candidate candidate : batch) {
+                                if (manager.deleteJob(candidate.job.getId()).isPresent()) {
+                                        configurations.delete(candidate.job.getId());
+                                        batchBytes += candidate.size;
+                                        batchJobs++;
+                                }
+                        }
+                        logger.debug(String.format("Deleted %d jobs (%d bytes)", batchJobs, batchBytes));
+                        jobs += batchJobs;
+                        bytes += batchBytes;
+                }
+                deletedJobs.addAndGet(jobs);
+                reclaimedBytes.addAndGet(bytes);
+                logger.info(String.format("Job janitor deleted %d jobs and reclaimed %d bytes (%d jobs and %d bytes in total)",
+                                jobs, bytes, deletedJobs.get(), reclaimedBytes.get()));
+        }
+
+        private List<Candidate> finishedJobs() {
+                List<Candidate> candidates = Lists.newArrayList();
+                for (Job job : manager.getJobs()) {
+                        Job.Status status = job.getStatus();
+                        if (status != Job.Status.DONE && status != Job.Status.ERROR
+                                        && status != Job.Status.VALIDATION_FAIL) {
+                                continue;
+                        }
+                        try {
+                                candidates.add(new Candidate(job, clientId(job),
+                                                JobSize.getSize(job).getSum(), finishedAt(job)));
+                        } catch (RuntimeException e) {
+                                logger.warn(String.format("Could not get the size of job %s", job.getId()), e);
+                        }
+                }
+                return candidates;
+        }
+
+        /**
+         * Returns the jobs to delete, oldest first.
+         */
+        List<Candidate> select(List<Candidate> candidates, long now) {
+                List<Candidate> sorted = Lists.newArrayList(candidates);
+                //newest first
+                Collections.sort(sorted, new Comparator<Candidate>() {
+                        @Override
+                        public int compare(Candidate a, Candidate b) {
+                                return Long.compare(b.finishedAt, a.finishedAt);
+                        }
+                });
+                List<Candidate> doomed = Lists.newArrayList();
+                Map<String, Usage> perClient = Maps.newHashMap();
+                Usage global = new Usage();
+                for (Candidate candidate : sorted) {
+                        if (maxAge > 0 && now - candidate.finishedAt > maxAge * 1000) {
+                                doomed.add(candidate);
+                                continue;
+                        }
+                        Usage client = perClient.get(candidate.clientId);
+                        if (client == null) {
+                                client = new Usage();
+                                perClient.put(candidate.clientId, client);
+                        }
+                        if (client.exceeds(candidate, clientMaxJobs, clientMaxBytes)
+                                        || global.exceeds(candidate, maxJobs, maxBytes)) {
+                                doomed.add(candidate);
+                                continue;
+                        }
+                        client.add(candidate);
+                        global.add(candidate);
+                }
+                Collections.reverse(doomed);
+                return doomed;
+        }
+
+        private static String clientId(Job job) {
+                Client client = job.getContext().getClient();
+                return client != null ? client.getId() : "";
+        }
+
+        /**
+         * The log is the last thing a job writes to.
+         */
+        private static long finishedAt(Job job) {
+                long modified = 0;
+                if (job.getContext().getLogFile() != null) {
+                        try {
+                                modified = new File(job.getContext().getLogFile()).lastModified();
+                        } catch (IllegalArgumentException e) {
+                                //not a file URI
+                        }
+                }
+                return modified > 0 ? modified : System.currentTimeMillis();
+        }
+
+        static final class Candidate {
+                final Job job;
+                final String clientId;
+                final long size;
+                final long finishedAt;
+
+                Candidate(Job job, String clientId, long size, long finishedAt) {
+                        this.job = job;
+                        this.clientId = clientId;
+                        this.size = size;
+                        this.finishedAt = finishedAt;
+                }
+        }
+
+        private static final class Usage {
+                long jobs = 0;
+                long bytes = 0;
+
+                boolean exceeds(Candidate candidate, long maxJobs, long maxBytes) {
+                        return (maxJobs > 0 && jobs + 1 > maxJobs)
+                                || (maxBytes > 0 && bytes + candidate.size > maxBytes);
+                }
+
+                void add(Candidate candidate) {
+                        jobs++;
+                        bytes += candidate.size;
+                }
+        }
+}
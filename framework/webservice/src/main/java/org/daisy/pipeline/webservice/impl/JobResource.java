@@ -10,15 +10,12 @@ import org.daisy.pipeline.job.JobIdFactory;
 import org.daisy.pipeline.job.JobManager;
 import org.daisy.pipeline.webserviceutils.xml.JobXmlWriter;
 import org.daisy.pipeline.webserviceutils.xml.XmlWriterFactory;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Delete;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 import com.google.common.base.Optional;
 
@@ -95,10 +92,8 @@ public class JobResource extends AuthenticatedResource {
                         writer.withQueuePosition(pos);
                 }
 
-                Document doc = writer.withScriptDetails().getXmlDocument();
-                
-                DomRepresentation dom = new DomRepresentation(MediaType.APPLICATION_XML, doc);
-                return dom;
+                writer.withScriptDetails();
+                return new StreamingXmlRepresentation(writer);
         }
 
         int getPositionInQueue(Job job){
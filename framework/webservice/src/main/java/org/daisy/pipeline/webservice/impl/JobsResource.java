@@ -6,18 +6,16 @@ import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Iterator;
-import java.util.List;
-import java.util.zip.ZipFile;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Source;
 import javax.xml.transform.sax.SAXSource;
 
-import org.apache.commons.fileupload.FileItem;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.util.Streams;
+import org.apache.commons.io.FileUtils;
 import org.daisy.common.priority.Priority;
 import org.daisy.common.transform.LazySaxResultProvider;
 import org.daisy.common.transform.LazySaxSourceProvider;
@@ -25,11 +23,11 @@ import org.daisy.common.xproc.XProcInput;
 import org.daisy.common.xproc.XProcOptionInfo;
 import org.daisy.common.xproc.XProcOutput;
 import org.daisy.common.xproc.XProcPortInfo;
+import org.daisy.pipeline.job.DirectoryJobResources;
 import org.daisy.pipeline.job.Job;
 import org.daisy.pipeline.job.JobIdFactory;
 import org.daisy.pipeline.job.JobManager;
 import org.daisy.pipeline.job.JobResources;
-import org.daisy.pipeline.job.ZippedJobResources;
 import org.daisy.pipeline.script.BoundXProcScript;
 import org.daisy.pipeline.script.ScriptRegistry;
 import org.daisy.pipeline.script.XProcOptionMetadata;
@@ -45,7 +43,6 @@ import org.restlet.Request;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
 import org.restlet.ext.fileupload.RestletFileUpload;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.restlet.resource.Post;
@@ -60,6 +57,8 @@ import org.xml.sax.SAXException;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -69,7 +68,7 @@ public class JobsResource extends AuthenticatedResource {
 
         /** The tempfile prefix. */
         private final String tempfilePrefix = "p2ws";
-        private final String tempfileSuffix = ".zip";
+        private final String tempfileSuffix = ".d";
 
         private final String JOB_DATA_FIELD = "job-data";
         private final String JOB_REQUEST_FIELD = "job-request";
@@ -93,10 +92,8 @@ public class JobsResource extends AuthenticatedResource {
                 if(this.webservice().getConfiguration().isLocalFS()){
                 	writer.withLocalPaths();
                 }
-                Document doc = writer.getXmlDocument();
-                DomRepresentation dom = new DomRepresentation(MediaType.APPLICATION_XML, doc);
                 setStatus(Status.SUCCESS_OK);
-                return dom;
+                return new StreamingXmlRepresentation(writer);
         }
 
 
@@ -122,7 +119,7 @@ public class JobsResource extends AuthenticatedResource {
 
 
                 Document doc = null;
-                ZipFile zipfile = null;
+                File resources = null;
 
                 if (MediaType.MULTIPART_FORM_DATA.equals(representation.getMediaType(), true)) {
                         Request request = getRequest();
@@ -138,28 +135,30 @@ public class JobsResource extends AuthenticatedResource {
                                 return this.getErrorRepresentation("Multipart data is empty");
                         }
                         doc = data.getXml();
-                        zipfile = data.getZipFile();
+                        resources = data.getResources();
                 }
                 // else it's not multipart; all data should be inline.
                 else {
-                        String s;
                         try {
-                                s = representation.getText();
-                                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                                factory.setNamespaceAware(true);
-                                DocumentBuilder builder = factory.newDocumentBuilder();
-                                InputSource is = new InputSource(new StringReader(s));
-                                doc = builder.parse(is);
+                                doc = Validator.parseJobRequest(new InputSource(representation.getReader()));
                         } catch (IOException e) {
                                 return badRequest(e);
-                        } catch (ParserConfigurationException e) {
-                                return badRequest(e);
                         } catch (SAXException e) {
                                 return badRequest(e);
                         }
                 }
 
-                ValidationStatus status= Validator.validateJobRequest(doc, webservice());
+                try {
+                        return createJobResource(doc, resources);
+                } finally {
+                        // the resources have been moved to the job's context by now
+                        FileUtils.deleteQuietly(resources);
+                }
+        }
+
+        private Representation createJobResource(Document doc, File resources) {
+                // the request was validated against the schema while parsing it
+                ValidationStatus status= Validator.validateJobRequestArguments(doc, webservice());
 
                 if (!status.isValid()) {
                         setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
@@ -168,7 +167,7 @@ public class JobsResource extends AuthenticatedResource {
 
                 Optional<Job> job;
                 try {
-                        job = createJob(doc, zipfile );
+                        job = createJob(doc, resources);
                 } catch (LocalInputException e) {
                         return badRequest(e);
                 } catch (IllegalArgumentException e) {
@@ -185,10 +184,9 @@ public class JobsResource extends AuthenticatedResource {
                         .add(job.get().getId(),XmlUtils.DOMToString(doc));
 
                 JobXmlWriter writer = XmlWriterFactory.createXmlWriterForJob(job.get());
-                Document jobXml = writer.withAllMessages().withScriptDetails().getXmlDocument();
-                DomRepresentation dom = new DomRepresentation(MediaType.APPLICATION_XML, jobXml);
+                writer.withAllMessages().withScriptDetails();
                 setStatus(Status.SUCCESS_CREATED);
-                return dom;
+                return new StreamingXmlRepresentation(writer);
 
         }
 
@@ -203,7 +201,9 @@ public class JobsResource extends AuthenticatedResource {
          * http://wiki.restlet.org/docs_2.0/13-restlet/28-restlet/64-restlet.html
          */
         /**
-         * Process multipart.
+         * Process multipart. The parts are read as a stream, and the zip file
+         * is unzipped into a temporary directory while it is being received,
+         * without being stored itself.
          *
          * @param request the request
          * @return the multipart request data
@@ -212,50 +212,63 @@ public class JobsResource extends AuthenticatedResource {
 
                 String tmpdir = webservice().getConfiguration().getTmpDir();
                 logger.debug("Tmpdir: "+tmpdir);
-                // 1/ Create a factory for disk-based file items
-                DiskFileItemFactory fileItemFactory = new DiskFileItemFactory();
-                fileItemFactory.setSizeThreshold(1000240);
 
-                // 2/ Create a new file upload handler based on the Restlet
                 // FileUpload extension that will parse Restlet requests and
-                // generates FileItems.
-                RestletFileUpload upload = new RestletFileUpload(fileItemFactory);
-                List<FileItem> items;
+                // give access to the parts as streams.
+                RestletFileUpload upload = new RestletFileUpload();
 
-                ZipFile zip = null;
+                File resources = null;
                 String xml = "";
-                        items = upload.parseRequest(request);
-                        Iterator<FileItem> it = items.iterator();
+                try {
+                        FileItemIterator it = upload.getItemIterator(request.getEntity());
                         while (it.hasNext()) {
-                                FileItem fi = it.next();
-                                if (fi.getFieldName().equals(JOB_DATA_FIELD)) {
-                                        logger.debug("Reading zip file");
-                                        File file = File.createTempFile(tempfilePrefix, tempfileSuffix, new File(tmpdir));
-                                        fi.write(file);
-
-                                        // re-opening the file after writing to it
-                                        File file2 = new File(file.getAbsolutePath());
-                                        zip = new ZipFile(file2);
+                                FileItemStream item = it.next();
+                                if (item.getFieldName().equals(JOB_DATA_FIELD)) {
+                                        logger.debug("Unzipping job data");
+                                        resources = createTempDir(tmpdir);
+                                        long start = System.nanoTime();
+                                        CountingInputStream is = new CountingInputStream(item.openStream());
+                                        try {
+                                                long unzipped = DirectoryJobResources.unzip(is, resources);
+                                                // read what is after the last entry
+                                                ByteStreams.copy(is, ByteStreams.nullOutputStream());
+                                                long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                                                logger.info(String.format(
+                                                                "Received %d bytes of job data in %d ms (%.2f MB/s), %d bytes unzipped",
+                                                                is.getCount(), millis, is.getCount() / 1024.0 / 1024.0 / (millis / 1000.0),
+                                                                unzipped));
+                                        } finally {
+                                                is.close();
+                                        }
                                 }
-                                else if (fi.getFieldName().equals(JOB_REQUEST_FIELD)) {
-                                        xml = fi.getString("utf-8");
+                                else if (item.getFieldName().equals(JOB_REQUEST_FIELD)) {
+                                        xml = Streams.asString(item.openStream(), "utf-8");
                                         logger.debug("XML multi:"+xml);
                                 }
                         }
 
-                        if (zip == null || xml.length() == 0) {
+                        if (resources == null || xml.length() == 0) {
+                                FileUtils.deleteQuietly(resources);
                                 setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
                                 return null;
                         }
 
-                        DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-                        docFactory.setNamespaceAware(true);
-                        DocumentBuilder builder = docFactory.newDocumentBuilder();
-                        InputSource is = new InputSource(new StringReader(xml));
-                        Document doc = builder.parse(is);
-                        MultipartRequestData data = new MultipartRequestData(zip, doc);
+                        Document doc = Validator.parseJobRequest(new InputSource(new StringReader(xml)));
+                        MultipartRequestData data = new MultipartRequestData(resources, doc);
                         return data;
+                } catch (Exception e) {
+                        FileUtils.deleteQuietly(resources);
+                        throw e;
+                }
+
+        }
 
+        private File createTempDir(String tmpdir) throws IOException {
+                File dir = File.createTempFile(tempfilePrefix, tempfileSuffix, new File(tmpdir));
+                if (!dir.delete() || !dir.mkdir()) {
+                        throw new IOException("Could not create temporary directory " + dir);
+                }
+                return dir;
         }
 
         // just a convenience class for representing the parts of a multipart request
@@ -264,14 +277,8 @@ public class JobsResource extends AuthenticatedResource {
          */
         private class MultipartRequestData {
 
-                /**
-                 * Process multipart.
-                 *
-                 * @param request the request
-                 * @return the multipart request data
-                 */
-                /** The zip. */
-                private final ZipFile zip;
+                /** The directory the zip was unzipped to. */
+                private final File resources;
 
                 /** The xml. */
                 private final Document xml;
@@ -279,21 +286,21 @@ public class JobsResource extends AuthenticatedResource {
                 /**
                  * Instantiates a new multipart request data.
                  *
-                 * @param zip the zip
+                 * @param resources the unzipped resources
                  * @param xml the xml
                  */
-                MultipartRequestData(ZipFile zip, Document xml) {
-                        this.zip = zip;
+                MultipartRequestData(File resources, Document xml) {
+                        this.resources = resources;
                         this.xml = xml;
                 }
 
                 /**
-                 * Gets the zip file.
+                 * Gets the directory the zip was unzipped to.
                  *
-                 * @return the zip file
+                 * @return the directory
                  */
-                ZipFile getZipFile() {
-                        return zip;
+                File getResources() {
+                        return resources;
                 }
 
                 /**
@@ -310,11 +317,11 @@ public class JobsResource extends AuthenticatedResource {
          * Creates the job.
          *
          * @param doc the doc
-         * @param zip the zip
+         * @param resources the directory holding the unzipped resources
          * @return the job
          * @throws LocalInputException
          */
-        private Optional<Job> createJob(Document doc, ZipFile zip)
+        private Optional<Job> createJob(Document doc, File resources)
                         throws LocalInputException {
 
                 Element scriptElm = (Element) doc.getElementsByTagNameNS(Validator.NS_DAISY, "script").item(0);
@@ -362,22 +369,22 @@ public class JobsResource extends AuthenticatedResource {
                 XProcInput.Builder inBuilder = new XProcInput.Builder();
                 XProcOutput.Builder outBuilder = new XProcOutput.Builder();
 
-                addInputsToJob(doc.getElementsByTagNameNS(Validator.NS_DAISY,"input"), script.getXProcPipelineInfo().getInputPorts(), inBuilder,zip!=null);
+                addInputsToJob(doc.getElementsByTagNameNS(Validator.NS_DAISY,"input"), script.getXProcPipelineInfo().getInputPorts(), inBuilder,resources!=null);
 
                 /*Iterable<XProcOptionInfo> filteredOptions = null;
                   if (!((PipelineWebService) getApplication()).isLocal()) {
                   filteredOptions = XProcScriptFilter.INSTANCE.filter(script).getXProcPipelineInfo().getOptions();
                   }*/
 
-                addOptionsToJob(doc.getElementsByTagNameNS(Validator.NS_DAISY,"option"), script, inBuilder,zip!=null);// script.getXProcPipelineInfo().getOptions(), builder, filteredOptions);
+                addOptionsToJob(doc.getElementsByTagNameNS(Validator.NS_DAISY,"option"), script, inBuilder,resources!=null);// script.getXProcPipelineInfo().getOptions(), builder, filteredOptions);
                 addOutputsToJob(doc.getElementsByTagNameNS(Validator.NS_DAISY,"output"), script.getXProcPipelineInfo().getOutputPorts(), outBuilder);
 
                 BoundXProcScript bound= BoundXProcScript.from(script,inBuilder.build(),outBuilder.build());
 
                 JobManager jobMan = webservice().getJobManager(this.getClient());
                 JobResources resourceCollection=null;
-                if (zip != null){
-                        resourceCollection = new ZippedJobResources(zip);
+                if (resources != null){
+                        resourceCollection = new DirectoryJobResources(resources);
                 }
                 boolean mapping=!webservice().getConfiguration().isLocalFS();
                 //logger.debug("MAPPING "+mapping);
@@ -146,7 +146,8 @@ public abstract class NamedResultResource extends AuthenticatedResource {
                         return this.getErrorRepresentation("No results available");
                 }
                 try{
-                        return ResultResource.getZippedRepresentation(results,this.job.get());
+                        return ResultResource.getZippedRepresentation(results,this.job.get(),
+                                        webservice().getConfiguration().isResultsCacheEnabled());
                 }catch(Exception e){
                                 setStatus(Status.SERVER_ERROR_INTERNAL);
                                 return this.getErrorRepresentation(e);
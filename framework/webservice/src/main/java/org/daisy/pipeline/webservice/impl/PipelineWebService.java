@@ -75,6 +75,13 @@ public class PipelineWebService extends Application {
 
         private DatatypeRegistry datatypeRegistry;
 
+        private JobJanitor janitor;
+
+        /** Responses derived from the script registry */
+        private final ResponseCache scriptResponses = new ResponseCache();
+        /** Responses derived from the datatype registry */
+        private final ResponseCache datatypeResponses = new ResponseCache();
+
         /* (non-Javadoc)
          * @see org.restlet.Application#createInboundRoot()
          */
@@ -134,6 +141,11 @@ public class PipelineWebService extends Application {
                 }
                 //get rid of stale jobs
                 this.cleanUp();
+                //and of old ones from now on
+                this.janitor = JobJanitor.fromProperties(
+                                this.getJobManager(webserviceStorage.getClientStorage().defaultClient()),
+                                webserviceStorage.getJobConfigurationStorage());
+                this.janitor.start();
                 Routes routes = new Routes();
                 
                 logger.info(String.format("Starting webservice on port %d",
@@ -248,6 +260,8 @@ public class PipelineWebService extends Application {
          * @throws Throwable
          */
         public void close() throws Exception {
+                if (this.janitor!=null)
+                        this.janitor.stop();
                 if (this.component!=null)
                         this.component.stop();
                 this.stop();
@@ -360,4 +374,12 @@ public class PipelineWebService extends Application {
                 return this.datatypeRegistry;
         }
 
+        ResponseCache getScriptResponses() {
+                return scriptResponses;
+        }
+
+        ResponseCache getDatatypeResponses() {
+                return datatypeResponses;
+        }
+
 }
@@ -24,6 +24,7 @@ public class PipelineWebServiceConfiguration {
         private String clientSecret=null;
         private static Logger logger = LoggerFactory.getLogger(PipelineWebServiceConfiguration.class);
         private boolean cleanUpOnStartUp = false;
+        private boolean resultsCache = false;
 
         /**
          * Constructs a new instance.
@@ -88,6 +89,7 @@ public class PipelineWebServiceConfiguration {
                 clientSecret=Properties.CLIENT_SECRET.get();
 
                 cleanUpOnStartUp = Boolean.valueOf(Properties. CLEAN_UP_ON_START_UP.get("false"));
+                resultsCache = Boolean.valueOf(Properties.RESULTS_CACHE.get("false"));
         }
 
         public void publishConfiguration(PropertyPublisher propPublisher){
@@ -112,6 +114,7 @@ public class PipelineWebServiceConfiguration {
                 publish(propPublisher, Properties.PORT,routes.getPort()+"");
 
                 publish(propPublisher, Properties.CLEAN_UP_ON_START_UP,this.getCleanUpOnStartUp()+"");
+                publish(propPublisher, Properties.RESULTS_CACHE,this.isResultsCacheEnabled()+"");
 
         }
 
@@ -132,6 +135,7 @@ public class PipelineWebServiceConfiguration {
                 unpublish(propPublisher, Properties.TMPDIR);
                 unpublish(propPublisher, Properties.AUTHENTICATION);
                 unpublish(propPublisher, Properties.CLEAN_UP_ON_START_UP);
+                unpublish(propPublisher, Properties.RESULTS_CACHE);
 
         }
 
@@ -219,5 +223,12 @@ public class PipelineWebServiceConfiguration {
                 return this.cleanUpOnStartUp;
         }
 
+        /**
+         * Whether zipped results are kept on disk once they have been produced
+         */
+        public boolean isResultsCacheEnabled() {
+                return this.resultsCache;
+        }
+
 }
 
@@ -4,14 +4,17 @@ package org.daisy.pipeline.webservice.impl;
 
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import org.daisy.common.priority.AdmissionController;
 import org.daisy.common.priority.Prioritizable;
+import org.daisy.pipeline.clients.Client.Role;
 import org.daisy.pipeline.job.Job;
+import org.daisy.pipeline.job.JobQueue;
 import org.daisy.pipeline.webserviceutils.xml.QueueXmlWriter;
 import org.daisy.pipeline.webserviceutils.xml.XmlWriterFactory;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 
@@ -39,11 +42,21 @@ public class QueueResource extends AuthenticatedResource {
 		}
 
 		setStatus(Status.SUCCESS_OK);
-                Collection<? extends Prioritizable<Job>> jobs=webservice().getJobManager(this.getClient()).getExecutionQueue().asCollection();
-		QueueXmlWriter writer = XmlWriterFactory.createXmlWriterForQueue(jobs);
-                DomRepresentation dom = new DomRepresentation(MediaType.APPLICATION_XML,
-                                writer.getXmlDocument());
-		return dom;
+                JobQueue queue=webservice().getJobManager(this.getClient()).getExecutionQueue();
+                Collection<? extends Prioritizable<Job>> jobs=queue.asCollection();
+                AdmissionController<Job> admission=queue.getAdmissionController();
+                //only list the running jobs the client has access to
+                Map<Job,Long> reservations=new LinkedHashMap<Job,Long>();
+                if (admission!=null){
+                        for (Map.Entry<Job,Long> reservation: admission.getReservations().entrySet()){
+                                if (this.getClient().getRole()==Role.ADMIN
+                                                || reservation.getKey().getContext().getClient().getId().equals(this.getClient().getId())){
+                                        reservations.put(reservation.getKey(),reservation.getValue());
+                                }
+                        }
+                }
+		QueueXmlWriter writer = XmlWriterFactory.createXmlWriterForQueue(jobs,admission,reservations);
+		return new StreamingXmlRepresentation(writer);
 	}
 
 }
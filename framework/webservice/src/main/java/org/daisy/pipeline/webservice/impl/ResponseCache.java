@@ -0,0 +1,141 @@
+package org.daisy.pipeline.webservice.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.daisy.pipeline.webserviceutils.xml.StreamingXmlWriter;
+import org.daisy.pipeline.webserviceutils.xml.XmlUtils;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ServerResource;
+import org.w3c.dom.Document;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Keeps the XML of responses that only change when a registry changes, such
+ * as the scripts and the datatypes.
+ *
+ * Responses are stored by key along with the version of the registry they
+ * were generated from, and are dropped as soon as a request is made with a
+ * newer version. A request that read an older version, because it raced
+ * with a registry change, is not served from the cache and its response is
+ * not stored. Every response gets a strong ETag computed from its content,
+ * so clients sending it back in an {@code If-None-Match} header get a 304
+ * without the response being generated again.
+ */
+final class ResponseCache {
+
+        private final ConcurrentMap<String, CachedResponse> responses = Maps.newConcurrentMap();
+        /** Guarded by this */
+        private long version = -1;
+
+        /**
+         * Returns the response stored under the given key, or null if there is
+         * none for the given version of the registry.
+         */
+        CachedResponse get(String key, long version) {
+                synchronized (this) {
+                        if (version > this.version) {
+                                responses.clear();
+                                this.version = version;
+                                return null;
+                        } else if (version < this.version) {
+                                return null;
+                        }
+                }
+                CachedResponse response = responses.get(key);
+                return response != null && response.version == version ? response : null;
+        }
+
+        /**
+         * Writes the XML and stores it under the given key, unless a newer
+         * version of the registry has been seen in the meantime.
+         *
+         * @param version the version of the registry read before generating
+         *        the XML
+         */
+        CachedResponse put(String key, long version, StreamingXmlWriter writer) throws IOException {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                writer.writeXml(os);
+                return put(key, version, os.toByteArray());
+        }
+
+        /**
+         * Serializes the document and stores it under the given key, unless a
+         * newer version of the registry has been seen in the meantime.
+         *
+         * @param version the version of the registry read before building
+         *        the document
+         */
+        CachedResponse put(String key, long version, Document doc) throws IOException {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                XmlUtils.DOMToStream(doc, os);
+                return put(key, version, os.toByteArray());
+        }
+
+        private CachedResponse put(String key, long version, byte[] xml) {
+                CachedResponse response = new CachedResponse(version, xml);
+                synchronized (this) {
+                        if (version == this.version) {
+                                responses.put(key, response);
+                        }
+                }
+                return response;
+        }
+
+        /**
+         * A stored response, which can be written again as many times as
+         * needed.
+         */
+        static final class CachedResponse implements StreamingXmlWriter {
+
+                private final long version;
+                private final byte[] xml;
+                private final Tag tag;
+
+                private CachedResponse(long version, byte[] xml) {
+                        this.version = version;
+                        this.xml = xml;
+                        this.tag = new Tag(Hashing.sha1().hashBytes(xml).toString(), false);
+                }
+
+                Tag getTag() {
+                        return tag;
+                }
+
+                @Override
+                public void writeXml(OutputStream os) throws IOException {
+                        os.write(xml);
+                }
+
+                /**
+                 * Sets the status of the resource and returns the
+                 * representation to send: an empty one with status 304 when
+                 * the request's {@code If-None-Match} header matches the tag,
+                 * the XML otherwise.
+                 */
+                Representation represent(ServerResource resource) {
+                        List<Tag> noneMatch = resource.getRequest().getConditions().getNoneMatch();
+                        for (Tag t : noneMatch) {
+                                if (Tag.ALL.equals(t) || tag.equals(t, false)) {
+                                        resource.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+                                        Representation empty = new EmptyRepresentation();
+                                        empty.setTag(tag);
+                                        return empty;
+                                }
+                        }
+                        resource.setStatus(Status.SUCCESS_OK);
+                        Representation representation = new StreamingXmlRepresentation(this);
+                        representation.setSize(xml.length);
+                        representation.setTag(tag);
+                        return representation;
+                }
+        }
+}
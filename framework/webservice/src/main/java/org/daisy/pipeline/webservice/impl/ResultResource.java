@@ -1,7 +1,11 @@
 package org.daisy.pipeline.webservice.impl;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
@@ -16,13 +20,16 @@ import org.restlet.data.Digest;
 import org.restlet.data.Disposition;
 import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Optional;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
 
 /**
  * The Class ResultResource.
@@ -32,6 +39,9 @@ public class ResultResource extends AuthenticatedResource {
         private Optional<Job> job=Optional.absent();
         private static Logger logger = LoggerFactory.getLogger(ResultResource.class
                         .getName());
+        private static final int BUFFER_SIZE = 64 * 1024;
+        /** Directory in the job's directory that holds the zipped results */
+        private static final String CACHE_DIR = "zip-cache";
 
         /*
          * (non-Javadoc)
@@ -83,7 +93,8 @@ public class ResultResource extends AuthenticatedResource {
                         return this.getErrorRepresentation("No results available");
                 }
                 try {
-                        return getZippedRepresentation(results, job.get());
+                        return getZippedRepresentation(results, job.get(),
+                                        webservice().getConfiguration().isResultsCacheEnabled());
                 } catch (Exception e) {
                         setStatus(Status.SERVER_ERROR_INTERNAL);
                         return this.getErrorRepresentation(e);
@@ -93,16 +104,90 @@ public class ResultResource extends AuthenticatedResource {
         public static Representation getZippedRepresentation(
                         Collection<JobResult> results, Job job) throws IOException,
                         NoSuchAlgorithmException {
-                        byte[] zip =JobResultSet.asZippedByteArray(results);
-                        //DigesterRepresentation doesn't add the header
-                        Representation rep = new InputRepresentation(new ByteArrayInputStream(zip),
-                                        MediaType.APPLICATION_ZIP);
-                        rep.setDigest(new Digest(MessageDigest.getInstance("MD5").digest(zip)));
+                return getZippedRepresentation(results,job,false);
+        }
+
+        /**
+         * Returns the results as a zip file. The zip file is written directly to the
+         * response. If the cache is enabled it is written to the job's directory the
+         * first time instead, and served from there, with its size and digest, afterwards.
+         * Range requests are handled by the application's range service.
+         */
+        public static Representation getZippedRepresentation(
+                        final Collection<JobResult> results, Job job, boolean cache) throws IOException,
+                        NoSuchAlgorithmException {
+                        Representation rep;
                         Disposition disposition = new Disposition();
                         disposition.setFilename(job.getId().toString() + ".zip");
                         disposition.setType(Disposition.TYPE_ATTACHMENT);
-                        disposition.setSize(zip.length);
+                        File cached = cache ? getCachedZip(results, job) : null;
+                        if (cached != null) {
+                                rep = new FileRepresentation(cached, MediaType.APPLICATION_ZIP);
+                                byte[] digest = readDigest(cached);
+                                if (digest != null) {
+                                        rep.setDigest(new Digest(digest));
+                                }
+                                disposition.setSize(cached.length());
+                        } else {
+                                //the size and digest are only known once the zip is written
+                                rep = new OutputRepresentation(MediaType.APPLICATION_ZIP) {
+                                        @Override
+                                        public void write(OutputStream os) throws IOException {
+                                                OutputStream buffered = new BufferedOutputStream(os, BUFFER_SIZE);
+                                                JobResultSet.writeZip(results, buffered);
+                                                buffered.flush();
+                                        }
+                                };
+                        }
                         rep.setDisposition(disposition);
                         return rep;
         }
+
+        /**
+         * Returns the zip file of the results in the job's directory, writing it if it
+         * doesn't exist yet, or null if it can't be written.
+         */
+        private static File getCachedZip(Collection<JobResult> results, Job job) {
+                try {
+                        File dir = new File(new File(job.getContext().getLogFile()).getParentFile(), CACHE_DIR);
+                        MessageDigest key = MessageDigest.getInstance("MD5");
+                        for (JobResult result : results) {
+                                key.update((result.getIdx() + "|" + result.getPath() + "\n").getBytes("UTF-8"));
+                        }
+                        File zip = new File(dir, BaseEncoding.base16().lowerCase().encode(key.digest()) + ".zip");
+                        if (zip.exists()) {
+                                return zip;
+                        }
+                        if (!dir.isDirectory() && !dir.mkdirs()) {
+                                throw new IOException("Could not create " + dir);
+                        }
+                        //concurrent requests each write their own file, the last one to finish wins
+                        File tmp = File.createTempFile("results", ".tmp", dir);
+                        MessageDigest md5 = MessageDigest.getInstance("MD5");
+                        OutputStream os = new DigestOutputStream(
+                                        new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE), md5);
+                        try {
+                                JobResultSet.writeZip(results, os);
+                        } finally {
+                                os.close();
+                        }
+                        Files.write(md5.digest(), new File(zip.getPath() + ".md5"));
+                        if (!tmp.renameTo(zip)) {
+                                tmp.delete();
+                        }
+                        return zip.exists() ? zip : null;
+                } catch (Exception e) {
+                        logger.warn(String.format("Could not cache the results of job %s", job.getId()), e);
+                        return null;
+                }
+        }
+
+        private static byte[] readDigest(File zip) {
+                File digest = new File(zip.getPath() + ".md5");
+                try {
+                        return digest.exists() ? Files.toByteArray(digest) : null;
+                } catch (IOException e) {
+                        return null;
+                }
+        }
 }
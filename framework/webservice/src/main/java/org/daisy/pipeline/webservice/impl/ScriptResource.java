@@ -1,13 +1,12 @@
 package org.daisy.pipeline.webservice.impl;
 
+import java.io.IOException;
+
 import org.daisy.pipeline.script.ScriptRegistry;
 import org.daisy.pipeline.script.XProcScript;
 import org.daisy.pipeline.script.XProcScriptService;
-import org.daisy.pipeline.webserviceutils.xml.ScriptXmlWriter;
 import org.daisy.pipeline.webserviceutils.xml.XmlWriterFactory;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
@@ -16,10 +15,17 @@ import org.slf4j.LoggerFactory;
 // TODO: Auto-generated Javadoc
 /**
  * The Class ScriptResource.
+ *
+ * The script is only loaded when it isn't in the response cache for the
+ * current version of the script registry.
  */
 public class ScriptResource extends AuthenticatedResource {
 	/** The script. */
-	private XProcScript script = null;
+	private XProcScriptService unfilteredScript = null;
+	/** The script id. */
+	private String scriptId = null;
+	/** The version of the registry the script was looked up in. */
+	private long version;
 	/** The logger. */
 	private static Logger logger = LoggerFactory.getLogger(ScriptResource.class.getName());
 
@@ -33,18 +39,12 @@ public class ScriptResource extends AuthenticatedResource {
 			return;
 		}
 
-		String scriptId = null;
 		scriptId = (String) getRequestAttributes().get("id");
 
 		logger.debug("Script with id :"+scriptId);
 		ScriptRegistry scriptRegistry = webservice().getScriptRegistry();
-		XProcScriptService unfilteredScript = scriptRegistry
-				.getScript(scriptId);
-
-		if (unfilteredScript != null) {
-			script =  XProcScriptFilter.INSTANCE
-					.filter(unfilteredScript.load());
-		}
+		version = scriptRegistry.getVersion();
+		unfilteredScript = scriptRegistry.getScript(scriptId);
 	}
 
 	/**
@@ -59,15 +59,25 @@ public class ScriptResource extends AuthenticatedResource {
 			return null;
 		}
 
-		if (script == null) {
+		if (unfilteredScript == null) {
 			setStatus(Status.CLIENT_ERROR_NOT_FOUND);
 			return this.getErrorRepresentation("Script not found");
 		}
-		setStatus(Status.SUCCESS_OK);
-		ScriptXmlWriter writer = XmlWriterFactory.createXmlWriterForScript(script);
-		DomRepresentation dom = new DomRepresentation(
-				MediaType.APPLICATION_XML,
-				writer.withDetails().getXmlDocument());
-		return dom;
+		ResponseCache cache = webservice().getScriptResponses();
+		String key = ScriptsResource.CACHE_KEY + "/" + scriptId;
+		ResponseCache.CachedResponse response = cache.get(key, version);
+		if (response == null) {
+			XProcScript script = XProcScriptFilter.INSTANCE
+					.filter(unfilteredScript.load());
+			try {
+				response = cache.put(key, version,
+						XmlWriterFactory.createXmlWriterForScript(script).withDetails());
+			} catch (IOException e) {
+				logger.error("Error writing script " + scriptId, e);
+				setStatus(Status.SERVER_ERROR_INTERNAL);
+				return this.getErrorRepresentation(e.getMessage());
+			}
+		}
+		return response.represent(this);
 	}
 }
@@ -1,50 +1,32 @@
 package org.daisy.pipeline.webservice.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.daisy.pipeline.script.ScriptRegistry;
 import org.daisy.pipeline.script.XProcScript;
 import org.daisy.pipeline.script.XProcScriptService;
-import org.daisy.pipeline.webserviceutils.xml.ScriptsXmlWriter;
 import org.daisy.pipeline.webserviceutils.xml.XmlWriterFactory;
-import org.restlet.data.MediaType;
 import org.restlet.data.Status;
-import org.restlet.ext.xml.DomRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 // TODO: Auto-generated Javadoc
 /**
  * The Class ScriptsResource.
+ *
+ * The XML is only generated again when the script registry has changed, and
+ * clients get a 304 when they send the ETag of the current version back.
  */
 public class ScriptsResource extends AuthenticatedResource {
-	/** The scripts. */
-	List<XProcScript> scripts = null;
 
-	/* (non-Javadoc)
-	 * @see org.restlet.resource.Resource#doInit()
-	 */
-	@Override
-	public void doInit() {
-		super.doInit();
-		if (!isAuthenticated()) {
-			return;
-		}
-		ScriptRegistry scriptRegistry = webservice().getScriptRegistry();
-		Iterable<XProcScriptService> unfilteredScripts = scriptRegistry.getScripts();
-		Iterator<XProcScriptService> it = unfilteredScripts.iterator();
-		scripts = new ArrayList<XProcScript>();
+	/** The logger. */
+	private static Logger logger = LoggerFactory.getLogger(ScriptsResource.class.getName());
 
-		while (it.hasNext()) {
-			XProcScriptService unfilteredScript = it.next();
-			XProcScript script = (webservice().getConfiguration().isLocalFS()) ? unfilteredScript
-					.load() : XProcScriptFilter.INSTANCE
-					.filter(unfilteredScript.load());
-					scripts.add(script);
-		}
-	}
+	static final String CACHE_KEY = "scripts";
 
 	/**
 	 * Gets the resource.
@@ -58,11 +40,27 @@ public class ScriptsResource extends AuthenticatedResource {
     		return null;
     	}		
 		
-		this.setStatus(Status.SUCCESS_OK);
-		ScriptsXmlWriter writer = XmlWriterFactory.createXmlWriterForScripts(scripts);
-		DomRepresentation dom = new DomRepresentation(MediaType.APPLICATION_XML,
-				writer.getXmlDocument());
-		return dom;
-
+		ScriptRegistry scriptRegistry = webservice().getScriptRegistry();
+		ResponseCache cache = webservice().getScriptResponses();
+		long version = scriptRegistry.getVersion();
+		ResponseCache.CachedResponse response = cache.get(CACHE_KEY, version);
+		if (response == null) {
+			List<XProcScript> scripts = new ArrayList<XProcScript>();
+			for (XProcScriptService unfilteredScript : scriptRegistry.getScripts()) {
+				XProcScript script = (webservice().getConfiguration().isLocalFS()) ? unfilteredScript
+						.load() : XProcScriptFilter.INSTANCE
+						.filter(unfilteredScript.load());
+				scripts.add(script);
+			}
+			try {
+				response = cache.put(CACHE_KEY, version,
+						XmlWriterFactory.createXmlWriterForScripts(scripts));
+			} catch (IOException e) {
+				logger.error("Error writing the scripts", e);
+				setStatus(Status.SERVER_ERROR_INTERNAL);
+				return this.getErrorRepresentation(e.getMessage());
+			}
+		}
+		return response.represent(this);
 	}
 }
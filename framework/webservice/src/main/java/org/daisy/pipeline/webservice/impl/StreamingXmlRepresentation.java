@@ -0,0 +1,34 @@
+package org.daisy.pipeline.webservice.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.daisy.pipeline.webserviceutils.xml.StreamingXmlWriter;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+/**
+ * XML representation written by a {@link StreamingXmlWriter} when the
+ * response is sent, instead of being built in memory as a DOM first.
+ */
+public class StreamingXmlRepresentation extends OutputRepresentation {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        private final StreamingXmlWriter writer;
+
+        public StreamingXmlRepresentation(StreamingXmlWriter writer) {
+                super(MediaType.APPLICATION_XML);
+                this.writer = writer;
+                setCharacterSet(CharacterSet.UTF_8);
+        }
+
+        @Override
+        public void write(OutputStream os) throws IOException {
+                OutputStream buffered = new BufferedOutputStream(os, BUFFER_SIZE);
+                writer.writeXml(buffered);
+                buffered.flush();
+        }
+}
@@ -1,17 +1,12 @@
 package org.daisy.pipeline.webservice.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import org.daisy.common.xproc.XProcOptionInfo;
 import org.daisy.common.xproc.XProcPortInfo;
 import org.daisy.pipeline.script.ScriptRegistry;
@@ -19,12 +14,14 @@ import org.daisy.pipeline.script.XProcScript;
 import org.daisy.pipeline.script.XProcScriptService;
 import org.daisy.pipeline.webserviceutils.xml.XmlUtils;
 import org.daisy.pipeline.webserviceutils.xml.XmlValidator;
+import org.daisy.pipeline.webserviceutils.xml.XmlValidator.ErrorHandlerImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 // TODO: Auto-generated Javadoc
@@ -42,22 +39,18 @@ public class Validator {
         public static String NS_DAISY = "http://www.daisy.org/ns/pipeline/data";
 
 	/**
-	 * Validate job request.
+	 * Parses a job request and validates it against the schema in the same
+	 * pass.
 	 *
-	 * @param doc the doc
-	 * @param application the application
-	 * @return true, if successful
+	 * @throws SAXException if the request is not well-formed or not valid
 	 */
-	public static ValidationStatus validateJobRequest(Document doc, PipelineWebService application) {
-
-		// validate against the schema
-		boolean xmlValid = validateXmlAgainstSchema(doc, XmlValidator.JOB_REQUEST_SCHEMA_URL);
-
-		if (xmlValid == false) {
-			return new ValidationStatus(false,"The request is not valid");
+	public static Document parseJobRequest(InputSource source) throws IOException, SAXException {
+		ErrorHandlerImpl errors = new ErrorHandlerImpl();
+		Document doc = XmlValidator.parse(source, XmlValidator.JOB_REQUEST_SCHEMA_URL, errors);
+		if (errors.hasErrors()) {
+			throw new SAXException("The request is not valid");
 		}
-
-		return validateJobRequestArguments(doc, application);
+		return doc;
 	}
 
 	// check that there is a value for each required argument
@@ -69,7 +62,7 @@ public class Validator {
 	 * @param application the application
 	 * @return true, if successful
 	 */
-	private static ValidationStatus validateJobRequestArguments(Document doc, PipelineWebService application) {
+	static ValidationStatus validateJobRequestArguments(Document doc, PipelineWebService application) {
 		
 		Element scriptElm = (Element)doc.getElementsByTagNameNS(NS_DAISY,"script").item(0);
 		// get the ID from the href attr value
@@ -373,26 +366,7 @@ public class Validator {
 	 * @return true, if successful
 	 */
 	private static boolean validateWellFormedXml(String xml){
-
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-	    factory.setValidating(false);
-	    DocumentBuilder db;
-		try {
-			db = factory.newDocumentBuilder();
-			InputStream is = new ByteArrayInputStream(xml.getBytes());
-		    db.parse(is);
-		    is.close();
-		} catch (ParserConfigurationException e) {
-			logger.error(e.getMessage());
-			return false;
-		} catch (SAXException e) {
-			logger.error(e.getMessage());
-			return false;
-		} catch (IOException e) {
-			logger.error(e.getMessage());
-			return false;
-		}
-		return true;
+		return XmlValidator.isWellFormed(new InputSource(new StringReader(xml)));
 	}
 
 }
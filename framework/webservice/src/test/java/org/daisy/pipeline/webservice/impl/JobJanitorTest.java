@@ -0,0 +1,121 @@
+package org.daisy.pipeline.webservice.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.daisy.pipeline.webservice.impl.JobJanitor.Candidate;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class JobJanitorTest {
+
+        private static final long NOW = 1000000000L;
+
+        private static JobJanitor janitor(long maxAge, long maxJobs, long maxBytes,
+                        long clientMaxJobs, long clientMaxBytes) {
+                return new JobJanitor(null, null, 600, 100, maxAge, maxJobs, maxBytes,
+                                clientMaxJobs, clientMaxBytes);
+        }
+
+        /**
+         * A job of the client that finished the given number of seconds ago.
+         */
+        private static Candidate job(String client, long size, long age) {
+                return new Candidate(null, client, size, NOW - age * 1000);
+        }
+
+        /**
+         * The ages of the selected jobs, in the order they are deleted.
+         */
+        private static List<Long> ages(List<Candidate> selected) {
+                List<Long> ages = Lists.newArrayList();
+                for (Candidate candidate : selected) {
+                        ages.add((NOW - candidate.finishedAt) / 1000);
+                }
+                return ages;
+        }
+
+        @Test
+        public void noLimits() {
+                List<Candidate> jobs = Arrays.asList(job("a", 1000, 1), job("a", 1000, 100000));
+                Assert.assertTrue(janitor(0, 0, 0, 0, 0).select(jobs, NOW).isEmpty());
+        }
+
+        @Test
+        public void maxAge() {
+                List<Candidate> jobs = Arrays.asList(job("a", 1, 9), job("a", 1, 10),
+                                new Candidate(null, "a", 1, NOW - 10001), job("a", 1, 20));
+                List<Candidate> selected = janitor(10, 0, 0, 0, 0).select(jobs, NOW);
+                //exactly maxage seconds old is not too old yet
+                Assert.assertEquals(2, selected.size());
+                Assert.assertSame(jobs.get(3), selected.get(0));
+                Assert.assertSame(jobs.get(2), selected.get(1));
+        }
+
+        @Test
+        public void maxJobs() {
+                List<Candidate> jobs = Arrays.asList(job("a", 1, 3), job("b", 1, 1), job("a", 1, 2));
+                Assert.assertTrue(janitor(0, 3, 0, 0, 0).select(jobs, NOW).isEmpty());
+                //the newest are kept
+                Assert.assertEquals(Arrays.asList(3L), ages(janitor(0, 2, 0, 0, 0).select(jobs, NOW)));
+                Assert.assertEquals(Arrays.asList(3L, 2L), ages(janitor(0, 1, 0, 0, 0).select(jobs, NOW)));
+        }
+
+        @Test
+        public void maxBytes() {
+                List<Candidate> jobs = Arrays.asList(job("a", 6, 1), job("a", 5, 2), job("a", 4, 3));
+                //the deleted job doesn't count, so the older one fits exactly
+                Assert.assertEquals(Arrays.asList(2L), ages(janitor(0, 0, 10, 0, 0).select(jobs, NOW)));
+                Assert.assertEquals(Arrays.asList(3L, 2L), ages(janitor(0, 0, 9, 0, 0).select(jobs, NOW)));
+                Assert.assertTrue(janitor(0, 0, 15, 0, 0).select(jobs, NOW).isEmpty());
+                //a job larger than the limit on its own
+                Assert.assertEquals(Arrays.asList(3L, 2L, 1L), ages(janitor(0, 0, 3, 0, 0).select(jobs, NOW)));
+        }
+
+        @Test
+        public void clientMaxJobs() {
+                List<Candidate> jobs = Arrays.asList(job("a", 1, 1), job("b", 1, 2), job("a", 1, 3),
+                                job("b", 1, 4), job("a", 1, 5));
+                Assert.assertEquals(Arrays.asList(5L, 4L, 3L), ages(janitor(0, 0, 0, 1, 0).select(jobs, NOW)));
+                Assert.assertEquals(Arrays.asList(5L), ages(janitor(0, 0, 0, 2, 0).select(jobs, NOW)));
+        }
+
+        @Test
+        public void clientMaxBytes() {
+                List<Candidate> jobs = Arrays.asList(job("a", 5, 1), job("b", 5, 2), job("a", 5, 3),
+                                job("b", 6, 4));
+                Assert.assertEquals(Arrays.asList(4L), ages(janitor(0, 0, 0, 0, 10).select(jobs, NOW)));
+                Assert.assertEquals(Arrays.asList(4L, 3L), ages(janitor(0, 0, 0, 0, 9).select(jobs, NOW)));
+        }
+
+        @Test
+        public void clientAndGlobalLimits() {
+                List<Candidate> jobs = Arrays.asList(job("a", 1, 1), job("a", 1, 2), job("b", 1, 3),
+                                job("b", 1, 4), job("c", 1, 5));
+                //the jobs deleted for their client don't count towards the global limit
+                Assert.assertEquals(Arrays.asList(5L, 4L, 2L),
+                                ages(janitor(0, 2, 0, 1, 0).select(jobs, NOW)));
+        }
+
+        @Test
+        public void tooOldJobsDontCount() {
+                List<Candidate> jobs = Arrays.asList(job("a", 100, 30), job("a", 1, 1), job("a", 100, 20),
+                                job("a", 1, 2), job("a", 1, 3));
+                Assert.assertEquals(Arrays.asList(30L, 20L, 3L),
+                                ages(janitor(10, 2, 0, 0, 0).select(jobs, NOW)));
+                Assert.assertEquals(Arrays.asList(30L, 20L),
+                                ages(janitor(10, 0, 3, 0, 0).select(jobs, NOW)));
+        }
+
+        @Test
+        public void oldestFirst() {
+                List<Candidate> jobs = Lists.newArrayList();
+                for (long age : new long[]{4, 9, 1, 7, 2, 8, 3, 6, 5}) {
+                        jobs.add(job(age % 2 == 0 ? "a" : "b", 1, age));
+                }
+                Assert.assertEquals(Arrays.asList(9L, 8L, 7L, 6L, 5L, 4L, 3L),
+                                ages(janitor(0, 2, 0, 0, 0).select(jobs, NOW)));
+        }
+}
@@ -0,0 +1,51 @@
+package org.daisy.pipeline.webservice.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.daisy.pipeline.webserviceutils.xml.StreamingXmlWriter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+        private static StreamingXmlWriter xml(final String content) {
+                return new StreamingXmlWriter() {
+                        @Override
+                        public void writeXml(OutputStream os) throws IOException {
+                                os.write(content.getBytes("UTF-8"));
+                        }
+                };
+        }
+
+        @Test
+        public void reusedForTheSameVersion() throws IOException {
+                ResponseCache cache = new ResponseCache();
+                Assert.assertNull(cache.get("scripts", 1));
+                ResponseCache.CachedResponse response = cache.put("scripts", 1, xml("<scripts/>"));
+                Assert.assertSame(response, cache.get("scripts", 1));
+                Assert.assertNull(cache.get("datatypes", 1));
+        }
+
+        @Test
+        public void droppedForANewerVersion() throws IOException {
+                ResponseCache cache = new ResponseCache();
+                cache.get("scripts", 1);
+                cache.put("scripts", 1, xml("<scripts/>"));
+                Assert.assertNull(cache.get("scripts", 2));
+                ResponseCache.CachedResponse response = cache.put("scripts", 2, xml("<scripts><script/></scripts>"));
+                Assert.assertSame(response, cache.get("scripts", 2));
+        }
+
+        @Test
+        public void olderVersionIsNotCached() throws IOException {
+                ResponseCache cache = new ResponseCache();
+                cache.get("scripts", 2);
+                ResponseCache.CachedResponse response = cache.put("scripts", 2, xml("<scripts><script/></scripts>"));
+                //a request that read the registry before it changed
+                Assert.assertNull(cache.get("scripts", 1));
+                cache.put("scripts", 1, xml("<scripts/>"));
+                //the newer response is still there
+                Assert.assertSame(response, cache.get("scripts", 2));
+        }
+}
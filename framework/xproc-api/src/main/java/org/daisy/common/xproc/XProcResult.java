@@ -15,6 +15,13 @@ public interface XProcResult {
 	 */
 	void writeTo(XProcOutput output);
 
+	/**
+	 * Releases the resources held by the result. To be called once the
+	 * result is not needed anymore, whether it was written or not. Calling it
+	 * more than once has no effect.
+	 */
+	void close();
+
 	/**
 	 * Gets the messages produced during the pipeline execution.
 	 *
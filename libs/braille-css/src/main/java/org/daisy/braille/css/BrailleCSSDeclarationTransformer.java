@@ -41,6 +41,7 @@ import org.daisy.braille.css.BrailleCSSProperty.WordSpacing;
 import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.CSSProperty.GenericCSSPropertyProxy;
 import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.SupportedCSS;
 import cz.vutbr.web.css.Term;
 import cz.vutbr.web.css.TermFunction;
 import cz.vutbr.web.css.TermIdent;
@@ -60,6 +61,10 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 		super();
 	}
 	
+	public BrailleCSSDeclarationTransformer(SupportedCSS css) {
+		super(css);
+	}
+	
 	protected Map<String, Method> parsingMethods() {
 		Map<String, Method> map = new HashMap<String, Method>(css.getTotalProperties(), 1.0f);
 		for (String property : css.getDefinedPropertyNames()) {
@@ -746,7 +751,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 	private final class MarginRepeater extends Repeater {
 
 		public MarginRepeater() {
-			super(4);
+			super(4, css);
 			type = Margin.class;
 			names.add("margin-top");
 			names.add("margin-right");
@@ -766,7 +771,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 	private final class PaddingRepeater extends Repeater {
 			
 		public PaddingRepeater() {
-			super(4);
+			super(4, css);
 			type = Padding.class;
 			names.add("padding-top");
 			names.add("padding-right");
@@ -786,7 +791,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 	private final class BorderStyleRepeater extends Repeater {
 		
 		public BorderStyleRepeater() {
-			super(4);
+			super(4, css);
 			this.type = BorderStyle.class;
 			names.add("border-top-style");
 			names.add("border-right-style");
@@ -805,7 +810,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 	private final class BorderAlignRepeater extends Repeater {
 		
 		public BorderAlignRepeater() {
-			super(4);
+			super(4, css);
 			this.type = BorderAlign.class;
 			names.add("border-top-align");
 			names.add("border-right-align");
@@ -824,7 +829,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 	private final class BorderWidthRepeater extends Repeater {
 		
 		public BorderWidthRepeater() {
-			super(4);
+			super(4, css);
 			this.type = BorderWidth.class;
 			names.add("border-top-width");
 			names.add("border-right-width");
@@ -855,7 +860,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 		private List<Repeater> repeaters;
 		
 		public BorderVariator() {
-			super(3);
+			super(3, css);
 			types.add(BorderWidth.class);
 			types.add(BorderStyle.class);
 			types.add(BorderAlign.class);
@@ -919,7 +924,7 @@ public class BrailleCSSDeclarationTransformer extends DeclarationTransformer {
 		private final String borderPatternName;
 		
 		public BorderSideVariator(String side) {
-			super(3);
+			super(3, css);
 			names.add("border-" + side + "-align");
 			types.add(BorderAlign.class);
 			names.add("border-" + side + "-style");
@@ -3,7 +3,6 @@ package org.daisy.braille.css;
 import java.util.HashMap;
 import java.util.Map;
 
-import cz.vutbr.web.css.CSSFactory;
 import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.Declaration;
 import cz.vutbr.web.css.SupportedCSS;
@@ -49,10 +48,7 @@ public class PropertyValue implements Cloneable {
 	}
 	
 	private final static SupportedCSS cssInstance = new SupportedBrailleCSS(true, false);
-	private static BrailleCSSDeclarationTransformer transformerInstance; static {
-		// SupportedCSS injected via CSSFactory in DeclarationTransformer.<init>
-		CSSFactory.registerSupportedCSS(cssInstance);
-		transformerInstance = new BrailleCSSDeclarationTransformer(); }
+	private final static BrailleCSSDeclarationTransformer transformerInstance = new BrailleCSSDeclarationTransformer(cssInstance);
 	private final static BrailleCSSParserFactory parserFactoryInstance = new BrailleCSSParserFactory();
 	
 	
@@ -60,8 +56,6 @@ public class PropertyValue implements Cloneable {
 		Declaration d = parserFactoryInstance.parseDeclaration(property + ":" + value);
 		Map<String,CSSProperty> properties = new HashMap<String,CSSProperty>();
 		Map<String,Term<?>> terms = new HashMap<String,Term<?>>();
-		// SupportedCSS injected via CSSFactory in Repeater.assignDefaults, Variator.assignDefaults
-		CSSFactory.registerSupportedCSS(cssInstance);
 		if (!transformerInstance.parseDeclaration(d, properties, terms))
 			return null;
 		return new PropertyValue(properties.get(property), terms.get(property));
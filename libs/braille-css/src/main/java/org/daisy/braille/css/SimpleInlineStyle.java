@@ -5,7 +5,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-import cz.vutbr.web.css.CSSFactory;
 import cz.vutbr.web.css.Declaration;
 import cz.vutbr.web.css.NodeData;
 import cz.vutbr.web.css.SupportedCSS;
@@ -15,10 +14,7 @@ import cz.vutbr.web.domassign.SingleMapNodeData;
 public class SimpleInlineStyle extends SingleMapNodeData implements NodeData, Cloneable, Iterable<PropertyValue> {
 	
 	private final static SupportedCSS cssInstance = new SupportedBrailleCSS();
-	private static BrailleCSSDeclarationTransformer transformerInstance; static {
-		// SupportedCSS injected via CSSFactory in DeclarationTransformer.<init>
-		CSSFactory.registerSupportedCSS(cssInstance);
-		transformerInstance = new BrailleCSSDeclarationTransformer(); }
+	private final static BrailleCSSDeclarationTransformer transformerInstance = new BrailleCSSDeclarationTransformer(cssInstance);
 	private final static BrailleCSSParserFactory parserFactory = new BrailleCSSParserFactory();
 	
 	public SimpleInlineStyle(String style) {
@@ -34,13 +30,9 @@ public class SimpleInlineStyle extends SingleMapNodeData implements NodeData, Cl
 	}
 	
 	public SimpleInlineStyle(List<Declaration> declarations, SimpleInlineStyle parentStyle) {
-		super();
-		transformer = transformerInstance;
-		css = cssInstance;
-		for (Declaration d : declarations) {
-			// SupportedCSS injected via CSSFactory in Repeater.assignDefaults, Variator.assignDefaults
-			CSSFactory.registerSupportedCSS(css);
-			push(d); }
+		super(transformerInstance, cssInstance);
+		for (Declaration d : declarations)
+			push(d);
 		if (parentStyle != null)
 			inheritFrom(parentStyle);
 	}
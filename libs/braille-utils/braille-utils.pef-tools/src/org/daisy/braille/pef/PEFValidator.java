@@ -17,35 +17,50 @@
  */
 package org.daisy.braille.pef;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintStream;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 
-import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.Templates;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.daisy.braille.api.factory.AbstractFactory;
+import org.xml.sax.DTDHandler;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 
 import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.CombineSchema;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
 import com.thaiopensource.validate.ValidateProperty;
-import com.thaiopensource.validate.ValidationDriver;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import com.thaiopensource.xml.sax.Jaxp11XMLReaderCreator;
 
 /**
  * Validates PEF-documents against the official Relax NG schema. Optionally performs additional
  * checks, see the different modes. 
+ * 
+ * The schemas are compiled once per mode and shared by all instances, and a document
+ * is checked against the Relax NG and Schematron rules in a single pass. Validation
+ * can be performed from several threads at once.
  * @author Joel Håkansson
  */
 public class PEFValidator extends AbstractFactory implements org.daisy.braille.api.validator.Validator {
@@ -71,8 +86,10 @@ public class PEFValidator extends AbstractFactory implements org.daisy.braille.a
 		 */
 		FULL_MODE
 	};
-	private File report;
-	private Mode mode;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final Map<Mode, Schema> schemas = new EnumMap<Mode, Schema>(Mode.class);
+	private volatile byte[] report;
+	private volatile Mode mode;
 	
 	/**
 	 * Creates a new PEFValidator
@@ -88,101 +105,136 @@ public class PEFValidator extends AbstractFactory implements org.daisy.braille.a
 	}
 
 	public boolean validate(URL input) {
-		return validate(input, mode);
+		ErrorCollector errors = new ErrorCollector();
+		boolean ok = validate(input, mode, errors);
+		report = errors.toString().getBytes(UTF_8);
+		return ok;
 	}
 	
-	private boolean validate(URL input, Mode modeLocal) {
-		boolean hasSchematron = true;
-		String schemaPath = "resource-files/pef-2008-1-full.rng";
-		switch (modeLocal) {
-			case FULL_MODE: 
-				schemaPath = "resource-files/pef-2008-1-full.rng";
-				hasSchematron = true;
-				break;
-			case LIGHT_MODE: 
-				schemaPath = "resource-files/pef-2008-1-light.rng";
-				hasSchematron = false;
-				break;
-		}
-		PrintStream orErr = System.err;
+	/**
+	 * Validates the resource at the given URL, reporting the problems found to the
+	 * supplied error handler instead of the report of this validator.
+	 * @param input the resource URL
+	 * @param errorHandler the error handler receiving the problems found in this call
+	 * @return returns true if validation was successful and resource is valid, false otherwise
+	 */
+	public boolean validate(URL input, ErrorHandler errorHandler) {
+		return validate(input, mode, errorHandler);
+	}
+	
+	private boolean validate(URL input, Mode modeLocal, ErrorHandler errorHandler) {
+		CountingErrorHandler eh = new CountingErrorHandler(errorHandler);
 		try {
-			report = File.createTempFile("Validator", ".tmp");
-			report.deleteOnExit();
-		} catch (IOException e1) {
-			report = null;
+			PropertyMapBuilder propertyBuilder = new PropertyMapBuilder();
+			propertyBuilder.put(ValidateProperty.ERROR_HANDLER, eh);
+			com.thaiopensource.validate.Validator validator = getSchema(modeLocal).createValidator(propertyBuilder.toPropertyMap());
+			XMLReader reader = new Jaxp11XMLReaderCreator().createXMLReader();
+			reader.setErrorHandler(eh);
+			reader.setContentHandler(validator.getContentHandler());
+			DTDHandler dtdHandler = validator.getDTDHandler();
+			if (dtdHandler != null) {
+				reader.setDTDHandler(dtdHandler);
+			}
+			InputSource source = new InputSource(input.toString());
+			InputStream is = input.openStream();
+			try {
+				source.setByteStream(is);
+				reader.parse(source);
+			} finally {
+				is.close();
+			}
+			return !eh.getHadErrorOrFatalError();
+		} catch (SAXParseException e) {
+			// already reported to the error handler
+		} catch (SAXException e) {
+			report(eh, e);
+		} catch (IOException e) {
+			report(eh, e);
 		}
-		
-		PrintStream ps = null;
-		try {
-			ps = new PrintStream(report);
-		} catch (FileNotFoundException e) { }
+		return false;
+	}
+	
+	private static void report(ErrorHandler eh, Exception e) {
 		try {
-
-			System.setErr(ps);
-
-			boolean ok;
-			ok = runValidation(input, this.getClass().getResource(schemaPath));
-			if (hasSchematron) {
-				try {
-					File schematron = transformSchematron(this.getClass().getResource(schemaPath));
-					ok &= runValidation(input, schematron.toURI().toURL());
-				} catch (Exception e) {
-					e.printStackTrace();
-					ok = false;
-				}
-			}
-			return ok;
-		} finally {
-			if (ps != null) {
-				ps.close();
+			eh.fatalError(new SAXParseException(e.getMessage(), null, null, -1, -1, e));
+		} catch (SAXException e1) {
+			// the validation has failed anyway
+		}
+	}
+	
+	/**
+	 * Gets the compiled schema for the mode, compiling it the first time.
+	 */
+	private static Schema getSchema(Mode mode) throws IOException, SAXException {
+		synchronized (schemas) {
+			Schema schema = schemas.get(mode);
+			if (schema == null) {
+				schema = compileSchema(mode);
+				schemas.put(mode, schema);
 			}
-			System.setErr(orErr);
+			return schema;
 		}
 	}
 	
-	private boolean runValidation(URL url, URL schema) {
-		TestError errorHandler = new TestError();
+	private static Schema compileSchema(Mode mode) throws IOException, SAXException {
+		URL rng;
+		boolean hasSchematron;
+		switch (mode) {
+			case LIGHT_MODE: 
+				rng = PEFValidator.class.getResource("resource-files/pef-2008-1-light.rng");
+				hasSchematron = false;
+				break;
+			case FULL_MODE: default:
+				rng = PEFValidator.class.getResource("resource-files/pef-2008-1-full.rng");
+				hasSchematron = true;
+				break;
+		}
+		ErrorCollector errors = new ErrorCollector();
 		PropertyMapBuilder propertyBuilder = new PropertyMapBuilder();
-
-		propertyBuilder.put(ValidateProperty.ERROR_HANDLER, errorHandler);
-		PropertyMap map = propertyBuilder.toPropertyMap();
-        ValidationDriver vd = new ValidationDriver(map);
-        try {
-			vd.loadSchema(new InputSource(schema.openStream()));
-			return vd.validate(new InputSource(url.openStream()));
-		} catch (SAXException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		propertyBuilder.put(ValidateProperty.ERROR_HANDLER, errors);
+		PropertyMap properties = propertyBuilder.toPropertyMap();
+		AutoSchemaReader sr = new AutoSchemaReader();
+		try {
+			Schema schema = sr.createSchema(new InputSource(rng.toString()), properties);
+			if (hasSchematron) {
+				InputSource schematron = new InputSource(new ByteArrayInputStream(transformSchematron(rng)));
+				schematron.setSystemId(rng.toString());
+				schema = new CombineSchema(schema, sr.createSchema(schematron, properties), properties);
+			}
+			return schema;
+		} catch (IncorrectSchemaException e) {
+			throw new SAXException("Could not compile the schema " + rng + ": " + errors, e);
+		} catch (TransformerException e) {
+			throw new SAXException("Could not extract the Schematron rules from " + rng, e);
 		}
-		return false;
 	}
 	
-	private File transformSchematron(URL schema) throws IOException, SAXException, TransformerException {
-
-        InputSource schSource;
-        File schematronSchema = File.createTempFile("schematron", ".tmp");
-        schematronSchema.deleteOnExit();
-
-        // Use XSLT to strip out Schematron rules
-        Source xml = new StreamSource(schema.toString());
-        
-        Source xslt = new StreamSource(this.getClass().getResourceAsStream("resource-files/RNG2Schtrn.xsl"));
-        TransformerFactory factory = TransformerFactory.newInstance();
-        System.err.println(factory.getClass().getName()); 
+	/**
+	 * Extracts the Schematron rules from the Relax NG schema.
+	 */
+	private static byte[] transformSchematron(URL schema) throws IOException, TransformerException {
+		TransformerFactory factory = TransformerFactory.newInstance();
 		try {
 			factory.setAttribute("http://saxon.sf.net/feature/version-warning", Boolean.FALSE);
 		} catch (IllegalArgumentException iae) { }
-        Transformer transformer = factory.newTransformer(xslt);
-
-        transformer.transform(xml, new StreamResult(schematronSchema.toURI().toString()));
-        schSource = new InputSource(schematronSchema.toURI().toString());
-        schSource.setSystemId(schematronSchema.toURI().toString());
-
-        return schematronSchema;
+		InputStream xslt = PEFValidator.class.getResourceAsStream("resource-files/RNG2Schtrn.xsl");
+		Templates templates;
+		try {
+			templates = factory.newTemplates(new StreamSource(xslt, PEFValidator.class.getResource("resource-files/RNG2Schtrn.xsl").toString()));
+		} finally {
+			xslt.close();
+		}
+		Transformer transformer = templates.newTransformer();
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		transformer.transform(new StreamSource(schema.toString()), new StreamResult(os));
+		return os.toByteArray();
 	}
 	
-	static class TestError implements ErrorHandler {
+	/**
+	 * Collects the messages of a single validation.
+	 */
+	static class ErrorCollector implements ErrorHandler {
+		private final List<String> messages = new ArrayList<String>();
 		private boolean hasErrors = false;
 
 		@Override
@@ -205,36 +257,51 @@ public class PEFValidator extends AbstractFactory implements org.daisy.braille.a
 		public boolean hasErrors() {
 			return hasErrors;
 		}
+		
+		/**
+		 * Gets the messages, in the order they were reported
+		 * @return returns the messages
+		 */
+		public List<String> getMessages() {
+			return Collections.unmodifiableList(messages);
+		}
 
 		private void buildErrorMessage(String type, SAXParseException e) {
 			int line = e.getLineNumber();
 			int column = e.getColumnNumber();
-			System.err.print(type);
+			StringBuilder sb = new StringBuilder(type);
 			if (line > -1 || column > -1) {
-				System.err.print(" at");
+				sb.append(" at");
 				if (line > -1) {
-					System.err.print(" line " + line);
+					sb.append(" line " + line);
 				}
 				if (line > -1 && column > -1) {
-					System.err.print(",");
+					sb.append(",");
 				}
 				if (column > -1) {
-					System.err.print(" column " + column);
+					sb.append(" column " + column);
 				}
 			}
-			System.err.println(": " + e.getMessage());
+			sb.append(": " + e.getMessage());
+			messages.add(sb.toString());
+		}
+		
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (String m : messages) {
+				sb.append(m).append(System.getProperty("line.separator"));
+			}
+			return sb.toString();
 		}
 	}
 
 	public InputStream getReportStream() {
-		if (report==null) {
-			return null;
-		}
-		try {
-			return new FileInputStream(report);
-		} catch (FileNotFoundException e) {
+		byte[] r = report;
+		if (r==null) {
 			return null;
 		}
+		return new ByteArrayInputStream(r);
 	}
 
 	public Object getFeature(String key) {
@@ -1,10 +1,18 @@
 package org.daisy.braille.pef;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -37,6 +45,42 @@ public class PEFValidatorTest {
 		}
 	}
 
+	@Test
+	public void testValidationErrorHandler() {
+		URL input = this.getClass().getResource("resource-files/PEFBookTestInputNotValid.pef");
+		PEFValidator v = new PEFValidator();
+		PEFValidator.ErrorCollector errors = new PEFValidator.ErrorCollector();
+		assertFalse(v.validate(input, errors));
+		assertTrue(errors.hasErrors());
+		assertFalse(errors.getMessages().isEmpty());
+		assertTrue(v.getReportStream() == null);
+	}
+
+	@Test
+	public void testValidationConcurrent() throws Exception {
+		final URL valid = this.getClass().getResource("resource-files/PEFBookTestInput.pef");
+		final URL notValid = this.getClass().getResource("resource-files/PEFBookTestInputNotValid.pef");
+		final PEFValidator v = new PEFValidator();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < 16; i++) {
+				final URL input = i % 2 == 0 ? valid : notValid;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						return v.validate(input, new PEFValidator.ErrorCollector());
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(i % 2 == 0, results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	public static void main(String[] args) throws IOException {
 		URL input = PEFValidatorTest.class.getResource("resource-files/PEFBookTestInput.pef");
 		PEFValidator v = new PEFValidator();
@@ -125,6 +125,7 @@ public class XProcConfiguration {
     public HashMap<String,PipelineSource> piperackDefaultPipelines = new HashMap<String,PipelineSource>();
 
     private Processor cfgProcessor = null;
+    private ExecutableCache executableCache = null;
     private boolean firstInput = false;
     private boolean firstOutput = false;
 
@@ -167,6 +168,13 @@ public class XProcConfiguration {
         return cfgProcessor;
     }
 
+    public synchronized ExecutableCache getExecutableCache() {
+        if (executableCache == null) {
+            executableCache = ExecutableCache.newInstance(cfgProcessor);
+        }
+        return executableCache;
+    }
+
     private void initSaxonProcessor(String proctype, boolean schemaAware, Input saxoncfg) {
         if (schemaAware) {
             proctype = "ee";
@@ -20,15 +20,45 @@ import net.sf.saxon.s9api.QName;
  * To change this template use File | Settings | File Templates.
  */
 public class XProcData {
-    private Stack<StackFrame> stack = null;
+    // Every thread has its own stack so that the iterations of a parallel p:for-each
+    // each see their own iteration position
+    private ThreadLocal<Stack<StackFrame>> stacks = null;
     private XProcRuntime runtime = null;
 
     public XProcData(XProcRuntime runtime) {
         this.runtime = runtime;
-        stack = new Stack<StackFrame> ();
+        stacks = new ThreadLocal<Stack<StackFrame>> () {
+            protected Stack<StackFrame> initialValue() {
+                return new Stack<StackFrame> ();
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the frames of the calling thread. Errors caught in the copy
+     * are added to the same p:try as in the original.
+     */
+    public Frames copyFrames() {
+        return new Frames(stacks.get()).copy();
+    }
+
+    /**
+     * Makes the calling thread continue from a copy obtained with copyFrames() on another thread.
+     *
+     * @return The frames the calling thread had before, to be restored when done
+     */
+    public Frames attachFrames(Frames frames) {
+        Frames previous = new Frames(stacks.get());
+        stacks.set(frames.stack);
+        return previous;
+    }
+
+    public void detachFrames() {
+        stacks.remove();
     }
 
     public void openFrame(XStep step) {
+        Stack<StackFrame> stack = stacks.get();
         int pos = 1;
         int size = 1;
 
@@ -46,14 +76,15 @@ public class XProcData {
     }
 
     public void closeFrame() {
-        stack.pop();
+        stacks.get().pop();
     }
 
     public int getDepth() {
-        return stack.size();
+        return stacks.get().size();
     }
     
     public XStep getStep() {
+        Stack<StackFrame> stack = stacks.get();
         if (stack.size() == 0) {
             return null;
         } else {
@@ -62,19 +93,19 @@ public class XProcData {
     }
 
     public void setIterationPosition(int pos) {
-        stack.peek().iterPos = pos;
+        stacks.get().peek().iterPos = pos;
     }
 
     public int getIterationPosition() {
-        return stack.peek().iterPos;
+        return stacks.get().peek().iterPos;
     }
 
     public void setIterationSize(int size) {
-        stack.peek().iterSize = size;
+        stacks.get().peek().iterSize = size;
     }
 
     public int getIterationSize() {
-        return stack.peek().iterSize;
+        return stacks.get().peek().iterSize;
     }
 
     private boolean tryGroup(XStep step) {
@@ -86,6 +117,7 @@ public class XProcData {
     }
 
     public boolean catchError(XdmNode error) {
+        Stack<StackFrame> stack = stacks.get();
         // Errors accumulate on the nearest p:try/p:group ancestor because that's where we
         // can read them. Note, however, that errors raised in a p:catch are NOT
         // part of the parent p:try but rather the grandparent.
@@ -105,6 +137,7 @@ public class XProcData {
     }
 
     public List<XdmNode> errors() {
+        Stack<StackFrame> stack = stacks.get();
         // Errors accumulate on the nearest p:try/p:group ancestor
         int pos = stack.size() - 1;
         while (pos >= 0 && !tryGroup(stack.get(pos).step)) {
@@ -117,7 +150,34 @@ public class XProcData {
         }
     }
     
-    private class StackFrame {
+    /**
+     * The frames of a thread, see copyFrames().
+     */
+    public static class Frames {
+        private Stack<StackFrame> stack;
+
+        private Frames(Stack<StackFrame> stack) {
+            this.stack = stack;
+        }
+
+        /**
+         * Returns a copy that can be attached to another thread.
+         */
+        public Frames copy() {
+            Stack<StackFrame> copy = new Stack<StackFrame> ();
+            for (StackFrame frame : stack) {
+                StackFrame f = new StackFrame();
+                f.step = frame.step;
+                f.iterPos = frame.iterPos;
+                f.iterSize = frame.iterSize;
+                f.errors = frame.errors;
+                copy.push(f);
+            }
+            return new Frames(copy);
+        }
+    }
+
+    private static class StackFrame {
         public XStep step = null;
         public int iterPos = 1;
         public int iterSize = 1;
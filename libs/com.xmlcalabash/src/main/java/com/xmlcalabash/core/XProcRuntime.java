@@ -347,6 +347,43 @@ public class XProcRuntime {
         exFuncs = null;
     }
 
+    /**
+     * Clears the state left behind by a run of the loaded pipeline (error
+     * status, collections, cookies, XProc data frames) so that the same
+     * compiled pipeline can be run again with this runtime. Unlike reset(),
+     * the loaded pipeline and the standard library are kept.
+     */
+    public synchronized void resetRunState() {
+        errorCode = null;
+        errorNode = null;
+        errorMessage = null;
+        collections = null;
+        cookieStores = new HashMap<String, CookieStore>();
+        xprocData = new XProcData(this);
+        runningSteps.remove();
+
+        if (profile != null) {
+            profileHash = new Hashtable<XStep, Calendar>();
+            profileWriter = new TreeWriter(this);
+            profileWriter.startDocument(URI.create("http://xmlcalabash.com/output/profile.xml"));
+        }
+    }
+
+    /**
+     * Removes the state that running the pipeline left on the calling thread
+     * (running steps, XProc data frames). The values of these thread locals
+     * refer to the runtime, so they are never dropped by the thread itself and
+     * would keep the runtime and its pipeline alive for as long as the thread
+     * lives, e.g. when the thread is a reused worker. To be called on the
+     * thread that ran the pipeline once it is done, whether it failed or not.
+     */
+    public void clearThreadState() {
+        runningSteps.remove();
+        if (xprocData != null) {
+            xprocData.detachFrames();
+        }
+    }
+
     public XProcConfigurer getConfigurer() {
         return configurer;
     }
@@ -985,10 +1022,15 @@ public class XProcRuntime {
 
     // ===========================================================
 
-    private Stack<XStep> runningSteps = new Stack<XStep>();
+    // Per thread, because the iterations of a parallel p:for-each run on several threads
+    private ThreadLocal<Stack<XStep>> runningSteps = new ThreadLocal<Stack<XStep>>() {
+        protected Stack<XStep> initialValue() {
+            return new Stack<XStep>();
+        }
+    };
 
     public void start(XStep step) {
-        runningSteps.push(step);
+        runningSteps.get().push(step);
 
         if (profile == null) {
             return;
@@ -1032,11 +1074,11 @@ public class XProcRuntime {
     }
 
     public XStep runningStep() {
-        return runningSteps.peek();
+        return runningSteps.get().peek();
     }
 
     public void finish(XStep step) {
-        runningSteps.pop();
+        runningSteps.get().pop();
 
         if (profile == null) {
             return;
@@ -23,7 +23,9 @@ package com.xmlcalabash.library;
 import com.xmlcalabash.config.JingConfigurer;
 import com.xmlcalabash.core.XMLCalabash;
 import com.xmlcalabash.util.Base64;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.TreeWriter;
+import com.xmlcalabash.util.XProcURIResolver;
 import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XdmNode;
@@ -34,22 +36,32 @@ import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcConstants;
 import com.xmlcalabash.runtime.XAtomicStep;
 import com.xmlcalabash.util.S9apiUtils;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
 import com.thaiopensource.validate.SchemaReader;
 import com.thaiopensource.validate.ValidateProperty;
-import com.thaiopensource.validate.ValidationDriver;
+import com.thaiopensource.validate.Validator;
 import com.thaiopensource.validate.prop.rng.RngProperty;
 import com.thaiopensource.validate.auto.AutoSchemaReader;
 import com.thaiopensource.validate.rng.CompactSchemaReader;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
 import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import com.thaiopensource.xml.sax.Jaxp11XMLReaderCreator;
 import com.thaiopensource.util.PropertyMapBuilder;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
 
 /**
  * Created by IntelliJ IDEA.
@@ -105,7 +117,7 @@ public class ValidateJing extends DefaultStep {
         boolean checkIdRefs = getOption(_dtd_id_idref_warnings,false);
         boolean dtdAugment  = getOption(_dtd_attribute_values,false);
 
-        ErrorHandler eh = new RNGErrorHandler();
+        CountingErrorHandler eh = new CountingErrorHandler(new RNGErrorHandler());
         PropertyMapBuilder properties = new PropertyMapBuilder();
         properties.put(ValidateProperty.ERROR_HANDLER, eh);
         properties.put(ValidateProperty.URI_RESOLVER, runtime.getResolver());
@@ -150,17 +162,52 @@ public class ValidateJing extends DefaultStep {
             schemaInputSource = S9apiUtils.xdmToInputSource(runtime, schema);
         }
 
-        ValidationDriver driver = new ValidationDriver(properties.toPropertyMap(), sr);
+        // Compiled schemas are thread-safe and shared by all the runtimes
+        ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+        String cacheKey = null;
+        Schema compiled = null;
+        if (cache.isEnabled()) {
+            cacheKey = cache.key(schema, "rng-jing|compact=" + compact + "|idref=" + checkIdRefs
+                                 + "|" + configurer.getClass().getName());
+            compiled = cache.getSchema(cacheKey, Schema.class);
+        }
+
         try {
-            if (driver.loadSchema(schemaInputSource)) {
-                InputSource din = S9apiUtils.xdmToInputSource(runtime, doc);
-                if (!driver.validate(din)) {
-                    if (assertValid) {
-                        throw XProcException.stepError(53);
-                    }
+            if (compiled == null) {
+                // The schema keeps the properties it was compiled with, so they must not refer to this step
+                CompileHandler handler = new CompileHandler(eh, runtime.getResolver());
+                PropertyMapBuilder compileProperties = new PropertyMapBuilder(properties.toPropertyMap());
+                compileProperties.put(ValidateProperty.ERROR_HANDLER, handler);
+                compileProperties.put(ValidateProperty.URI_RESOLVER, handler);
+                compileProperties.put(ValidateProperty.ENTITY_RESOLVER, handler);
+                try {
+                    compiled = sr.createSchema(schemaInputSource, compileProperties.toPropertyMap());
+                } catch (IncorrectSchemaException e) {
+                    throw new XProcException(step.getNode(), "Error loading schema");
+                } finally {
+                    handler.detach();
+                }
+                if (cacheKey != null) {
+                    cache.putSchema(cacheKey, compiled);
+                }
+            }
+
+            Validator validator = compiled.createValidator(properties.toPropertyMap());
+            XMLReader reader = new Jaxp11XMLReaderCreator().createXMLReader();
+            reader.setErrorHandler(eh);
+            reader.setEntityResolver(runtime.getResolver());
+            reader.setContentHandler(validator.getContentHandler());
+            DTDHandler dtdHandler = validator.getDTDHandler();
+            if (dtdHandler != null) {
+                reader.setDTDHandler(dtdHandler);
+            }
+
+            InputSource din = S9apiUtils.xdmToInputSource(runtime, doc);
+            reader.parse(din);
+            if (eh.getHadErrorOrFatalError()) {
+                if (assertValid) {
+                    throw XProcException.stepError(53);
                 }
-            } else {
-                throw new XProcException(step.getNode(), "Error loading schema");
             }
         } catch (SAXParseException e) {
             if (assertValid) {
@@ -185,6 +232,60 @@ public class ValidateJing extends DefaultStep {
         }
     }
 
+    /**
+     * Passes the errors and the resolution of the schema compilation on to the step,
+     * until it is detached once the schema is compiled.
+     */
+    private static class CompileHandler implements ErrorHandler, URIResolver, EntityResolver {
+        private volatile ErrorHandler errorHandler;
+        private volatile XProcURIResolver resolver;
+
+        CompileHandler(ErrorHandler errorHandler, XProcURIResolver resolver) {
+            this.errorHandler = errorHandler;
+            this.resolver = resolver;
+        }
+
+        void detach() {
+            errorHandler = null;
+            resolver = null;
+        }
+
+        public void warning(SAXParseException e) throws SAXException {
+            ErrorHandler eh = errorHandler;
+            if (eh != null) {
+                eh.warning(e);
+            }
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            ErrorHandler eh = errorHandler;
+            if (eh != null) {
+                eh.error(e);
+            } else {
+                throw e;
+            }
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            ErrorHandler eh = errorHandler;
+            if (eh != null) {
+                eh.fatalError(e);
+            } else {
+                throw e;
+            }
+        }
+
+        public Source resolve(String href, String base) throws TransformerException {
+            XProcURIResolver r = resolver;
+            return r == null ? null : r.resolve(href, base);
+        }
+
+        public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+            XProcURIResolver r = resolver;
+            return r == null ? null : r.resolveEntity(publicId, systemId);
+        }
+    }
+
     class RNGErrorHandler implements ErrorHandler {
         SAXParseException err = null;
 
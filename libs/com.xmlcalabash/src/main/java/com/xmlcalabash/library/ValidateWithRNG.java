@@ -26,6 +26,7 @@ import java.net.URI;
 import com.xmlcalabash.core.XProcConstants;
 import com.xmlcalabash.io.ReadablePipe;
 import com.xmlcalabash.io.WritablePipe;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.S9apiUtils;
 import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcRuntime;
@@ -87,15 +88,27 @@ public class ValidateWithRNG extends DefaultStep {
         XdmNode doc = null;
 
         try {
-            VerifierFactory vfactory = new com.sun.msv.verifier.jarv.TheFactoryImpl();
-            // FIXME: VerifierFactory.newInstance(language);
-
             Verifier verifier = null;
             XdmNode schemaNode = schema.read();
-            InputSource schemaSource = S9apiUtils.xdmToInputSource(runtime, schemaNode);
-            schemaSource.setSystemId(schemaNode.getBaseURI().toASCIIString());
 
-            Schema docSchema = vfactory.compileSchema(schemaSource);
+            // Compiled schemas are thread-safe and shared by all the runtimes
+            ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+            String cacheKey = null;
+            Schema docSchema = null;
+            if (cache.isEnabled()) {
+                cacheKey = cache.key(schemaNode, "rng-msv");
+                docSchema = cache.getSchema(cacheKey, Schema.class);
+            }
+            if (docSchema == null) {
+                VerifierFactory vfactory = new com.sun.msv.verifier.jarv.TheFactoryImpl();
+                // FIXME: VerifierFactory.newInstance(language);
+                InputSource schemaSource = S9apiUtils.xdmToInputSource(runtime, schemaNode);
+                schemaSource.setSystemId(schemaNode.getBaseURI().toASCIIString());
+                docSchema = vfactory.compileSchema(schemaSource);
+                if (cacheKey != null) {
+                    cache.putSchema(cacheKey, docSchema);
+                }
+            }
             verifier = docSchema.newVerifier();
             verifier.setErrorHandler(new RNGErrorHandler());
 
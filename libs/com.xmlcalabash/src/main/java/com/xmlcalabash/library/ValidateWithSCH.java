@@ -15,6 +15,7 @@ import com.xmlcalabash.core.XProcRuntime;
 import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcConstants;
 import com.xmlcalabash.runtime.XAtomicStep;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.S9apiUtils;
 import com.xmlcalabash.model.RuntimeValue;
 import org.xml.sax.InputSource;
@@ -27,6 +28,7 @@ import java.io.InputStream;
 import java.util.Vector;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.TreeMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -98,63 +100,75 @@ public class ValidateWithSCH extends DefaultStep {
         XsltExecutable exec;
         XdmDestination result;
 
-        // From http://www.schematron.com/
-        // ...
-        // So the basic processing now looks like this:
-        //
-        // xslt -stylesheet iso_dsdl_include.xsl  theSchema.sch > theSchema1.sch
-        // xslt -stylesheet iso_abstract_expand.xsl  theSchema1.sch > theSchema2.sch
-        // xslt -stylesheet iso_svrl_for_xsltn.xsl  theSchema2.sch > theSchema.xsl
-        // xslt -stylesheet theSchema.xsl  myDocument.xml > myResult.xml
-
-        // It would be nice to load these stylesheets only once, but sometimes (i.e. from RunTest),
-        // there are different controllers involved and you can't do that.
-        XdmNode theSchema1_sch = transform(schemaXML, getSchematronXSLT("iso_dsdl_include.xsl"));
-        XdmNode theSchema2_sch = transform(theSchema1_sch, getSchematronXSLT("iso_abstract_expand.xsl"));
-
-        skeleton = getClass().getResourceAsStream("/etc/schematron/iso_schematron_skeleton_for_saxon.xsl");
-        if (skeleton == null) {
-            throw new UnsupportedOperationException("Failed to load iso_schematron_skeleton_for_saxon.xsl from JAR file.");
+        String phase = getOption(_phase) == null ? null : getOption(_phase).getString();
+
+        // The compiled schema only depends on the schema, the phase and the parameters, so it
+        // is shared by all the runtimes of this configuration
+        ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+        String cacheKey = null;
+        exec = null;
+        if (cache.isEnabled()) {
+            TreeMap<String,String> sortedParams = new TreeMap<String,String> ();
+            for (QName name : params.keySet()) {
+                sortedParams.put(name.getClarkName(), params.get(name).getString());
+            }
+            cacheKey = cache.key(schemaXML, "schematron|" + schemaAware + "|phase=" + phase + "|" + sortedParams);
+            exec = cache.getXslt(cacheKey);
         }
 
-        compiler = runtime.getProcessor().newXsltCompiler();
-        compiler.setSchemaAware(schemaAware);
-        compiler.setURIResolver(new UResolver());
-        exec = compiler.compile(getSchematronXSLT("iso_svrl_for_xslt2.xsl"));
-        XsltTransformer schemaCompiler = exec.load();
+        if (exec == null) {
+            // From http://www.schematron.com/
+            // ...
+            // So the basic processing now looks like this:
+            //
+            // xslt -stylesheet iso_dsdl_include.xsl  theSchema.sch > theSchema1.sch
+            // xslt -stylesheet iso_abstract_expand.xsl  theSchema1.sch > theSchema2.sch
+            // xslt -stylesheet iso_svrl_for_xsltn.xsl  theSchema2.sch > theSchema.xsl
+            // xslt -stylesheet theSchema.xsl  myDocument.xml > myResult.xml
+
+            // The Schematron stylesheets are compiled once per configuration, the executable
+            // cache being bound to the processor (see RunTest, which uses several)
+            XdmNode theSchema1_sch = transform(schemaXML, getSchematronExecutable("iso_dsdl_include.xsl"));
+            XdmNode theSchema2_sch = transform(theSchema1_sch, getSchematronExecutable("iso_abstract_expand.xsl"));
+
+            XsltTransformer schemaCompiler = getSchematronExecutable("iso_svrl_for_xslt2.xsl").load();
+
+            if (phase != null) {
+                schemaCompiler.setParameter(new QName("","phase"), new XdmAtomicValue(phase));
+            }
 
-        if (getOption(_phase) != null) {
-            String phase = getOption(_phase).getString();
-            schemaCompiler.setParameter(new QName("","phase"), new XdmAtomicValue(phase));
-        }
+            for (QName name : params.keySet()) {
+                RuntimeValue v = params.get(name);
+                schemaCompiler.setParameter(name, new XdmAtomicValue(v.getString()));
+            }
 
-        for (QName name : params.keySet()) {
-            RuntimeValue v = params.get(name);
-            schemaCompiler.setParameter(name, new XdmAtomicValue(v.getString()));
-        }
+            schemaCompiler.setInitialContextNode(theSchema2_sch);
+            result = new XdmDestination();
+            schemaCompiler.setDestination(result);
 
-        schemaCompiler.setInitialContextNode(theSchema2_sch);
-        result = new XdmDestination();
-        schemaCompiler.setDestination(result);
+            runtime.getConfigurer().getSaxonConfigurer().configSchematron(schemaCompiler.getUnderlyingController().getConfiguration());
 
-        runtime.getConfigurer().getSaxonConfigurer().configSchematron(schemaCompiler.getUnderlyingController().getConfiguration());
+            schemaCompiler.transform();
 
-        schemaCompiler.transform();
+            XdmNode compiledSchema = result.getXdmNode();
+            XdmNode compiledRoot = S9apiUtils.getDocumentElement(compiledSchema);
+
+            if (compiledRoot == null) {
+                XdmNode schemaRoot = S9apiUtils.getDocumentElement(schemaXML);
+                String root = schemaRoot == null ? "null" : schemaRoot.getNodeName().toString();
+                throw new XProcException("p:validate-with-schematron failed to compile provided schema: " + root);
+            }
 
-        XdmNode compiledSchema = result.getXdmNode();
-        XdmNode compiledRoot = S9apiUtils.getDocumentElement(compiledSchema);
-        
-        if (compiledRoot == null) {
-            XdmNode schemaRoot = S9apiUtils.getDocumentElement(schemaXML);
-            String root = schemaRoot == null ? "null" : schemaRoot.getNodeName().toString();
-            throw new XProcException("p:validate-with-schematron failed to compile provided schema: " + root);
+            compiler = runtime.getProcessor().newXsltCompiler();
+            compiler.setSchemaAware(schemaAware);
+            exec = compiler.compile(compiledSchema.asSource());
+            if (cacheKey != null) {
+                cache.putXslt(cacheKey, exec);
+            }
         }
 
         XsltTransformer transformer;
 
-        compiler = runtime.getProcessor().newXsltCompiler();
-        compiler.setSchemaAware(schemaAware);
-        exec = compiler.compile(compiledSchema.asSource());
         transformer = exec.load();
 	    for (QName name : params.keySet()) {
              RuntimeValue v = params.get(name);
@@ -252,11 +266,25 @@ public class ValidateWithSCH extends DefaultStep {
         return new SAXSource(new InputSource(instream));
     }
 
-    private XdmNode transform(XdmNode source, SAXSource stylesheet) throws SaxonApiException {
-        XsltCompiler compiler = runtime.getProcessor().newXsltCompiler();
-        compiler.setSchemaAware(schemaAware);
-        compiler.setURIResolver(new UResolver());
-        XsltExecutable exec = compiler.compile(stylesheet);
+    private XsltExecutable getSchematronExecutable(String xslt) throws SaxonApiException {
+        ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+        String cacheKey = "schematron|" + xslt + "|" + schemaAware;
+        XsltExecutable exec = cache.getXslt(cacheKey);
+        if (exec == null) {
+            skeleton = getClass().getResourceAsStream("/etc/schematron/iso_schematron_skeleton_for_saxon.xsl");
+            if (skeleton == null) {
+                throw new UnsupportedOperationException("Failed to load iso_schematron_skeleton_for_saxon.xsl from JAR file.");
+            }
+            XsltCompiler compiler = runtime.getProcessor().newXsltCompiler();
+            compiler.setSchemaAware(schemaAware);
+            compiler.setURIResolver(new UResolver());
+            exec = compiler.compile(getSchematronXSLT(xslt));
+            cache.putXslt(cacheKey, exec);
+        }
+        return exec;
+    }
+
+    private XdmNode transform(XdmNode source, XsltExecutable exec) throws SaxonApiException {
         XsltTransformer schemaCompiler = exec.load();
 
         schemaCompiler.setInitialContextNode(source);
@@ -26,6 +26,7 @@ import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcConstants;
 import com.xmlcalabash.io.ReadablePipe;
 import com.xmlcalabash.io.WritablePipe;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.MessageFormatter;
 import com.xmlcalabash.util.S9apiUtils;
 import com.xmlcalabash.util.TreeWriter;
@@ -128,31 +129,11 @@ public class ValidateWithXSD extends DefaultStep {
         logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Validating with Saxon"));
 
         String xsdVersion = step.getExtensionAttribute(cx_version);
-        if (xsdVersion != null) {
-            manager.setXsdVersion(xsdVersion);
-        }
 
         Configuration config = runtime.getProcessor().getUnderlyingConfiguration();
 
         runtime.getConfigurer().getSaxonConfigurer().configXSD(config);
 
-        // Saxon 9.2.0.4j introduces a clearSchemaCache method on Configuration.
-        // Call it if it's available.
-        try {
-            Method clearSchemaCache = config.getClass().getMethod("clearSchemaCache", paramTypes);
-            clearSchemaCache.invoke(config);
-            logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Cleared schema cache."));
-        } catch (NoSuchMethodException nsme) {
-            // nop; oh, well
-            logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
-        } catch (IllegalAccessException nsme) {
-            // nop; oh, well
-            logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
-        } catch (InvocationTargetException nsme) {
-            // nop; oh, well
-            logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
-        }
-
         XdmNode doc = source.read();
         docBaseURI = doc.getBaseURI();
 
@@ -185,46 +166,79 @@ public class ValidateWithXSD extends DefaultStep {
         }
 
 
-        // FIXME: HACK! Do this the right way
-        for (XdmNode schemaNode : schemaDocuments) {
-            InputSource schemaSource = S9apiUtils.xdmToInputSource(runtime, schemaNode);
-            schemaSource.setSystemId(schemaNode.getBaseURI().toASCIIString());
-            SAXSource source = new SAXSource(schemaSource);
-            manager.load(source);
-        }
+        // The schema components stay in the configuration, so when the same schemas were the
+        // last ones loaded there is no need to clear and load them again. The lock is held
+        // until the validation is done, so that no other step replaces them in the meantime.
+        ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+        String cacheKey = cache.isEnabled() ? cache.key(schemaDocuments, "xsd-saxon|" + xsdVersion) : null;
+        XdmNode valid;
+        synchronized (config) {
+            if (xsdVersion != null) {
+                manager.setXsdVersion(xsdVersion);
+            }
+            if (cacheKey == null || !cacheKey.equals(cache.getLoadedSchemas())) {
+                cache.setLoadedSchemas(null);
+
+                // Saxon 9.2.0.4j introduces a clearSchemaCache method on Configuration.
+                // Call it if it's available.
+                try {
+                    Method clearSchemaCache = config.getClass().getMethod("clearSchemaCache", paramTypes);
+                    clearSchemaCache.invoke(config);
+                    logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Cleared schema cache."));
+                } catch (NoSuchMethodException nsme) {
+                    // nop; oh, well
+                    logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
+                } catch (IllegalAccessException nsme) {
+                    // nop; oh, well
+                    logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
+                } catch (InvocationTargetException nsme) {
+                    // nop; oh, well
+                    logger.debug(MessageFormatter.nodeMessage(step.getNode(), "Cannot reset schema cache."));
+                }
 
-        XdmDestination destination = new XdmDestination();
-        Controller controller = new Controller(config);
-        Receiver receiver = destination.getReceiver(controller.getConfiguration());
-        PipelineConfiguration pipe = controller.makePipelineConfiguration();
-        pipe.setRecoverFromValidationErrors(!getOption(_assert_valid,false));
-        receiver.setPipelineConfiguration(pipe);
+                // FIXME: HACK! Do this the right way
+                for (XdmNode schemaNode : schemaDocuments) {
+                    InputSource schemaSource = S9apiUtils.xdmToInputSource(runtime, schemaNode);
+                    schemaSource.setSystemId(schemaNode.getBaseURI().toASCIIString());
+                    SAXSource source = new SAXSource(schemaSource);
+                    manager.load(source);
+                }
+                cache.setLoadedSchemas(cacheKey);
+            }
 
-        SchemaValidator validator = manager.newSchemaValidator();
-        validator.setDestination(destination);
-        validator.setErrorListener(new XSDErrorHandler());
+            XdmDestination destination = new XdmDestination();
+            Controller controller = new Controller(config);
+            Receiver receiver = destination.getReceiver(controller.getConfiguration());
+            PipelineConfiguration pipe = controller.makePipelineConfiguration();
+            pipe.setRecoverFromValidationErrors(!getOption(_assert_valid,false));
+            receiver.setPipelineConfiguration(pipe);
 
-        String mode = getOption(_mode, "strict");
-        validator.setLax("lax".equals(mode));
+            SchemaValidator validator = manager.newSchemaValidator();
+            validator.setDestination(destination);
+            validator.setErrorListener(new XSDErrorHandler());
 
-        boolean useHints = getOption(_use_location_hints, false);
-        validator.setUseXsiSchemaLocation(useHints);
+            String mode = getOption(_mode, "strict");
+            validator.setLax("lax".equals(mode));
+
+            boolean useHints = getOption(_use_location_hints, false);
+            validator.setUseXsiSchemaLocation(useHints);
         
-        try {
-            logger.trace(MessageFormatter.nodeMessage(step.getNode(),
-                    "Validating: " + doc.getBaseURI().toASCIIString()));
+            try {
+                logger.trace(MessageFormatter.nodeMessage(step.getNode(),
+                        "Validating: " + doc.getBaseURI().toASCIIString()));
 
-            validator.validate(doc.asSource());
-            if (validationException != null) {
-                throw (SaxonApiException) validationException;
-            }
-        } catch (SaxonApiException sae) {
-            if (getOption(_assert_valid,false)) {
-                throw new XProcException(XProcConstants.stepError(53), sae);
+                validator.validate(doc.asSource());
+                if (validationException != null) {
+                    throw (SaxonApiException) validationException;
+                }
+            } catch (SaxonApiException sae) {
+                if (getOption(_assert_valid,false)) {
+                    throw new XProcException(XProcConstants.stepError(53), sae);
+                }
             }
+
+            valid = destination.getXdmNode();
         }
-        
-        XdmNode valid = destination.getXdmNode();
         result.write(valid);
     }
 
@@ -246,10 +260,23 @@ public class ValidateWithXSD extends DefaultStep {
 
             runtime.getConfigurer().getJaxpConfigurer().configSchemaFactory(factory);
 
+            // Compiled schemas are thread-safe and shared by all the runtimes
             XdmNode schemaNode = schemaDocuments.get(0);
-            InputSource is = S9apiUtils.xdmToInputSource(runtime, schemaNode);
-            is.setSystemId(schemaNode.getBaseURI().toASCIIString());
-            Schema schema = factory.newSchema(new SAXSource(is));
+            ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+            String cacheKey = null;
+            Schema schema = null;
+            if (cache.isEnabled()) {
+                cacheKey = cache.key(schemaNode, "xsd-jaxp");
+                schema = cache.getSchema(cacheKey, Schema.class);
+            }
+            if (schema == null) {
+                InputSource is = S9apiUtils.xdmToInputSource(runtime, schemaNode);
+                is.setSystemId(schemaNode.getBaseURI().toASCIIString());
+                schema = factory.newSchema(new SAXSource(is));
+                if (cacheKey != null) {
+                    cache.putSchema(cacheKey, schema);
+                }
+            }
             Validator validator = schema.newValidator();
             validator.setErrorHandler(new XSDErrorHandler());
 
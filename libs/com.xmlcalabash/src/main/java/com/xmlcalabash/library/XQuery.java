@@ -20,7 +20,6 @@
 package com.xmlcalabash.library;
 
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.Vector;
 
 import com.xmlcalabash.core.XMLCalabash;
@@ -31,11 +30,18 @@ import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcRuntime;
 import com.xmlcalabash.core.XProcConstants;
 import net.sf.saxon.lib.CollectionURIResolver;
+import net.sf.saxon.om.Item;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.query.DynamicQueryContext;
 import net.sf.saxon.s9api.*;
+import net.sf.saxon.trans.XPathException;
 import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
 import com.xmlcalabash.runtime.XAtomicStep;
 import com.xmlcalabash.util.TreeWriter;
 import com.xmlcalabash.util.CollectionResolver;
+import com.xmlcalabash.util.ControllerCollectionResolver;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.Base64;
 import com.xmlcalabash.util.S9apiUtils;
 
@@ -113,16 +119,31 @@ public class XQuery extends DefaultStep {
 
         runtime.getConfigurer().getSaxonConfigurer().configXQuery(config);
 
-        CollectionURIResolver collectionResolver = config.getCollectionURIResolver();
-
-        config.setCollectionURIResolver(new CollectionResolver(runtime, defaultCollection, collectionResolver));
+        // Set the collection resolver on the controller of the query rather than on the
+        // shared configuration so that queries running concurrently don't see each other's
+        // collections (see ControllerCollectionResolver)
+        final CollectionURIResolver collectionResolver = new CollectionResolver(
+                runtime, defaultCollection, ControllerCollectionResolver.install(config));
 
         try {
             Processor qtproc = runtime.getProcessor();
-            XQueryCompiler xqcomp = qtproc.newXQueryCompiler();
-            xqcomp.setBaseURI(root.getBaseURI());
-            xqcomp.setModuleURIResolver(runtime.getResolver());
-            XQueryExecutable xqexec = xqcomp.compile(queryString);
+            // Compiled queries are shared by all the runtimes of this configuration
+            ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+            String cacheKey = null;
+            XQueryExecutable xqexec = null;
+            if (cache.isEnabled()) {
+                cacheKey = cache.key(queryString, "xquery|" + root.getBaseURI());
+                xqexec = cache.getXQuery(cacheKey);
+            }
+            if (xqexec == null) {
+                XQueryCompiler xqcomp = qtproc.newXQueryCompiler();
+                xqcomp.setBaseURI(root.getBaseURI());
+                xqcomp.setModuleURIResolver(runtime.getResolver());
+                xqexec = xqcomp.compile(queryString);
+                if (cacheKey != null) {
+                    cache.putXQuery(cacheKey, xqexec);
+                }
+            }
             XQueryEvaluator xqeval = xqexec.load();
             if (document != null) {
                 xqeval.setContextItem(document);
@@ -138,9 +159,21 @@ public class XQuery extends DefaultStep {
 
             }
 
-            Iterator<XdmItem> iter = xqeval.iterator();
-            while (iter.hasNext()) {
-                XdmItem item = iter.next();
+            // XQueryEvaluator has no way to set the collection resolver of a single query
+            DynamicQueryContext context = new DynamicQueryContext(config) {
+                @Override
+                public void initializeController(Controller controller) {
+                    super.initializeController(controller);
+                    controller.setCollectionURIResolver(collectionResolver);
+                }
+            };
+            context.setContextItem(xqeval.getUnderlyingQueryContext().getContextItem());
+            context.setParameters(xqeval.getUnderlyingQueryContext().getParameters());
+
+            SequenceIterator iter = xqexec.getUnderlyingCompiledQuery().iterator(context);
+            Item next;
+            while ((next = iter.next()) != null) {
+                XdmItem item = (XdmItem) XdmValue.wrap(next);
                 XdmNode node = null;
 
                 if (item.isAtomicValue()) {
@@ -195,8 +228,8 @@ public class XQuery extends DefaultStep {
 
                 result.write(node);
             }
-        } finally {
-            config.setCollectionURIResolver(collectionResolver);
+        } catch (XPathException e) {
+            throw new SaxonApiException(e);
         }
     }
 }
@@ -44,8 +44,11 @@ import com.xmlcalabash.model.RuntimeValue;
 import com.xmlcalabash.util.MessageFormatter;
 import com.xmlcalabash.util.TreeWriter;
 import com.xmlcalabash.util.CollectionResolver;
+import com.xmlcalabash.util.ControllerCollectionResolver;
+import com.xmlcalabash.util.ExecutableCache;
 import com.xmlcalabash.util.S9apiUtils;
 import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
 import net.sf.saxon.lib.CollectionURIResolver;
 import net.sf.saxon.lib.OutputURIResolver;
 import net.sf.saxon.lib.UnparsedTextURIResolver;
@@ -197,63 +200,72 @@ public class XSLT extends DefaultStep {
 
         runtime.getConfigurer().getSaxonConfigurer().configXSLT(config);
 
-        OutputURIResolver uriResolver = config.getOutputURIResolver();
-        CollectionURIResolver collectionResolver = config.getCollectionURIResolver();
+        CollectionURIResolver collectionResolver = ControllerCollectionResolver.install(config);
         UnparsedTextURIResolver unparsedTextURIResolver = runtime.getResolver();
 
-        config.setOutputURIResolver(new OutputResolver());
-        config.setCollectionURIResolver(new CollectionResolver(runtime, defaultCollection, collectionResolver));
-
         XdmDestination result = null;
-        try {
+        // Compiled stylesheets are shared by all the runtimes of this configuration
+        ExecutableCache cache = runtime.getConfiguration().getExecutableCache();
+        String cacheKey = null;
+        XsltExecutable exec = null;
+        if (cache.isEnabled()) {
+            cacheKey = cache.key(stylesheet, "xslt|" + version + "|" + processor.isSchemaAware());
+            exec = cache.getXslt(cacheKey);
+        }
+        if (exec == null) {
             XsltCompiler compiler = runtime.getProcessor().newXsltCompiler();
             compiler.setSchemaAware(processor.isSchemaAware());
             compiler.setErrorListener(new LogCompileErrors());
-            XsltExecutable exec = compiler.compile(stylesheet.asSource());
-            XsltTransformer transformer = exec.load();
-
-            for (QName name : params.keySet()) {
-                RuntimeValue v = params.get(name);
-                if (runtime.getAllowGeneralExpressions()) {
-                    transformer.setParameter(name, v.getValue());
-                } else {
-                    transformer.setParameter(name, v.getUntypedAtomic(runtime));
-                }
+            exec = compiler.compile(stylesheet.asSource());
+            if (cacheKey != null) {
+                cache.putXslt(cacheKey, exec);
             }
-
-            if (document != null) {
-                transformer.setInitialContextNode(document);
+        }
+        XsltTransformer transformer = exec.load();
+
+        for (QName name : params.keySet()) {
+            RuntimeValue v = params.get(name);
+            if (runtime.getAllowGeneralExpressions()) {
+                transformer.setParameter(name, v.getValue());
+            } else {
+                transformer.setParameter(name, v.getUntypedAtomic(runtime));
             }
-            transformer.setMessageListener(new CatchMessages());
-            result = new XdmDestination();
-            transformer.setDestination(result);
+        }
 
-            if (initialMode != null) {
-                transformer.setInitialMode(initialMode);
-            }
+        if (document != null) {
+            transformer.setInitialContextNode(document);
+        }
+        transformer.setMessageListener(new CatchMessages());
+        result = new XdmDestination();
+        transformer.setDestination(result);
 
-            if (templateName != null) {
-                transformer.setInitialTemplate(templateName);
-            }
+        if (initialMode != null) {
+            transformer.setInitialMode(initialMode);
+        }
 
-            if (outputBaseURI != null) {
-                transformer.setBaseOutputURI(outputBaseURI);
-                // The following hack works around https://saxonica.plan.io/issues/1724
-                try {
-                    result.setBaseURI(new URI(outputBaseURI));
-                } catch (URISyntaxException use) {
-                    // whatever
-                }
-            }
+        if (templateName != null) {
+            transformer.setInitialTemplate(templateName);
+        }
 
-            transformer.setSchemaValidationMode(ValidationMode.DEFAULT);
-            transformer.getUnderlyingController().setUnparsedTextURIResolver(unparsedTextURIResolver);
-            transformer.transform();
-        } finally {
-            config.setOutputURIResolver(uriResolver);
-            config.setCollectionURIResolver(collectionResolver);
+        if (outputBaseURI != null) {
+            transformer.setBaseOutputURI(outputBaseURI);
+            // The following hack works around https://saxonica.plan.io/issues/1724
+            try {
+                result.setBaseURI(new URI(outputBaseURI));
+            } catch (URISyntaxException use) {
+                // whatever
+            }
         }
 
+        transformer.setSchemaValidationMode(ValidationMode.DEFAULT);
+        // Set the resolvers on the controller rather than on the shared configuration so
+        // that transformations running concurrently don't see each other's resolvers
+        Controller controller = transformer.getUnderlyingController();
+        controller.setUnparsedTextURIResolver(unparsedTextURIResolver);
+        controller.setOutputURIResolver(new OutputResolver());
+        controller.setCollectionURIResolver(new CollectionResolver(runtime, defaultCollection, collectionResolver));
+        transformer.transform();
+
         XdmNode xformed = result.getXdmNode();
 
         // Can be null when nothing is written to the principle result tree...
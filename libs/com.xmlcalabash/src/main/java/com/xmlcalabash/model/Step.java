@@ -396,7 +396,7 @@ public class Step extends SourceArtifact {
         dependsOn.add(stepName);
     }
 
-    protected HashSet<String> getDependencies() {
+    public HashSet<String> getDependencies() {
         return dependsOn;
     }
 
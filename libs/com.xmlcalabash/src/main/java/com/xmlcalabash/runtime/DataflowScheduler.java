@@ -0,0 +1,221 @@
+package com.xmlcalabash.runtime;
+
+import com.xmlcalabash.core.XProcConstants;
+import com.xmlcalabash.core.XProcData;
+import com.xmlcalabash.core.XProcException;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.model.DeclareStep;
+import com.xmlcalabash.model.Step;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the steps of a subpipeline in dataflow order. A step starts as soon as the steps
+ * it depends on (the steps it reads from, directly or through its substeps, and the
+ * step named in cx:depends-on) have finished, so branches without a data dependency
+ * run concurrently on a shared work-stealing pool.
+ *
+ * Steps with side effects (p:store, p:exec, p:http-request, the EXProc file steps and
+ * the px: file steps), as well as compound steps and pipelines that contain one, run
+ * as in a sequential run: they wait for all the steps before them and all the steps
+ * after them wait for them. A step marked with cx:parallel-safe="true" is not treated
+ * as having side effects.
+ *
+ * The scheduler is used when the system property com.xmlcalabash.scheduler is set to
+ * "dataflow". The size of the pool is set with com.xmlcalabash.scheduler.threads
+ * (default: number of processors).
+ */
+public class DataflowScheduler {
+    public static final String SCHEDULER_PROPERTY = "com.xmlcalabash.scheduler";
+    public static final String THREADS_PROPERTY = "com.xmlcalabash.scheduler.threads";
+
+    private static final String NS_EXPROC_FILE = "http://exproc.org/proposed/steps/file";
+    private static final String NS_EXPROC_PROPOSED = "http://exproc.org/proposed/steps";
+    private static final String NS_DAISY_PIPELINE = "http://www.daisy.org/ns/pipeline/xproc";
+
+    private static final QName p_store = new QName(XProcConstants.NS_XPROC, "store");
+    private static final QName p_exec = new QName(XProcConstants.NS_XPROC, "exec");
+    private static final QName p_http_request = new QName(XProcConstants.NS_XPROC, "http-request");
+    private static final QName pxp_zip = new QName(NS_EXPROC_PROPOSED, "zip");
+
+    // px: steps that write, move or delete files
+    private static final HashSet<String> pxFileSteps = new HashSet<String> (Arrays.asList(
+        "copy", "copy-resource", "delete", "fileset-copy", "fileset-delete", "fileset-move",
+        "fileset-store", "fileset-unzip", "mkdir", "move", "rm-audio-files", "set-doctype",
+        "set-xml-declaration", "tempdir", "touch", "unzip", "zip"));
+
+    private static final Logger logger = LoggerFactory.getLogger(DataflowScheduler.class);
+
+    private static ForkJoinPool pool = null;
+
+    private final XProcRuntime runtime;
+    private final Vector<XStep> steps;
+    // For every step, the indexes of the steps it must wait for
+    private final int[][] dependencies;
+
+    public DataflowScheduler(XProcRuntime runtime, Vector<XStep> steps) {
+        this.runtime = runtime;
+        this.steps = steps;
+
+        int count = steps.size();
+        boolean[] sideEffects = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            sideEffects[i] = hasSideEffects(steps.get(i).getStep(), new HashSet<Step> ());
+        }
+
+        // The steps are already in a valid sequential order, so a step can only
+        // depend on the steps before it
+        dependencies = new int[count][];
+        for (int i = 0; i < count; i++) {
+            HashSet<String> names = steps.get(i).getStep().getDependencies();
+            Vector<Integer> deps = new Vector<Integer> ();
+            for (int j = 0; j < i; j++) {
+                if (sideEffects[i] || sideEffects[j] || names.contains(steps.get(j).getName())) {
+                    deps.add(j);
+                }
+            }
+            dependencies[i] = new int[deps.size()];
+            for (int j = 0; j < deps.size(); j++) {
+                dependencies[i][j] = deps.get(j);
+            }
+            logger.trace(steps.get(i).getName() + (sideEffects[i] ? " (side effects)" : "")
+                         + " waits for " + deps.size() + " step(s)");
+        }
+    }
+
+    public static boolean isEnabled(XProcRuntime runtime) {
+        // The profile is written sequentially
+        return "dataflow".equals(System.getProperty(SCHEDULER_PROPERTY, "sequential"))
+            && runtime.getProfile() == null;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int threads = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            pool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return pool;
+    }
+
+    private static boolean hasSideEffects(Step step, HashSet<Step> seen) {
+        if ("true".equals(step.getExtensionAttribute(XProcConstants.cx_parallel_safe))) {
+            return false;
+        }
+        QName type = step.getType();
+        if (p_store.equals(type) || p_exec.equals(type) || p_http_request.equals(type) || pxp_zip.equals(type)
+            || NS_EXPROC_FILE.equals(type.getNamespaceURI())
+            || (NS_DAISY_PIPELINE.equals(type.getNamespaceURI()) && pxFileSteps.contains(type.getLocalName()))) {
+            return true;
+        }
+        for (Step substep : step.subpipeline()) {
+            if (hasSideEffects(substep, seen)) {
+                return true;
+            }
+        }
+        // Pipelines that are called, and the subpipelines of compound steps
+        DeclareStep decl = step.getDeclaration();
+        if (decl != null && decl != step && seen.add(decl)) {
+            for (Step substep : decl.subpipeline()) {
+                if (hasSideEffects(substep, seen)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs all the steps and waits until they have finished. If steps fail, the error of
+     * the first one (in sequential order) is thrown and the steps that had not been
+     * started yet are not run.
+     */
+    public void run() throws SaxonApiException {
+        final XProcData data = runtime.getXProcData();
+        final XProcData.Frames frames = data.copyFrames();
+        final Throwable[] errors = new Throwable[steps.size()];
+
+        if (ForkJoinTask.inForkJoinPool()) {
+            schedule(data, frames, errors);
+        } else {
+            getPool().invoke(new RecursiveAction() {
+                protected void compute() {
+                    schedule(data, frames, errors);
+                }
+            });
+        }
+
+        for (Throwable error : errors) {
+            if (error instanceof SaxonApiException) {
+                throw (SaxonApiException) error;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new XProcException(error);
+            }
+        }
+    }
+
+    private void schedule(XProcData data, XProcData.Frames frames, Throwable[] errors) {
+        AtomicBoolean failed = new AtomicBoolean();
+        StepTask[] tasks = new StepTask[steps.size()];
+        // Fork in sequential order so that a task never waits for a task that was not forked yet
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new StepTask(i, tasks, data, frames.copy(), failed, errors);
+            tasks[i].fork();
+        }
+        for (StepTask task : tasks) {
+            task.join();
+        }
+    }
+
+    private class StepTask extends RecursiveAction {
+        private final int index;
+        private final StepTask[] tasks;
+        private final XProcData data;
+        private final XProcData.Frames frames;
+        private final AtomicBoolean failed;
+        private final Throwable[] errors;
+
+        public StepTask(int index, StepTask[] tasks, XProcData data, XProcData.Frames frames,
+                        AtomicBoolean failed, Throwable[] errors) {
+            this.index = index;
+            this.tasks = tasks;
+            this.data = data;
+            this.frames = frames;
+            this.failed = failed;
+            this.errors = errors;
+        }
+
+        protected void compute() {
+            // Tasks never complete abruptly, errors are recorded instead
+            for (int dep : dependencies[index]) {
+                tasks[dep].join();
+            }
+            if (failed.get()) {
+                return;
+            }
+            XStep step = steps.get(index);
+            XProcData.Frames previous = data.attachFrames(frames);
+            try {
+                step.run();
+            } catch (Throwable e) {
+                errors[index] = e;
+                failed.set(true);
+            } finally {
+                data.attachFrames(previous);
+            }
+        }
+    }
+}
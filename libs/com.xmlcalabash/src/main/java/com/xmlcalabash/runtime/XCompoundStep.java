@@ -27,6 +27,7 @@ import java.util.Vector;
 public class XCompoundStep extends XAtomicStep {
     protected Hashtable<QName, RuntimeValue> variables = new Hashtable<QName,RuntimeValue> ();
     protected Vector<XStep> subpipeline = new Vector<XStep> ();
+    private DataflowScheduler scheduler = null;
 
     public XCompoundStep(XProcRuntime runtime, Step step, XCompoundStep parent) {
         super(runtime, step, parent);
@@ -92,10 +93,20 @@ public class XCompoundStep extends XAtomicStep {
     }
 
     public void instantiate(Step step) {
+        instantiate(step, true);
+    }
+
+    /**
+     * @param attach Whether to add this step to the subpipeline of its parent. Steps that
+     *               are not attached are copies that are run by some other step.
+     */
+    protected void instantiate(Step step, boolean attach) {
         logger.trace(MessageFormatter.nodeMessage(step.getNode(), "--> instantiate " + step));
         
         instantiateReaders(step);
-        parent.addStep(this);
+        if (attach) {
+            parent.addStep(this);
+        }
 
         DeclareStep decl = step.getDeclaration();
 
@@ -231,6 +242,23 @@ public class XCompoundStep extends XAtomicStep {
         }
     }
 
+    /**
+     * Runs the steps of the subpipeline, one after the other or, when the dataflow
+     * scheduler is enabled, concurrently where their dependencies allow it.
+     */
+    protected void runSubpipeline() throws SaxonApiException {
+        if (subpipeline.size() > 1 && DataflowScheduler.isEnabled(runtime)) {
+            if (scheduler == null) {
+                scheduler = new DataflowScheduler(runtime, subpipeline);
+            }
+            scheduler.run();
+        } else {
+            for (XStep step : subpipeline) {
+                step.run();
+            }
+        }
+    }
+
     public void run() throws SaxonApiException {
         XProcData data = runtime.getXProcData();
         data.openFrame(this);
@@ -258,9 +286,7 @@ public class XCompoundStep extends XAtomicStep {
         runtime.start(this);
 
         try {
-            for (XStep step : subpipeline) {
-                step.run();
-            }
+            runSubpipeline();
 
             for (String port : inputs.keySet()) {
                 if (port.startsWith("|")) {
@@ -1,5 +1,6 @@
 package com.xmlcalabash.runtime;
 
+import com.xmlcalabash.core.XProcConstants;
 import com.xmlcalabash.core.XProcRuntime;
 import com.xmlcalabash.core.XProcException;
 import com.xmlcalabash.core.XProcData;
@@ -15,7 +16,15 @@ import net.sf.saxon.s9api.SaxonApiException;
 import net.sf.saxon.s9api.XdmNode;
 import net.sf.saxon.s9api.QName;
 
+import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by IntelliJ IDEA.
@@ -25,9 +34,28 @@ import java.util.Vector;
  * To change this template use File | Settings | File Templates.
  */
 public class XForEach extends XCompoundStep {
+    public static final String PARALLEL_PROPERTY = "com.xmlcalabash.for-each.parallel";
+    public static final String THREADS_PROPERTY = "com.xmlcalabash.for-each.threads";
+
+    private static final int defaultThreads
+        = Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+
+    // Shared by all parallel for-each steps. Not bounded because every step already limits
+    // the number of threads it uses and a nested for-each must not wait for its parent.
+    private static final ExecutorService workers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "xproc-for-each-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private Pipe current = null;
     private int sequencePosition = 0;
     private int sequenceLength = 0;
+    // Copies of this step used to run iterations in parallel
+    private Vector<XForEach> lanes = null;
 
     public XForEach(XProcRuntime runtime, Step step, XCompoundStep parent) {
         super(runtime, step, parent);
@@ -52,6 +80,11 @@ public class XForEach extends XCompoundStep {
         super.reset();
         sequenceLength = 0;
         sequencePosition = 0;
+        if (lanes != null) {
+            for (XForEach lane : lanes) {
+                lane.reset();
+            }
+        }
     }
     
     public void run() throws SaxonApiException {
@@ -88,78 +121,228 @@ public class XForEach extends XCompoundStep {
         runtime.start(this);
 
         try {
-            for (XdmNode is_doc : nodes) {
-                // Setup the current port before we compute variables!
-                current.resetWriter();
-                current.write(is_doc);
-                logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Copy to current"));
-
-                sequencePosition++;
-                runtime.getXProcData().setIterationPosition(sequencePosition);
-
-                for (Variable var : step.getVariables()) {
-                    RuntimeValue value = computeValue(var);
-                    inScopeOptions.put(var.getName(), value);
+            int threads = Math.min(getThreads(), sequenceLength);
+            if (threads > 1) {
+                runParallel(nodes, threads);
+            } else {
+                for (XdmNode is_doc : nodes) {
+                    runIteration(is_doc, sequencePosition + 1);
+                    writeOutputs(readOutputs());
+                    for (XStep step : subpipeline) {
+                        step.reset();
+                    }
                 }
+            }
+        } finally {
+            for (String port : inputs.keySet()) {
+                if (port.startsWith("|")) {
+                    String wport = port.substring(1);
+                    WritablePipe pipe = outputs.get(wport);
+                    pipe.close(); // Indicate that we're done
+                }
+            }
+            runtime.finish(this);
+            data.closeFrame();
+        }
+    }
+
+    private void runIteration(XdmNode is_doc, int position) throws SaxonApiException {
+        // Setup the current port before we compute variables!
+        current.resetWriter();
+        current.write(is_doc);
+        logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Copy to current"));
+
+        sequencePosition = position;
+        runtime.getXProcData().setIterationPosition(sequencePosition);
+
+        for (Variable var : step.getVariables()) {
+            RuntimeValue value = computeValue(var);
+            inScopeOptions.put(var.getName(), value);
+        }
 
-                // N.B. At this time, there are no compound steps that accept parameters or options,
-                // so the order in which we calculate them doesn't matter. That will change if/when
-                // there are such compound steps.
+        // N.B. At this time, there are no compound steps that accept parameters or options,
+        // so the order in which we calculate them doesn't matter. That will change if/when
+        // there are such compound steps.
+
+        // Calculate all the variables
+        inScopeOptions = parent.getInScopeOptions();
+        for (Variable var : step.getVariables()) {
+            RuntimeValue value = computeValue(var);
+            inScopeOptions.put(var.getName(), value);
+        }
+
+        runSubpipeline();
+    }
 
-                // Calculate all the variables
-                inScopeOptions = parent.getInScopeOptions();
-                for (Variable var : step.getVariables()) {
-                    RuntimeValue value = computeValue(var);
-                    inScopeOptions.put(var.getName(), value);
+    /**
+     * Reads the documents that the last iteration produced, per output port.
+     */
+    private Hashtable<String,Vector<XdmNode>> readOutputs() throws SaxonApiException {
+        Hashtable<String,Vector<XdmNode>> result = new Hashtable<String,Vector<XdmNode>> ();
+        for (String port : inputs.keySet()) {
+            if (port.startsWith("|")) {
+                String wport = port.substring(1);
+
+                boolean seqOk = step.getOutput(wport).getSequence();
+                Vector<XdmNode> docs = new Vector<XdmNode> ();
+
+                for (ReadablePipe reader : inputs.get(port)) {
+                    reader.canReadSequence(true); // Hack again!
+                    while (reader.moreDocuments()) {
+                        XdmNode doc = reader.read();
+                        docs.add(doc);
+                        logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Output copy from " + reader + " to " + wport));
+                    }
+                    reader.resetReader();
                 }
 
-                for (XStep step : subpipeline) {
-                    step.run();
+                if (docs.size() != 1 && !seqOk) {
+                    throw XProcException.dynamicError(6, "Writing to " + wport + " on " + getStep().getName());
                 }
 
-                for (String port : inputs.keySet()) {
-                    if (port.startsWith("|")) {
-                        String wport = port.substring(1);
-
-                        boolean seqOk = step.getOutput(wport).getSequence();
-                        int docsCopied = 0;
-
-                        WritablePipe pipe = outputs.get(wport);
-                        // The output of a for-each is a sequence, irrespective of what the output says
-                        pipe.canWriteSequence(true);
-
-                        for (ReadablePipe reader : inputs.get(port)) {
-                            reader.canReadSequence(true); // Hack again!
-                            while (reader.moreDocuments()) {
-                                XdmNode doc = reader.read();
-                                pipe.write(doc);
-                                docsCopied++;
-                                logger.trace(MessageFormatter.nodeMessage(step.getNode(), "Output copy from " + reader + " to " + pipe));
-                            }
-                            reader.resetReader();
-                        }
-
-                        if (docsCopied != 1 && !seqOk) {
-                            throw XProcException.dynamicError(6, "Writing to " + wport + " on " + getStep().getName());
-                        }
+                result.put(wport, docs);
+            }
+        }
+        return result;
+    }
+
+    private void writeOutputs(Hashtable<String,Vector<XdmNode>> docs) {
+        for (String wport : docs.keySet()) {
+            WritablePipe pipe = outputs.get(wport);
+            // The output of a for-each is a sequence, irrespective of what the output says
+            pipe.canWriteSequence(true);
+            for (XdmNode doc : docs.get(wport)) {
+                pipe.write(doc);
+            }
+        }
+    }
+
+    /**
+     * The number of threads to run the iterations with. Parallel execution is enabled
+     * with cx:parallel="true" (or a number of threads) on the p:for-each, or for all
+     * p:for-each steps with the system property com.xmlcalabash.for-each.parallel.
+     */
+    private int getThreads() {
+        if (runtime.getProfile() != null) {
+            // The profile is written sequentially
+            return 1;
+        }
+        String parallel = getExtensionAttribute(XProcConstants.cx_parallel);
+        if (parallel == null) {
+            parallel = System.getProperty(PARALLEL_PROPERTY, "false");
+        }
+        parallel = parallel.trim();
+        if ("false".equals(parallel)) {
+            return 1;
+        } else if ("true".equals(parallel)) {
+            return defaultThreads;
+        } else {
+            try {
+                return Math.max(1, Integer.parseInt(parallel));
+            } catch (NumberFormatException nfe) {
+                throw new XProcException(step.getNode(), "Invalid value for cx:parallel: " + parallel);
+            }
+        }
+    }
+
+    /**
+     * Runs the iterations on copies of the subpipeline, one per thread. The calling thread
+     * runs the first copy (the subpipeline of this step), the other copies run on pooled
+     * threads. The results are written to the outputs in the order of the iteration source.
+     */
+    private void runParallel(final Vector<XdmNode> nodes, int threads) throws SaxonApiException {
+        if (lanes == null) {
+            lanes = new Vector<XForEach> ();
+        }
+        while (lanes.size() < threads - 1) {
+            XForEach lane = new XForEach(runtime, step, parent);
+            lane.instantiate(step, false);
+            if (lane.current == null) {
+                lane.current = new Pipe(runtime);
+            }
+            lanes.add(lane);
+        }
+
+        final int count = nodes.size();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Vector<Hashtable<String,Vector<XdmNode>>> results = new Vector<Hashtable<String,Vector<XdmNode>>> ();
+        results.setSize(count);
+        final Vector<Throwable> errors = new Vector<Throwable> ();
+        errors.setSize(count);
+
+        logger.debug("Running " + count + " iterations of " + step.getName() + " on " + threads + " threads");
+
+        final XProcData data = runtime.getXProcData();
+        Vector<Future<?>> futures = new Vector<Future<?>> ();
+        for (int i = 0; i < threads - 1; i++) {
+            final XForEach lane = lanes.get(i);
+            final XProcData.Frames frames = data.copyFrames();
+            lane.inScopeOptions = parent.getInScopeOptions();
+            futures.add(workers.submit(new Runnable() {
+                public void run() {
+                    data.attachFrames(frames);
+                    runtime.start(lane);
+                    try {
+                        lane.runIterations(nodes, next, failed, results, errors);
+                    } finally {
+                        runtime.finish(lane);
+                        data.detachFrames();
                     }
                 }
+            }));
+        }
 
-                for (XStep step : subpipeline) {
-                    step.reset();
-                }
+        runIterations(nodes, next, failed, results, errors);
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new XProcException(ie);
+            } catch (ExecutionException ee) {
+                // Failures are recorded per iteration
             }
+        }
 
-        } finally {
-            for (String port : inputs.keySet()) {
-                if (port.startsWith("|")) {
-                    String wport = port.substring(1);
-                    WritablePipe pipe = outputs.get(wport);
-                    pipe.close(); // Indicate that we're done
+        // Report the failure of the first iteration that failed, like a sequential run would
+        for (Throwable error : errors) {
+            if (error instanceof SaxonApiException) {
+                throw (SaxonApiException) error;
+            } else if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            } else if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw new XProcException(error);
+            }
+        }
+
+        for (Hashtable<String,Vector<XdmNode>> docs : results) {
+            writeOutputs(docs);
+        }
+    }
+
+    /**
+     * Takes iterations from the shared counter and runs them until there are none left
+     * or until an iteration failed.
+     */
+    private void runIterations(Vector<XdmNode> nodes, AtomicInteger next, AtomicBoolean failed,
+                               Vector<Hashtable<String,Vector<XdmNode>>> results, Vector<Throwable> errors) {
+        int i;
+        while (!failed.get() && (i = next.getAndIncrement()) < nodes.size()) {
+            try {
+                runIteration(nodes.get(i), i + 1);
+                results.set(i, readOutputs());
+            } catch (Throwable e) {
+                errors.set(i, e);
+                failed.set(true);
+            } finally {
+                for (XStep step : subpipeline) {
+                    step.reset();
                 }
             }
-            runtime.finish(this);
-            data.closeFrame();
         }
     }
 }
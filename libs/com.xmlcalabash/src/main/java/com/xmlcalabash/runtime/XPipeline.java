@@ -52,6 +52,11 @@ public class XPipeline extends XCompoundStep {
         optionsPassedIn.put(name,value);
     }
 
+    public void reset() {
+        super.reset();
+        optionsPassedIn = null;
+    }
+
     public Hashtable<QName,RuntimeValue> getInScopeOptions() {
         // We make a copy so that what our children do can't effect us
         Hashtable<QName,RuntimeValue> globals = new Hashtable<QName,RuntimeValue> ();
@@ -232,9 +237,7 @@ public class XPipeline extends XCompoundStep {
             inScopeOptions.put(var.getName(), value);
         }
 
-        for (XStep step : subpipeline) {
-            step.run();
-        }
+        runSubpipeline();
 
         for (String port : inputs.keySet()) {
             if (port.startsWith("|")) {
@@ -91,8 +91,11 @@ public class XPipelineCall extends XAtomicStep {
         }
 
         runtime.start(this);
-        newstep.run();
-        runtime.finish(this);
+        try {
+            newstep.run();
+        } finally {
+            runtime.finish(this);
+        }
 
     }
 }
\ No newline at end of file
@@ -125,9 +125,7 @@ public class XUntilUnchanged extends XCompoundStep {
                             inScopeOptions.put(var.getName(), value);
                         }
 
-                        for (XStep step : subpipeline) {
-                            step.run();
-                        }
+                        runSubpipeline();
 
                         int docsCopied = 0;
 
@@ -86,8 +86,11 @@ public class XViewport extends XCompoundStep implements ProcessMatchingNodes {
         runtime.getXProcData().setIterationSize(sequenceLength);
 
         runtime.start(this);
-        matcher.match(doc, match);
-        runtime.finish(this);
+        try {
+            matcher.match(doc, match);
+        } finally {
+            runtime.finish(this);
+        }
 
         for (String port : inputs.keySet()) {
             if (port.startsWith("|")) {
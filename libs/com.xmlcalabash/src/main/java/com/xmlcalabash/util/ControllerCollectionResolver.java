@@ -0,0 +1,54 @@
+package com.xmlcalabash.util;
+
+import net.sf.saxon.Configuration;
+import net.sf.saxon.Controller;
+import net.sf.saxon.expr.XPathContext;
+import net.sf.saxon.lib.CollectionURIResolver;
+import net.sf.saxon.om.SequenceIterator;
+import net.sf.saxon.trans.XPathException;
+
+/**
+ * The collection resolver of a Saxon Configuration that lets every transformation or
+ * query have a collection resolver of its own.
+ *
+ * Saxon only asks the Configuration to resolve collections, it ignores the resolver set
+ * on the Controller. Setting the resolver of a step on the Configuration, which is shared
+ * by the steps running in parallel, would let them see each other's collections. This
+ * resolver passes the request on to the resolver of the Controller that is running, or
+ * to the resolver the Configuration had before if the Controller has none.
+ */
+public class ControllerCollectionResolver implements CollectionURIResolver {
+    private final CollectionURIResolver chainedResolver;
+
+    private ControllerCollectionResolver(CollectionURIResolver chainedResolver) {
+        this.chainedResolver = chainedResolver;
+    }
+
+    /**
+     * Makes the Configuration use the collection resolver of the Controller, if it
+     * doesn't already.
+     *
+     * @return the resolver of the Configuration for collections the resolver of the
+     * Controller doesn't know
+     */
+    public static CollectionURIResolver install(Configuration config) {
+        synchronized (config) {
+            CollectionURIResolver resolver = config.getCollectionURIResolver();
+            if (!(resolver instanceof ControllerCollectionResolver)) {
+                resolver = new ControllerCollectionResolver(resolver);
+                config.setCollectionURIResolver(resolver);
+            }
+            return ((ControllerCollectionResolver) resolver).chainedResolver;
+        }
+    }
+
+    public SequenceIterator<?> resolve(String href, String base, XPathContext context) throws XPathException {
+        Controller controller = context.getController();
+        CollectionURIResolver resolver = controller == null ? null : controller.getCollectionURIResolver();
+        // without a resolver of its own, the Controller returns the one of the Configuration
+        if (resolver == null || resolver == this) {
+            resolver = chainedResolver;
+        }
+        return resolver.resolve(href, base, context);
+    }
+}
@@ -0,0 +1,241 @@
+package com.xmlcalabash.util;
+
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.xmlcalabash.core.XProcException;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XQueryExecutable;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of compiled stylesheets, queries and schemas. There is one cache per
+ * XProcConfiguration (see XProcConfiguration.getExecutableCache()), so that all
+ * runtimes created from the same configuration, and thus using the same Saxon
+ * Configuration, share compiled executables.
+ *
+ * Entries are keyed by a digest of the stylesheet, query or schema, its base
+ * URI and the compiler settings. Schemas are the objects the validation steps
+ * compile their schemas into (RELAX NG, XML Schema); they must be safe to use
+ * from several threads at once. Unlike stylesheets and queries they don't belong
+ * to a Saxon Configuration, so they are kept in one cache shared by all
+ * configurations: an application that creates a configuration per pipeline, as the
+ * DAISY Pipeline does, still compiles a schema only once. They must not hold on to
+ * the runtime that compiled them. The maximum number of entries of each kind is set
+ * with the system property "com.xmlcalabash.executable-cache.size" (default
+ * 100, 0 disables the cache).
+ */
+public class ExecutableCache {
+    public static final String SIZE_PROPERTY = "com.xmlcalabash.executable-cache.size";
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutableCache.class);
+
+    private final Processor processor;
+    private final int maxSize;
+    private final Map<String, XsltExecutable> xslt;
+    private final Map<String, XQueryExecutable> xquery;
+    private static final Map<String, Object> schemas
+        = Collections.synchronizedMap(new LRUMap<Object>(sizeProperty()));
+    private final Map<XdmNode, String> digests
+        = Collections.synchronizedMap(new WeakHashMap<XdmNode, String>());
+    private volatile String loadedSchemas = null;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ExecutableCache(Processor processor, int maxSize) {
+        this.processor = processor;
+        this.maxSize = maxSize;
+        xslt = Collections.synchronizedMap(new LRUMap<XsltExecutable>(maxSize));
+        xquery = Collections.synchronizedMap(new LRUMap<XQueryExecutable>(maxSize));
+    }
+
+    /**
+     * Creates a cache for the given processor, with the size set by the system property.
+     */
+    public static ExecutableCache newInstance(Processor processor) {
+        return new ExecutableCache(processor, sizeProperty());
+    }
+
+    private static int sizeProperty() {
+        int size = 100;
+        try {
+            size = Integer.parseInt(System.getProperty(SIZE_PROPERTY, "100"));
+        } catch (NumberFormatException nfe) {
+            logger.warn("Invalid value for " + SIZE_PROPERTY + ": " + System.getProperty(SIZE_PROPERTY));
+        }
+        return size;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Computes the cache key of a stylesheet or query document.
+     *
+     * @param doc The document
+     * @param settings A string representing the compiler settings that affect the result
+     */
+    public String key(XdmNode doc, String settings) {
+        return digest(doc) + "|" + doc.getBaseURI() + "|" + settings;
+    }
+
+    /**
+     * Computes the cache key of a set of schema documents.
+     *
+     * @param docs The documents, in the order they are loaded
+     * @param settings A string representing the compiler settings that affect the result
+     */
+    public String key(Iterable<XdmNode> docs, String settings) {
+        StringBuilder key = new StringBuilder();
+        for (XdmNode doc : docs) {
+            key.append(digest(doc)).append("|").append(doc.getBaseURI()).append("|");
+        }
+        return key.append(settings).toString();
+    }
+
+    /**
+     * Computes the cache key of a query string.
+     *
+     * @param query The query
+     * @param settings A string representing the compiler settings (including the base URI)
+     */
+    public String key(String query, String settings) {
+        MessageDigest digest = newDigest();
+        try {
+            digest.update(query.getBytes("UTF-8"));
+        } catch (java.io.UnsupportedEncodingException uee) {
+            throw new XProcException(uee);
+        }
+        return hex(digest.digest()) + "|" + settings;
+    }
+
+    public XsltExecutable getXslt(String key) {
+        return count(key, xslt.get(key));
+    }
+
+    public void putXslt(String key, XsltExecutable exec) {
+        if (isEnabled()) {
+            xslt.put(key, exec);
+        }
+    }
+
+    public XQueryExecutable getXQuery(String key) {
+        return count(key, xquery.get(key));
+    }
+
+    public void putXQuery(String key, XQueryExecutable exec) {
+        if (isEnabled()) {
+            xquery.put(key, exec);
+        }
+    }
+
+    public <T> T getSchema(String key, Class<T> type) {
+        Object schema = schemas.get(key);
+        return count(key, type.isInstance(schema) ? type.cast(schema) : null);
+    }
+
+    public void putSchema(String key, Object schema) {
+        if (isEnabled()) {
+            schemas.put(key, schema);
+        }
+    }
+
+    /**
+     * The key of the XML schemas last loaded into the Saxon configuration, which keeps
+     * one set of schema components at a time, or null if unknown.
+     */
+    public String getLoadedSchemas() {
+        return loadedSchemas;
+    }
+
+    public void setLoadedSchemas(String key) {
+        loadedSchemas = key;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private <T> T count(String key, T exec) {
+        if (exec != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Executable cache " + (exec != null ? "hit" : "miss") + " for " + key
+                         + " (" + hits.get() + " hits, " + misses.get() + " misses)");
+        }
+        return exec;
+    }
+
+    private String digest(XdmNode doc) {
+        String hash = digests.get(doc);
+        if (hash == null) {
+            MessageDigest digest = newDigest();
+            Serializer serializer = processor.newSerializer(new DigestOutputStream(new NullOutputStream(), digest));
+            try {
+                serializer.serializeNode(doc);
+            } catch (SaxonApiException sae) {
+                throw new XProcException(sae);
+            }
+            hash = hex(digest.digest());
+            digests.put(doc, hash);
+        }
+        return hash;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new XProcException(nsae);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        return sb.toString();
+    }
+
+    private static class LRUMap<T> extends LinkedHashMap<String, T> {
+        private final int maxSize;
+
+        public LRUMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.xmlcalabash.runtime;
+
+import com.xmlcalabash.core.XProcConfiguration;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.io.ReadablePipe;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.StringReader;
+import java.net.URI;
+
+public class DataflowSchedulerTest {
+    private static final String PIPELINE
+        = "<p:declare-step xmlns:p='http://www.w3.org/ns/xproc' name='main' version='1.0'>"
+        + "<p:input port='source'><p:inline><doc><a/><b/></doc></p:inline></p:input>"
+        + "<p:output port='result'/>"
+        + "<p:filter select='/doc/a' name='a'/>"
+        + "<p:filter select='/doc/b' name='b'><p:input port='source'><p:pipe step='main' port='source'/></p:input></p:filter>"
+        + "<p:rename match='/*' new-name='c' name='c'><p:input port='source'><p:pipe step='b' port='result'/></p:input></p:rename>"
+        + "<p:group name='g'><p:output port='result'/>"
+        + "<p:add-attribute match='/*' attribute-name='x' attribute-value='1'><p:input port='source'><p:pipe step='a' port='result'/></p:input></p:add-attribute>"
+        + "</p:group>"
+        + "<p:wrap-sequence wrapper='result'>"
+        + "<p:input port='source'><p:pipe step='g' port='result'/><p:pipe step='c' port='result'/><p:pipe step='b' port='result'/></p:input>"
+        + "</p:wrap-sequence>"
+        + "</p:declare-step>";
+
+    @After
+    public void clearProperty() {
+        System.clearProperty(DataflowScheduler.SCHEDULER_PROPERTY);
+    }
+
+    private String run() throws Exception {
+        Processor saxon = new Processor(false);
+        XProcRuntime runtime = new XProcRuntime(new XProcConfiguration(saxon));
+        DocumentBuilder builder = saxon.newDocumentBuilder();
+        builder.setBaseURI(URI.create("http://example.com/pipeline.xpl"));
+        XdmNode doc = builder.build(new SAXSource(new InputSource(new StringReader(PIPELINE))));
+        XPipeline pipeline = runtime.use(doc);
+        pipeline.run();
+        StringBuilder result = new StringBuilder();
+        ReadablePipe rpipe = pipeline.readFrom("result");
+        while (rpipe.moreDocuments()) {
+            result.append(rpipe.read().toString());
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testSameResultAsSequential() throws Exception {
+        String sequential = run();
+        assertTrue(sequential.contains("<c/>"));
+        System.setProperty(DataflowScheduler.SCHEDULER_PROPERTY, "dataflow");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(sequential, run());
+        }
+    }
+}
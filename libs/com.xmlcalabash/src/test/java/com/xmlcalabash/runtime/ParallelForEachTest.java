@@ -0,0 +1,56 @@
+package com.xmlcalabash.runtime;
+
+import com.xmlcalabash.core.XProcConfiguration;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.io.ReadablePipe;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.StringReader;
+import java.net.URI;
+
+public class ParallelForEachTest {
+    private static String pipeline(String parallel) {
+        return "<p:declare-step xmlns:p='http://www.w3.org/ns/xproc' xmlns:cx='http://xmlcalabash.com/ns/extensions'"
+            + " exclude-inline-prefixes='cx' version='1.0'>"
+            + "<p:output port='result' sequence='true'/>"
+            + "<p:for-each cx:parallel='" + parallel + "'>"
+            + "<p:iteration-source select='/doc/item'><p:inline>"
+            + "<doc><item n='1'/><item n='2'/><item n='3'/><item n='4'/><item n='5'/><item n='6'/><item n='7'/></doc>"
+            + "</p:inline></p:iteration-source>"
+            + "<p:add-attribute match='/*' attribute-name='pos'>"
+            + "<p:with-option name='attribute-value' select='p:iteration-position()'/>"
+            + "</p:add-attribute>"
+            + "</p:for-each>"
+            + "</p:declare-step>";
+    }
+
+    private String run(String parallel) throws Exception {
+        Processor saxon = new Processor(false);
+        XProcRuntime runtime = new XProcRuntime(new XProcConfiguration(saxon));
+        DocumentBuilder builder = saxon.newDocumentBuilder();
+        builder.setBaseURI(URI.create("http://example.com/pipeline.xpl"));
+        XdmNode doc = builder.build(new SAXSource(new InputSource(new StringReader(pipeline(parallel)))));
+        XPipeline pipeline = runtime.use(doc);
+        pipeline.run();
+        StringBuilder result = new StringBuilder();
+        ReadablePipe rpipe = pipeline.readFrom("result");
+        while (rpipe.moreDocuments()) {
+            result.append(rpipe.read().toString());
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testOrderAndPosition() throws Exception {
+        String sequential = run("false");
+        assertTrue(sequential.contains("pos=\"7\""));
+        assertEquals(sequential, run("3"));
+        assertEquals(sequential, run("true"));
+    }
+}
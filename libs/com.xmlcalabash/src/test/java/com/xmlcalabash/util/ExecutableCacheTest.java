@@ -0,0 +1,88 @@
+package com.xmlcalabash.util;
+
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltExecutable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.xml.sax.InputSource;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class ExecutableCacheTest {
+    private static final String XSL = "<xsl:stylesheet version='2.0' xmlns:xsl='http://www.w3.org/1999/XSL/Transform'>"
+        + "<xsl:template match='/'><result/></xsl:template></xsl:stylesheet>";
+
+    private Processor processor = new Processor(false);
+
+    private XdmNode parse(String xml) throws Exception {
+        DocumentBuilder builder = processor.newDocumentBuilder();
+        return builder.build(new SAXSource(new InputSource(new StringReader(xml))));
+    }
+
+    @Test
+    public void testSameContentSameKey() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 10);
+        XdmNode a = parse(XSL);
+        XdmNode b = parse(XSL);
+        assertEquals(cache.key(a, "xslt|2.0"), cache.key(b, "xslt|2.0"));
+        assertFalse(cache.key(a, "xslt|2.0").equals(cache.key(a, "xslt|3.0")));
+        assertFalse(cache.key(a, "xslt|2.0").equals(cache.key(parse(XSL.replace("result", "other")), "xslt|2.0")));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 10);
+        XdmNode stylesheet = parse(XSL);
+        String key = cache.key(stylesheet, "xslt");
+        assertNull(cache.getXslt(key));
+        XsltExecutable exec = processor.newXsltCompiler().compile(stylesheet.asSource());
+        cache.putXslt(key, exec);
+        assertSame(exec, cache.getXslt(cache.key(parse(XSL), "xslt")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 1);
+        XsltExecutable exec = processor.newXsltCompiler().compile(parse(XSL).asSource());
+        cache.putXslt("a", exec);
+        cache.putXslt("b", exec);
+        assertNull(cache.getXslt("a"));
+        assertSame(exec, cache.getXslt("b"));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 0);
+        assertFalse(cache.isEnabled());
+        cache.putXslt("a", processor.newXsltCompiler().compile(parse(XSL).asSource()));
+        assertNull(cache.getXslt("a"));
+    }
+
+    @Test
+    public void testSchemas() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 10);
+        String key = cache.key(parse(XSL), "xsd-jaxp");
+        assertNull(cache.getSchema(key, Object.class));
+        Object schema = new Object();
+        cache.putSchema(key, schema);
+        assertSame(schema, cache.getSchema(cache.key(parse(XSL), "xsd-jaxp"), Object.class));
+        assertNull(cache.getSchema(key, String.class));
+        assertNull(cache.getSchema(cache.key(parse(XSL), "rng-msv"), Object.class));
+    }
+
+    @Test
+    public void testSchemaSetKey() throws Exception {
+        ExecutableCache cache = new ExecutableCache(processor, 10);
+        XdmNode a = parse(XSL);
+        XdmNode b = parse(XSL.replace("result", "other"));
+        assertEquals(cache.key(Arrays.asList(a, b), "xsd"), cache.key(Arrays.asList(parse(XSL), b), "xsd"));
+        assertFalse(cache.key(Arrays.asList(a, b), "xsd").equals(cache.key(Arrays.asList(b, a), "xsd")));
+        assertFalse(cache.key(Arrays.asList(a), "xsd").equals(cache.key(Arrays.asList(a, b), "xsd")));
+    }
+}
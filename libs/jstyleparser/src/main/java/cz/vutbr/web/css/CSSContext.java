@@ -0,0 +1,71 @@
+package cz.vutbr.web.css;
+
+import cz.vutbr.web.csskit.antlr.CSSParserFactory;
+import cz.vutbr.web.domassign.DeclarationTransformer;
+import cz.vutbr.web.domassign.SingleMapNodeData;
+
+/**
+ * Holds the factories and the definitions used for parsing style sheets and
+ * assigning them to a DOM tree. A context is immutable, so it can be shared by
+ * several threads, and several contexts (e.g. for media supporting different
+ * properties) can be used at the same time without touching the factories
+ * registered in {@link CSSFactory}.
+ *
+ * The declaration transformer is expected to be created for the same
+ * supported CSS as the one of the context.
+ *
+ * @see CSSFactory#getRegisteredContext()
+ */
+public class CSSContext {
+
+	private final CSSParserFactory parserFactory;
+	private final RuleFactory ruleFactory;
+	private final SupportedCSS supportedCSS;
+	private final DeclarationTransformer declarationTransformer;
+
+	/**
+	 * Creates a new context
+	 *
+	 * @param parserFactory
+	 *            Factory used for parsing the style sheets
+	 * @param ruleFactory
+	 *            Factory used for creating the style sheets
+	 * @param supportedCSS
+	 *            Supported properties and their default values
+	 * @param declarationTransformer
+	 *            Transformer of the declarations into properties
+	 */
+	public CSSContext(CSSParserFactory parserFactory, RuleFactory ruleFactory,
+			SupportedCSS supportedCSS, DeclarationTransformer declarationTransformer) {
+		this.parserFactory = parserFactory;
+		this.ruleFactory = ruleFactory;
+		this.supportedCSS = supportedCSS;
+		this.declarationTransformer = declarationTransformer;
+	}
+
+	public CSSParserFactory getCSSParserFactory() {
+		return parserFactory;
+	}
+
+	public RuleFactory getRuleFactory() {
+		return ruleFactory;
+	}
+
+	public SupportedCSS getSupportedCSS() {
+		return supportedCSS;
+	}
+
+	public DeclarationTransformer getDeclarationTransformer() {
+		return declarationTransformer;
+	}
+
+	/**
+	 * Creates an empty NodeData for this context. By default a
+	 * {@link SingleMapNodeData}.
+	 *
+	 * @return New NodeData
+	 */
+	public NodeData createNodeData() {
+		return new SingleMapNodeData(declarationTransformer, supportedCSS);
+	}
+}
@@ -45,6 +45,11 @@ import cz.vutbr.web.domassign.Traversal;
  * Whole conversion between DOM tree and mapping of CSS to DOM tree elements
  * could be done by invoking method {@code assignDOM()}
  * 
+ * The registered factories are shared by the whole application. Code that
+ * needs different factories at the same time, possibly from several threads,
+ * should pass a {@link CSSContext} to the methods that accept one instead of
+ * registering them.
+ * 
  * @author kapy
  * 
  */
@@ -372,6 +377,22 @@ public final class CSSFactory {
 		}
 	}
 
+	/**
+	 * Returns a context made of the factories registered in this class. The
+	 * NodeData of the context are instances of the registered NodeData class.
+	 * 
+	 * @return Context of the registered factories
+	 */
+	public static final CSSContext getRegisteredContext() {
+		return new CSSContext(getCSSParserFactory(), getRuleFactory(),
+				getSupportedCSS(), getDeclarationTransformer()) {
+			@Override
+			public NodeData createNodeData() {
+				return CSSFactory.createNodeData();
+			}
+		};
+	}
+
 	/**
 	 * Parses URL into StyleSheet
 	 * 
@@ -525,11 +546,37 @@ public final class CSSFactory {
      * @return the rules of all the style sheets used in the document including the inline styles
      */
     public static final StyleSheet getUsedStyles(Document doc, String encoding, URL base, MediaSpec media, NetworkProcessor network, StyleSheet style)
+    {
+        return getUsedStyles(doc, encoding, base, media, network, style, getRegisteredContext());
+    }
+    
+    /**
+     * This is the same as {@link CSSFactory#getUsedStyles(Document, String, URL, MediaSpec, NetworkProcessor, StyleSheet)}
+     * but the style sheets are parsed with the parser factory of the given context instead of the
+     * registered one.
+     * 
+     * @param doc
+     *            DOM tree
+     * @param encoding
+     *            The default encoding used for the referenced style sheets
+     * @param base
+     *            Base URL against which all files are searched
+     * @param media
+     *            Selected media for style sheet
+     * @param network
+     *            The network processor used for accessing the URL resources
+     * @param style
+     *            Style sheet to be modified
+     * @param context
+     *            The context providing the parser factory
+     * @return the rules of all the style sheets used in the document including the inline styles
+     */
+    public static final StyleSheet getUsedStyles(Document doc, String encoding, URL base, MediaSpec media, NetworkProcessor network, StyleSheet style, CSSContext context)
     {
         SourceData pair = new SourceData(base, network, media);
 
         Traversal<StyleSheet> traversal = new CSSAssignTraversal(doc, encoding,
-                (Object) pair, NodeFilter.SHOW_ELEMENT);
+                (Object) pair, NodeFilter.SHOW_ELEMENT, context.getCSSParserFactory());
 
         traversal.listTraversal(style);
         return style;
@@ -712,16 +759,40 @@ public final class CSSFactory {
     public static final StyleMap assignDOM(Document doc, String encoding, NetworkProcessor network,
             URL base, MediaSpec media, boolean useInheritance, final MatchCondition matchCond) {
 
-        SourceData pair = new SourceData(base, network, media);
+        return assignDOM(doc, encoding, network, base, media, useInheritance, matchCond, getRegisteredContext());
+    }
 
-        Traversal<StyleSheet> traversal = new CSSAssignTraversal(doc, encoding,
-                (Object) pair, NodeFilter.SHOW_ELEMENT);
+    /**
+     * This is the same as {@link CSSFactory#assignDOM(Document, String, NetworkProcessor, URL, MediaSpec, boolean, MatchCondition)}
+     * but the factories of the given context are used instead of the registered ones.
+     * 
+     * @param doc
+     *            DOM tree
+     * @param encoding
+     *            The default encoding used for the referenced style sheets
+     * @param network
+     *            Custom network processor
+     * @param base
+     *            Base URL against which all files are searched
+     * @param media
+     *            Current media specification used for evaluating the media queries
+     * @param useInheritance
+     *            Whether inheritance will be used to determine values
+     * @param matchCond
+     *            The match condition to match the against.
+     * @param context
+     *            The context providing the factories
+     * @return Map between DOM element nodes and data structure containing CSS
+     *         information
+     */ 
+    public static final StyleMap assignDOM(Document doc, String encoding, NetworkProcessor network,
+            URL base, MediaSpec media, boolean useInheritance, final MatchCondition matchCond, CSSContext context) {
 
-        StyleSheet style = (StyleSheet) getRuleFactory().createStyleSheet()
+        StyleSheet style = (StyleSheet) context.getRuleFactory().createStyleSheet()
                 .unlock();
-        traversal.listTraversal(style);
+        getUsedStyles(doc, encoding, base, media, network, style, context);
 
-        Analyzer analyzer = new Analyzer(style);
+        Analyzer analyzer = new Analyzer(style, context);
         if (matchCond != null) {
             analyzer.registerMatchCondition(matchCond);
         }
@@ -769,12 +840,13 @@ public final class CSSFactory {
 	 */
 	private static final class CSSAssignTraversal extends Traversal<StyleSheet> {
 
-		private CSSParserFactory pf = getCSSParserFactory();
+		private final CSSParserFactory pf;
 	    private String encoding;
 	    
-		public CSSAssignTraversal(Document doc, String encoding, Object source, int whatToShow) {
+		public CSSAssignTraversal(Document doc, String encoding, Object source, int whatToShow, CSSParserFactory pf) {
 			super(doc, source, whatToShow);
 			this.encoding = encoding;
+			this.pf = pf;
 		}
 
 		@Override
@@ -1,21 +1,27 @@
 package cz.vutbr.web.domassign;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.traversal.NodeFilter;
 import org.w3c.dom.traversal.TreeWalker;
 
+import cz.vutbr.web.css.CSSContext;
 import cz.vutbr.web.css.CSSFactory;
 import cz.vutbr.web.css.CombinedSelector;
 import cz.vutbr.web.css.Declaration;
@@ -30,6 +36,7 @@ import cz.vutbr.web.css.Selector;
 import cz.vutbr.web.css.Selector.PseudoElement;
 import cz.vutbr.web.css.StyleSheet;
 import cz.vutbr.web.csskit.ElementUtil;
+import cz.vutbr.web.csskit.SelectorImpl;
 
 /**
  * Analyzer allows to apply the given style to any document.
@@ -37,6 +44,13 @@ import cz.vutbr.web.csskit.ElementUtil;
  * medias and their type. Afterwards, it is able to return CSS declaration for any
  * DOM tree and media. It allows to use or not to use inheritance.
  * 
+ * Matching is sped up in several ways: the candidate rules are computed once
+ * per combination of element name, classes and ID, selectors that require an
+ * ancestor that is not there are rejected by an {@link AncestorFilter}, siblings
+ * with the same name and attributes reuse each other's results for selectors
+ * that can't tell them apart, and elements with the same declarations share
+ * their NodeData.
+ * 
  * @author Karel Piwko 2008
  * @author Radek Burget 2008-2014
  * 
@@ -57,23 +71,49 @@ public class Analyzer {
 	 */
 	protected Holder rules;
 
+	/** The state of the matching of the current DOM tree */
+	private Matching matching;
+
 	private MatchCondition matchCond = null;
 
+	/** The context used for creating the node data */
+	protected final CSSContext context;
+
 	/**
-	 * Creates the analyzer for a single style sheet.
+	 * Creates the analyzer for a single style sheet, using the factories registered in CSSFactory.
 	 * @param sheet The stylesheet that will be used as the source of rules.
 	 */
 	public Analyzer(StyleSheet sheet) {
+	    this(sheet, CSSFactory.getRegisteredContext());
+	}
+
+	/**
+	 * Creates the analyzer for a single style sheet.
+	 * @param sheet The stylesheet that will be used as the source of rules.
+	 * @param context The context used for creating the node data.
+	 */
+	public Analyzer(StyleSheet sheet, CSSContext context) {
 	    sheets = new ArrayList<StyleSheet>(1);
 	    sheets.add(sheet);
+	    this.context = context;
 	}
 
 	/**
-	 * Creates the analyzer for multiple style sheets.
+	 * Creates the analyzer for multiple style sheets, using the factories registered in CSSFactory.
 	 * @param sheets A list of stylesheets that will be used as the source of rules.
 	 */
 	public Analyzer(List<StyleSheet> sheets) {
+	    this(sheets, CSSFactory.getRegisteredContext());
+	}
+
+	/**
+	 * Creates the analyzer for multiple style sheets.
+	 * @param sheets A list of stylesheets that will be used as the source of rules.
+	 * @param context The context used for creating the node data.
+	 */
+	public Analyzer(List<StyleSheet> sheets, CSSContext context) {
 	    this.sheets = sheets;
+	    this.context = context;
 	}
 	
 	/**
@@ -106,13 +146,19 @@ public class Analyzer {
 	 *            Media
 	 * @param inherit
 	 *            Use inheritance
-	 * @return Map where each element contains its CSS properties
+	 * @return Map where each element contains its CSS properties. Elements
+	 *         with the same declarations (and the same parent style when
+	 *         using inheritance) share the same NodeData, which must not be
+	 *         modified.
 	 */
 	public StyleMap evaluateDOM(Document doc, MediaSpec media, final boolean inherit) {
 
 		DeclarationMap declarations = assingDeclarationsToDOM(doc, media, inherit);
 
-		StyleMap nodes = new StyleMap(declarations.size());
+		StyleMap nodes = new StyleMap(declarations.size(), context);
+		
+		// NodeData by declarations (and the NodeData inherited from)
+		final Map<List<Object>, NodeData> computed = new HashMap<List<Object>, NodeData>();
 
 		Traversal<StyleMap> traversal = new Traversal<StyleMap>(
 				doc, (Object) declarations, NodeFilter.SHOW_ELEMENT) {
@@ -120,35 +166,49 @@ public class Analyzer {
 			@Override
 			protected void processNode(StyleMap result, Node current, Object source) {
 
-			    NodeData main = CSSFactory.createNodeData();
-			    
 				// for all declarations available in the main list (pseudo=null)
 				List<Declaration> declarations = ((DeclarationMap) source).get((Element) current, null);
-				if (declarations != null) 
-				{
-					for (Declaration d : declarations) {
-						main.push(d);
-					}
-					if (inherit)
-						main.inheritFrom(result.get((Element) walker.parentNode(), null));
+				NodeData parent = null;
+				if (declarations != null && inherit)
+					parent = result.get((Element) walker.parentNode(), null);
+				List<Object> key = Arrays.<Object>asList(declarations, parent);
+				NodeData main = computed.get(key);
+				if (main == null) {
+				    main = context.createNodeData();
+				    if (declarations != null) 
+				    {
+				        for (Declaration d : declarations) {
+				            main.push(d);
+				        }
+				        if (inherit)
+				            main.inheritFrom(parent);
+				    }
+				    // concretize values and store them
+				    main = main.concretize();
+				    computed.put(key, main);
 				}
-				// concretize values and store them
-				result.put((Element) current, null, main.concretize());
+				result.put((Element) current, null, main);
 				
 				//repeat for the pseudo classes (if any)
 				for (PseudoElement pseudo : ((DeclarationMap) source).pseudoSet((Element) current))
 				{
-				    NodeData pdata = CSSFactory.createNodeData();
 	                declarations = ((DeclarationMap) source).get((Element) current, pseudo);
-	                if (declarations != null) 
-	                {
-	                    for (Declaration d : declarations) {
-	                        pdata.push(d);
+	                key = Arrays.<Object>asList(declarations, declarations != null ? main : null, pseudo);
+	                NodeData pdata = computed.get(key);
+	                if (pdata == null) {
+	                    pdata = context.createNodeData();
+	                    if (declarations != null) 
+	                    {
+	                        for (Declaration d : declarations) {
+	                            pdata.push(d);
+	                        }
+	                        pdata.inheritFrom(main); //always inherit from the main element style
 	                    }
-                        pdata.inheritFrom(main); //always inherit from the main element style
+	                    // concretize values and store them
+	                    pdata = pdata.concretize();
+	                    computed.put(key, pdata);
 	                }
-	                // concretize values and store them
-	                result.put((Element) current, pseudo, pdata.concretize());
+	                result.put((Element) current, pseudo, pdata);
 				}
 				
 			}
@@ -178,6 +238,7 @@ public class Analyzer {
 
 		// classify the rules
 	    classifyAllSheets(media);
+	    matching = null;
 		
 		// resulting map
 		DeclarationMap declarations = new DeclarationMap();
@@ -226,47 +287,31 @@ public class Analyzer {
 			log.debug("Traversal of {} {}.", e.getNodeName(), e.getNodeValue());
 		}
 		
-		// create set of possible candidates applicable to given element
-		// set is automatically filtered to not contain duplicates
-		Set<OrderedRule> candidates = new HashSet<OrderedRule>();
-
-		// match element classes
-		for (String cname : ElementUtil.elementClasses(e)) {
-			// holder contains rule with given class
-			List<OrderedRule> rules = holder.get(HolderItem.CLASS, cname.toLowerCase());
-			if (rules != null)
-				candidates.addAll(rules);
-		}
-		log.trace("After CLASSes {} total candidates.", candidates.size());
-
-		// match IDs
-		String id = ElementUtil.elementID(e);
-		if (id != null && id.length() != 0) {
-			List<OrderedRule> rules = holder.get(HolderItem.ID, id.toLowerCase());
-			if (rules != null)
-				candidates.addAll(rules);
+		if (matching == null || matching.holder != holder)
+			matching = new Matching(holder);
+		matching.ancestors.enter(e, walker);
+		MatchResult previous = matching.ancestors.getPreviousSibling();
+
+		// the candidates depend on the name, classes and ID only
+		Candidates candidates = matching.getCandidates(e);
+		List<OrderedRule> inline = matching.inlineRules.get(e);
+		if (inline != null) {
+			List<OrderedRule> clist = new ArrayList<OrderedRule>(candidates.rules);
+			clist.addAll(inline);
+			Collections.sort(clist);
+			candidates = matching.createCandidates(clist);
 		}
-		log.trace("After IDs {} total candidates.", candidates.size());
 		
-		// match elements
-		String name = e.getLocalName();
-		if (name != null) {
-			List<OrderedRule> rules = holder.get(HolderItem.ELEMENT, name.toLowerCase());
-			if (rules != null)
-				candidates.addAll(rules);
-		}
-		log.trace("After ELEMENTs {} total candidates.", candidates.size());
+		log.debug("Totally {} candidates.", candidates.rules.size());
+		log.trace("With values: {}", candidates.rules);
 
-		// others
-		candidates.addAll(holder.get(HolderItem.OTHER, null));
-		
-	    // transform to list to speed up traversal
-		// and sort rules in order as they were found in CSS definition
-		List<OrderedRule> clist = new ArrayList<OrderedRule>(candidates);
-		Collections.sort(clist);
-		
-		log.debug("Totally {} candidates.", candidates.size());
-		log.trace("With values: {}", clist);
+		// the results of the previous sibling can be reused for selectors
+		// that can't tell the two elements apart
+		boolean share = previous != null
+			&& previous.candidates == candidates
+			&& isEquivalent(previous.element, e);
+		boolean[] matched = new boolean[candidates.selectors.length];
+		int k = 0;
 
 		// resulting list of declaration for this element with no pseudo-selectors (main list)(local cache)
 		List<Declaration> eldecl = new ArrayList<Declaration>();
@@ -275,7 +320,7 @@ public class Analyzer {
 		Set<PseudoElement> pseudos = new HashSet<PseudoElement>();
 
 		// for all candidates
-		for (OrderedRule orule : clist) {
+		for (OrderedRule orule : candidates.rules) {
 		    
 			final RuleSet rule = orule.getRule();
 			StyleSheet sheet = rule.getStyleSheet();
@@ -285,14 +330,20 @@ public class Analyzer {
 			
 			// for all selectors inside
 			for (CombinedSelector s : rule.getSelectors()) {
-				// this method does automatic rewind of walker
-				if (!matchSelector(s, e, walker)) {
+				SelectorInfo info = candidates.selectors[k];
+				if (share && info.siblingInvariant)
+					matched[k] = previous.matched[k];
+				else
+					// this method does automatic rewind of walker
+					matched[k] = matching.ancestors.mightContainAll(info.ancestorHashes)
+						&& matchSelector(s, e, walker);
+				if (!matched[k++]) {
 					log.trace("CombinedSelector \"{}\" NOT matched!", s);
 					continue;
 				}
 
 				PseudoElement pseudo = s.getPseudoElement();
-                CombinedSelector.Specificity spec = s.computeSpecificity();
+                CombinedSelector.Specificity spec = info.specificity;
                 
 				log.trace("CombinedSelector \"{}\" matched (specificity {})", s, spec);
 				
@@ -323,6 +374,10 @@ public class Analyzer {
 		
 		// set the main list
 		declarations.put(e, null, eldecl);
+
+		// the element is the last child of its parent and the parent of the next element
+		matching.ancestors.setPreviousSibling(new MatchResult(e, candidates, matched));
+		matching.ancestors.push(e);
 	}
 
 	protected boolean elementSelectorMatches(final Selector s, final Element e) {
@@ -522,6 +577,209 @@ public class Analyzer {
 			holder.insert(h.item, h.key, new OrderedRule(value, currentOrder++));
 	}
 
+	/**
+	 * Decides whether matching a selector against two elements gives the same
+	 * result when the selector only looks at names, classes, IDs and
+	 * attributes of the elements and their ancestors.
+	 */
+	private static boolean isEquivalent(Element a, Element b) {
+		if (!equal(a.getNamespaceURI(), b.getNamespaceURI())
+				|| !equal(a.getLocalName(), b.getLocalName())
+				|| !equal(a.getNodeName(), b.getNodeName()))
+			return false;
+		NamedNodeMap aa = a.getAttributes();
+		NamedNodeMap ba = b.getAttributes();
+		if (aa.getLength() != ba.getLength())
+			return false;
+		for (int i = 0; i < aa.getLength(); i++) {
+			Node x = aa.item(i);
+			Node y = ba.getNamedItem(x.getNodeName());
+			if (y == null
+					|| !equal(x.getNamespaceURI(), y.getNamespaceURI())
+					|| !equal(x.getLocalName(), y.getLocalName())
+					|| !equal(x.getNodeValue(), y.getNodeValue()))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean equal(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * State of the matching of the rules in a holder against the elements of
+	 * a DOM tree, in document order.
+	 */
+	private final class Matching {
+
+		final Holder holder;
+
+		final AncestorFilter<MatchResult> ancestors = new AncestorFilter<MatchResult>();
+
+		/** Rules with inline selectors (that only match a single element), by element */
+		final Map<Element, List<OrderedRule>> inlineRules = new HashMap<Element, List<OrderedRule>>();
+
+		/** The remaining OTHER rules */
+		final List<OrderedRule> others = new ArrayList<OrderedRule>();
+
+		/** Candidates by element name, ID and classes */
+		final Map<List<Object>, Candidates> candidates = new HashMap<List<Object>, Candidates>();
+
+		final Map<CombinedSelector, SelectorInfo> selectors = new IdentityHashMap<CombinedSelector, SelectorInfo>();
+
+		Matching(Holder holder) {
+			this.holder = holder;
+			for (OrderedRule r : holder.get(HolderItem.OTHER, null)) {
+				Set<Element> elements = new LinkedHashSet<Element>();
+				for (CombinedSelector s : r.getRule().getSelectors()) {
+					Element inline = null;
+					for (Selector.SelectorPart part : s.getLastSelector())
+						if (part instanceof SelectorImpl.ElementDOMImpl)
+							inline = ((Selector.ElementDOM) part).getElement();
+					if (inline == null) {
+						elements = null;
+						break;
+					}
+					elements.add(inline);
+				}
+				if (elements == null || elements.isEmpty())
+					others.add(r);
+				else
+					for (Element e : elements) {
+						List<OrderedRule> rules = inlineRules.get(e);
+						if (rules == null) {
+							rules = new ArrayList<OrderedRule>();
+							inlineRules.put(e, rules);
+						}
+						rules.add(r);
+					}
+			}
+		}
+
+		/**
+		 * @return The rules that may match the element, in the order they were
+		 *         found in the style sheets, inline rules not included
+		 */
+		Candidates getCandidates(Element e) {
+			// only the keys for which the holder has rules
+			String name = e.getLocalName();
+			if (name != null) {
+				name = name.toLowerCase();
+				if (holder.get(HolderItem.ELEMENT, name) == null)
+					name = null;
+			}
+			String id = ElementUtil.elementID(e);
+			if (id != null && id.length() != 0) {
+				id = id.toLowerCase();
+				if (holder.get(HolderItem.ID, id) == null)
+					id = null;
+			} else
+				id = null;
+			Set<String> classes = new TreeSet<String>();
+			for (String cname : ElementUtil.elementClasses(e)) {
+				cname = cname.toLowerCase();
+				if (holder.get(HolderItem.CLASS, cname) != null)
+					classes.add(cname);
+			}
+			List<Object> key = Arrays.<Object>asList(name, id, classes);
+			Candidates result = candidates.get(key);
+			if (result == null) {
+				// set is automatically filtered to not contain duplicates
+				Set<OrderedRule> set = new HashSet<OrderedRule>();
+				for (String cname : classes)
+					set.addAll(holder.get(HolderItem.CLASS, cname));
+				if (id != null)
+					set.addAll(holder.get(HolderItem.ID, id));
+				if (name != null)
+					set.addAll(holder.get(HolderItem.ELEMENT, name));
+				set.addAll(others);
+				// sort rules in order as they were found in CSS definition
+				List<OrderedRule> clist = new ArrayList<OrderedRule>(set);
+				Collections.sort(clist);
+				result = createCandidates(clist);
+				candidates.put(key, result);
+			}
+			return result;
+		}
+
+		Candidates createCandidates(List<OrderedRule> rules) {
+			List<SelectorInfo> infos = new ArrayList<SelectorInfo>();
+			for (OrderedRule r : rules)
+				for (CombinedSelector s : r.getRule().getSelectors()) {
+					SelectorInfo info = selectors.get(s);
+					if (info == null) {
+						info = new SelectorInfo(s);
+						selectors.put(s, info);
+					}
+					infos.add(info);
+				}
+			return new Candidates(rules, infos.toArray(new SelectorInfo[infos.size()]));
+		}
+	}
+
+	private final class Candidates {
+
+		final List<OrderedRule> rules;
+
+		/** The selectors of the rules, in order */
+		final SelectorInfo[] selectors;
+
+		Candidates(List<OrderedRule> rules, SelectorInfo[] selectors) {
+			this.rules = rules;
+			this.selectors = selectors;
+		}
+	}
+
+	private static final class SelectorInfo {
+
+		/** What the selector requires from the ancestors of the element */
+		final int[] ancestorHashes;
+
+		/**
+		 * Whether the selector matches all equivalent siblings alike, i.e. it
+		 * only looks at names, classes, IDs and attributes of the element and
+		 * its ancestors
+		 */
+		final boolean siblingInvariant;
+
+		final CombinedSelector.Specificity specificity;
+
+		SelectorInfo(CombinedSelector s) {
+			ancestorHashes = AncestorFilter.selectorHashes(s);
+			specificity = s.computeSpecificity();
+			boolean invariant = true;
+			for (int i = 0; i < s.size() && invariant; i++) {
+				Selector.Combinator c = s.get(i).getCombinator();
+				if (i > 0 && c != Selector.Combinator.DESCENDANT && c != Selector.Combinator.CHILD)
+					invariant = false;
+				for (Selector.SelectorPart part : s.get(i))
+					if (!(part instanceof SelectorImpl.ElementNameImpl
+							|| part instanceof SelectorImpl.ElementClassImpl
+							|| part instanceof SelectorImpl.ElementIDImpl
+							|| part instanceof SelectorImpl.ElementAttributeImpl
+							|| part instanceof SelectorImpl.PseudoElementImpl))
+						invariant = false;
+			}
+			siblingInvariant = invariant;
+		}
+	}
+
+	private final class MatchResult {
+
+		final Element element;
+		final Candidates candidates;
+
+		/** Results of the selectors of the candidates, in order */
+		final boolean[] matched;
+
+		MatchResult(Element element, Candidates candidates, boolean[] matched) {
+			this.element = element;
+			this.candidates = candidates;
+			this.matched = matched;
+		}
+	}
+
 	/**
 	 * Decides about holder item
 	 * 
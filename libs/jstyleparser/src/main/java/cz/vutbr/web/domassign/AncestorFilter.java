@@ -0,0 +1,228 @@
+package cz.vutbr.web.domassign;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.traversal.TreeWalker;
+
+import cz.vutbr.web.css.CombinedSelector;
+import cz.vutbr.web.css.Selector;
+import cz.vutbr.web.csskit.ElementUtil;
+import cz.vutbr.web.csskit.SelectorImpl;
+
+/**
+ * Counting Bloom filter of the names, classes and IDs of the ancestors of the
+ * element being matched. A selector that requires an ancestor with a name,
+ * class or ID that is not in the filter can not match, so it can be rejected
+ * without walking up the tree. The filter may accept selectors that don't
+ * match, but never rejects a selector that does.
+ *
+ * The filter keeps a stack of the ancestors of the current element, so the
+ * elements are expected to be entered in document order. Otherwise the stack
+ * is rebuilt, which is correct but slow. Some data can be attached to the
+ * last entered child of each element on the stack, which allows to reuse
+ * results of a previous sibling.
+ *
+ * @param <T> Type of the data attached to the children
+ */
+class AncestorFilter<T> {
+
+	private static final int KEY_BITS = 12;
+	private static final int KEY_MASK = (1 << KEY_BITS) - 1;
+
+	private static final int NAME = 1;
+	private static final int CLASS = 2;
+	private static final int ID = 3;
+
+	private final int[] counters = new int[1 << KEY_BITS];
+	private final List<Frame<T>> stack = new ArrayList<Frame<T>>();
+	private T lastRoot = null;
+
+	/**
+	 * Sets the filter to the ancestors of the element.
+	 *
+	 * @param e
+	 *            The element
+	 * @param walker
+	 *            Tree walker positioned at the element, used for finding its
+	 *            ancestors the same way the selectors are matched
+	 */
+	public void enter(Element e, TreeWalker walker) {
+		Node parent = walker.parentNode();
+		walker.setCurrentNode(e);
+		while (!stack.isEmpty() && !top().element.isSameNode(parent))
+			pop();
+		if (stack.isEmpty() && parent != null) {
+			// not entered in document order, start over
+			LinkedList<Element> ancestors = new LinkedList<Element>();
+			walker.setCurrentNode(parent);
+			for (Node n = parent; n != null; n = walker.parentNode())
+				ancestors.addFirst((Element) n);
+			walker.setCurrentNode(e);
+			for (Element a : ancestors)
+				push(a);
+		}
+	}
+
+	/**
+	 * Adds the element, which becomes an ancestor of the next entered
+	 * elements until the filter moves past it.
+	 */
+	public void push(Element e) {
+		int[] hashes = elementHashes(e);
+		for (int h : hashes) {
+			counters[h & KEY_MASK]++;
+			counters[(h >>> KEY_BITS) & KEY_MASK]++;
+		}
+		stack.add(new Frame<T>(e, hashes));
+	}
+
+	/**
+	 * @param hashes
+	 *            The hashes that a selector requires from the ancestors, see
+	 *            {@link #selectorHashes(CombinedSelector)}
+	 * @return {@code false} if the ancestors don't have all of them
+	 */
+	public boolean mightContainAll(int[] hashes) {
+		for (int h : hashes) {
+			if (counters[h & KEY_MASK] == 0 || counters[(h >>> KEY_BITS) & KEY_MASK] == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The data attached to the last entered child of the parent of
+	 *         the current element, or {@code null}
+	 */
+	public T getPreviousSibling() {
+		return stack.isEmpty() ? lastRoot : top().lastChild;
+	}
+
+	/**
+	 * Attaches data to the current element, as the last entered child of its
+	 * parent.
+	 */
+	public void setPreviousSibling(T data) {
+		if (stack.isEmpty())
+			lastRoot = data;
+		else
+			top().lastChild = data;
+	}
+
+	private Frame<T> top() {
+		return stack.get(stack.size() - 1);
+	}
+
+	private void pop() {
+		for (int h : stack.remove(stack.size() - 1).hashes) {
+			counters[h & KEY_MASK]--;
+			counters[(h >>> KEY_BITS) & KEY_MASK]--;
+		}
+	}
+
+	/**
+	 * Computes the hashes of the names, classes and IDs that a selector
+	 * requires from the ancestors of the element it matches. These are the
+	 * parts of the simple selectors followed by a descendant or child
+	 * combinator. Parts that can't be compared reliably are left out.
+	 */
+	public static int[] selectorHashes(CombinedSelector sel) {
+		List<Integer> hashes = new ArrayList<Integer>();
+		for (int i = sel.size() - 2; i >= 0; i--) {
+			Selector.Combinator c = sel.get(i + 1).getCombinator();
+			if (c != Selector.Combinator.DESCENDANT && c != Selector.Combinator.CHILD)
+				continue;
+			for (Selector.SelectorPart part : sel.get(i)) {
+				if (part instanceof SelectorImpl.ElementNameImpl) {
+					String name = ((Selector.ElementName) part).getLocalName();
+					if (name != null && !Selector.ElementName.WILDCARD.equals(name))
+						hashes.add(hash(NAME, foldCase(name)));
+				} else if (part instanceof SelectorImpl.ElementClassImpl) {
+					String name = ((Selector.ElementClass) part).getClassName();
+					String lower = name.toLowerCase();
+					// ElementUtil.matchesClass() compares whole tokens only if
+					// lower casing doesn't change the length
+					if (isToken(name) && lower.length() == name.length())
+						hashes.add(hash(CLASS, lower));
+				} else if (part instanceof SelectorImpl.ElementIDImpl) {
+					String id = ((Selector.ElementID) part).getID();
+					if (id != null && id.length() > 0)
+						hashes.add(hash(ID, foldCase(id)));
+				}
+			}
+		}
+		int[] result = new int[hashes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = hashes.get(i);
+		return result;
+	}
+
+	/**
+	 * Computes the hashes of the name, classes and ID of an element, such that
+	 * they are equal to the hashes of the selector parts that match it.
+	 */
+	private static int[] elementHashes(Element e) {
+		List<Integer> hashes = new ArrayList<Integer>();
+		String name = e.getLocalName();
+		if (name != null)
+			hashes.add(hash(NAME, foldCase(name)));
+		String id = ElementUtil.elementID(e);
+		if (id != null && id.length() > 0)
+			hashes.add(hash(ID, foldCase(id)));
+		// split the same way as ElementUtil.matchesClass()
+		String classNames = ElementUtil.getAttribute(e, ElementUtil.CLASS_ATTR).toLowerCase();
+		int start = -1;
+		for (int i = 0; i <= classNames.length(); i++) {
+			if (i == classNames.length() || Character.isWhitespace(classNames.charAt(i))) {
+				if (start >= 0)
+					hashes.add(hash(CLASS, classNames.substring(start, i)));
+				start = -1;
+			} else if (start < 0)
+				start = i;
+		}
+		int[] result = new int[hashes.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = hashes.get(i);
+		return result;
+	}
+
+	private static int hash(int type, String value) {
+		return (value.hashCode() * 31 + type) * 0x9E3779B9;
+	}
+
+	/**
+	 * Maps strings that are equal according to
+	 * {@link String#equalsIgnoreCase(String)} to the same string.
+	 */
+	private static String foldCase(String s) {
+		char[] chars = s.toCharArray();
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		return new String(chars);
+	}
+
+	private static boolean isToken(String s) {
+		if (s.length() == 0)
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.isWhitespace(s.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static class Frame<T> {
+		final Element element;
+		final int[] hashes;
+		T lastChild = null;
+
+		Frame(Element element, int[] hashes) {
+			this.element = element;
+			this.hashes = hashes;
+		}
+	}
+}
@@ -16,7 +16,7 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CSSContext;
 import cz.vutbr.web.css.CombinedSelector;
 import cz.vutbr.web.css.Declaration;
 import cz.vutbr.web.css.MatchCondition;
@@ -58,6 +58,26 @@ public class DirectAnalyzer extends Analyzer
         super(sheets);
     }
 
+    /**
+     * Creates the analyzer for a single style sheet.
+     * @param sheet The stylesheet that will be used as the source of rules.
+     * @param context The context used for creating the node data.
+     */
+    public DirectAnalyzer(StyleSheet sheet, CSSContext context)
+    {
+        super(sheet, context);
+    }
+
+    /**
+     * Creates the analyzer for multiple style sheets.
+     * @param sheets A list of stylesheets that will be used as the source of rules.
+     * @param context The context used for creating the node data.
+     */
+    public DirectAnalyzer(List<StyleSheet> sheets, CSSContext context)
+    {
+        super(sheets, context);
+    }
+
     /**
      * Computes the style of an element with an eventual pseudo element for the given media.
      * @param el The DOM element.
@@ -72,7 +92,7 @@ public class DirectAnalyzer extends Analyzer
         
         List<Declaration> decls = getDeclarationsForElement(el, pseudo, rules);
         
-        NodeData main = CSSFactory.createNodeData();
+        NodeData main = context.createNodeData();
         for (Declaration d : decls)
             main.push(d);
         
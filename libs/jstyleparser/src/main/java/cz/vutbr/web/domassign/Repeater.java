@@ -42,12 +42,30 @@ public abstract class Repeater {
 	protected Class<? extends CSSProperty> type;
 	
 	/**
-	 * Constructor
+	 * Supported CSS used for the default values
+	 */
+	private final SupportedCSS css;
+	
+	/**
+	 * Constructor, using the SupportedCSS registered in CSSFactory
 	 * 
 	 * @param times
 	 *            Number of iterations
 	 */
 	public Repeater(int times) {
+		this(times, CSSFactory.getSupportedCSS());
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param times
+	 *            Number of iterations
+	 * @param css
+	 *            Supported CSS used for the default values
+	 */
+	public Repeater(int times, SupportedCSS css) {
+		this.css = css;
 		this.times = times;
 		this.terms = new ArrayList<Term<?>>(times);
 		this.names = new ArrayList<String>(times);
@@ -198,7 +216,6 @@ public abstract class Repeater {
      * @param values
      */
     public void assignDefaults(Map<String, CSSProperty> properties, Map<String, Term<?>> values) {
-        SupportedCSS css = CSSFactory.getSupportedCSS();
         for (String name : names) {
             CSSProperty dp = css.getDefaultProperty(name);
             if (dp != null)
@@ -26,12 +26,30 @@ public class SingleMapNodeData implements NodeData, Cloneable {
 
 	private static final int COMMON_DECLARATION_SIZE = 7;
 	
-	protected DeclarationTransformer transformer = CSSFactory.getDeclarationTransformer();
-	protected SupportedCSS css = CSSFactory.getSupportedCSS();
+	protected DeclarationTransformer transformer;
+	protected SupportedCSS css;
 	
 	protected Map<String, Quadruple> map;
 	
+	/**
+	 * Creates an empty node data using the DeclarationTransformer and the
+	 * SupportedCSS registered in CSSFactory
+	 */
 	public SingleMapNodeData() {
+		this(CSSFactory.getDeclarationTransformer(), CSSFactory.getSupportedCSS());
+	}
+	
+	/**
+	 * Creates an empty node data
+	 * 
+	 * @param transformer
+	 *            Transformer of the pushed declarations
+	 * @param css
+	 *            Supported CSS, used for the default values
+	 */
+	public SingleMapNodeData(DeclarationTransformer transformer, SupportedCSS css) {
+		this.transformer = transformer;
+		this.css = css;
 		this.map = new HashMap<String, Quadruple>(css.getTotalProperties(), 1.0f);
 	}
 	
@@ -7,6 +7,7 @@ package cz.vutbr.web.domassign;
 
 import org.w3c.dom.Element;
 
+import cz.vutbr.web.css.CSSContext;
 import cz.vutbr.web.css.CSSFactory;
 import cz.vutbr.web.css.NodeData;
 import cz.vutbr.web.css.Selector.PseudoElement;
@@ -20,15 +21,27 @@ import cz.vutbr.web.css.Selector.PseudoElement;
 public class StyleMap extends MultiMap<Element, PseudoElement, NodeData>
 {
 
+	private final CSSContext context;
+
 	public StyleMap(int size)
+	{
+		this(size, CSSFactory.getRegisteredContext());
+	}
+
+	/**
+	 * @param size The initial capacity
+	 * @param context The context used for creating the node data
+	 */
+	public StyleMap(int size, CSSContext context)
 	{
 		super(size);
+		this.context = context;
 	}
 
 	@Override
 	protected NodeData createDataInstance()
 	{
-		return CSSFactory.createNodeData();
+		return context.createNodeData();
 	}
     
 }
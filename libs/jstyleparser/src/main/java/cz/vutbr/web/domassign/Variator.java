@@ -51,13 +51,31 @@ public abstract class Variator {
 	 */
 	protected List<Term<?>> terms;
 
+	/**
+	 * Supported CSS used for the default values
+	 */
+	private final SupportedCSS css;
+
 	/**
 	 * Creates variator which contains <code>variants</code> variants to be
-	 * tested
+	 * tested, using the SupportedCSS registered in CSSFactory
 	 * 
 	 * @param variants
 	 */
 	public Variator(int variants) {
+		this(variants, CSSFactory.getSupportedCSS());
+	}
+
+	/**
+	 * Creates variator which contains <code>variants</code> variants to be
+	 * tested
+	 * 
+	 * @param variants
+	 * @param css
+	 *            Supported CSS used for the default values
+	 */
+	public Variator(int variants, SupportedCSS css) {
+		this.css = css;
 		this.variants = variants;
 		this.variantPassed = new boolean[variants];
 		for (int i = 0; i < variants; i++)
@@ -346,7 +364,6 @@ public abstract class Variator {
 	 * @param values
 	 */
 	public void assignDefaults(Map<String, CSSProperty> properties, Map<String, Term<?>> values) {
-	    SupportedCSS css = CSSFactory.getSupportedCSS();
 	    for (String name : names) {
 	        CSSProperty dp = css.getDefaultProperty(name);
 	        if (dp != null)
@@ -0,0 +1,164 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.NodeData;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.domassign.Analyzer;
+import cz.vutbr.web.domassign.DirectAnalyzer;
+import cz.vutbr.web.domassign.StyleMap;
+
+/**
+ * Checks that the Analyzer, which indexes the rules, filters the selectors by
+ * the ancestors of the element, reuses the results of equivalent siblings and
+ * shares the NodeData of elements with the same style, assigns the same style
+ * to every element as the DirectAnalyzer, which matches every rule against
+ * every element.
+ */
+public class AnalyzerEquivalenceTest {
+
+	private static final Logger log = LoggerFactory.getLogger(AnalyzerEquivalenceTest.class);
+
+	private static final String CSS =
+		  "section p { margin-left: 1px }\n"
+		+ "section.chapter > p { margin-right: 2px }\n"
+		+ "body .NOTE em { font-style: italic }\n"
+		+ "#sec1 p { color: green }\n"
+		+ "#SEC2 > h1 { color: blue }\n"
+		+ "h1 + p { font-weight: bold }\n"
+		+ "h1 ~ list { margin-top: 3px }\n"
+		+ "p + p + p { text-indent: 4px }\n"
+		+ "li:nth-child(2n+1) { color: gray }\n"
+		+ "li:nth-child(3) { color: black }\n"
+		+ "li:first-child, li:last-child { margin-bottom: 5px }\n"
+		+ "[lang=en] { font-variant: small-caps }\n"
+		+ "p[data-x] em { text-decoration: underline }\n"
+		+ "list[type=\"ol\"] > li { text-align: right }\n"
+		+ ".ITEM { padding-left: 6px }\n"
+		+ "p.extra.note { padding-top: 7px }\n"
+		+ "div div p { padding-bottom: 8px }\n"
+		+ "div > p:first-child + p { padding-right: 9px }\n"
+		+ "p:before { content: \"x\" }\n"
+		+ "* em { font-size: 10px }\n";
+
+	private static Document doc;
+	private static StyleSheet sheet;
+
+	@BeforeClass
+	public static void init() throws IOException, CSSException, ParserConfigurationException {
+		log.info("\n\n\n == AnalyzerEquivalenceTest test at {} == \n\n\n", new Date());
+		doc = createDocument();
+		URL base = AnalyzerEquivalenceTest.class.getResource("/simple/data.html");
+		// the embedded style sheet and the style attributes
+		sheet = CSSFactory.getUsedStyles(doc, null, base, "all");
+	}
+
+	@Test
+	public void testSameAsDirectAnalyzer() {
+		StyleMap map = new Analyzer(sheet).evaluateDOM(doc, "all", false);
+		DirectAnalyzer da = new DirectAnalyzer(sheet);
+		NodeList elements = doc.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element e = (Element) elements.item(i);
+			assertEquals("Style of " + path(e),
+					da.getElementStyle(e, null, "all").toString(), map.get(e).toString());
+		}
+	}
+
+	@Test
+	public void testSameAsDirectAnalyzerWithInheritance() {
+		StyleMap map = new Analyzer(sheet).evaluateDOM(doc, "all", true);
+		DirectAnalyzer da = new DirectAnalyzer(sheet);
+		Map<Element, NodeData> expected = new HashMap<Element, NodeData>();
+		// in document order, so that the parent comes first
+		NodeList elements = doc.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element e = (Element) elements.item(i);
+			NodeData data = da.getElementStyle(e, null, "all");
+			if (e.getParentNode() instanceof Element)
+				data.inheritFrom(expected.get(e.getParentNode()));
+			data = data.concretize();
+			expected.put(e, data);
+			assertEquals("Style of " + path(e), data.toString(), map.get(e).toString());
+		}
+	}
+
+	/**
+	 * Creates a document with sections of paragraphs and lists. Many siblings
+	 * are equivalent, and class names and IDs differ in case from the style
+	 * sheet.
+	 */
+	private static Document createDocument() throws ParserConfigurationException {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element html = element(doc, doc, "html", null);
+		Element head = element(doc, html, "head", null);
+		element(doc, head, "style", null).appendChild(doc.createTextNode(CSS));
+		Element body = element(doc, html, "body", null);
+		for (int s = 0; s < 4; s++) {
+			Element section = element(doc, body, "section", s % 2 == 0 ? "Chapter" : null);
+			section.setAttribute("id", "Sec" + s);
+			element(doc, section, "h1", null);
+			for (int i = 0; i < 7; i++) {
+				Element p = element(doc, section, "p", i % 3 == 0 ? "Note" : i % 3 == 1 ? "note Extra" : null);
+				if (i % 2 == 1)
+					p.setAttribute("lang", "en");
+				if (i == 5)
+					p.setAttribute("data-x", "v");
+				if (i == 4 && s == 1)
+					p.setAttribute("style", "color: red");
+				element(doc, p, "em", i % 2 == 1 ? "E" : null);
+			}
+			Element list = element(doc, section, "list", null);
+			list.setAttribute("type", s % 2 == 0 ? "ol" : "ul");
+			for (int i = 0; i < 6; i++) {
+				Element li = element(doc, list, "li", i < 4 ? "Item" : null);
+				if (i == 5)
+					element(doc, li, "em", null);
+			}
+			Element div = element(doc, element(doc, section, "div", null), "div", null);
+			for (int i = 0; i < 3; i++)
+				element(doc, div, "p", null);
+		}
+		return doc;
+	}
+
+	private static Element element(Document doc, Node parent, String name, String cls) {
+		Element e = doc.createElementNS(null, name);
+		if (cls != null)
+			e.setAttribute("class", cls);
+		parent.appendChild(e);
+		return e;
+	}
+
+	private static String path(Element e) {
+		StringBuilder sb = new StringBuilder();
+		for (Node n = e; n instanceof Element; n = n.getParentNode()) {
+			int index = 1;
+			for (Node s = n.getPreviousSibling(); s != null; s = s.getPreviousSibling())
+				if (s instanceof Element)
+					index++;
+			sb.insert(0, "/" + n.getNodeName() + "[" + index + "]");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,127 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.domassign.Analyzer;
+
+/**
+ * This test is to measure the time it takes the Analyzer to assign a large
+ * style sheet to a large document, similar to a book with many sections,
+ * paragraphs and lists. That the Analyzer assigns the right styles is checked
+ * by {@link AnalyzerEquivalenceTest}.
+ * 
+ * A real document (e.g. a DTBook) and style sheet can be used instead of the
+ * generated ones by setting the system properties
+ * {@code AnalyzerSpeedTest.document} and {@code AnalyzerSpeedTest.stylesheet}
+ * to their file paths.
+ */
+@Ignore
+public class AnalyzerSpeedTest {
+
+	private static Logger log = LoggerFactory.getLogger(AnalyzerSpeedTest.class);
+
+	private static final int SECTIONS = 200;
+	private static final int PARAGRAPHS = 20;
+	private static final int RULES = 50;
+	private static final int ITERATIONS = 5;
+
+	private static Document doc;
+	private static StyleSheet sheet;
+
+	@BeforeClass
+	public static void init() throws IOException, CSSException, ParserConfigurationException, SAXException {
+		log.info("\n\n\n == AnalyzerSpeedTest test at {} == \n\n\n", new Date());
+		String docFile = System.getProperty("AnalyzerSpeedTest.document");
+		String cssFile = System.getProperty("AnalyzerSpeedTest.stylesheet");
+		if (docFile != null) {
+			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			doc = factory.newDocumentBuilder().parse(new File(docFile));
+		} else
+			doc = createDocument();
+		if (cssFile != null)
+			sheet = CSSFactory.parse(new File(cssFile).toURI().toURL(), null);
+		else
+			sheet = CSSFactory.parseString(createStyleSheet(), null);
+	}
+
+	@Test
+	public void testEvaluateDOM() {
+		Analyzer analyzer = new Analyzer(sheet);
+		for (boolean inherit : new boolean[]{false, true}) {
+			long time = System.currentTimeMillis();
+			for (int i = 0; i < ITERATIONS; i++)
+				analyzer.evaluateDOM(doc, "all", inherit);
+			time = System.currentTimeMillis() - time;
+			log.debug("evaluateDOM (inherit={}) took {}ms.", inherit, time / ITERATIONS);
+		}
+	}
+
+	private static Document createDocument() throws ParserConfigurationException {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		Element book = element(doc, doc, "book", null);
+		Element body = element(doc, book, "bodymatter", null);
+		for (int i = 0; i < SECTIONS; i++) {
+			Element level1 = element(doc, body, "level1", i % 10 == 0 ? "chapter" : null);
+			element(doc, level1, "h1", null).setAttribute("id", "h" + i);
+			for (int j = 0; j < PARAGRAPHS; j++) {
+				element(doc, level1, "p", j % 7 == 0 ? "note" : null).appendChild(doc.createTextNode("text"));
+				if (j % 5 == 0) {
+					Element list = element(doc, level1, "list", null);
+					list.setAttribute("type", j % 2 == 0 ? "ol" : "ul");
+					for (int k = 0; k < 5; k++)
+						element(doc, element(doc, list, "li", null), "em", null);
+				}
+			}
+			Element level2 = element(doc, level1, "level2", null);
+			element(doc, level2, "h2", null);
+			for (int j = 0; j < PARAGRAPHS / 2; j++)
+				element(doc, level2, "p", null);
+		}
+		return doc;
+	}
+
+	private static Element element(Document doc, Node parent, String name, String cls) {
+		Element e = doc.createElementNS(null, name);
+		if (cls != null)
+			e.setAttribute("class", cls);
+		parent.appendChild(e);
+		return e;
+	}
+
+	private static String createStyleSheet() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("book, bodymatter, level1, level2, p, list, li { display: block }\n");
+		sb.append("p + p { margin-top: 1em }\n");
+		sb.append("li:first-child { margin-left: 2em }\n");
+		sb.append("list[type=ol] > li { text-indent: 1em }\n");
+		for (int i = 0; i < RULES; i++) {
+			sb.append("level1.c").append(i).append(" p { color: #00000").append(i % 10).append(" }\n");
+			sb.append("#h").append(i).append(" { font-weight: bold }\n");
+			sb.append(".chapter level2 p.n").append(i).append(" { margin-left: ").append(i).append("px }\n");
+			sb.append("level2 h2 em.e").append(i).append(" { font-style: italic }\n");
+		}
+		sb.append("level1 p.note { font-size: small }\n");
+		sb.append("level1 > level2 > p { text-align: justify }\n");
+		sb.append("list li em { font-style: italic }\n");
+		return sb.toString();
+	}
+}
@@ -31,6 +31,7 @@ import com.google.common.base.Splitter;
 import static com.google.common.base.Objects.firstNonNull;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.toArray;
 import static com.google.common.collect.Iterators.forArray;
@@ -48,6 +49,7 @@ import com.xmlcalabash.runtime.XAtomicStep;
 import com.xmlcalabash.util.Base64;
 import com.xmlcalabash.util.S9apiUtils;
 
+import cz.vutbr.web.css.CSSContext;
 import cz.vutbr.web.css.CSSFactory;
 import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.Declaration;
@@ -55,6 +57,7 @@ import cz.vutbr.web.css.MediaSpec;
 import cz.vutbr.web.css.NetworkProcessor;
 import cz.vutbr.web.css.NodeData;
 import cz.vutbr.web.css.Rule;
+import cz.vutbr.web.css.RuleBlock;
 import cz.vutbr.web.css.RuleFactory;
 import cz.vutbr.web.css.RuleMargin;
 import cz.vutbr.web.css.RulePage;
@@ -68,7 +71,6 @@ import cz.vutbr.web.css.TermInteger;
 import cz.vutbr.web.css.TermList;
 import cz.vutbr.web.css.TermPair;
 import cz.vutbr.web.csskit.antlr.CSSParserFactory;
-import cz.vutbr.web.csskit.antlr.CSSParserFactory.SourceType;
 import cz.vutbr.web.csskit.DefaultNetworkProcessor;
 import cz.vutbr.web.csskit.RuleFactoryImpl;
 import cz.vutbr.web.domassign.Analyzer;
@@ -421,21 +423,21 @@ public class CssInlineStep extends DefaultStep {
 	
 	// medium print
 	private static final SupportedCSS printCSS = SupportedPrintCSS.getInstance();
-	private static DeclarationTransformer printDeclarationTransformer; static {
-		// SupportedCSS injected via CSSFactory in DeclarationTransformer.<init>
-		CSSFactory.registerSupportedCSS(printCSS);
-		printDeclarationTransformer = new DeclarationTransformer() {}; }
+	private static final DeclarationTransformer printDeclarationTransformer = new DeclarationTransformer(printCSS) {};
 	private static final RuleFactory printRuleFactory = RuleFactoryImpl.getInstance();
 	private static final CSSParserFactory printParserFactory = CSSParserFactory.getInstance();
+	static final CSSContext printContext = new CSSContext(
+		printParserFactory, printRuleFactory, printCSS, printDeclarationTransformer);
+	private static final StyleSheetCache printSheetCache = new StyleSheetCache(printContext, 100);
 	
 	// medium embossed
 	private static final SupportedCSS brailleCSS = new SupportedBrailleCSS(false, true);
-	private static DeclarationTransformer brailleDeclarationTransformer; static {
-		// SupportedCSS injected via CSSFactory in DeclarationTransformer.<init>
-		CSSFactory.registerSupportedCSS(brailleCSS);
-		brailleDeclarationTransformer = new BrailleCSSDeclarationTransformer(); }
+	private static final DeclarationTransformer brailleDeclarationTransformer = new BrailleCSSDeclarationTransformer(brailleCSS);
 	private static final RuleFactory brailleRuleFactory = new BrailleCSSRuleFactory();
 	private static final CSSParserFactory brailleParserFactory = new BrailleCSSParserFactory();
+	static final CSSContext brailleContext = new CSSContext(
+		brailleParserFactory, brailleRuleFactory, brailleCSS, brailleDeclarationTransformer);
+	private static final StyleSheetCache brailleSheetCache = new StyleSheetCache(brailleContext, 100);
 	
 	private static class CssInlineTransform extends DomToStreamTransform {
 		
@@ -473,20 +475,18 @@ public class CssInlineStep extends DefaultStep {
 				
 				CascadedStyle style = new CascadedStyle();
 				styles.add(style);
-				StyleSheet stylesheet;
+				// the default style sheets come from the cache, only the style sheets associated
+				// with the document are parsed for every document
+				List<StyleSheet> stylesheets = new ArrayList<StyleSheet>();
 				if (medium.equals("embossed")) {
-					stylesheet = (StyleSheet)brailleRuleFactory.createStyleSheet().unlock();
 					if (defaultSheets != null)
 						for (URL sheet : defaultSheets)
-							stylesheet = brailleParserFactory.append(sheet, network, null, SourceType.URL, stylesheet, sheet);
-					// CSSParserFactory injected via CSSFactory in CSSAssignTraversal.<init>
-					CSSFactory.registerCSSParserFactory(brailleParserFactory);
-					stylesheet = CSSFactory.getUsedStyles(document, null, asURL(baseURI), new MediaSpec(medium), network, stylesheet);
-					// DeclarationTransformer injected via CSSFactory in SingleMapNodeData.<init>
-					// SupportedCSS injected via CSSFactory in SingleMapNodeData.<init>, Repeater.assignDefaults, Variator.assignDefaults
-					CSSFactory.registerDeclarationTransformer(brailleDeclarationTransformer);
-					CSSFactory.registerSupportedCSS(brailleCSS);
-					style.styleMap = new Analyzer(stylesheet).evaluateDOM(document, medium, false);
+							stylesheets.add(brailleSheetCache.get(sheet, network));
+					stylesheets.add(CSSFactory.getUsedStyles(document, null, asURL(baseURI), new MediaSpec(medium), network,
+					                                         (StyleSheet)brailleRuleFactory.createStyleSheet().unlock(),
+					                                         brailleContext));
+					style.styleMap = new Analyzer(stylesheets, brailleContext).evaluateDOM(document, medium, false);
+					Iterable<RuleBlock<?>> stylesheet = concat(stylesheets);
 					style.pageRules = new HashMap<String,Map<String,RulePage>>(); {
 						for (RulePage r : filter(stylesheet, RulePage.class)) {
 							String name = firstNonNull(r.getName(), "auto");
@@ -519,22 +519,13 @@ public class CssInlineStep extends DefaultStep {
 					}
 					style.textTransformRules = filter(stylesheet, RuleTextTransform.class);
 				} else if (medium.equals("print")) {
-					stylesheet = (StyleSheet)printRuleFactory.createStyleSheet().unlock();
 					if (defaultSheets != null)
-						for (URL sheet : defaultSheets) {
-							// RuleFactory injected via CSSFactory in SimplePreparator.<init>, CSSTreeParser.<init>
-							CSSFactory.registerRuleFactory(printRuleFactory);
-							stylesheet = printParserFactory.append(sheet, network, null, SourceType.URL, stylesheet, sheet); }
-					// CSSParserFactory injected via CSSFactory in CSSAssignTraversal.<init>
-					// RuleFactory injected via CSSFactory in SimplePreparator.<init>, CSSTreeParser.<init>
-					CSSFactory.registerCSSParserFactory(printParserFactory);
-					CSSFactory.registerRuleFactory(printRuleFactory);
-					stylesheet = CSSFactory.getUsedStyles(document, null, asURL(baseURI), new MediaSpec(medium), network, stylesheet);
-					// DeclarationTransformer injected via CSSFactory in SingleMapNodeData.<init>
-					// SupportedCSS injected via CSSFactory in SingleMapNodeData.<init>, Repeater.assignDefaults, Variator.assignDefaults
-					CSSFactory.registerDeclarationTransformer(printDeclarationTransformer);
-					CSSFactory.registerSupportedCSS(printCSS);
-					style.styleMap = new Analyzer(stylesheet).evaluateDOM(document, medium, false);
+						for (URL sheet : defaultSheets)
+							stylesheets.add(printSheetCache.get(sheet, network));
+					stylesheets.add(CSSFactory.getUsedStyles(document, null, asURL(baseURI), new MediaSpec(medium), network,
+					                                         (StyleSheet)printRuleFactory.createStyleSheet().unlock(),
+					                                         printContext));
+					style.styleMap = new Analyzer(stylesheets, printContext).evaluateDOM(document, medium, false);
 				} else {
 					throw new RuntimeException("medium " + medium + " not supported");
 				}
@@ -0,0 +1,161 @@
+package org.daisy.pipeline.braille.css.calabash.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import cz.vutbr.web.css.CSSContext;
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.NetworkProcessor;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.csskit.antlr.CSSParserFactory.SourceType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parsed style sheets, shared by all documents and jobs that use the same
+ * CSS context (and thus the same medium).
+ *
+ * Style sheets are looked up by URL. Because the content behind a URL can
+ * change from one job to the next (files on disk, style sheets provided in
+ * memory, SASS variables), the style sheet and the style sheets it imports
+ * are fetched on every lookup and their SHA-1 hashes are compared with those
+ * of the content that was parsed. The style sheet is only parsed again when
+ * something changed. When it can not be fetched or parsed, its entry is
+ * dropped.
+ *
+ * Fetching is cheap compared to parsing, except for SASS style sheets: the
+ * network processor of css:inline compiles them on every fetch, so their
+ * compilation is not saved, only the parsing of the result.
+ *
+ * The returned style sheets are shared and must not be modified.
+ */
+class StyleSheetCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(StyleSheetCache.class);
+	private static final HashFunction hashFunction = Hashing.sha1();
+
+	private final CSSContext context;
+	private final Cache<String,Entry> cache;
+
+	StyleSheetCache(CSSContext context, int maxSize) {
+		this.context = context;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+	}
+
+	/**
+	 * Get the parsed style sheet at the given URL, including its imports.
+	 *
+	 * @param network The network processor used for fetching the style sheet and its imports.
+	 */
+	StyleSheet get(URL url, NetworkProcessor network) throws IOException, CSSException {
+		Fetcher fetcher = new Fetcher(network);
+		String key = url.toString();
+		Entry entry = cache.getIfPresent(key);
+		if (entry != null && entry.isUpToDate(fetcher)) {
+			logger.debug("Using cached CSS style sheet: " + url);
+			return entry.sheet;
+		}
+		StyleSheet sheet = (StyleSheet)context.getRuleFactory().createStyleSheet().unlock();
+		boolean parsed = false;
+		try {
+			sheet = context.getCSSParserFactory().append(url, fetcher.recording(), null, SourceType.URL, sheet, url);
+			parsed = true;
+		} finally {
+			if (!parsed)
+				cache.invalidate(key);
+		}
+		cache.put(key, new Entry(sheet, fetcher.recorded));
+		return sheet;
+	}
+
+	private static class Entry {
+
+		final StyleSheet sheet;
+
+		/* hashes of the parsed style sheet and its imports, null if an import could not be fetched */
+		final Map<String,HashCode> dependencies;
+
+		Entry(StyleSheet sheet, Map<String,HashCode> dependencies) {
+			this.sheet = sheet;
+			this.dependencies = dependencies;
+		}
+
+		boolean isUpToDate(Fetcher fetcher) {
+			for (Map.Entry<String,HashCode> d : dependencies.entrySet())
+				if (!Objects.equal(d.getValue(), fetcher.hash(d.getKey())))
+					return false;
+			return true;
+		}
+	}
+
+	/**
+	 * Fetches every URL at most once, so that the content fetched for
+	 * checking an entry is reused when the style sheet needs to be parsed
+	 * again.
+	 */
+	private static class Fetcher {
+
+		final NetworkProcessor network;
+		final Map<String,byte[]> fetched = new HashMap<String,byte[]>();
+		final Map<String,IOException> failed = new HashMap<String,IOException>();
+		final Map<String,HashCode> recorded = new LinkedHashMap<String,HashCode>();
+
+		Fetcher(NetworkProcessor network) {
+			this.network = network;
+		}
+
+		byte[] fetch(String url) throws IOException {
+			if (failed.containsKey(url))
+				throw failed.get(url);
+			byte[] bytes = fetched.get(url);
+			if (bytes == null) {
+				try {
+					InputStream is = network.fetch(new URL(url));
+					try {
+						bytes = ByteStreams.toByteArray(is); }
+					finally {
+						is.close(); }}
+				catch (IOException e) {
+					failed.put(url, e);
+					throw e; }
+				fetched.put(url, bytes); }
+			return bytes;
+		}
+
+		HashCode hash(String url) {
+			try {
+				return hashFunction.hashBytes(fetch(url)); }
+			catch (IOException e) {
+				return null; }
+		}
+
+		/**
+		 * Network processor that records the hashes of what the parser fetches.
+		 */
+		NetworkProcessor recording() {
+			return new NetworkProcessor() {
+				public InputStream fetch(URL url) throws IOException {
+					String key = url.toString();
+					recorded.put(key, null);
+					byte[] bytes = Fetcher.this.fetch(key);
+					recorded.put(key, hashFunction.hashBytes(bytes));
+					return new ByteArrayInputStream(bytes);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.daisy.pipeline.braille.css.calabash.impl;
+
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import cz.vutbr.web.css.CSSContext;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.csskit.antlr.CSSParserFactory.SourceType;
+import cz.vutbr.web.domassign.Analyzer;
+import cz.vutbr.web.domassign.StyleMap;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Styles documents for the print and the braille medium from several threads
+ * at once, with the contexts of css:inline, and checks that every document
+ * gets the same style as when it is styled on its own.
+ */
+public class CSSContextConcurrencyTest {
+
+	private static final int THREADS = 8;
+	private static final int RUNS = 50;
+
+	/* valid for both media, only for print, only for braille */
+	private static final String DEFAULT_SHEET
+		= "h1, p { display: block }\n"
+		+ "p { margin-left: 2em }\n"
+		+ "h1 { margin-top: 1 }\n";
+
+	private static final String DOCUMENT_SHEET
+		= "em { display: inline; text-indent: 2 }\n"
+		+ "p > em { font-style: italic }\n";
+
+	private static final String DOCUMENT
+		= "<doc><h1>Title</h1><p>Some <em>text</em></p><p><em>More</em> text</p></doc>";
+
+	@Test
+	public void testPrintAndBrailleInParallel() throws Exception {
+		final StyleSheet printSheet = parse(DEFAULT_SHEET, CssInlineStep.printContext);
+		final StyleSheet brailleSheet = parse(DEFAULT_SHEET, CssInlineStep.brailleContext);
+		final String print = style(printSheet, CssInlineStep.printContext, "print");
+		final String braille = style(brailleSheet, CssInlineStep.brailleContext, "embossed");
+		// the contexts don't support the same properties
+		assertFalse(print.equals(braille));
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> printResults = new ArrayList<Future<String>>();
+			List<Future<String>> brailleResults = new ArrayList<Future<String>>();
+			for (int i = 0; i < THREADS * RUNS; i++) {
+				printResults.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return style(printSheet, CssInlineStep.printContext, "print");
+					}
+				}));
+				brailleResults.add(executor.submit(new Callable<String>() {
+					public String call() throws Exception {
+						return style(brailleSheet, CssInlineStep.brailleContext, "embossed");
+					}
+				}));
+			}
+			for (Future<String> result : printResults)
+				assertEquals(print, result.get());
+			for (Future<String> result : brailleResults)
+				assertEquals(braille, result.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static StyleSheet parse(String css, CSSContext context) throws Exception {
+		StyleSheet sheet = (StyleSheet)context.getRuleFactory().createStyleSheet().unlock();
+		return context.getCSSParserFactory().append(css, null, null, SourceType.EMBEDDED, sheet,
+		                                            new URL("file:/test.css"));
+	}
+
+	/**
+	 * Styles a new document with a shared style sheet, as the default style
+	 * sheets of css:inline are shared, and a style sheet of its own.
+	 *
+	 * @return the style of every element, in document order
+	 */
+	private static String style(StyleSheet defaultSheet, CSSContext context, String medium) throws Exception {
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(DOCUMENT)));
+		List<StyleSheet> sheets = new ArrayList<StyleSheet>();
+		sheets.add(defaultSheet);
+		sheets.add(parse(DOCUMENT_SHEET, context));
+		StyleMap styleMap = new Analyzer(sheets, context).evaluateDOM(document, medium, false);
+		StringBuilder result = new StringBuilder();
+		NodeList elements = document.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			Element element = (Element)elements.item(i);
+			result.append(element.getTagName()).append(" { ").append(styleMap.get(element)).append("}\n");
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,137 @@
+package org.daisy.pipeline.braille.css.calabash.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import cz.vutbr.web.css.CSSContext;
+import cz.vutbr.web.css.CSSException;
+import cz.vutbr.web.css.NetworkProcessor;
+import cz.vutbr.web.css.StyleSheet;
+import cz.vutbr.web.csskit.RuleFactoryImpl;
+import cz.vutbr.web.csskit.antlr.CSSParserFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StyleSheetCacheTest {
+
+	private Map<String,String> files;
+	private NetworkProcessor network;
+	private CountingParserFactory parser;
+	private StyleSheetCache cache;
+
+	@Before
+	public void setUp() {
+		files = new HashMap<String,String>();
+		network = new NetworkProcessor() {
+			public InputStream fetch(URL url) throws IOException {
+				String css = files.get(url.toString());
+				if (css == null)
+					throw new FileNotFoundException(url.toString());
+				return new ByteArrayInputStream(css.getBytes(Charsets.UTF_8));
+			}
+		};
+		parser = new CountingParserFactory();
+		cache = new StyleSheetCache(new CSSContext(parser, RuleFactoryImpl.getInstance(), null, null), 10);
+	}
+
+	@Test
+	public void testReusedWhenUnchanged() throws Exception {
+		files.put("file:/main.css", "@import base.css\n");
+		files.put("file:/base.css", "p {}\n");
+		URL main = new URL("file:/main.css");
+		StyleSheet sheet = cache.get(main, network);
+		assertSame(sheet, cache.get(main, network));
+		assertEquals(1, parser.parsed);
+	}
+
+	@Test
+	public void testParsedAgainWhenChanged() throws Exception {
+		files.put("file:/main.css", "@import base.css\n");
+		files.put("file:/base.css", "p {}\n");
+		URL main = new URL("file:/main.css");
+		StyleSheet sheet = cache.get(main, network);
+		files.put("file:/main.css", "@import base.css\nh1 {}\n");
+		StyleSheet changed = cache.get(main, network);
+		assertNotSame(sheet, changed);
+		assertEquals(2, parser.parsed);
+		// a change in an imported style sheet
+		files.put("file:/base.css", "p { display: block }\n");
+		assertNotSame(changed, cache.get(main, network));
+		assertEquals(3, parser.parsed);
+	}
+
+	@Test
+	public void testImportFetchedAgainWhenMissing() throws Exception {
+		files.put("file:/main.css", "@import base.css\n");
+		URL main = new URL("file:/main.css");
+		StyleSheet sheet = cache.get(main, network);
+		assertSame(sheet, cache.get(main, network));
+		assertEquals(1, parser.parsed);
+		files.put("file:/base.css", "p {}\n");
+		assertNotSame(sheet, cache.get(main, network));
+		assertEquals(2, parser.parsed);
+	}
+
+	@Test
+	public void testNoEntryLeftWhenFetchFails() throws Exception {
+		files.put("file:/main.css", "p {}\n");
+		URL main = new URL("file:/main.css");
+		StyleSheet sheet = cache.get(main, network);
+		files.remove("file:/main.css");
+		try {
+			cache.get(main, network);
+			fail();
+		} catch (IOException e) {
+		}
+		assertEquals(2, parser.parsed);
+		// the same content as before is parsed again
+		files.put("file:/main.css", "p {}\n");
+		assertNotSame(sheet, cache.get(main, network));
+		assertEquals(3, parser.parsed);
+	}
+
+	/**
+	 * Does not parse the rules, but fetches a style sheet and its imports (lines
+	 * "@import url") the way the CSS parser does: a style sheet that can not be
+	 * fetched is an error, an import that can not be fetched is skipped.
+	 */
+	private static class CountingParserFactory extends CSSParserFactory {
+
+		int parsed = 0;
+
+		@Override
+		public StyleSheet append(Object source, NetworkProcessor network, String encoding, SourceType type,
+		                         StyleSheet sheet, URL base) throws IOException, CSSException {
+			parsed++;
+			fetch((URL)source, network);
+			return sheet;
+		}
+
+		private void fetch(URL url, NetworkProcessor network) throws IOException {
+			InputStream is = network.fetch(url);
+			String css;
+			try {
+				css = new String(ByteStreams.toByteArray(is), Charsets.UTF_8); }
+			finally {
+				is.close(); }
+			for (String line : css.split("\n"))
+				if (line.startsWith("@import "))
+					try {
+						fetch(new URL(url, line.substring("@import ".length()).trim()), network); }
+					catch (IOException e) {}
+		}
+	}
+}
@@ -6,6 +6,7 @@ import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.CSSProperty.Cue;
 import cz.vutbr.web.css.CSSProperty.VoiceFamily;
 import cz.vutbr.web.css.Declaration;
+import cz.vutbr.web.css.SupportedCSS;
 import cz.vutbr.web.css.Term;
 import cz.vutbr.web.css.TermList;
 import cz.vutbr.web.css.TermTime;
@@ -14,6 +15,10 @@ import cz.vutbr.web.domassign.DeclarationTransformer;
 
 public class SpeechDeclarationTransformer extends DeclarationTransformer {
 
+	public SpeechDeclarationTransformer(SupportedCSS css) {
+		super(css);
+	}
+
 	@Override
 	public boolean parseDeclaration(Declaration d, Map<String, CSSProperty> properties,
 	        Map<String, Term<?>> values) {
@@ -15,10 +15,11 @@ import org.apache.commons.io.IOUtils;
 import org.w3c.dom.Document;
 
 import cz.vutbr.web.css.CSSException;
-import cz.vutbr.web.css.CSSFactory;
+import cz.vutbr.web.css.CSSContext;
 import cz.vutbr.web.css.NetworkProcessor;
 import cz.vutbr.web.css.StyleSheet;
 import cz.vutbr.web.css.SupportedCSS;
+import cz.vutbr.web.csskit.RuleFactoryImpl;
 import cz.vutbr.web.csskit.antlr.CSSParserFactory;
 import cz.vutbr.web.csskit.antlr.CSSParserFactory.SourceType;
 import cz.vutbr.web.domassign.Analyzer;
@@ -35,11 +36,12 @@ public class SpeechSheetAnalyser {
 
 	private Analyzer mAnalyzer;
 	private static final CSSParserFactory parserFactory = CSSParserFactory.getInstance();
+	private static final CSSContext context;
 
 	static {
 		SupportedCSS = SupportedCSS21.getInstance();
-		CSSFactory.registerSupportedCSS(SupportedCSS);
-		CSSFactory.registerDeclarationTransformer(new SpeechDeclarationTransformer());
+		context = new CSSContext(parserFactory, RuleFactoryImpl.getInstance(), SupportedCSS,
+		        new SpeechDeclarationTransformer(SupportedCSS));
 	}
 
 	public void analyse(Collection<URI> sheetURIs, Collection<String> embeddedCSS,
@@ -72,7 +74,7 @@ public class SpeechSheetAnalyser {
 			 */
 		}
 
-		mAnalyzer = new Analyzer(styleSheets);
+		mAnalyzer = new Analyzer(styleSheets, context);
 	}
 
 	public StyleMap evaluateDOM(Document doc) {